@@ -1,16 +1,105 @@
 package application;
 
+import database.DataParser;
+import database.DataWatcher;
+import database.JdbcRepository;
+import database.SnapshotStore;
+import database.WriteAheadLog;
 import service.Baloot;
+import service.FanOut;
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.web.embedded.tomcat.TomcatProtocolHandlerCustomizer;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.ComponentScan;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.sql.SQLException;
+import java.util.Map;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executors;
+
 @SpringBootApplication
 @ComponentScan(basePackages = "controllers")
 public class BalootApplication {
-    public static void main(String[] args) {
-        Baloot.getInstance().fetchAndStoreData();
-        SpringApplication.run(BalootApplication.class, args);
+    public static final String REPOSITORY_PROPERTY = "baloot.repository";
+    public static final String VIRTUAL_THREADS_PROPERTY = "baloot.threads.virtual";
+
+    static final StartupLoader STARTUP_LOADER = new StartupLoader(Baloot.getInstance());
+
+    @Bean
+    public StartupLoader startupLoader() {
+        return STARTUP_LOADER;
+    }
+
+    @Bean
+    public StartupGate startupGate() {
+        return new StartupGate(STARTUP_LOADER);
+    }
+
+    /**
+     * With {@value #VIRTUAL_THREADS_PROPERTY} set to {@code true}, Tomcat serves every request on a new
+     * virtual thread instead of its bounded pool, so requests blocked on storage do not hold up others.
+     */
+    @Bean
+    @ConditionalOnProperty(name = VIRTUAL_THREADS_PROPERTY, havingValue = "true")
+    public TomcatProtocolHandlerCustomizer<?> virtualThreadExecutor() {
+        return protocolHandler -> protocolHandler.setExecutor(Executors.newVirtualThreadPerTaskExecutor());
+    }
+
+    /**
+     * Loads the data set once, on its own thread while the Spring context starts, and exits if that
+     * fails. The readiness probe reports ready only after the load, see {@link StartupLoader}, and until then
+     * every other request is answered with 503, see {@link StartupGate}.
+     */
+    public static void main(String[] args) throws SQLException {
+        run(new SpringApplication(BalootApplication.class), args);
+    }
+
+    /**
+     * Starts {@code application}, the servlet one or {@link ReactiveBalootApplication}, over the data set.
+     */
+    static void run(SpringApplication application, String[] args) throws SQLException {
+        Baloot baloot = Baloot.getInstance();
+        JdbcRepository jdbcRepository = null;
+        if ("jdbc".equals(System.getProperty(REPOSITORY_PROPERTY))) {
+            jdbcRepository = new JdbcRepository(JdbcRepository.defaultUrl());
+            baloot.setRepository(jdbcRepository);
+        }
+        JdbcRepository closedRepository = jdbcRepository;
+        FanOut.setVirtualThreads(Boolean.getBoolean(VIRTUAL_THREADS_PROPERTY));
+
+        var loaded = STARTUP_LOADER.start(() -> {
+            baloot.fetchAndStoreData(new SnapshotStore(baloot.getRepository(), SnapshotStore.defaultPath()),
+                    WriteAheadLog.defaultPath(), WriteAheadLog.defaultFsyncPolicy());
+            DataWatcher dataWatcher = new DataWatcher(new DataParser(baloot.getRepository())).start();
+            STARTUP_LOADER.watch(dataWatcher);
+            Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+                try {
+                    dataWatcher.close();
+                    baloot.closeWriteAheadLog();
+                    if (closedRepository != null)
+                        closedRepository.close();
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }));
+        });
+
+        application.setDefaultProperties(Map.of(
+                "management.endpoint.health.probes.enabled", "true",
+                "management.endpoint.health.group.readiness.include", "readinessState," + StartupLoader.HEALTH_INDICATOR,
+                "management.endpoints.web.exposure.include", "health,metrics"));
+        ConfigurableApplicationContext context = application.run(args);
 
+        try {
+            loaded.join();
+        } catch (CompletionException e) {
+            SpringApplication.exit(context, () -> 1);
+            throw e;
+        }
     }
 }
@@ -0,0 +1,44 @@
+package application;
+
+import org.springframework.boot.SpringApplication;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.boot.web.embedded.netty.NettyReactiveWebServerFactory;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.ComponentScan;
+
+import java.sql.SQLException;
+
+/**
+ * Serves the routes of {@link BalootApplication} from the controllers in the {@code reactive} package on
+ * Netty, where a few event-loop threads hold every connection and large listings are streamed to the
+ * client as it reads them. It loads and recovers the data set the same way.
+ */
+@SpringBootApplication
+@ComponentScan(basePackages = "reactive")
+public class ReactiveBalootApplication {
+
+    @Bean
+    public StartupLoader startupLoader() {
+        return BalootApplication.STARTUP_LOADER;
+    }
+
+    @Bean
+    public StartupGate startupGate() {
+        return new StartupGate(BalootApplication.STARTUP_LOADER);
+    }
+
+    /**
+     * Tomcat is on the classpath for the servlet application and would otherwise be preferred.
+     */
+    @Bean
+    public NettyReactiveWebServerFactory nettyReactiveWebServerFactory() {
+        return new NettyReactiveWebServerFactory();
+    }
+
+    public static void main(String[] args) throws SQLException {
+        SpringApplication application = new SpringApplication(ReactiveBalootApplication.class);
+        application.setWebApplicationType(WebApplicationType.REACTIVE);
+        BalootApplication.run(application, args);
+    }
+}
@@ -0,0 +1,73 @@
+package application;
+
+import defines.Errors;
+
+import jakarta.servlet.Filter;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.ServletRequest;
+import jakarta.servlet.ServletResponse;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.server.reactive.ServerHttpResponse;
+import org.springframework.web.server.ServerWebExchange;
+import org.springframework.web.server.WebFilter;
+import org.springframework.web.server.WebFilterChain;
+import reactor.core.publisher.Mono;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Answers every request with 503 Service Unavailable while the {@link StartupLoader} is still loading the
+ * data set, so no request reads a half-loaded catalog and no write lands before the write-ahead log is
+ * recovered. Actuator endpoints are let through, so the readiness probe can report the load. It is a
+ * servlet filter for {@link BalootApplication} and a web filter for {@link ReactiveBalootApplication}.
+ */
+public class StartupGate implements Filter, WebFilter {
+    static final String RETRY_AFTER_SECONDS = "1";
+    private static final String ACTUATOR_PATH = "/actuator";
+
+    private final StartupLoader startupLoader;
+
+    public StartupGate(StartupLoader startupLoader) {
+        this.startupLoader = startupLoader;
+    }
+
+    private boolean rejects(String path) {
+        return startupLoader.isLoading() && !path.startsWith(ACTUATOR_PATH);
+    }
+
+    @Override
+    public void doFilter(ServletRequest request, ServletResponse response, FilterChain chain)
+            throws IOException, ServletException {
+        if (!rejects(((HttpServletRequest) request).getRequestURI())) {
+            chain.doFilter(request, response);
+            return;
+        }
+
+        HttpServletResponse httpResponse = (HttpServletResponse) response;
+        httpResponse.setStatus(HttpStatus.SERVICE_UNAVAILABLE.value());
+        httpResponse.setHeader(HttpHeaders.RETRY_AFTER, RETRY_AFTER_SECONDS);
+        httpResponse.setContentType(MediaType.TEXT_PLAIN_VALUE);
+        httpResponse.setCharacterEncoding(StandardCharsets.UTF_8.name());
+        httpResponse.getWriter().write(Errors.DATA_SET_LOADING);
+    }
+
+    @Override
+    public Mono<Void> filter(ServerWebExchange exchange, WebFilterChain chain) {
+        if (!rejects(exchange.getRequest().getPath().value()))
+            return chain.filter(exchange);
+
+        ServerHttpResponse response = exchange.getResponse();
+        response.setStatusCode(HttpStatus.SERVICE_UNAVAILABLE);
+        response.getHeaders().set(HttpHeaders.RETRY_AFTER, RETRY_AFTER_SECONDS);
+        response.getHeaders().setContentType(MediaType.TEXT_PLAIN);
+        DataBuffer body = response.bufferFactory().wrap(Errors.DATA_SET_LOADING.getBytes(StandardCharsets.UTF_8));
+        return response.writeWith(Mono.just(body));
+    }
+}
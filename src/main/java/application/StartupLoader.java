@@ -0,0 +1,113 @@
+package application;
+
+import database.DataWatcher;
+import database.LoadTimings;
+import service.Baloot;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.TimeGauge;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.springframework.boot.actuate.health.Health;
+import org.springframework.boot.actuate.health.HealthIndicator;
+
+import java.util.Locale;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs the data load on its own thread, so it overlaps with starting the Spring context. As a health
+ * indicator, which is part of the readiness group, it is out of service until the load has finished
+ * and down if the load failed; as a meter binder, it publishes the time of each load phase as
+ * {@code baloot.startup.phase}, and the wall-clock time of the whole load as
+ * {@code baloot.startup.load}. Once a {@link DataWatcher} is {@link #watch watched}, the data files it failed
+ * to reload are counted in the health details and as {@code baloot.data.reload.failures}.
+ */
+public class StartupLoader implements HealthIndicator, MeterBinder {
+    public static final String HEALTH_INDICATOR = "startupLoader";
+
+    private final Baloot baloot;
+    private final CompletableFuture<Void> loaded = new CompletableFuture<>();
+    private volatile boolean started;
+    private volatile long loadNanos;
+    private volatile DataWatcher dataWatcher;
+
+    public StartupLoader(Baloot baloot) {
+        this.baloot = baloot;
+    }
+
+    /**
+     * Starts running {@code load} on a new thread.
+     *
+     * @return a future that completes when {@code load} has finished
+     */
+    public CompletableFuture<Void> start(ThrowingRunnable load) {
+        Thread thread = new Thread(() -> {
+            long start = System.nanoTime();
+            try {
+                load.run();
+                loadNanos = System.nanoTime() - start;
+                loaded.complete(null);
+            } catch (Throwable e) {
+                loaded.completeExceptionally(e);
+            }
+        }, "data-loader");
+        started = true;
+        thread.start();
+        return loaded;
+    }
+
+    /**
+     * Reports the reload failures of {@code dataWatcher} from now on.
+     */
+    public void watch(DataWatcher dataWatcher) {
+        this.dataWatcher = dataWatcher;
+    }
+
+    public boolean isLoaded() {
+        return loaded.isDone() && !loaded.isCompletedExceptionally();
+    }
+
+    /**
+     * Returns whether a load was started and has not succeeded yet, so the data set is not ready to serve.
+     */
+    public boolean isLoading() {
+        return started && !isLoaded();
+    }
+
+    @Override
+    public Health health() {
+        if (!loaded.isDone())
+            return Health.outOfService().build();
+        if (loaded.isCompletedExceptionally())
+            return Health.down().withDetail("error", loaded.exceptionNow().toString()).build();
+        DataWatcher watcher = dataWatcher;
+        if (watcher == null)
+            return Health.up().build();
+        Health.Builder health = Health.up().withDetail("dataReloadFailures", watcher.getFailedReloads());
+        if (watcher.getLastFailure() != null)
+            health.withDetail("lastDataReloadFailure", watcher.getLastFailure());
+        return health.build();
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        for (LoadTimings.Phase phase : LoadTimings.Phase.values())
+            TimeGauge.builder("baloot.startup.phase", baloot, TimeUnit.NANOSECONDS,
+                            b -> b.getLoadTimings().getNanos(phase))
+                    .tag("phase", phase.name().toLowerCase(Locale.ROOT))
+                    .description("Time spent in a phase of loading the data set, summed over threads")
+                    .register(registry);
+        TimeGauge.builder("baloot.startup.load", this, TimeUnit.NANOSECONDS, loader -> loader.loadNanos)
+                .description("Wall-clock time of loading the data set and recovering the write-ahead log")
+                .register(registry);
+        FunctionCounter.builder("baloot.data.reload.failures", this,
+                        loader -> loader.dataWatcher == null ? 0 : loader.dataWatcher.getFailedReloads())
+                .description("Changed data files that could not be reloaded")
+                .register(registry);
+    }
+
+    public interface ThrowingRunnable {
+        void run() throws Exception;
+    }
+}
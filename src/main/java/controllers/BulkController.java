@@ -0,0 +1,49 @@
+package controllers;
+
+import database.BulkTransfer;
+import service.Baloot;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+@RestController
+public class BulkController {
+    public static final MediaType NDJSON = MediaType.parseMediaType("application/x-ndjson");
+
+    private Baloot baloot = Baloot.getInstance();
+
+    public void setBaloot(Baloot baloot) {
+        this.baloot = baloot;
+    }
+
+    @PostMapping(value = "/bulk/{entity}")
+    public ResponseEntity<BulkTransfer.Result> importEntities(@PathVariable String entity, InputStream body) {
+        BulkTransfer.Entity type = BulkTransfer.Entity.fromName(entity);
+        if (type == null)
+            return new ResponseEntity<>(null, HttpStatus.NOT_FOUND);
+
+        try {
+            return new ResponseEntity<>(baloot.importEntities(type, body), HttpStatus.OK);
+        } catch (IOException e) {
+            return new ResponseEntity<>(null, HttpStatus.BAD_REQUEST);
+        }
+    }
+
+    @GetMapping(value = "/bulk/{entity}")
+    public ResponseEntity<StreamingResponseBody> exportEntities(@PathVariable String entity) {
+        BulkTransfer.Entity type = BulkTransfer.Entity.fromName(entity);
+        if (type == null)
+            return new ResponseEntity<>(null, HttpStatus.NOT_FOUND);
+
+        StreamingResponseBody body = output -> baloot.exportEntities(type, output);
+        return ResponseEntity.ok().contentType(NDJSON).body(body);
+    }
+}
@@ -1,8 +1,9 @@
 package controllers;
 
+import defines.Errors;
 import service.Baloot;
+import utils.BuyListChanges;
 import utils.BuyListItem;
-import model.Commodity;
 import model.User;
 import exceptions.*;
 import org.springframework.http.HttpStatus;
@@ -12,6 +13,7 @@ import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RestController;
 
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.Map;
 
 @RestController
@@ -22,44 +24,22 @@ public class BuyListController {
         this.baloot = baloot;
     }
     @PostMapping(value = "/buy-list")
-    public ResponseEntity<ArrayList<BuyListItem>> getBuyList(@RequestBody Map<String, String> input) {
+    public ResponseEntity<ArrayList<BuyListItem>> getBuyList(@RequestBody Map<String, String> input) throws InterruptedException {
         String username = input.get("username");
-        ArrayList<BuyListItem> buyListItems = new ArrayList<>();
-
         try {
-            Map<String, Integer> buyList = baloot.getUserBuyList(username);
-            for (Map.Entry<String, Integer> entry : buyList.entrySet()) {
-                Commodity commodity = baloot.getCommodityById(entry.getKey());
-                int quantity = entry.getValue();
-
-                BuyListItem buyListItem = new BuyListItem(commodity, quantity);
-                buyListItems.add(buyListItem);
-            }
-            return new ResponseEntity<>(buyListItems, HttpStatus.OK);
-
+            return new ResponseEntity<>(baloot.getBuyListItems(baloot.getUserBuyList(username)), HttpStatus.OK);
         } catch (NotExistentUser | NotExistentCommodity ignored) {
-            return new ResponseEntity<>(buyListItems, HttpStatus.NOT_FOUND);
+            return new ResponseEntity<>(new ArrayList<>(), HttpStatus.NOT_FOUND);
         }
     }
 
     @PostMapping(value = "/purchased-list")
-    public ResponseEntity<ArrayList<BuyListItem>> getPurchasedList(@RequestBody Map<String, String> input) {
+    public ResponseEntity<ArrayList<BuyListItem>> getPurchasedList(@RequestBody Map<String, String> input) throws InterruptedException {
         String username = input.get("username");
-        ArrayList<BuyListItem> purchasedListItems = new ArrayList<>();
-
         try {
-            Map<String, Integer> purchasedList = baloot.getUserPurchasedList(username);
-            for (Map.Entry<String, Integer> entry : purchasedList.entrySet()) {
-                Commodity commodity = baloot.getCommodityById(entry.getKey());
-                int quantity = entry.getValue();
-
-                BuyListItem buyListItem = new BuyListItem(commodity, quantity);
-                purchasedListItems.add(buyListItem);
-            }
-            return new ResponseEntity<>(purchasedListItems, HttpStatus.OK);
-
+            return new ResponseEntity<>(baloot.getBuyListItems(baloot.getUserPurchasedList(username)), HttpStatus.OK);
         } catch (NotExistentUser | NotExistentCommodity ignored) {
-            return new ResponseEntity<>(purchasedListItems, HttpStatus.NOT_FOUND);
+            return new ResponseEntity<>(new ArrayList<>(), HttpStatus.NOT_FOUND);
         }
     }
 
@@ -88,6 +68,32 @@ public class BuyListController {
         }
     }
 
+    @PostMapping(value = "/buy-list/batch")
+    public ResponseEntity<String> changeBuyList(@RequestBody BuyListChanges input) {
+        if (input.getItems() == null)
+            return new ResponseEntity<>(Errors.MISSING_BUY_LIST_CHANGES, HttpStatus.BAD_REQUEST);
+
+        Map<String, Integer> changes = new HashMap<>();
+        try {
+            for (BuyListChanges.Item item : input.getItems()) {
+                if (item == null)
+                    return new ResponseEntity<>(Errors.MISSING_BUY_LIST_CHANGES, HttpStatus.BAD_REQUEST);
+                changes.merge(item.getId(), item.getQuantity(), Math::addExact);
+            }
+        } catch (ArithmeticException e) {
+            return new ResponseEntity<>(Errors.INVALID_QUANTITY_RANGE, HttpStatus.BAD_REQUEST);
+        }
+
+        try {
+            baloot.changeUserBuyList(input.getUsername(), changes);
+            return new ResponseEntity<>("buy list updated successfully!", HttpStatus.OK);
+        } catch (MissingUserId | MissingCommodityId | NotExistentUser | NotExistentCommodity e) {
+            return new ResponseEntity<>(e.getMessage(), HttpStatus.NOT_FOUND);
+        } catch (CommodityIsNotInBuyList | InvalidQuantityRange e) {
+            return new ResponseEntity<>(e.getMessage(), HttpStatus.BAD_REQUEST);
+        }
+    }
+
     @PostMapping(value = "/buy-list/purchase")
     public ResponseEntity<String> purchaseBuyList(@RequestBody Map<String, String> input) {
         String username = input.get("username");
@@ -1,42 +1,136 @@
 package controllers;
 
+import exceptions.InvalidPageRequest;
 import exceptions.InvalidRateRange;
 import service.Baloot;
 import model.Comment;
 import model.Commodity;
 import model.User;
+import model.Versions;
 import exceptions.NotExistentCommodity;
 import exceptions.NotExistentUser;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import utils.CursorPage;
+import utils.Page;
+import utils.ProductPage;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 @RestController
 public class CommoditiesController {
+    public static final String NEXT_CURSOR_HEADER = "X-Next-Cursor";
+    private static final int MAX_COMMODITY_IDS = 100;
+
+    private static final Map<String, Function<Commodity, Object>> COMMODITY_FIELDS = new LinkedHashMap<>();
+    public static final String DEFAULT_COMMODITY_FIELDS = "id,name,providerId,price,categories,rating,inStock,image";
+
+    static {
+        COMMODITY_FIELDS.put("id", Commodity::getId);
+        COMMODITY_FIELDS.put("name", Commodity::getName);
+        COMMODITY_FIELDS.put("providerId", Commodity::getProviderId);
+        COMMODITY_FIELDS.put("price", Commodity::getPrice);
+        COMMODITY_FIELDS.put("categories", Commodity::getCategories);
+        COMMODITY_FIELDS.put("rating", Commodity::getRating);
+        COMMODITY_FIELDS.put("inStock", Commodity::getInStock);
+        COMMODITY_FIELDS.put("image", Commodity::getImage);
+        COMMODITY_FIELDS.put("initRate", Commodity::getInitRate);
+        COMMODITY_FIELDS.put("userRate", Commodity::getUserRate);
+    }
 
     private Baloot baloot = Baloot.getInstance();
 
     public void setBaloot(Baloot baloot) {
         this.baloot = baloot;
     }
+    /**
+     * Writes the catalog as one JSON array, serializing commodities as they are read from the repository.
+     */
     @GetMapping(value = "/commodities")
-    public ResponseEntity<ArrayList<Commodity>> getCommodities() {
-        return new ResponseEntity<>(baloot.getCommodities(), HttpStatus.OK);
+    public ResponseEntity<Stream<Commodity>> getCommodities() {
+        return new ResponseEntity<>(baloot.streamCommodities(), HttpStatus.OK);
+    }
+
+    @GetMapping(value = "/commodities", params = "limit")
+    public ResponseEntity<List<Map<String, Object>>> getCommoditiesPage(@RequestParam int limit,
+                                                                     @RequestParam(required = false) String cursor,
+                                                                     @RequestParam(defaultValue = Baloot.SORT_BY_ADDED) String sort,
+                                                                     @RequestParam(defaultValue = DEFAULT_COMMODITY_FIELDS) String fields) {
+        List<String> projection = Arrays.stream(fields.split(",")).map(String::trim).toList();
+        if (limit <= 0 || !COMMODITY_FIELDS.keySet().containsAll(projection))
+            return new ResponseEntity<>(null, HttpStatus.BAD_REQUEST);
+
+        CursorPage<Commodity> commodities;
+        try {
+            commodities = baloot.getCommoditiesPage(sort, cursor, limit);
+        } catch (InvalidPageRequest e) {
+            return new ResponseEntity<>(null, HttpStatus.BAD_REQUEST);
+        }
+
+        List<Map<String, Object>> items = new ArrayList<>(commodities.getItems().size());
+        for (Commodity commodity : commodities.getItems()) {
+            Map<String, Object> item = new LinkedHashMap<>();
+            for (String field : projection)
+                item.put(field, COMMODITY_FIELDS.get(field).apply(commodity));
+            items.add(item);
+        }
+
+        HttpHeaders headers = new HttpHeaders();
+        if (commodities.getNextCursor() != null)
+            headers.set(NEXT_CURSOR_HEADER, commodities.getNextCursor());
+
+        return new ResponseEntity<>(items, headers, HttpStatus.OK);
+    }
+
+    @GetMapping(value = "/commodities", params = {"ids", "!limit"})
+    public ResponseEntity<ArrayList<Commodity>> getCommoditiesByIds(@RequestParam List<String> ids) {
+        if (ids.size() > MAX_COMMODITY_IDS)
+            return new ResponseEntity<>(null, HttpStatus.BAD_REQUEST);
+
+        return new ResponseEntity<>(baloot.getCommoditiesByIds(ids), HttpStatus.OK);
+    }
+
+    @GetMapping(value = "/commodities/autocomplete")
+    public ResponseEntity<ArrayList<Commodity>> autocompleteCommodities(@RequestParam String prefix,
+                                                                        @RequestParam(defaultValue = "10") int limit) {
+        return new ResponseEntity<>(baloot.autocompleteCommodityName(prefix, limit), HttpStatus.OK);
     }
 
     @GetMapping(value = "/commodities/{id}")
-    public ResponseEntity<Commodity> getCommodity(@PathVariable String id) {
+    public ResponseEntity<Commodity> getCommodity(@PathVariable String id,
+                                                  @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch) {
         try {
             Commodity commodity = baloot.getCommodityById(id);
-            return new ResponseEntity<>(commodity, HttpStatus.OK);
+            return ETags.respond(ifNoneMatch, ETags.of(commodity.getVersion()), () -> commodity);
         } catch (NotExistentCommodity e) {
             return new ResponseEntity<>(null, HttpStatus.NOT_FOUND);
         }
     }
 
+    @GetMapping(value = "/commodities/{id}/page")
+    public ResponseEntity<ProductPage> getProductPage(@PathVariable String id,
+                                                      @RequestParam(defaultValue = "20") int commentLimit) throws InterruptedException {
+        if (commentLimit <= 0)
+            return new ResponseEntity<>(null, HttpStatus.BAD_REQUEST);
+
+        try {
+            return new ResponseEntity<>(baloot.getProductPage(id, commentLimit), HttpStatus.OK);
+        } catch (NotExistentCommodity e) {
+            return new ResponseEntity<>(null, HttpStatus.NOT_FOUND);
+        } catch (NumberFormatException e) {
+            return new ResponseEntity<>(null, HttpStatus.BAD_REQUEST);
+        }
+    }
+
     @PostMapping(value = "/commodities/{id}/rate")
     public ResponseEntity<String> rateCommodity(@PathVariable String id, @RequestBody Map<String, String> input) {
         try {
@@ -44,6 +138,7 @@ public class CommoditiesController {
             String username = input.get("username");
             Commodity commodity = baloot.getCommodityById(id);
             commodity.addRate(username, rate);
+            baloot.commodityRated(commodity);
             return new ResponseEntity<>("rate added successfully!", HttpStatus.OK);
         } catch (NotExistentCommodity e) {
             return new ResponseEntity<>(e.getMessage(), HttpStatus.NOT_FOUND);
@@ -78,15 +173,36 @@ public class CommoditiesController {
     }
 
     @GetMapping(value = "/commodities/{id}/comment")
-    public ResponseEntity<ArrayList<Comment>> getCommodityComment(@PathVariable String id) {
-        ArrayList<Comment> comments;
+    public ResponseEntity<ArrayList<Comment>> getCommodityComment(@PathVariable String id,
+                                                                  @RequestParam(defaultValue = "0") int cursor,
+                                                                  @RequestParam(defaultValue = "20") int limit,
+                                                                  @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch) {
+        if (cursor < 0 || limit <= 0)
+            return new ResponseEntity<>(null, HttpStatus.BAD_REQUEST);
+
+        Page<Comment> comments;
         try {
-            comments = baloot.getCommentsForCommodity(Integer.parseInt(id));
+            comments = baloot.getCommentsForCommodity(Integer.parseInt(id), cursor, limit);
         } catch (NumberFormatException e){
             return new ResponseEntity<>(null, HttpStatus.BAD_REQUEST);
         }
 
-        return new ResponseEntity<>(comments, HttpStatus.OK);
+        // Comments are never removed and every change raises the changed comment's version, so the size,
+        // version sum and next cursor of a page identify its content within a boot.
+        long versions = 0;
+        for (Comment comment : comments.getItems())
+            versions += comment.getVersion();
+        String etag = "\"" + Versions.EPOCH + "-" + comments.getItems().size() + "-" + versions + "-"
+                + comments.getNextCursor() + "\"";
+
+        HttpHeaders headers = new HttpHeaders();
+        headers.setETag(etag);
+        if (comments.getNextCursor() != null)
+            headers.set(NEXT_CURSOR_HEADER, String.valueOf(comments.getNextCursor()));
+
+        if (ETags.matches(ifNoneMatch, etag))
+            return new ResponseEntity<>(null, headers, HttpStatus.NOT_MODIFIED);
+        return new ResponseEntity<>(comments.getItems(), headers, HttpStatus.OK);
     }
 
     @PostMapping(value = "/commodities/search")
@@ -94,12 +210,8 @@ public class CommoditiesController {
         String searchOption = input.get("searchOption");
         String searchValue = input.get("searchValue");
 
-        ArrayList<Commodity> commodities = switch (searchOption) {
-            case "name" -> baloot.filterCommoditiesByName(searchValue);
-            case "category" -> baloot.filterCommoditiesByCategory(searchValue);
-            case "provider" -> baloot.filterCommoditiesByProviderName(searchValue);
-            default -> new ArrayList<>();
-        };
+        ArrayList<Commodity> commodities = baloot.searchCommodities(searchOption, searchValue, input.get("operator"))
+                .collect(Collectors.toCollection(ArrayList::new));
 
         return new ResponseEntity<>(commodities, HttpStatus.OK);
     }
@@ -0,0 +1,48 @@
+package controllers;
+
+import model.Versions;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+
+import java.util.function.Supplier;
+
+/**
+ * Entity tags made from entity versions. A conditional GET whose {@code If-None-Match} holds the current
+ * tag is answered with 304 from the version alone, without fetching or serializing the body.
+ */
+final class ETags {
+    private ETags() {
+    }
+
+    /**
+     * Returns the tag of an entity at {@code version}. Versions restart on every boot, so the tag carries
+     * the boot epoch and a tag from before a restart never matches after it.
+     */
+    static String of(long version) {
+        return "\"" + Versions.EPOCH + "-" + version + "\"";
+    }
+
+    static boolean matches(String ifNoneMatch, String etag) {
+        if (ifNoneMatch == null)
+            return false;
+
+        for (String tag : ifNoneMatch.split(",")) {
+            tag = tag.trim();
+            if (tag.startsWith("W/"))
+                tag = tag.substring(2);
+            if (tag.equals("*") || tag.equals(etag))
+                return true;
+        }
+        return false;
+    }
+
+    /**
+     * Returns 304 if {@code ifNoneMatch} holds {@code etag}, and {@code body} with {@code etag} otherwise.
+     */
+    static <T> ResponseEntity<T> respond(String ifNoneMatch, String etag, Supplier<T> body) {
+        if (matches(ifNoneMatch, etag))
+            return ResponseEntity.status(HttpStatus.NOT_MODIFIED).eTag(etag).build();
+        return ResponseEntity.ok().eTag(etag).body(body.get());
+    }
+}
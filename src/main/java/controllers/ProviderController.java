@@ -4,10 +4,12 @@ import service.Baloot;
 import model.Commodity;
 import model.Provider;
 import exceptions.NotExistentProvider;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RestController;
 
 import java.util.ArrayList;
@@ -20,10 +22,11 @@ public class ProviderController {
         this.baloot = baloot;
     }
     @GetMapping(value = "/providers/{id}")
-    public ResponseEntity<Provider> getProvider(@PathVariable String id) {
+    public ResponseEntity<Provider> getProvider(@PathVariable String id,
+                                                @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch) {
         try {
             Provider provider = baloot.getProviderById(id);
-            return new ResponseEntity<>(provider, HttpStatus.OK);
+            return ETags.respond(ifNoneMatch, ETags.of(provider.getVersion()), () -> provider);
         } catch (NotExistentProvider e) {
             return new ResponseEntity<>(null, HttpStatus.NOT_FOUND);
         }
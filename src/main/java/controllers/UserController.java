@@ -4,6 +4,7 @@ import service.Baloot;
 import model.User;
 import exceptions.InvalidCreditRange;
 import exceptions.NotExistentUser;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
@@ -18,10 +19,11 @@ public class UserController {
         this.baloot = baloot;
     }
     @GetMapping(value = "/users/{id}")
-    public ResponseEntity<User> getUser(@PathVariable String id) {
+    public ResponseEntity<User> getUser(@PathVariable String id,
+                                        @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch) {
         try {
             User user = baloot.getUserById(id);
-            return new ResponseEntity<>(user, HttpStatus.OK);
+            return ETags.respond(ifNoneMatch, ETags.of(user.getVersion()), () -> user);
         } catch (NotExistentUser e) {
             return new ResponseEntity<>(null, HttpStatus.NOT_FOUND);
         }
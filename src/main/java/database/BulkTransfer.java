@@ -0,0 +1,244 @@
+package database;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import model.Comment;
+import model.Commodity;
+import model.Provider;
+import model.User;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+import static defines.Errors.*;
+
+/**
+ * Streams entities into and out of a {@link Repository} as newline-delimited JSON, one entity per line.
+ * An import reads {@link #BATCH_SIZE} lines at a time, parses and validates the batch in parallel and
+ * stores its valid entities in one go, so memory is bounded by the batch whatever the length of the
+ * stream. An export writes entities as it walks the stored list.
+ * <p>
+ * Like {@link DataParser#reload}, an import adds users, providers and comments that are not stored yet
+ * and leaves the stored ones alone, while commodities are added or updated in place.
+ */
+public class BulkTransfer {
+    public static final int BATCH_SIZE = 1000;
+    static final int MAX_REPORTED_ERRORS = 100;
+
+    public enum Entity {
+        USERS, PROVIDERS, COMMODITIES, COMMENTS;
+
+        /**
+         * Returns the entity named {@code name} in a URL, such as {@code commodities}, or {@code null}.
+         */
+        public static Entity fromName(String name) {
+            for (Entity entity : values())
+                if (entity.name().toLowerCase(Locale.ROOT).equals(name))
+                    return entity;
+            return null;
+        }
+    }
+
+    /**
+     * Outcome of an import. Only the first {@link #MAX_REPORTED_ERRORS} rejected lines are described in
+     * {@code errors}.
+     */
+    public record Result(long imported, long unchanged, long rejected, List<String> errors) {
+    }
+
+    private record Line(long number, String text) {
+    }
+
+    private record Parsed(Object entity, String error) {
+    }
+
+    private static class Progress {
+        long imported;
+        long unchanged;
+        long rejected;
+        final List<String> errors = new ArrayList<>();
+    }
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final Repository repository;
+
+    public BulkTransfer(Repository repository) {
+        this.repository = repository;
+    }
+
+    public Result importLines(Entity entity, InputStream input) throws IOException {
+        Importer importer = importer(entity);
+        BufferedReader reader = new BufferedReader(new InputStreamReader(input, StandardCharsets.UTF_8));
+        String text;
+        while ((text = reader.readLine()) != null)
+            importer.add(text);
+
+        return importer.finish();
+    }
+
+    /**
+     * Returns an importer of {@code entity} that is fed one line at a time, for callers that do not read
+     * the stream themselves.
+     */
+    public Importer importer(Entity entity) {
+        return new Importer(entity);
+    }
+
+    /**
+     * An import in progress. It stores each batch as it fills up, so it is not safe for use by several
+     * threads at once.
+     */
+    public final class Importer {
+        private final Entity entity;
+        private final Progress progress = new Progress();
+        private final List<Line> batch = new ArrayList<>(BATCH_SIZE);
+        private long number;
+
+        private Importer(Entity entity) {
+            this.entity = entity;
+        }
+
+        public void add(String text) {
+            number++;
+            if (text.isBlank())
+                return;
+
+            batch.add(new Line(number, text));
+            if (batch.size() == BATCH_SIZE) {
+                importBatch(entity, batch, progress);
+                batch.clear();
+            }
+        }
+
+        /**
+         * Stores the last batch and returns the outcome of the whole import.
+         */
+        public Result finish() {
+            importBatch(entity, batch, progress);
+            batch.clear();
+            return new Result(progress.imported, progress.unchanged, progress.rejected, List.copyOf(progress.errors));
+        }
+    }
+
+    private void importBatch(Entity entity, List<Line> batch, Progress progress) {
+        Parsed[] parsed = new Parsed[batch.size()];
+        IntStream.range(0, batch.size()).parallel().forEach(i -> parsed[i] = parse(entity, batch.get(i).text()));
+
+        List<Object> valid = new ArrayList<>(batch.size());
+        for (int i = 0; i < parsed.length; i++) {
+            if (parsed[i].error() == null) {
+                valid.add(parsed[i].entity());
+            } else {
+                progress.rejected++;
+                if (progress.errors.size() < MAX_REPORTED_ERRORS)
+                    progress.errors.add("line " + batch.get(i).number() + ": " + parsed[i].error());
+            }
+        }
+
+        int stored = store(entity, valid);
+        progress.imported += stored;
+        progress.unchanged += valid.size() - stored;
+    }
+
+    private Parsed parse(Entity entity, String text) {
+        try {
+            return switch (entity) {
+                case USERS -> validate(objectMapper.readValue(text, User.class));
+                case PROVIDERS -> validate(objectMapper.readValue(text, Provider.class));
+                case COMMODITIES -> validate(objectMapper.readValue(text, Commodity.class));
+                case COMMENTS -> validate(objectMapper.readValue(text, Comment.class));
+            };
+        } catch (JsonProcessingException e) {
+            return new Parsed(null, e.getOriginalMessage());
+        }
+    }
+
+    private static Parsed validate(User user) {
+        return new Parsed(user, user.getUsername() == null ? MISSING_USER_ID : null);
+    }
+
+    private static Parsed validate(Provider provider) {
+        return new Parsed(provider, provider.getId() == null ? MISSING_PROVIDER_ID : null);
+    }
+
+    private static Parsed validate(Commodity commodity) {
+        String error = null;
+        if (commodity.getId() == null)
+            error = MISSING_COMMODITY_ID;
+        else if (commodity.getPrice() < 0)
+            error = INVALID_PRICE_RANGE;
+        else if (commodity.getInStock() < 0)
+            error = INVALID_QUANTITY_RANGE;
+        return new Parsed(commodity, error);
+    }
+
+    private Parsed validate(Comment comment) {
+        String error = null;
+        if (comment.getUsername() == null)
+            error = MISSING_USER_ID;
+        else if (comment.getText() == null)
+            error = MISSING_COMMENT_TEXT;
+        else if (repository.findCommodity(String.valueOf(comment.getCommodityId())) == null)
+            error = NOT_EXISTENT_COMMODITY;
+        return new Parsed(comment, error);
+    }
+
+    /**
+     * Stores {@code entities} as one batch, which waits for the write-ahead log once, and returns how many
+     * of them were added or changed.
+     */
+    @SuppressWarnings("unchecked")
+    private int store(Entity entity, List<?> entities) {
+        return switch (entity) {
+            case USERS -> repository.addUsers((List<User>) entities);
+            case PROVIDERS -> repository.addProviders((List<Provider>) entities);
+            case COMMODITIES -> repository.updateCommodities((List<Commodity>) entities);
+            case COMMENTS -> DataParser.addNewComments(repository, (List<Comment>) entities);
+        };
+    }
+
+    /**
+     * Writes every stored entity of type {@code entity} to {@code output}, one JSON object per line.
+     * Commodities are streamed from the repository, see {@link Repository#streamCommodities}.
+     *
+     * @return the number of entities written
+     */
+    public long export(Entity entity, OutputStream output) throws IOException {
+        ObjectWriter writer = objectMapper.writer();
+        BufferedOutputStream buffered = new BufferedOutputStream(output);
+        long written = 0;
+        try (Stream<?> entities = entities(entity)) {
+            for (Iterator<?> iterator = entities.iterator(); iterator.hasNext(); ) {
+                buffered.write(writer.writeValueAsBytes(iterator.next()));
+                buffered.write('\n');
+                written++;
+            }
+        }
+        buffered.flush();
+        return written;
+    }
+
+    /**
+     * Returns every stored entity of type {@code entity}, in the order {@link #export} writes them.
+     */
+    public Stream<?> entities(Entity entity) {
+        return switch (entity) {
+            case USERS -> repository.streamUsers();
+            case PROVIDERS -> repository.streamProviders();
+            case COMMODITIES -> repository.streamCommodities();
+            case COMMENTS -> repository.streamComments();
+        };
+    }
+}
@@ -0,0 +1,12 @@
+package database;
+
+import model.Commodity;
+
+import java.util.List;
+
+/**
+ * The commodity list as of one catalog write. {@code commodities} is unmodifiable and never changes,
+ * so a reader can serve it without locking or copying; {@code version} grows with every write.
+ */
+public record CatalogSnapshot(long version, List<Commodity> commodities) {
+}
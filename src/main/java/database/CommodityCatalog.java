@@ -0,0 +1,70 @@
+package database;
+
+import model.Commodity;
+
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+
+/**
+ * Storage of the commodity catalog and its secondary indexes. {@link Database} serializes
+ * {@link #add} and {@link #update} calls; every other method may be called concurrently with them.
+ */
+interface CommodityCatalog {
+    List<Commodity> getCommodities();
+
+    /**
+     * Returns an unmodifiable list of the commodities stored so far, which later writes do not change.
+     */
+    List<Commodity> snapshot();
+
+    void add(Commodity commodity);
+
+    /**
+     * Gives the stored {@code commodity} the name, provider, price, categories, stock and image of
+     * {@code updated}, moving it between index entries as needed. A heap catalog stores {@code updated}
+     * in its place, see {@link Commodity#retire}; the commodity list shows the swap from the next
+     * {@link #snapshot}.
+     *
+     * @return {@code false}, without changing anything, if the catalog cannot update {@code commodity}
+     * without a rebuild
+     */
+    boolean update(Commodity commodity, Commodity updated);
+
+    Commodity find(String commodityId);
+
+    List<Commodity> findByProvider(String providerId);
+
+    Set<Commodity> findByCategory(String category);
+
+    List<Commodity> findByName(String query);
+
+    List<Commodity> findByNamePrefix(String prefix, int limit);
+
+    /**
+     * Returns up to {@code limit} named commodities in order of lower-cased name, from the first name not
+     * less than {@code from}, leaving out the first {@code skip} of those named {@code from}. Commodities
+     * with equal names keep a fixed order, so a listing can resume after any commodity by passing its
+     * name and how many commodities of that name it has seen.
+     */
+    List<Commodity> findByNameFrom(String from, int skip, int limit);
+
+    /**
+     * Returns whether giving {@code commodity} the listing of {@code updated} changes its name, provider
+     * or categories, and so its index entries.
+     */
+    static boolean movesIndexEntries(Commodity commodity, Commodity updated) {
+        return !Objects.equals(commodity.getName(), updated.getName())
+                || !Objects.equals(commodity.getProviderId(), updated.getProviderId())
+                || !commodity.getCategories().equals(updated.getCategories());
+    }
+
+    /**
+     * Returns whether {@code commodity} already has the listing of {@code updated}.
+     */
+    static boolean hasListing(Commodity commodity, Commodity updated) {
+        return !movesIndexEntries(commodity, updated) && commodity.getPrice() == updated.getPrice()
+                && commodity.getInStock() == updated.getInStock()
+                && Objects.equals(commodity.getImage(), updated.getImage());
+    }
+}
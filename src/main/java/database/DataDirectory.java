@@ -0,0 +1,27 @@
+package database;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+/**
+ * The directory the application writes its own files to: the snapshot, the write-ahead log, the mapped
+ * catalog and the embedded SQL database. It is {@code data} under the working directory unless
+ * {@value #PROPERTY} names another, and is kept apart from the source tree and the JSON data files.
+ */
+public final class DataDirectory {
+    public static final String PROPERTY = "baloot.data.dir";
+
+    private DataDirectory() {
+    }
+
+    public static Path get() {
+        return Paths.get(System.getProperty(PROPERTY, "data"));
+    }
+
+    /**
+     * Returns the path of the runtime file {@code name} in the data directory.
+     */
+    public static Path resolve(String name) {
+        return get().resolve(name);
+    }
+}
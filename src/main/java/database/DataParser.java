@@ -1,6 +1,8 @@
 package database;
 
-import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import model.Comment;
 import model.Commodity;
@@ -8,57 +10,241 @@ import model.Provider;
 import model.User;
 
 import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.nio.file.Files;
+import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
 
-
+/**
+ * Loads the data files into a {@link Repository}. Each file is read as a token stream and bound one
+ * entity at a time, so the raw file is never held in memory; {@link #loadAll()} loads the four files
+ * in parallel, and {@link #reload} applies a changed file to the live database.
+ */
 public class DataParser {
+    public static final String DATA_PATH_PROPERTY = "baloot.data.path";
+    public static final List<String> DATA_FILES = List.of("users.json", "providers.json", "commodities.json",
+            "comments.json");
+
     private final ObjectMapper objectMapper = new ObjectMapper();
-    private final String dataPath = "src/main/java/database/data/";
-    Database database;
+    private final String dataPath;
+    Repository database;
+
+    public DataParser(Repository database) {
+        this(database, defaultPath());
+    }
 
-    public DataParser(Database database) {
+    public DataParser(Repository database, String dataPath) {
         this.database = database;
+        this.dataPath = dataPath;
     }
 
-    public void getUsersList() throws IOException {
-        String filePath = dataPath + "users.json";
-        String usersString = new String(Files.readAllBytes(Paths.get(filePath)));
+    public static String defaultPath() {
+        return System.getProperty(DATA_PATH_PROPERTY, "src/main/java/database/data/");
+    }
 
-        List<User> userList = objectMapper.readValue(usersString, new TypeReference<>() {
-        });
-        database.setUsers((ArrayList<User>) userList);
+    public Path getDirectory() {
+        return Paths.get(dataPath);
+    }
+
+    /**
+     * Returns the last modification time of the newest data file, in milliseconds.
+     */
+    public long lastModified() throws IOException {
+        long lastModified = 0;
+        for (String fileName : DATA_FILES)
+            lastModified = Math.max(lastModified, lastModified(fileName));
+        return lastModified;
+    }
+
+    /**
+     * Returns the last modification time of the data file {@code fileName}, in milliseconds.
+     */
+    public long lastModified(String fileName) throws IOException {
+        return Files.getLastModifiedTime(Paths.get(dataPath, fileName)).toMillis();
+    }
+
+    public void loadAll() throws IOException {
+        loadAll(new LoadTimings());
+    }
+
+    /**
+     * Loads the four data files in parallel, adding the time spent parsing them and storing them in the
+     * database to {@code timings}.
+     */
+    public void loadAll(LoadTimings timings) throws IOException {
+        List<IOAction> loaders = List.of(() -> loadUsers(timings), () -> loadProviders(timings),
+                () -> loadCommodities(timings), () -> loadComments(timings));
+        ExecutorService executor = Executors.newFixedThreadPool(loaders.size());
+        try {
+            CompletableFuture<?>[] futures = loaders.stream()
+                    .map(loader -> CompletableFuture.runAsync(() -> {
+                        try {
+                            loader.run();
+                        } catch (IOException e) {
+                            throw new UncheckedIOException(e);
+                        }
+                    }, executor))
+                    .toArray(CompletableFuture[]::new);
+            CompletableFuture.allOf(futures).join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof UncheckedIOException cause)
+                throw cause.getCause();
+            throw e;
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    public void getUsersList() throws IOException {
+        loadUsers(new LoadTimings());
     }
 
     public void getProvidersList() throws IOException {
-        String filePath = dataPath + "providers.json";
-        String providersString = new String(Files.readAllBytes(Paths.get(filePath)));
+        loadProviders(new LoadTimings());
+    }
+
+    public void getCommoditiesList() throws IOException {
+        loadCommodities(new LoadTimings());
+    }
+
+    public void getCommentsList() throws IOException {
+        loadComments(new LoadTimings());
+    }
 
-        List<Provider> providerList = objectMapper.readValue(providersString, new TypeReference<>() {
+    private void loadUsers(LoadTimings timings) throws IOException {
+        List<User> userList = new ArrayList<>();
+        timings.time(LoadTimings.Phase.PARSE, () -> readArray("users.json", User.class, userList::add));
+        timings.time(LoadTimings.Phase.INDEX, () -> {
+            database.setUsers(userList);
+            return null;
         });
-        database.setProviders((ArrayList<Provider>) providerList);
     }
 
-    public void getCommoditiesList() throws IOException {
-        String filePath = dataPath + "commodities.json";
-        String commoditiesString = new String(Files.readAllBytes(Paths.get(filePath)));
+    private void loadProviders(LoadTimings timings) throws IOException {
+        List<Provider> providerList = new ArrayList<>();
+        timings.time(LoadTimings.Phase.PARSE, () -> readArray("providers.json", Provider.class, providerList::add));
+        timings.time(LoadTimings.Phase.INDEX, () -> {
+            database.setProviders(providerList);
+            return null;
+        });
+    }
 
-        List<Commodity> commodityList = objectMapper.readValue(commoditiesString, new TypeReference<>() {
+    private void loadCommodities(LoadTimings timings) throws IOException {
+        List<Commodity> commodityList = new ArrayList<>();
+        timings.time(LoadTimings.Phase.PARSE, () -> readArray("commodities.json", Commodity.class, commodityList::add));
+        timings.time(LoadTimings.Phase.INDEX, () -> {
+            database.setCommodities(commodityList);
+            return null;
         });
-        database.setCommodities((ArrayList<Commodity>) commodityList);
     }
 
-    public void getCommentsList() throws IOException {
-        String filePath = dataPath + "comments.json";
-        String commentsString = new String(Files.readAllBytes(Paths.get(filePath)));
+    private void loadComments(LoadTimings timings) throws IOException {
+        List<Comment> commentsList = new ArrayList<>();
+        timings.time(LoadTimings.Phase.PARSE, () -> readArray("comments.json", Comment.class, comment -> {
+            comment.setId(commentsList.size());
+            commentsList.add(comment);
+        }));
+        timings.time(LoadTimings.Phase.INDEX, () -> {
+            database.setComments(commentsList);
+            return null;
+        });
+    }
 
-        List<Comment> commentsList = objectMapper.readValue(commentsString, new TypeReference<>() {
+    /**
+     * Re-parses {@code fileName} and applies only what differs from the live database, in batches of
+     * {@link BulkTransfer#BATCH_SIZE}, so a batch takes each lock and waits for durability once. The whole
+     * file is parsed before the first batch is applied, so a file that cannot be parsed changes nothing.
+     * Commodities are matched by id and updated through {@link Repository#updateCommodities}, so price and
+     * stock pushes take effect without a reload of the catalog. Users, providers and comments that are not
+     * in the database yet are added; the ones already there carry state of their own, such as credit, buy
+     * lists and votes, and are left alone. Entities missing from the file are kept, because buy lists
+     * and comments may still refer to them.
+     *
+     * @return the number of entities added or changed
+     * @throws IOException if the file cannot be read or parsed; nothing has been applied then
+     */
+    public int reload(String fileName) throws IOException {
+        int[] changed = new int[1];
+        switch (fileName) {
+            case "users.json" -> readBatches(fileName, User.class, user -> user.getUsername() != null,
+                    users -> changed[0] += database.addUsers(users));
+            case "providers.json" -> readBatches(fileName, Provider.class, provider -> provider.getId() != null,
+                    providers -> changed[0] += database.addProviders(providers));
+            case "commodities.json" -> readBatches(fileName, Commodity.class, commodity -> commodity.getId() != null,
+                    commodities -> changed[0] += database.updateCommodities(commodities));
+            case "comments.json" -> readBatches(fileName, Comment.class, comment -> true,
+                    comments -> changed[0] += addNewComments(database, comments));
+            default -> throw new IllegalArgumentException("Unknown data file " + fileName);
+        }
+        return changed[0];
+    }
+
+    /**
+     * Adds the comments of {@code comments} that are not {@link #isStored stored} yet, nor earlier in
+     * {@code comments}, in one {@link Repository#addComments} call.
+     *
+     * @return the number of comments added
+     */
+    static int addNewComments(Repository database, List<Comment> comments) {
+        List<Comment> added = new ArrayList<>(comments.size());
+        Set<List<Object>> seen = new HashSet<>();
+        for (Comment comment : comments)
+            if (seen.add(Arrays.asList(comment.getCommodityId(), comment.getUsername(), comment.getText()))
+                    && !isStored(database, comment))
+                added.add(comment);
+        database.addComments(added);
+        return added.size();
+    }
+
+    /**
+     * Returns whether the same user's comment with the same text is stored for the same commodity.
+     */
+    static boolean isStored(Repository database, Comment comment) {
+        for (Comment stored : database.findCommentsByCommodity(comment.getCommodityId()))
+            if (Objects.equals(stored.getUsername(), comment.getUsername())
+                    && Objects.equals(stored.getText(), comment.getText()))
+                return true;
+        return false;
+    }
+
+    private <T> void readBatches(String fileName, Class<T> type, Predicate<T> filter, Consumer<List<T>> store)
+            throws IOException {
+        List<T> entities = new ArrayList<>();
+        readArray(fileName, type, entity -> {
+            if (filter.test(entity))
+                entities.add(entity);
         });
-        database.setComments((ArrayList<Comment>) commentsList);
+        for (int from = 0; from < entities.size(); from += BulkTransfer.BATCH_SIZE)
+            store.accept(entities.subList(from, Math.min(from + BulkTransfer.BATCH_SIZE, entities.size())));
+    }
+
+    private <T> Void readArray(String fileName, Class<T> type, Consumer<T> consumer) throws IOException {
+        try (JsonParser parser = objectMapper.createParser(Paths.get(dataPath, fileName).toFile())) {
+            if (parser.nextToken() != JsonToken.START_ARRAY)
+                throw new JsonParseException(parser, fileName + " should contain an array");
+
+            while (parser.nextToken() == JsonToken.START_OBJECT)
+                consumer.accept(objectMapper.readValue(parser, type));
+
+            if (parser.currentToken() != JsonToken.END_ARRAY)
+                throw new JsonParseException(parser, fileName + " should contain only objects");
+        }
+        return null;
+    }
 
-        for (Comment comment : commentsList)
-            comment.setId(commentsList.indexOf(comment));
+    private interface IOAction {
+        void run() throws IOException;
     }
 }
@@ -0,0 +1,111 @@
+package database;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.LinkedHashSet;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Watches the data directory of a {@link DataParser} and {@link DataParser#reload reloads} a data file
+ * whenever it is written or moved into place. Events are collected for {@link #SETTLE_MILLIS} before a
+ * file is read, so a file written in several steps is reloaded once; a file that cannot be parsed yet
+ * is logged, counted in {@link #getFailedReloads} and skipped until its next change. A file that parses
+ * but fails while its batches are applied is reported as partially applied, since the batches before
+ * the failure stay; the watcher keeps running either way.
+ */
+public class DataWatcher implements Closeable {
+    static final long SETTLE_MILLIS = 100;
+    private static final Logger LOGGER = LoggerFactory.getLogger(DataWatcher.class);
+
+    private final DataParser dataParser;
+    private final WatchService watchService;
+    private final Thread thread;
+    private final AtomicLong failedReloads = new AtomicLong();
+    private volatile String lastFailure;
+
+    public DataWatcher(DataParser dataParser) throws IOException {
+        this.dataParser = dataParser;
+        this.watchService = FileSystems.getDefault().newWatchService();
+        dataParser.getDirectory().register(watchService, StandardWatchEventKinds.ENTRY_CREATE,
+                StandardWatchEventKinds.ENTRY_MODIFY);
+        this.thread = new Thread(this::run, "data-watcher");
+        thread.setDaemon(true);
+    }
+
+    public DataWatcher start() {
+        thread.start();
+        return this;
+    }
+
+    private void run() {
+        try {
+            while (true) {
+                Set<String> changed = new LinkedHashSet<>();
+                WatchKey key = watchService.take();
+                do {
+                    collect(key, changed);
+                    key = watchService.poll(SETTLE_MILLIS, TimeUnit.MILLISECONDS);
+                } while (key != null);
+
+                for (String fileName : changed) {
+                    try {
+                        dataParser.reload(fileName);
+                    } catch (IOException e) {
+                        failedReloads.incrementAndGet();
+                        lastFailure = fileName + ": " + e;
+                        LOGGER.warn("Could not parse {}, keeping the data loaded before", fileName, e);
+                    } catch (RuntimeException e) {
+                        failedReloads.incrementAndGet();
+                        lastFailure = fileName + " (partially applied): " + e;
+                        LOGGER.error("Could not apply all of {}, the reload was partial", fileName, e);
+                    }
+                }
+            }
+        } catch (InterruptedException | ClosedWatchServiceException ignored) {
+        }
+    }
+
+    /**
+     * Returns the number of changed data files that could not be reloaded since this watcher started.
+     */
+    public long getFailedReloads() {
+        return failedReloads.get();
+    }
+
+    /**
+     * Returns the file and error of the last reload that failed, or null if none has.
+     */
+    public String getLastFailure() {
+        return lastFailure;
+    }
+
+    private static void collect(WatchKey key, Set<String> changed) {
+        for (WatchEvent<?> event : key.pollEvents())
+            if (event.context() instanceof Path path && DataParser.DATA_FILES.contains(path.toString()))
+                changed.add(path.toString());
+        key.reset();
+    }
+
+    @Override
+    public void close() throws IOException {
+        watchService.close();
+        thread.interrupt();
+        try {
+            thread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -2,40 +2,632 @@ package database;
 
 import model.Comment;
 import model.Commodity;
+import model.Mutation;
+import model.Mutations;
 import model.Provider;
 import model.User;
 import lombok.Getter;
-import lombok.Setter;
+import utils.AppendOnlyList;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.IntStream;
+
+/**
+ * In-memory {@link Repository} shared by every request thread. Writes are serialized per entity type, so users,
+ * providers, commodities and comments can be loaded in parallel; reads never lock, because every list
+ * and index is either a {@link ConcurrentHashMap} or an append-only structure that can be read while
+ * it grows.
+ * <p>
+ * Users are split into shards by username hash, each with its own lock, list and index, so adding users
+ * on different shards never contends. A user's own state is guarded by the user's monitor, which lies
+ * within its shard's lock domain.
+ */
+public class Database implements Repository {
+    public static final String CATALOG_MODE_PROPERTY = "baloot.catalog.mode";
+    public static final String CATALOG_PATH_PROPERTY = "baloot.catalog.path";
+    public static final String USER_SHARDS_PROPERTY = "baloot.user.shards";
 
-@Getter
-@Setter
-public class Database {
     @Getter
     private static final Database instance = new Database();
 
+    /**
+     * Where commodities are stored. {@link #MAPPED} keeps the catalog in memory-mapped files for
+     * catalogs too large for the heap.
+     */
+    public enum CatalogMode {
+        HEAP, MAPPED
+    }
+
     private Database() {
     }
 
-    private ArrayList<User> users = new ArrayList<>();
-    private ArrayList<Provider> providers = new ArrayList<>();
-    private ArrayList<Commodity> commodities = new ArrayList<>();
-    private ArrayList<Comment> comments = new ArrayList<>();
+    @Getter
+    private volatile List<Provider> providers = new AppendOnlyList<>();
+    @Getter
+    private volatile List<Comment> comments = new AppendOnlyList<>();
+    @Getter
+    private volatile long commoditiesVersion;
+
+    private volatile UserShard[] userShards = UserShard.create(
+            Integer.getInteger(USER_SHARDS_PROPERTY, Runtime.getRuntime().availableProcessors()));
+    private final Map<String, Provider> providersById = new ConcurrentHashMap<>();
+    private final Map<Integer, Comment> commentsById = new ConcurrentHashMap<>();
+    private final Map<String, List<String>> providerIdsByName = new ConcurrentHashMap<>();
+    private volatile CommodityCatalog catalog = new HeapCommodityCatalog(List.of());
+    @Getter
+    private volatile CatalogSnapshot catalogSnapshot = new CatalogSnapshot(0, List.of());
+    @Getter
+    private CatalogMode catalogMode = CatalogMode.valueOf(
+            System.getProperty(CATALOG_MODE_PROPERTY, "heap").toUpperCase(Locale.ROOT));
+    private Path catalogPath = defaultCatalogPath();
+    private final Map<Integer, List<Comment>> commentsByCommodity = new ConcurrentHashMap<>();
+
+    private final Object providersLock = new Object();
+    private final Object commoditiesLock = new Object();
+    private final Object commentsLock = new Object();
+
+    /**
+     * A partition of the users. Users without a username all go to the first shard.
+     */
+    private static final class UserShard {
+        private final Object lock = new Object();
+        private volatile List<User> users = new AppendOnlyList<>();
+        private final Map<String, User> usersById = new ConcurrentHashMap<>();
+
+        private static UserShard[] create(int count) {
+            if (count < 1)
+                throw new IllegalArgumentException("User shard count should be positive: " + count);
+
+            UserShard[] shards = new UserShard[count];
+            for (int i = 0; i < count; i++)
+                shards[i] = new UserShard();
+            return shards;
+        }
+
+        private void setUsers(List<User> users) {
+            synchronized (lock) {
+                this.users = new AppendOnlyList<>(users);
+                usersById.clear();
+                for (User user : users)
+                    putIfKeyPresent(usersById, user.getUsername(), user);
+            }
+        }
+    }
+
+    private static int shardIndex(String username, int shardCount) {
+        if (username == null)
+            return 0;
+
+        int hash = username.hashCode();
+        return Math.floorMod(hash ^ (hash >>> 16), shardCount);
+    }
+
+    private UserShard userShard(String username) {
+        UserShard[] shards = userShards;
+        return shards[shardIndex(username, shards.length)];
+    }
+
+    public int getUserShardCount() {
+        return userShards.length;
+    }
+
+    /**
+     * Redistributes the users over {@code count} shards. The new shards are built while every current
+     * shard is locked, and {@link #addUser} retries on the new shards when it finds its shard replaced.
+     */
+    public synchronized void setUserShardCount(int count) {
+        UserShard[] current = userShards;
+        lockShards(current, 0, () -> userShards = buildShards(getUsers(), count));
+    }
+
+    private static void lockShards(UserShard[] shards, int from, Runnable action) {
+        if (from == shards.length) {
+            action.run();
+            return;
+        }
+        synchronized (shards[from].lock) {
+            lockShards(shards, from + 1, action);
+        }
+    }
+
+    /**
+     * Returns every user, shard by shard, in the order they were added to their shard.
+     */
+    public List<User> getUsers() {
+        List<User> users = new ArrayList<>();
+        for (UserShard shard : userShards)
+            users.addAll(shard.users);
+        return Collections.unmodifiableList(users);
+    }
+
+    /**
+     * Replaces the users. The new shards are built aside, each on its own and in parallel, and published
+     * while every current shard is locked, so no {@link #addUser} lands on a shard that is being dropped
+     * and no concurrent {@link #setUserShardCount} is undone.
+     */
+    public synchronized void setUsers(List<User> users) {
+        UserShard[] current = userShards;
+        UserShard[] shards = buildShards(users, current.length);
+        lockShards(current, 0, () -> userShards = shards);
+    }
+
+    private static UserShard[] buildShards(List<User> users, int count) {
+        UserShard[] shards = UserShard.create(count);
+        List<List<User>> partitions = partition(users, count);
+        IntStream.range(0, count).parallel().forEach(i -> shards[i].setUsers(partitions.get(i)));
+        return shards;
+    }
+
+    private static List<List<User>> partition(List<User> users, int shardCount) {
+        List<List<User>> partitions = new ArrayList<>(shardCount);
+        for (int i = 0; i < shardCount; i++)
+            partitions.add(new ArrayList<>());
+        for (User user : users)
+            partitions.get(shardIndex(user.getUsername(), shardCount)).add(user);
+        return partitions;
+    }
+
+    public void setProviders(List<Provider> providers) {
+        synchronized (providersLock) {
+            this.providers = new AppendOnlyList<>(providers);
+            providersById.clear();
+            providerIdsByName.clear();
+            for (Provider provider : providers)
+                indexProvider(provider);
+        }
+    }
+
+    /**
+     * Returns the directory set with {@value #CATALOG_PATH_PROPERTY}, or {@code catalog} in the
+     * {@link DataDirectory}.
+     */
+    public static Path defaultCatalogPath() {
+        String path = System.getProperty(CATALOG_PATH_PROPERTY);
+        return path == null ? DataDirectory.resolve("catalog") : Paths.get(path);
+    }
+
+    /**
+     * Replaces the catalog. The new catalog is built aside and published at once, so readers see either
+     * the old catalog or the new one.
+     */
+    public void setCommodities(List<Commodity> commodities) {
+        synchronized (commoditiesLock) {
+            catalog = buildCatalog(commodities);
+            commoditiesVersion++;
+            publishCatalog();
+        }
+    }
+
+    /**
+     * Publishes the current commodity list as the next {@link CatalogSnapshot}. Called under the
+     * commodities lock after every catalog write.
+     */
+    private void publishCatalog() {
+        catalogSnapshot = new CatalogSnapshot(catalogSnapshot.version() + 1, catalog.snapshot());
+    }
+
+    /**
+     * Switches the catalog to {@code mode}, moving the current commodities over. {@code directory} holds
+     * the catalog files in {@link CatalogMode#MAPPED} mode.
+     */
+    public void setCatalogMode(CatalogMode mode, Path directory) {
+        synchronized (commoditiesLock) {
+            catalogMode = mode;
+            catalogPath = directory;
+            List<Commodity> current = catalog.snapshot();
+            List<Commodity> commodities = new ArrayList<>();
+            for (Commodity commodity : current)
+                commodities.add(mode == CatalogMode.HEAP && commodity instanceof MappedCommodity mapped
+                        ? mapped.materialize() : commodity);
+            CommodityCatalog rebuilt = buildCatalog(commodities);
+            handOver(current, rebuilt, Set.of());
+            catalog = rebuilt;
+            commoditiesVersion++;
+            publishCatalog();
+        }
+    }
+
+    /**
+     * Retires each commodity of {@code current} in favour of the one in its place in {@code rebuilt},
+     * a catalog built from their state. Stock and rates written to them while it was built move over,
+     * and later writes are forwarded; {@code listed} commodities, replaced by a listing update, keep the
+     * stock of the update.
+     * Called before {@code rebuilt} is published.
+     */
+    private static void handOver(List<Commodity> current, CommodityCatalog rebuilt, Set<Commodity> listed) {
+        List<Commodity> successors = rebuilt.snapshot();
+        for (int i = 0; i < current.size(); i++) {
+            Commodity commodity = current.get(i);
+            Commodity successor = successors.get(i);
+            if (successor != commodity)
+                commodity.retire(successor, !listed.contains(commodity));
+        }
+    }
+
+    private CommodityCatalog buildCatalog(List<Commodity> commodities) {
+        if (catalogMode == CatalogMode.HEAP)
+            return new HeapCommodityCatalog(commodities);
+
+        try {
+            return MappedCommodityCatalog.build(catalogPath, commodities, this::replaceCommodity);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    public void setComments(List<Comment> comments) {
+        synchronized (commentsLock) {
+            this.comments = new AppendOnlyList<>(comments);
+            commentsById.clear();
+            commentsByCommodity.clear();
+            for (Comment comment : comments)
+                indexComment(comment);
+        }
+    }
+
+    /**
+     * Adds {@code user} unless its username is already taken.
+     *
+     * @return whether the user was added
+     */
+    public boolean addUser(User user) {
+        long sequence;
+        while (true) {
+            UserShard shard = userShard(user.getUsername());
+            synchronized (shard.lock) {
+                if (shard != userShard(user.getUsername()))
+                    continue;
+                if (user.getUsername() != null && shard.usersById.containsKey(user.getUsername()))
+                    return false;
+
+                Mutation mutation = new Mutation.UserAdded(user);
+                sequence = Mutations.append(mutation);
+                putIfKeyPresent(shard.usersById, user.getUsername(), user);
+                shard.users.add(user);
+                Mutations.applied(mutation);
+                break;
+            }
+        }
+        Mutations.awaitDurable(sequence);
+        return true;
+    }
+
+    /**
+     * Adds each of {@code users} whose username is not taken, taking each shard's lock once for the users
+     * that belong to it and waiting for the write-ahead log once. Users whose shard was replaced meanwhile
+     * are retried on the new shards.
+     *
+     * @return the number of users added
+     */
+    @Override
+    public int addUsers(List<User> users) {
+        long sequence = 0;
+        int added = 0;
+        List<User> pending = users;
+        while (!pending.isEmpty()) {
+            UserShard[] shards = userShards;
+            List<List<User>> partitions = partition(pending, shards.length);
+            List<User> retry = new ArrayList<>();
+            for (int i = 0; i < shards.length; i++) {
+                if (partitions.get(i).isEmpty())
+                    continue;
+
+                UserShard shard = shards[i];
+                synchronized (shard.lock) {
+                    if (userShards != shards) {
+                        retry.addAll(partitions.get(i));
+                        continue;
+                    }
+                    for (User user : partitions.get(i)) {
+                        if (user.getUsername() != null && shard.usersById.containsKey(user.getUsername()))
+                            continue;
 
-    public void addUser(User user) {
-        users.add(user);
+                        Mutation mutation = new Mutation.UserAdded(user);
+                        sequence = Mutations.append(mutation);
+                        putIfKeyPresent(shard.usersById, user.getUsername(), user);
+                        shard.users.add(user);
+                        Mutations.applied(mutation);
+                        added++;
+                    }
+                }
+            }
+            pending = retry;
+        }
+        if (added > 0)
+            Mutations.awaitDurable(sequence);
+        return added;
     }
 
     public void addProvider(Provider provider) {
-        providers.add(provider);
+        long sequence;
+        synchronized (providersLock) {
+            Mutation mutation = new Mutation.ProviderAdded(provider);
+            sequence = Mutations.append(mutation);
+            providers.add(provider);
+            indexProvider(provider);
+            Mutations.applied(mutation);
+        }
+        Mutations.awaitDurable(sequence);
+    }
+
+    /**
+     * Adds each of {@code providers} whose id is not stored yet, under one lock, and waits for the
+     * write-ahead log once.
+     *
+     * @return the number of providers added
+     */
+    @Override
+    public int addProviders(List<Provider> providers) {
+        long sequence = 0;
+        int added = 0;
+        synchronized (providersLock) {
+            for (Provider provider : providers) {
+                if (findProvider(provider.getId()) != null)
+                    continue;
+
+                Mutation mutation = new Mutation.ProviderAdded(provider);
+                sequence = Mutations.append(mutation);
+                this.providers.add(provider);
+                indexProvider(provider);
+                Mutations.applied(mutation);
+                added++;
+            }
+        }
+        if (added > 0)
+            Mutations.awaitDurable(sequence);
+        return added;
     }
 
     public void addCommodity(Commodity commodity) {
-        commodities.add(commodity);
+        long sequence;
+        synchronized (commoditiesLock) {
+            Mutation mutation = new Mutation.CommodityAdded(commodity);
+            sequence = Mutations.append(mutation);
+            catalog.add(commodity);
+            commoditiesVersion++;
+            publishCatalog();
+            Mutations.applied(mutation);
+        }
+        Mutations.awaitDurable(sequence);
+    }
+
+    /**
+     * Brings the stored commodity with {@code updated}'s id in line with {@code updated}, or adds
+     * {@code updated} if there is no such commodity. {@code updated} takes the place of the stored
+     * commodity, copy-on-write, so published snapshots keep the listing they were taken with; only the
+     * index entries of a changed name, provider or category move. A catalog that cannot swap it in is
+     * rebuilt with {@code updated} in its stead. User rates are kept either way.
+     *
+     * @return whether anything changed
+     */
+    public boolean updateCommodity(Commodity updated) {
+        return updateCommodities(List.of(updated)) > 0;
+    }
+
+    /**
+     * Applies {@link #updateCommodity} to each of {@code updates} in order, as one catalog write: the
+     * commodities lock is taken once, a catalog that cannot change commodities in place is rebuilt at
+     * most once, and one snapshot is published for the whole batch.
+     *
+     * @return the number of commodities added or changed
+     */
+    @Override
+    public int updateCommodities(List<Commodity> updates) {
+        long sequence = 0;
+        int changed = 0;
+        synchronized (commoditiesLock) {
+            Map<Commodity, Commodity> replacements = new LinkedHashMap<>();
+            List<Mutation> mutations = new ArrayList<>();
+            try {
+                for (Commodity updated : updates) {
+                    Commodity commodity = catalog.find(updated.getId());
+                    if (commodity == null) {
+                        Mutation mutation = new Mutation.CommodityAdded(updated);
+                        sequence = Mutations.append(mutation);
+                        catalog.add(updated);
+                        mutations.add(mutation);
+                        changed++;
+                        continue;
+                    }
+
+                    Commodity current = replacements.getOrDefault(commodity, commodity);
+                    if (CommodityCatalog.hasListing(current, updated))
+                        continue;
+
+                    Mutation mutation = new Mutation.CommodityUpdated(updated);
+                    sequence = Mutations.append(mutation);
+                    if (replacements.containsKey(commodity) || !catalog.update(commodity, updated)) {
+                        updated.setInitRate(commodity.getInitRate());
+                        updated.setRating(commodity.getRating());
+                        updated.setUserRate(commodity.getUserRate());
+                        replacements.put(commodity, updated);
+                    }
+                    mutations.add(mutation);
+                    changed++;
+                }
+            } finally {
+                // Updates logged before the log refused one are still applied and published.
+                if (!replacements.isEmpty())
+                    rebuildWith(replacements, replacements.keySet());
+                if (changed > 0) {
+                    commoditiesVersion++;
+                    publishCatalog();
+                }
+                mutations.forEach(Mutations::applied);
+            }
+        }
+        if (changed > 0)
+            Mutations.awaitDurable(sequence);
+        return changed;
+    }
+
+    /**
+     * Puts {@code updated} in the place of {@code commodity}, the way a mapped commodity takes a change
+     * its record has no room for: in the overlay of the mapped catalog, or by rebuilding the catalog once
+     * the overlay is full. Like a setter of a heap commodity, the change is not logged.
+     *
+     * @return {@code false}, without changing anything, if {@code commodity} is not in the catalog
+     */
+    boolean replaceCommodity(Commodity commodity, Commodity updated) {
+        synchronized (commoditiesLock) {
+            boolean overlaid = catalog instanceof MappedCommodityCatalog mapped && mapped.overlay(commodity, updated);
+            if (!overlaid && !rebuildWith(Map.of(commodity, updated), Set.of()))
+                return false;
+
+            commoditiesVersion++;
+            publishCatalog();
+            return true;
+        }
     }
 
+    /**
+     * Rebuilds the catalog with each key of {@code replacements} replaced by its value and hands the
+     * current commodities over, see {@link #handOver} for {@code listed}. Called under the commodities
+     * lock.
+     *
+     * @return whether any commodity was replaced
+     */
+    private boolean rebuildWith(Map<Commodity, Commodity> replacements, Set<Commodity> listed) {
+        List<Commodity> current = catalog.snapshot();
+        List<Commodity> commodities = new ArrayList<>(current);
+        boolean replaced = false;
+        for (int i = 0; i < commodities.size(); i++) {
+            Commodity replacement = replacements.get(commodities.get(i));
+            if (replacement != null) {
+                commodities.set(i, replacement);
+                replaced = true;
+            }
+        }
+        if (!replaced)
+            return false;
+
+        CommodityCatalog rebuilt = buildCatalog(commodities);
+        handOver(current, rebuilt, listed);
+        catalog = rebuilt;
+        return true;
+    }
+
+    /**
+     * Appends {@code comment} and assigns it the next comment id, so concurrent writers never share an id.
+     */
     public void addComment(Comment comment) {
-        comments.add(comment);
+        long sequence;
+        synchronized (commentsLock) {
+            comment.setId(comments.size());
+            Mutation mutation = new Mutation.CommentAdded(comment);
+            sequence = Mutations.append(mutation);
+            comments.add(comment);
+            indexComment(comment);
+            Mutations.applied(mutation);
+        }
+        Mutations.awaitDurable(sequence);
+    }
+
+    /**
+     * Appends {@code comments} in order under one lock, assigning them the next comment ids, and waits for
+     * the write-ahead log once.
+     */
+    @Override
+    public void addComments(List<Comment> comments) {
+        if (comments.isEmpty())
+            return;
+
+        long sequence = 0;
+        synchronized (commentsLock) {
+            for (Comment comment : comments) {
+                comment.setId(this.comments.size());
+                Mutation mutation = new Mutation.CommentAdded(comment);
+                sequence = Mutations.append(mutation);
+                this.comments.add(comment);
+                indexComment(comment);
+                Mutations.applied(mutation);
+            }
+        }
+        Mutations.awaitDurable(sequence);
+    }
+
+    private void indexProvider(Provider provider) {
+        putIfKeyPresent(providersById, provider.getId(), provider);
+        appendIfKeyPresent(providerIdsByName, provider.getName(), provider.getId());
+    }
+
+    private void indexComment(Comment comment) {
+        commentsById.putIfAbsent(comment.getId(), comment);
+        commentsByCommodity.computeIfAbsent(comment.getCommodityId(), id -> new AppendOnlyList<>()).add(comment);
+    }
+
+    private static <K, V> void putIfKeyPresent(Map<K, V> index, K key, V value) {
+        if (key != null)
+            index.putIfAbsent(key, value);
+    }
+
+    private static <K, V> void appendIfKeyPresent(Map<K, List<V>> index, K key, V value) {
+        if (key != null)
+            index.computeIfAbsent(key, k -> new AppendOnlyList<>()).add(value);
+    }
+
+    private static <K, V> V lookup(Map<K, V> index, K key) {
+        return key == null ? null : index.get(key);
+    }
+
+    public User findUser(String username) {
+        return username == null ? null : userShard(username).usersById.get(username);
+    }
+
+    public Provider findProvider(String providerId) {
+        return lookup(providersById, providerId);
+    }
+
+    public List<Commodity> getCommodities() {
+        return catalog.getCommodities();
+    }
+
+    public Commodity findCommodity(String commodityId) {
+        return catalog.find(commodityId);
+    }
+
+    public Comment findComment(int commentId) {
+        return commentsById.get(commentId);
+    }
+
+    public List<String> findProviderIdsByName(String name) {
+        List<String> providerIds = lookup(providerIdsByName, name);
+        return providerIds == null ? Collections.emptyList() : Collections.unmodifiableList(providerIds);
+    }
+
+    public List<Commodity> findCommoditiesByProvider(String providerId) {
+        return catalog.findByProvider(providerId);
+    }
+
+    public Set<Commodity> findCommoditiesByCategory(String category) {
+        return catalog.findByCategory(category);
+    }
+
+    public List<Commodity> findCommoditiesByName(String query) {
+        return catalog.findByName(query);
+    }
+
+    public List<Commodity> findCommoditiesByNamePrefix(String prefix, int limit) {
+        return catalog.findByNamePrefix(prefix, limit);
+    }
+
+    public List<Commodity> findCommoditiesByNameFrom(String from, int skip, int limit) {
+        return catalog.findByNameFrom(from, skip, limit);
+    }
+
+    public List<Comment> findCommentsByCommodity(int commodityId) {
+        List<Comment> comments = commentsByCommodity.get(commodityId);
+        return comments == null ? Collections.emptyList() : Collections.unmodifiableList(comments);
     }
 }
@@ -0,0 +1,8 @@
+package database;
+
+/**
+ * Records that a repository's own storage holds the data set as of write-ahead log record
+ * {@code sequence}, marked at {@code markedAt} milliseconds since the epoch and not written since.
+ */
+public record DurableMark(long sequence, long markedAt) {
+}
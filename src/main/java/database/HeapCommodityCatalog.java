@@ -0,0 +1,187 @@
+package database;
+
+import model.Commodity;
+import utils.AppendOnlyList;
+import utils.Posting;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Catalog of fully materialized {@link Commodity} objects, indexed in concurrent maps and tombstoned
+ * postings that can be read while they change. Only the id map is filled as commodities are added; the
+ * provider, category and name indexes are built from the commodity list on the first lookup that needs
+ * them and kept up to date from then on, so loading a catalog costs no more than storing it.
+ */
+class HeapCommodityCatalog implements CommodityCatalog {
+    private final AppendOnlyList<Commodity> commodities = new AppendOnlyList<>();
+    private final Map<String, Commodity> commoditiesById = new ConcurrentHashMap<>();
+    private final Map<Commodity, Commodity> replaced = new IdentityHashMap<>();
+    private volatile Indexes indexes;
+
+    /**
+     * The secondary indexes. Writes to them, and their first build, happen under the catalog's monitor.
+     */
+    private static final class Indexes {
+        private final Map<String, Posting<Commodity>> commoditiesByProvider = new ConcurrentHashMap<>();
+        private final Map<String, Posting<Commodity>> commoditiesByCategory = new ConcurrentHashMap<>();
+        private final NameIndex nameIndex = new NameIndex();
+
+        private void add(Commodity commodity) {
+            if (commodity.getProviderId() != null)
+                commoditiesByProvider.computeIfAbsent(commodity.getProviderId(), p -> new Posting<>()).add(commodity);
+            for (String category : commodity.getCategories())
+                if (category != null)
+                    commoditiesByCategory.computeIfAbsent(category, c -> new Posting<>()).add(commodity);
+            nameIndex.add(commodity);
+        }
+
+        private void update(Commodity commodity, Commodity updated) {
+            String providerId = commodity.getProviderId();
+            if (Objects.equals(providerId, updated.getProviderId())) {
+                if (providerId != null)
+                    commoditiesByProvider.get(providerId).replace(commodity, updated);
+            } else {
+                if (providerId != null)
+                    commoditiesByProvider.computeIfPresent(providerId, (p, posting) -> without(posting, commodity));
+                if (updated.getProviderId() != null)
+                    commoditiesByProvider.computeIfAbsent(updated.getProviderId(), p -> new Posting<>()).add(updated);
+            }
+
+            List<String> categories = commodity.getCategories();
+            for (String category : categories)
+                if (category != null && !updated.getCategories().contains(category))
+                    commoditiesByCategory.computeIfPresent(category, (c, posting) -> without(posting, commodity));
+            for (String category : updated.getCategories()) {
+                if (category == null)
+                    continue;
+                Posting<Commodity> posting = commoditiesByCategory.computeIfAbsent(category, c -> new Posting<>());
+                if (!posting.replace(commodity, updated))
+                    posting.add(updated);
+            }
+
+            nameIndex.replace(commodity, commodity.getName(), updated);
+        }
+    }
+
+    HeapCommodityCatalog(Collection<? extends Commodity> commodities) {
+        for (Commodity commodity : commodities)
+            add(commodity);
+    }
+
+    @Override
+    public List<Commodity> getCommodities() {
+        return commodities;
+    }
+
+    @Override
+    public synchronized List<Commodity> snapshot() {
+        if (!replaced.isEmpty()) {
+            commodities.replaceAll(this::latest);
+            replaced.clear();
+        }
+        return commodities.snapshot();
+    }
+
+    private Commodity latest(Commodity commodity) {
+        for (Commodity next = replaced.get(commodity); next != null; next = replaced.get(next))
+            commodity = next;
+        return commodity;
+    }
+
+    /**
+     * Returns the secondary indexes, building them from the commodity list the first time. A commodity
+     * added while they are built may be indexed twice, which postings ignore.
+     */
+    private Indexes indexes() {
+        Indexes current = indexes;
+        if (current != null)
+            return current;
+
+        synchronized (this) {
+            if (indexes == null) {
+                Indexes built = new Indexes();
+                for (Commodity commodity : commodities)
+                    built.add(latest(commodity));
+                indexes = built;
+            }
+            return indexes;
+        }
+    }
+
+    @Override
+    public void add(Commodity commodity) {
+        commodities.add(commodity);
+        if (commodity.getId() != null)
+            commoditiesById.putIfAbsent(commodity.getId(), commodity);
+        synchronized (this) {
+            if (indexes != null)
+                indexes.add(commodity);
+        }
+    }
+
+    /**
+     * Replaces {@code commodity} with {@code updated}, which takes over its rates and stock writes, so a
+     * snapshot holding {@code commodity} keeps its listing. Index entries are swapped in place, or moved
+     * when the name, provider or a category changes. The commodity list itself is copied once per write,
+     * when the next snapshot is taken.
+     */
+    @Override
+    public boolean update(Commodity commodity, Commodity updated) {
+        commodity.retire(updated, false);
+        commoditiesById.replace(commodity.getId(), commodity, updated);
+        synchronized (this) {
+            replaced.put(commodity, updated);
+            if (indexes != null)
+                indexes.update(commodity, updated);
+        }
+        return true;
+    }
+
+    private static Posting<Commodity> without(Posting<Commodity> posting, Commodity commodity) {
+        posting.remove(commodity);
+        return posting.isEmpty() ? null : posting;
+    }
+
+    @Override
+    public Commodity find(String commodityId) {
+        return commodityId == null ? null : commoditiesById.get(commodityId);
+    }
+
+    @Override
+    public List<Commodity> findByProvider(String providerId) {
+        Posting<Commodity> commodities = providerId == null ? null : indexes().commoditiesByProvider.get(providerId);
+        return commodities == null ? Collections.emptyList() : commodities.asList();
+    }
+
+    @Override
+    public Set<Commodity> findByCategory(String category) {
+        Set<Commodity> commodities = category == null ? null : indexes().commoditiesByCategory.get(category);
+        return commodities == null ? Collections.emptySet() : Collections.unmodifiableSet(commodities);
+    }
+
+    @Override
+    public List<Commodity> findByName(String query) {
+        if (query.isEmpty())
+            return new ArrayList<>(commodities);
+
+        return indexes().nameIndex.findBySubstring(query);
+    }
+
+    @Override
+    public List<Commodity> findByNamePrefix(String prefix, int limit) {
+        return indexes().nameIndex.findByPrefix(prefix, limit);
+    }
+
+    @Override
+    public List<Commodity> findByNameFrom(String from, int skip, int limit) {
+        return indexes().nameIndex.findFrom(from, skip, limit);
+    }
+}
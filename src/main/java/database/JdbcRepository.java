@@ -0,0 +1,1160 @@
+package database;
+
+import model.Comment;
+import model.Commodity;
+import model.Mutation;
+import model.Mutations;
+import model.Provider;
+import model.User;
+import utils.CursorPage;
+
+import java.io.Closeable;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.SoftReference;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.SQLIntegrityConstraintViolationException;
+import java.sql.Statement;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.BiConsumer;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * {@link Repository} kept in an embedded SQL database, for data sets larger than the heap. Every entity
+ * is stored as its {@link SnapshotStore} record next to the columns that queries filter and sort on, all
+ * statements are prepared, and bulk loads insert in batches of {@link #BATCH_SIZE} in one transaction.
+ * <p>
+ * Entities are read through a cache of soft references, so an entity is the same object for as long as
+ * anyone holds it, and the rest can be collected when the heap runs short. Changes made through the model
+ * reach {@link #mutated}, which marks the changed entities dirty; a writer thread stores them in batches
+ * every {@link #FLUSH_INTERVAL_MILLIS}, and dirty entities are held strongly until then. Adds, and
+ * commodity updates that move index entries, are written right away so queries see them.
+ * <p>
+ * Unlike {@link Database}, keys must be present and unique: an entity without a key, or whose key is
+ * already stored, is not stored.
+ * <p>
+ * The database file outlives the process. {@link #markDurable} leaves a {@link DurableMark} in it that
+ * the next write deletes first, so a boot that finds the mark can take the data set from the file as
+ * it is and replay only the log records after it.
+ */
+public class JdbcRepository implements Repository, Closeable {
+    public static final String URL_PROPERTY = "baloot.jdbc.url";
+
+    static final int BATCH_SIZE = 1000;
+    static final long FLUSH_INTERVAL_MILLIS = 100;
+    private static final int POOL_SIZE = 8;
+
+    private static final String[] SCHEMA = {
+            "CREATE TABLE IF NOT EXISTS users (seq BIGINT GENERATED BY DEFAULT AS IDENTITY UNIQUE, "
+                    + "username VARCHAR PRIMARY KEY, data VARBINARY)",
+            "CREATE TABLE IF NOT EXISTS providers (seq BIGINT GENERATED BY DEFAULT AS IDENTITY UNIQUE, "
+                    + "id VARCHAR PRIMARY KEY, name VARCHAR, data VARBINARY)",
+            "CREATE INDEX IF NOT EXISTS providers_name ON providers (name)",
+            "CREATE TABLE IF NOT EXISTS commodities (seq BIGINT GENERATED BY DEFAULT AS IDENTITY UNIQUE, "
+                    + "id VARCHAR PRIMARY KEY, name VARCHAR, lower_name VARCHAR, provider_id VARCHAR, data VARBINARY)",
+            "CREATE INDEX IF NOT EXISTS commodities_provider ON commodities (provider_id)",
+            "CREATE INDEX IF NOT EXISTS commodities_lower_name ON commodities (lower_name)",
+            "CREATE TABLE IF NOT EXISTS commodity_categories (seq BIGINT GENERATED BY DEFAULT AS IDENTITY UNIQUE, "
+                    + "category VARCHAR, commodity_id VARCHAR, PRIMARY KEY (category, commodity_id))",
+            "CREATE INDEX IF NOT EXISTS commodity_categories_commodity ON commodity_categories (commodity_id)",
+            "CREATE TABLE IF NOT EXISTS comments (id INT PRIMARY KEY, commodity_id INT, data VARBINARY)",
+            "CREATE INDEX IF NOT EXISTS comments_commodity ON comments (commodity_id)",
+            "CREATE TABLE IF NOT EXISTS durable_mark (sequence BIGINT, marked_at BIGINT)",
+    };
+
+    private final BlockingQueue<Connection> connections = new ArrayBlockingQueue<>(POOL_SIZE);
+    private final EntityCache<String, User> users = new EntityCache<>();
+    private final EntityCache<String, Provider> providers = new EntityCache<>();
+    private final EntityCache<String, Commodity> commodities = new EntityCache<>();
+    private final EntityCache<Integer, Comment> comments = new EntityCache<>();
+    private final Map<String, User> dirtyUsers = new ConcurrentHashMap<>();
+    private final Map<String, Commodity> dirtyCommodities = new ConcurrentHashMap<>();
+    private final Map<Integer, Comment> dirtyComments = new ConcurrentHashMap<>();
+    private final Object usersLock = new Object();
+    private final Object providersLock = new Object();
+    private final Object commoditiesLock = new Object();
+    private final Object commentsLock = new Object();
+    private final Object markLock = new Object();
+    private final Thread writer;
+    private volatile DurableMark durableMark;
+    private volatile long commoditiesVersion;
+    private volatile int commentCount;
+
+    public JdbcRepository(String url) throws SQLException {
+        try {
+            for (int i = 0; i < POOL_SIZE; i++)
+                connections.add(DriverManager.getConnection(url));
+            try (Statement statement = connections.peek().createStatement()) {
+                for (String ddl : SCHEMA)
+                    statement.execute(ddl);
+            }
+        } catch (SQLException e) {
+            for (Connection connection : connections)
+                connection.close();
+            throw e;
+        }
+
+        commentCount = count("SELECT COUNT(*) FROM comments");
+        durableMark = withConnection(connection -> {
+            try (Statement statement = connection.createStatement();
+                 ResultSet resultSet = statement.executeQuery("SELECT sequence, marked_at FROM durable_mark")) {
+                return resultSet.next() ? new DurableMark(resultSet.getLong(1), resultSet.getLong(2)) : null;
+            }
+        });
+        writer = new Thread(this::writeDirtyEntities, "repository-writer");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    /**
+     * Returns the URL set with {@value #URL_PROPERTY}, or an H2 file database named {@code baloot-h2} in
+     * the {@link DataDirectory}.
+     */
+    public static String defaultUrl() {
+        String url = System.getProperty(URL_PROPERTY);
+        return url == null ? "jdbc:h2:file:" + DataDirectory.resolve("baloot-h2").toAbsolutePath() : url;
+    }
+
+    @Override
+    public boolean isBlocking() {
+        return true;
+    }
+
+    /**
+     * Queries and decodes the whole users table; exports and snapshots go through {@link #streamUsers}.
+     */
+    @Override
+    public List<User> getUsers() {
+        return query(users, SnapshotStore::readUser, "SELECT username, data FROM users ORDER BY seq");
+    }
+
+    @Override
+    public List<Provider> getProviders() {
+        return query(providers, SnapshotStore::readProvider, "SELECT id, data FROM providers ORDER BY seq");
+    }
+
+    @Override
+    public Stream<User> streamUsers() {
+        return streamAfter(0, (after, limit) -> queryAfter(users, SnapshotStore::readUser,
+                "SELECT seq, username, data FROM users WHERE seq > ? ORDER BY seq LIMIT ?", after, limit));
+    }
+
+    @Override
+    public Stream<Provider> streamProviders() {
+        return streamAfter(0, (after, limit) -> queryAfter(providers, SnapshotStore::readProvider,
+                "SELECT seq, id, data FROM providers WHERE seq > ? ORDER BY seq LIMIT ?", after, limit));
+    }
+
+    /**
+     * Reads by id rather than through {@link #getComments}, which would query every comment on its own.
+     */
+    @Override
+    public Stream<Comment> streamComments() {
+        return streamAfter(-1, (after, limit) -> queryAfter(comments, SnapshotStore::readComment,
+                "SELECT id, id, data FROM comments WHERE id > ? ORDER BY id LIMIT ?", after, limit));
+    }
+
+    @Override
+    public List<Commodity> getCommodities() {
+        return query(commodities, SnapshotStore::readCommodity, "SELECT id, data FROM commodities ORDER BY seq");
+    }
+
+    /**
+     * Returns a view whose size is the stored comment count and whose elements are loaded by id, as
+     * comment ids are their positions.
+     */
+    @Override
+    public List<Comment> getComments() {
+        return new AbstractList<>() {
+            @Override
+            public Comment get(int index) {
+                return findComment(index);
+            }
+
+            @Override
+            public int size() {
+                return commentCount;
+            }
+        };
+    }
+
+    @Override
+    public long getCommoditiesVersion() {
+        return commoditiesVersion;
+    }
+
+    /**
+     * Returns a view of the commodities table rather than a copy, as there is no heap catalog to publish:
+     * iterating it reads the table in keyset batches, as {@link #streamCommodities} does, and its size is
+     * a count query. Unlike the heap catalog's, the view follows later writes.
+     */
+    @Override
+    public CatalogSnapshot getCatalogSnapshot() {
+        long version = commoditiesVersion;
+        return new CatalogSnapshot(version, new AbstractList<>() {
+            @Override
+            public Commodity get(int index) {
+                try (Stream<Commodity> commodities = streamCommodities()) {
+                    return commodities.skip(index).findFirst()
+                            .orElseThrow(() -> new IndexOutOfBoundsException("Index: " + index));
+                }
+            }
+
+            @Override
+            public Iterator<Commodity> iterator() {
+                return streamCommodities().iterator();
+            }
+
+            @Override
+            public int size() {
+                return count("SELECT COUNT(*) FROM commodities");
+            }
+        });
+    }
+
+    @Override
+    public void setUsers(List<User> users) {
+        synchronized (usersLock) {
+            replaceAll("users", "INSERT INTO users (username, data) VALUES (?, ?)", users, User::getUsername,
+                    (statement, user) -> {
+                        statement.setString(1, user.getUsername());
+                        statement.setBytes(2, encode(SnapshotStore::writeUser, user));
+                    });
+            this.users.clear();
+            dirtyUsers.clear();
+            for (User user : users)
+                if (user.getUsername() != null)
+                    this.users.putIfAbsent(user.getUsername(), user);
+        }
+    }
+
+    @Override
+    public void setProviders(List<Provider> providers) {
+        synchronized (providersLock) {
+            replaceAll("providers", "INSERT INTO providers (id, name, data) VALUES (?, ?, ?)", providers,
+                    Provider::getId, (statement, provider) -> {
+                        statement.setString(1, provider.getId());
+                        statement.setString(2, provider.getName());
+                        statement.setBytes(3, encode(SnapshotStore::writeProvider, provider));
+                    });
+            this.providers.clear();
+            for (Provider provider : providers)
+                if (provider.getId() != null)
+                    this.providers.putIfAbsent(provider.getId(), provider);
+        }
+    }
+
+    /**
+     * Replaces the commodities and their categories in one transaction, so a failure leaves the old
+     * catalog in place.
+     */
+    @Override
+    public void setCommodities(List<Commodity> commodities) {
+        synchronized (commoditiesLock) {
+            List<Commodity> stored = distinctKeys(commodities, Commodity::getId);
+            List<String[]> categories = new ArrayList<>();
+            for (Commodity commodity : stored)
+                for (String category : new LinkedHashSet<>(commodity.getCategories()))
+                    if (category != null)
+                        categories.add(new String[]{category, commodity.getId()});
+
+            inTransaction(connection -> {
+                try (Statement statement = connection.createStatement()) {
+                    statement.execute("DELETE FROM commodity_categories");
+                    statement.execute("DELETE FROM commodities");
+                }
+                insertAll(connection, "INSERT INTO commodities (id, name, lower_name, provider_id, data) "
+                        + "VALUES (?, ?, ?, ?, ?)", stored, this::bindCommodity);
+                insertAll(connection, "INSERT INTO commodity_categories (category, commodity_id) VALUES (?, ?)",
+                        categories, (statement, category) -> {
+                            statement.setString(1, category[0]);
+                            statement.setString(2, category[1]);
+                        });
+                return null;
+            });
+
+            this.commodities.clear();
+            dirtyCommodities.clear();
+            for (Commodity commodity : stored)
+                this.commodities.putIfAbsent(commodity.getId(), commodity);
+            commoditiesVersion++;
+        }
+    }
+
+    @Override
+    public void setComments(List<Comment> comments) {
+        synchronized (commentsLock) {
+            List<Comment> stored = replaceAll("comments", "INSERT INTO comments (id, commodity_id, data) VALUES (?, ?, ?)",
+                    comments, Comment::getId, this::bindComment);
+            this.comments.clear();
+            dirtyComments.clear();
+            for (Comment comment : stored)
+                this.comments.putIfAbsent(comment.getId(), comment);
+            commentCount = count("SELECT COUNT(*) FROM comments");
+        }
+    }
+
+    @Override
+    public boolean addUser(User user) {
+        if (user.getUsername() == null)
+            return false;
+
+        Inserted<User> inserted;
+        synchronized (usersLock) {
+            inserted = insertNew("INSERT INTO users (username, data) VALUES (?, ?)", List.of(user), this::bindUser,
+                    Mutation.UserAdded::new);
+            if (inserted.rows().isEmpty())
+                return false;
+            users.putIfAbsent(user.getUsername(), user);
+            inserted.applied();
+        }
+        Mutations.awaitDurable(inserted.sequence());
+        return true;
+    }
+
+    /**
+     * Inserts the users in one transaction, skipping those whose username is taken, and waits for the
+     * write-ahead log once.
+     */
+    @Override
+    public int addUsers(List<User> users) {
+        Inserted<User> inserted;
+        synchronized (usersLock) {
+            inserted = insertNew("INSERT INTO users (username, data) VALUES (?, ?)",
+                    users.stream().filter(user -> user.getUsername() != null).toList(), this::bindUser,
+                    Mutation.UserAdded::new);
+            for (User user : inserted.rows())
+                this.users.putIfAbsent(user.getUsername(), user);
+            inserted.applied();
+        }
+        if (!inserted.rows().isEmpty())
+            Mutations.awaitDurable(inserted.sequence());
+        return inserted.rows().size();
+    }
+
+    @Override
+    public void addProvider(Provider provider) {
+        if (provider.getId() == null)
+            return;
+
+        Inserted<Provider> inserted;
+        synchronized (providersLock) {
+            inserted = insertNew("INSERT INTO providers (id, name, data) VALUES (?, ?, ?)", List.of(provider),
+                    this::bindProvider, Mutation.ProviderAdded::new);
+            if (inserted.rows().isEmpty())
+                return;
+            providers.putIfAbsent(provider.getId(), provider);
+            inserted.applied();
+        }
+        Mutations.awaitDurable(inserted.sequence());
+    }
+
+    /**
+     * Inserts the providers in one transaction, skipping those whose id is stored, and waits for the
+     * write-ahead log once.
+     */
+    @Override
+    public int addProviders(List<Provider> providers) {
+        Inserted<Provider> inserted;
+        synchronized (providersLock) {
+            inserted = insertNew("INSERT INTO providers (id, name, data) VALUES (?, ?, ?)",
+                    providers.stream().filter(provider -> provider.getId() != null).toList(), this::bindProvider,
+                    Mutation.ProviderAdded::new);
+            for (Provider provider : inserted.rows())
+                this.providers.putIfAbsent(provider.getId(), provider);
+            inserted.applied();
+        }
+        if (!inserted.rows().isEmpty())
+            Mutations.awaitDurable(inserted.sequence());
+        return inserted.rows().size();
+    }
+
+    @Override
+    public void addCommodity(Commodity commodity) {
+        if (commodity.getId() == null)
+            return;
+
+        long sequence;
+        synchronized (commoditiesLock) {
+            if (findCommodity(commodity.getId()) != null)
+                return;
+            Mutation mutation = new Mutation.CommodityAdded(commodity);
+            sequence = Mutations.append(mutation);
+            insertCommodity(commodity);
+            Mutations.applied(mutation);
+        }
+        Mutations.awaitDurable(sequence);
+    }
+
+    private boolean insertCommodity(Commodity commodity) {
+        unmark();
+        try {
+            withConnection(connection -> {
+                try (PreparedStatement statement = connection.prepareStatement("INSERT INTO commodities "
+                        + "(id, name, lower_name, provider_id, data) VALUES (?, ?, ?, ?, ?)")) {
+                    bindCommodity(statement, commodity);
+                    return statement.executeUpdate();
+                }
+            });
+        } catch (DuplicateKeyException e) {
+            return false;
+        }
+        insertCategories(commodity);
+        commodities.putIfAbsent(commodity.getId(), commodity);
+        commoditiesVersion++;
+        return true;
+    }
+
+    private void insertCategories(Commodity commodity) {
+        for (String category : new LinkedHashSet<>(commodity.getCategories()))
+            if (category != null)
+                update("INSERT INTO commodity_categories (category, commodity_id) VALUES (?, ?)", category,
+                        commodity.getId());
+    }
+
+    /**
+     * Puts {@code updated} in the place of the stored commodity, copy-on-write as in {@link Database}. Its
+     * row is rewritten right away when its name, provider or categories change, and by the writer thread
+     * otherwise.
+     */
+    @Override
+    public boolean updateCommodity(Commodity updated) {
+        if (updated.getId() == null)
+            return false;
+
+        long sequence;
+        synchronized (commoditiesLock) {
+            Commodity commodity = findCommodity(updated.getId());
+            Mutation mutation;
+            if (commodity == null) {
+                mutation = new Mutation.CommodityAdded(updated);
+                sequence = Mutations.append(mutation);
+                insertCommodity(updated);
+            } else {
+                if (CommodityCatalog.hasListing(commodity, updated))
+                    return false;
+
+                mutation = new Mutation.CommodityUpdated(updated);
+                sequence = Mutations.append(mutation);
+                boolean indexed = CommodityCatalog.movesIndexEntries(commodity, updated);
+                commodity.retire(updated, false);
+                commodities.put(updated.getId(), updated);
+                commodity = updated;
+                if (indexed) {
+                    update("UPDATE commodities SET name = ?, lower_name = ?, provider_id = ?, data = ? WHERE id = ?",
+                            commodity.getName(), lowerName(commodity), commodity.getProviderId(),
+                            encode(SnapshotStore::writeCommodity, commodity), commodity.getId());
+                    update("DELETE FROM commodity_categories WHERE commodity_id = ?", commodity.getId());
+                    insertCategories(commodity);
+                } else {
+                    dirtyCommodities.put(commodity.getId(), commodity);
+                }
+                commoditiesVersion++;
+            }
+            Mutations.applied(mutation);
+        }
+        Mutations.awaitDurable(sequence);
+        return true;
+    }
+
+    @Override
+    public void addComment(Comment comment) {
+        addComments(List.of(comment));
+    }
+
+    /**
+     * Inserts the comments in batches in one transaction and waits for the write-ahead log once.
+     */
+    @Override
+    public void addComments(List<Comment> comments) {
+        if (comments.isEmpty())
+            return;
+
+        long sequence;
+        synchronized (commentsLock) {
+            for (int i = 0; i < comments.size(); i++)
+                comments.get(i).setId(commentCount + i);
+            List<Mutation> mutations = comments.stream().<Mutation>map(Mutation.CommentAdded::new).toList();
+            sequence = inTransaction(connection -> {
+                insertAll(connection, "INSERT INTO comments (id, commodity_id, data) VALUES (?, ?, ?)", comments,
+                        this::bindComment);
+                long last = 0;
+                for (Mutation mutation : mutations)
+                    last = Mutations.append(mutation);
+                return last;
+            });
+            for (Comment comment : comments)
+                this.comments.putIfAbsent(comment.getId(), comment);
+            commentCount += comments.size();
+            mutations.forEach(Mutations::applied);
+        }
+        Mutations.awaitDurable(sequence);
+    }
+
+    @Override
+    public User findUser(String username) {
+        return username == null ? null : find(users, username, SnapshotStore::readUser,
+                "SELECT data FROM users WHERE username = ?");
+    }
+
+    @Override
+    public Provider findProvider(String providerId) {
+        return providerId == null ? null : find(providers, providerId, SnapshotStore::readProvider,
+                "SELECT data FROM providers WHERE id = ?");
+    }
+
+    @Override
+    public Commodity findCommodity(String commodityId) {
+        return commodityId == null ? null : find(commodities, commodityId, SnapshotStore::readCommodity,
+                "SELECT data FROM commodities WHERE id = ?");
+    }
+
+    @Override
+    public Comment findComment(int commentId) {
+        return find(comments, commentId, SnapshotStore::readComment, "SELECT data FROM comments WHERE id = ?");
+    }
+
+    @Override
+    public List<String> findProviderIdsByName(String name) {
+        return withConnection(connection -> {
+            try (PreparedStatement statement = connection.prepareStatement(
+                    "SELECT id FROM providers WHERE name = ? ORDER BY seq")) {
+                statement.setString(1, name);
+                List<String> providerIds = new ArrayList<>();
+                try (ResultSet resultSet = statement.executeQuery()) {
+                    while (resultSet.next())
+                        providerIds.add(resultSet.getString(1));
+                }
+                return providerIds;
+            }
+        });
+    }
+
+    @Override
+    public List<Commodity> findCommoditiesByProvider(String providerId) {
+        return query(commodities, SnapshotStore::readCommodity,
+                "SELECT id, data FROM commodities WHERE provider_id = ? ORDER BY seq", providerId);
+    }
+
+    @Override
+    public Set<Commodity> findCommoditiesByCategory(String category) {
+        return new LinkedHashSet<>(query(commodities, SnapshotStore::readCommodity, "SELECT c.id, c.data FROM "
+                + "commodity_categories cc JOIN commodities c ON c.id = cc.commodity_id WHERE cc.category = ? "
+                + "ORDER BY cc.seq", category));
+    }
+
+    @Override
+    public List<Commodity> findCommoditiesByName(String query) {
+        if (query.isEmpty())
+            return getCommodities();
+
+        return query(commodities, SnapshotStore::readCommodity,
+                "SELECT id, data FROM commodities WHERE name LIKE ? ESCAPE '\\' ORDER BY seq", "%" + escapeLike(query) + "%");
+    }
+
+    @Override
+    public List<Commodity> findCommoditiesByNamePrefix(String prefix, int limit) {
+        return query(commodities, SnapshotStore::readCommodity, "SELECT id, data FROM commodities "
+                + "WHERE lower_name LIKE ? ESCAPE '\\' ORDER BY lower_name, seq LIMIT ?",
+                escapeLike(prefix.toLowerCase(Locale.ROOT)) + "%", Math.max(0, limit));
+    }
+
+    @Override
+    public List<Commodity> findCommoditiesByNameFrom(String from, int skip, int limit) {
+        List<Commodity> found = query(commodities, SnapshotStore::readCommodity, "SELECT id, data FROM commodities "
+                + "WHERE lower_name >= ? ORDER BY lower_name, seq LIMIT ?", from, Math.max(0, skip + limit));
+        int skipped = 0;
+        while (skipped < Math.min(skip, found.size())
+                && found.get(skipped).getName().toLowerCase(Locale.ROOT).equals(from))
+            skipped++;
+        return new ArrayList<>(found.subList(skipped, Math.min(skipped + Math.max(0, limit), found.size())));
+    }
+
+    /**
+     * Reads the table in keyset batches of {@link #BATCH_SIZE} as the stream is consumed. Each batch is one
+     * query, so no connection is held between batches and a consumer that stops early reads no more.
+     */
+    @Override
+    public Stream<Commodity> streamCommodities() {
+        return streamAfter(0, this::commoditiesAfter);
+    }
+
+    /**
+     * Streams the rows {@code batches} returns for successive keys, starting after {@code start}, a
+     * batch of {@link #BATCH_SIZE} at a time.
+     */
+    private static <T> Stream<T> streamAfter(long start, BiFunction<Long, Integer, List<Sequenced<T>>> batches) {
+        Iterator<T> iterator = new Iterator<>() {
+            private List<Sequenced<T>> batch = List.of();
+            private int next;
+            private long after = start;
+            private boolean exhausted;
+
+            @Override
+            public boolean hasNext() {
+                if (next == batch.size() && !exhausted) {
+                    batch = batches.apply(after, BATCH_SIZE);
+                    next = 0;
+                    exhausted = batch.size() < BATCH_SIZE;
+                    if (!batch.isEmpty())
+                        after = batch.get(batch.size() - 1).seq();
+                }
+                return next < batch.size();
+            }
+
+            @Override
+            public T next() {
+                if (!hasNext())
+                    throw new NoSuchElementException();
+                return batch.get(next++).entity();
+            }
+        };
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(iterator,
+                Spliterator.ORDERED | Spliterator.NONNULL), false);
+    }
+
+    /**
+     * Positions are the {@code seq} column, so a page is one keyset query however deep it is.
+     */
+    @Override
+    public CursorPage<Commodity> findCommoditiesAfter(long after, int limit) {
+        List<Sequenced<Commodity>> found = commoditiesAfter(after, Math.max(0, limit) + 1);
+        if (found.size() <= limit)
+            return new CursorPage<>(new ArrayList<>(found.stream().map(Sequenced::entity).toList()), null);
+
+        List<Sequenced<Commodity>> page = found.subList(0, limit);
+        return new CursorPage<>(new ArrayList<>(page.stream().map(Sequenced::entity).toList()),
+                String.valueOf(limit == 0 ? after : page.get(limit - 1).seq()));
+    }
+
+    private record Sequenced<T>(long seq, T entity) {
+    }
+
+    private List<Sequenced<Commodity>> commoditiesAfter(long after, int limit) {
+        return queryAfter(commodities, SnapshotStore::readCommodity,
+                "SELECT seq, id, data FROM commodities WHERE seq > ? ORDER BY seq LIMIT ?", after, limit);
+    }
+
+    /**
+     * Runs a keyset query selecting positions, keys and records, resolving every row through
+     * {@code cache} as {@link #query} does.
+     */
+    @SuppressWarnings("unchecked")
+    private <K, V> List<Sequenced<V>> queryAfter(EntityCache<K, V> cache, Function<ByteBuffer, V> decoder,
+                                                 String sql, long after, int limit) {
+        return withConnection(connection -> {
+            try (PreparedStatement statement = connection.prepareStatement(sql)) {
+                statement.setLong(1, after);
+                statement.setInt(2, limit);
+                List<Sequenced<V>> found = new ArrayList<>();
+                try (ResultSet resultSet = statement.executeQuery()) {
+                    while (resultSet.next()) {
+                        byte[] data = resultSet.getBytes(3);
+                        found.add(new Sequenced<>(resultSet.getLong(1), cache.resolve((K) resultSet.getObject(2),
+                                () -> decoder.apply(ByteBuffer.wrap(data)))));
+                    }
+                }
+                return found;
+            }
+        });
+    }
+
+    @Override
+    public List<Comment> findCommentsByCommodity(int commodityId) {
+        return query(comments, SnapshotStore::readComment,
+                "SELECT id, data FROM comments WHERE commodity_id = ? ORDER BY id", commodityId);
+    }
+
+    /**
+     * Marks the entities {@code mutation} changed as dirty. They are in the cache, because whoever
+     * changed them still holds them.
+     */
+    @Override
+    public void mutated(Mutation mutation) {
+        if (mutation instanceof Mutation.CreditAdded m) {
+            markDirty(users, dirtyUsers, m.username());
+        } else if (mutation instanceof Mutation.BuyItemAdded m) {
+            markDirty(users, dirtyUsers, m.username());
+        } else if (mutation instanceof Mutation.BuyItemRemoved m) {
+            markDirty(users, dirtyUsers, m.username());
+        } else if (mutation instanceof Mutation.BuyListChanged m) {
+            markDirty(users, dirtyUsers, m.username());
+        } else if (mutation instanceof Mutation.CheckedOut m) {
+            markDirty(users, dirtyUsers, m.username());
+            for (String commodityId : m.items().keySet())
+                markDirty(commodities, dirtyCommodities, commodityId);
+        } else if (mutation instanceof Mutation.CommodityRated m) {
+            markDirty(commodities, dirtyCommodities, m.commodityId());
+        } else if (mutation instanceof Mutation.CommentVoted m) {
+            markDirty(comments, dirtyComments, m.commentId());
+        }
+    }
+
+    private static <K, V> void markDirty(EntityCache<K, V> cache, Map<K, V> dirty, K key) {
+        V entity = cache.get(key);
+        if (entity != null)
+            dirty.put(key, entity);
+    }
+
+    /**
+     * Writes every dirty entity now.
+     */
+    public synchronized void flush() {
+        writeDirty(dirtyUsers, "UPDATE users SET data = ? WHERE username = ?", SnapshotStore::writeUser);
+        writeDirty(dirtyCommodities, "UPDATE commodities SET data = ? WHERE id = ?", SnapshotStore::writeCommodity);
+        writeDirty(dirtyComments, "UPDATE comments SET data = ? WHERE id = ?", SnapshotStore::writeComment);
+    }
+
+    @Override
+    public DurableMark getDurableMark() {
+        return durableMark;
+    }
+
+    /**
+     * Writes every dirty entity, then the mark, and forces the database file to disk. Holds the monitor
+     * that {@link #flush} takes before the mark's own lock, in the order the writer thread takes them.
+     */
+    @Override
+    public synchronized void markDurable(long sequence) {
+        flush();
+        DurableMark mark = new DurableMark(sequence, System.currentTimeMillis());
+        synchronized (markLock) {
+            inTransaction(connection -> {
+                try (Statement statement = connection.createStatement()) {
+                    statement.execute("DELETE FROM durable_mark");
+                }
+                try (PreparedStatement statement = connection.prepareStatement(
+                        "INSERT INTO durable_mark (sequence, marked_at) VALUES (?, ?)")) {
+                    statement.setLong(1, mark.sequence());
+                    statement.setLong(2, mark.markedAt());
+                    return statement.executeUpdate();
+                }
+            });
+            withConnection(connection -> {
+                try (Statement statement = connection.createStatement()) {
+                    return statement.execute("CHECKPOINT SYNC");
+                }
+            });
+            durableMark = mark;
+        }
+    }
+
+    /**
+     * Deletes the {@link DurableMark}, if there is one, before anything else is written, so the file is
+     * never taken for the data set at the mark once it holds later writes.
+     */
+    private void unmark() {
+        if (durableMark == null)
+            return;
+
+        synchronized (markLock) {
+            if (durableMark == null)
+                return;
+            withConnection(connection -> {
+                try (Statement statement = connection.createStatement()) {
+                    return statement.executeUpdate("DELETE FROM durable_mark");
+                }
+            });
+            durableMark = null;
+        }
+    }
+
+    private void writeDirtyEntities() {
+        try {
+            while (true) {
+                Thread.sleep(FLUSH_INTERVAL_MILLIS);
+                flush();
+            }
+        } catch (InterruptedException ignored) {
+        }
+    }
+
+    /**
+     * Writes the entities in {@code dirty} in batches. An entity is taken out of {@code dirty} before it
+     * is encoded, under its own lock, so a change made after that marks it dirty again.
+     */
+    private <K, V> void writeDirty(Map<K, V> dirty, String sql, BiConsumer<ByteBuffer, V> encoder) {
+        if (dirty.isEmpty())
+            return;
+
+        unmark();
+        withConnection(connection -> {
+            connection.setAutoCommit(false);
+            try (PreparedStatement statement = connection.prepareStatement(sql)) {
+                int batched = 0;
+                for (K key : dirty.keySet()) {
+                    V entity = dirty.remove(key);
+                    if (entity == null)
+                        continue;
+
+                    byte[] data;
+                    synchronized (entity) {
+                        data = encode(encoder, entity);
+                    }
+                    statement.setBytes(1, data);
+                    statement.setObject(2, key);
+                    statement.addBatch();
+                    if (++batched % BATCH_SIZE == 0)
+                        statement.executeBatch();
+                }
+                statement.executeBatch();
+                connection.commit();
+            } finally {
+                connection.setAutoCommit(true);
+            }
+            return null;
+        });
+    }
+
+    /**
+     * Stops the writer, writes every dirty entity and closes the database.
+     */
+    @Override
+    public void close() {
+        writer.interrupt();
+        try {
+            writer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        flush();
+
+        for (int i = 0; i < POOL_SIZE; i++) {
+            try {
+                connections.take().close();
+            } catch (SQLException ignored) {
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    private void bindCommodity(PreparedStatement statement, Commodity commodity) throws SQLException {
+        statement.setString(1, commodity.getId());
+        statement.setString(2, commodity.getName());
+        statement.setString(3, lowerName(commodity));
+        statement.setString(4, commodity.getProviderId());
+        statement.setBytes(5, encode(SnapshotStore::writeCommodity, commodity));
+    }
+
+    private void bindUser(PreparedStatement statement, User user) throws SQLException {
+        statement.setString(1, user.getUsername());
+        statement.setBytes(2, encode(SnapshotStore::writeUser, user));
+    }
+
+    private void bindProvider(PreparedStatement statement, Provider provider) throws SQLException {
+        statement.setString(1, provider.getId());
+        statement.setString(2, provider.getName());
+        statement.setBytes(3, encode(SnapshotStore::writeProvider, provider));
+    }
+
+    private void bindComment(PreparedStatement statement, Comment comment) throws SQLException {
+        statement.setInt(1, comment.getId());
+        statement.setInt(2, comment.getCommodityId());
+        statement.setBytes(3, encode(SnapshotStore::writeComment, comment));
+    }
+
+    private static String lowerName(Commodity commodity) {
+        return commodity.getName() == null ? null : commodity.getName().toLowerCase(Locale.ROOT);
+    }
+
+    private static String escapeLike(String value) {
+        return value.replace("\\", "\\\\").replace("%", "\\%").replace("_", "\\_");
+    }
+
+    private static <T> byte[] encode(BiConsumer<ByteBuffer, T> encoder, T entity) {
+        ByteBuffer buffer = ByteBuffer.allocate(256);
+        while (true) {
+            try {
+                encoder.accept(buffer, entity);
+                return Arrays.copyOf(buffer.array(), buffer.position());
+            } catch (BufferOverflowException e) {
+                buffer = ByteBuffer.allocate(buffer.capacity() * 2);
+            }
+        }
+    }
+
+    /**
+     * Replaces the contents of {@code table} with the entities of {@code entities} that have a key not
+     * seen before, deleting and inserting in batches in one transaction, and returns those entities. A
+     * failure rolls the whole replacement back, so readers never see the table emptied.
+     */
+    private <K, T> List<T> replaceAll(String table, String insert, List<T> entities, Function<T, K> key,
+                                      StatementBinder<T> binder) {
+        List<T> stored = distinctKeys(entities, key);
+        inTransaction(connection -> {
+            try (Statement statement = connection.createStatement()) {
+                statement.execute("DELETE FROM " + table);
+            }
+            insertAll(connection, insert, stored, binder);
+            return null;
+        });
+        return stored;
+    }
+
+    private static <K, T> List<T> distinctKeys(List<T> entities, Function<T, K> key) {
+        List<T> distinct = new ArrayList<>();
+        Set<K> keys = new HashSet<>();
+        for (T entity : entities)
+            if (key.apply(entity) != null && keys.add(key.apply(entity)))
+                distinct.add(entity);
+        return distinct;
+    }
+
+    private static <T> void insertAll(Connection connection, String insert, List<T> rows, StatementBinder<T> binder)
+            throws SQLException {
+        try (PreparedStatement statement = connection.prepareStatement(insert)) {
+            for (int i = 0; i < rows.size(); i++) {
+                binder.bind(statement, rows.get(i));
+                statement.addBatch();
+                if ((i + 1) % BATCH_SIZE == 0)
+                    statement.executeBatch();
+            }
+            statement.executeBatch();
+        }
+    }
+
+    /**
+     * Runs {@code function} on one connection in one transaction, committed if it returns and rolled back
+     * if it throws.
+     */
+    private <T> T inTransaction(SqlFunction<T> function) {
+        unmark();
+        return withConnection(connection -> {
+            connection.setAutoCommit(false);
+            try {
+                T result = function.apply(connection);
+                connection.commit();
+                return result;
+            } catch (SQLException | RuntimeException e) {
+                connection.rollback();
+                throw e;
+            } finally {
+                connection.setAutoCommit(true);
+            }
+        });
+    }
+
+    /**
+     * Rows inserted by {@link #insertNew}, with their logged mutations and the sequence number of the
+     * last one.
+     */
+    private record Inserted<T>(List<T> rows, List<Mutation> mutations, long sequence) {
+        void applied() {
+            mutations.forEach(Mutations::applied);
+        }
+    }
+
+    /**
+     * Inserts {@code rows} one statement at a time in one transaction, skipping the rows whose key is
+     * already stored, and logs the {@code mutation} of each row inserted before the transaction commits,
+     * so rows the log refuses are rolled back.
+     */
+    private <T> Inserted<T> insertNew(String insert, List<T> rows, StatementBinder<T> binder,
+                                      Function<T, Mutation> mutation) {
+        return inTransaction(connection -> {
+            try (PreparedStatement statement = connection.prepareStatement(insert)) {
+                List<T> inserted = new ArrayList<>(rows.size());
+                for (T row : rows) {
+                    binder.bind(statement, row);
+                    try {
+                        statement.executeUpdate();
+                        inserted.add(row);
+                    } catch (SQLIntegrityConstraintViolationException ignored) {
+                    }
+                }
+
+                List<Mutation> mutations = new ArrayList<>(inserted.size());
+                long sequence = 0;
+                for (T row : inserted) {
+                    Mutation logged = mutation.apply(row);
+                    sequence = Mutations.append(logged);
+                    mutations.add(logged);
+                }
+                return new Inserted<>(inserted, mutations, sequence);
+            }
+        });
+    }
+
+    private void update(String sql, Object... parameters) {
+        unmark();
+        withConnection(connection -> {
+            try (PreparedStatement statement = connection.prepareStatement(sql)) {
+                bind(statement, parameters);
+                return statement.executeUpdate();
+            }
+        });
+    }
+
+    private int count(String sql) {
+        return withConnection(connection -> {
+            try (Statement statement = connection.createStatement();
+                 ResultSet resultSet = statement.executeQuery(sql)) {
+                resultSet.next();
+                return resultSet.getInt(1);
+            }
+        });
+    }
+
+    private <K, V> V find(EntityCache<K, V> cache, K key, Function<ByteBuffer, V> decoder, String sql) {
+        return cache.resolve(key, () -> withConnection(connection -> {
+            try (PreparedStatement statement = connection.prepareStatement(sql)) {
+                statement.setObject(1, key);
+                try (ResultSet resultSet = statement.executeQuery()) {
+                    return resultSet.next() ? decoder.apply(ByteBuffer.wrap(resultSet.getBytes(1))) : null;
+                }
+            }
+        }));
+    }
+
+    /**
+     * Runs a query selecting keys and records, and resolves every row through {@code cache}, so rows
+     * whose entity is cached return the cached object and are not decoded.
+     */
+    @SuppressWarnings("unchecked")
+    private <K, V> List<V> query(EntityCache<K, V> cache, Function<ByteBuffer, V> decoder, String sql,
+                                 Object... parameters) {
+        return withConnection(connection -> {
+            try (PreparedStatement statement = connection.prepareStatement(sql)) {
+                bind(statement, parameters);
+                List<V> entities = new ArrayList<>();
+                try (ResultSet resultSet = statement.executeQuery()) {
+                    while (resultSet.next()) {
+                        byte[] data = resultSet.getBytes(2);
+                        entities.add(cache.resolve((K) resultSet.getObject(1), () -> decoder.apply(ByteBuffer.wrap(data))));
+                    }
+                }
+                return entities;
+            }
+        });
+    }
+
+    private static void bind(PreparedStatement statement, Object... parameters) throws SQLException {
+        for (int i = 0; i < parameters.length; i++)
+            statement.setObject(i + 1, parameters[i]);
+    }
+
+    private <T> T withConnection(SqlFunction<T> function) {
+        Connection connection;
+        try {
+            connection = connections.take();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for a connection", e);
+        }
+
+        try {
+            return function.apply(connection);
+        } catch (SQLIntegrityConstraintViolationException e) {
+            throw new DuplicateKeyException(e);
+        } catch (SQLException e) {
+            throw new IllegalStateException("Repository statement failed", e);
+        } finally {
+            connections.add(connection);
+        }
+    }
+
+    private interface SqlFunction<T> {
+        T apply(Connection connection) throws SQLException;
+    }
+
+    private interface StatementBinder<T> {
+        void bind(PreparedStatement statement, T entity) throws SQLException;
+    }
+
+    private static class DuplicateKeyException extends RuntimeException {
+        DuplicateKeyException(SQLException cause) {
+            super(cause);
+        }
+    }
+
+    /**
+     * Soft-valued map from keys to entities. A cleared entry is reloaded on its next access, and at most
+     * one object per key is ever reachable through the cache.
+     */
+    private static class EntityCache<K, V> {
+        private final Map<K, Entry<K, V>> entries = new ConcurrentHashMap<>();
+        private final ReferenceQueue<V> cleared = new ReferenceQueue<>();
+
+        private static class Entry<K, V> extends SoftReference<V> {
+            final K key;
+
+            Entry(K key, V value, ReferenceQueue<V> queue) {
+                super(value, queue);
+                this.key = key;
+            }
+        }
+
+        V get(K key) {
+            Entry<K, V> entry = entries.get(key);
+            return entry == null ? null : entry.get();
+        }
+
+        V resolve(K key, Supplier<V> loader) {
+            V value = get(key);
+            if (value != null)
+                return value;
+
+            expunge();
+            Object[] resolved = new Object[1];
+            entries.compute(key, (k, entry) -> {
+                V current = entry == null ? null : entry.get();
+                if (current != null) {
+                    resolved[0] = current;
+                    return entry;
+                }
+                V loaded = loader.get();
+                resolved[0] = loaded;
+                return loaded == null ? null : new Entry<>(k, loaded, cleared);
+            });
+            @SuppressWarnings("unchecked")
+            V result = (V) resolved[0];
+            return result;
+        }
+
+        void put(K key, V value) {
+            expunge();
+            entries.put(key, new Entry<>(key, value, cleared));
+        }
+
+        void putIfAbsent(K key, V value) {
+            resolve(key, () -> value);
+        }
+
+        void clear() {
+            entries.clear();
+        }
+
+        @SuppressWarnings("unchecked")
+        private void expunge() {
+            Entry<K, V> entry;
+            while ((entry = (Entry<K, V>) cleared.poll()) != null)
+                entries.remove(entry.key, entry);
+        }
+    }
+}
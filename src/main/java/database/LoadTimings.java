@@ -0,0 +1,43 @@
+package database;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Time spent in each phase of loading the data set. Files are loaded in parallel, so a phase's time is
+ * summed over the threads that worked on it and may exceed the wall-clock time of the load.
+ */
+public class LoadTimings {
+    public enum Phase {
+        PARSE, INDEX, WARMUP
+    }
+
+    private final Map<Phase, LongAdder> nanos = new EnumMap<>(Phase.class);
+
+    public LoadTimings() {
+        for (Phase phase : Phase.values())
+            nanos.put(phase, new LongAdder());
+    }
+
+    public long getNanos(Phase phase) {
+        return nanos.get(phase).sum();
+    }
+
+    public void add(Phase phase, long elapsedNanos) {
+        nanos.get(phase).add(elapsedNanos);
+    }
+
+    public <T, E extends Exception> T time(Phase phase, Action<T, E> action) throws E {
+        long start = System.nanoTime();
+        try {
+            return action.run();
+        } finally {
+            add(phase, System.nanoTime() - start);
+        }
+    }
+
+    public interface Action<T, E extends Exception> {
+        T run() throws E;
+    }
+}
@@ -0,0 +1,245 @@
+package database;
+
+import exceptions.InvalidRateRange;
+import model.Commodity;
+import model.Mutation;
+import model.Mutations;
+import utils.CompactByteMap;
+
+import java.util.ArrayList;
+import java.util.Map;
+import java.util.function.Consumer;
+
+/**
+ * A {@link Commodity} backed by a record of a {@link MappedCommodityCatalog}. Views are created on
+ * every access and decode a field only when it is read; two views of the same record are equal. Price,
+ * rating, stock, user rates and the version are written through to the catalog. The rest of the record
+ * is fixed once the catalog is built, so setting it puts a changed copy in the catalog's overlay, and
+ * {@link #getCategories()} returns a copy. When the overlay or a rebuild retires the record, stock and
+ * rate writes through its views are forwarded to the commodity that replaced it.
+ */
+final class MappedCommodity extends Commodity {
+    private final MappedCommodityCatalog catalog;
+    private final int index;
+    private String id;
+    private String name;
+
+    MappedCommodity(MappedCommodityCatalog catalog, int index) {
+        super(0);
+        this.catalog = catalog;
+        this.index = index;
+    }
+
+    MappedCommodityCatalog getCatalog() {
+        return catalog;
+    }
+
+    int getIndex() {
+        return index;
+    }
+
+    /**
+     * Copies the record into a plain heap {@link Commodity}.
+     */
+    Commodity materialize() {
+        Commodity commodity = new Commodity();
+        commodity.setId(getId());
+        commodity.setName(getName());
+        commodity.setProviderId(getProviderId());
+        commodity.setPrice(getPrice());
+        commodity.setCategories(getCategories());
+        commodity.setRating(getRating());
+        commodity.setInStock(getInStock());
+        commodity.setImage(getImage());
+        commodity.setInitRate(getInitRate());
+        commodity.setUserRate(getUserRate());
+        return commodity;
+    }
+
+    @Override
+    public String getId() {
+        if (id == null)
+            id = catalog.id(index);
+        return id;
+    }
+
+    @Override
+    public String getName() {
+        if (name == null)
+            name = catalog.name(index);
+        return name;
+    }
+
+    @Override
+    public String getProviderId() {
+        return catalog.providerId(index);
+    }
+
+    @Override
+    public int getPrice() {
+        return catalog.price(index);
+    }
+
+    @Override
+    public void setPrice(int price) {
+        catalog.setPrice(index, price);
+        bumpVersion();
+    }
+
+    @Override
+    public ArrayList<String> getCategories() {
+        return catalog.categories(index);
+    }
+
+    @Override
+    public float getRating() {
+        return catalog.rating(index);
+    }
+
+    @Override
+    public void setRating(float rating) {
+        catalog.setRating(index, rating);
+        bumpVersion();
+    }
+
+    @Override
+    public int getInStock() {
+        return catalog.inStock(index);
+    }
+
+    @Override
+    public void setInStock(int inStock) {
+        catalog.setInStock(index, inStock);
+        bumpVersion();
+    }
+
+    @Override
+    public boolean tryUpdateInStock(int amount) {
+        if (!catalog.tryUpdateInStock(index, amount))
+            return false;
+
+        bumpVersion();
+        return true;
+    }
+
+    @Override
+    public String getImage() {
+        return catalog.image(index);
+    }
+
+    @Override
+    public float getInitRate() {
+        return catalog.initRate(index);
+    }
+
+    @Override
+    public Map<String, Integer> getUserRate() {
+        return catalog.userRate(index);
+    }
+
+    @Override
+    public void setUserRate(Map<String, Integer> userRate) {
+        catalog.setUserRate(index, userRate);
+        bumpVersion();
+    }
+
+    @Override
+    public void addRate(String username, int score) throws InvalidRateRange {
+        if (score < 0 || score > 10)
+            throw new InvalidRateRange();
+        MappedCommodityCatalog.RatingState state = catalog.ratingState(index);
+        Commodity successor;
+        long sequence = 0;
+        synchronized (state) {
+            successor = catalog.movedRates(index, state);
+            if (successor == null) {
+                Mutation mutation = new Mutation.CommodityRated(getId(), username, score);
+                sequence = Mutations.append(mutation);
+                int previous = state.userRate.put(username, (byte) score);
+                state.userRateSum += score - (previous == CompactByteMap.ABSENT ? 0 : previous);
+                catalog.setRating(index, (getInitRate() + state.userRateSum) / (state.userRate.size() + 1));
+                bumpVersion();
+                Mutations.applied(mutation);
+            }
+        }
+        if (successor != null)
+            successor.addRate(username, score);
+        else
+            Mutations.awaitDurable(sequence);
+    }
+
+    @Override
+    public void retire(Commodity successor, boolean moveStock) {
+        catalog.retire(index, successor, moveStock);
+        bumpVersion();
+    }
+
+    @Override
+    public long getVersion() {
+        return catalog.version(index);
+    }
+
+    @Override
+    protected void bumpVersion() {
+        catalog.bumpVersion(index);
+    }
+
+    /**
+     * Applies {@code change} to a copy of this commodity and has the copy put in its place, or applies it
+     * to the commodity that already replaced this one. Like the listing of a
+     * replaced heap commodity, the listing of this view stays as it was. A commodity dropped from the
+     * catalog altogether is left alone.
+     */
+    private void relist(Consumer<Commodity> change) {
+        Commodity successor = catalog.successor(index);
+        if (successor == null) {
+            Commodity updated = materialize();
+            change.accept(updated);
+            if (catalog.replace(this, updated))
+                return;
+            successor = catalog.successor(index);
+        }
+        if (successor != null)
+            change.accept(successor);
+    }
+
+    @Override
+    public void setId(String id) {
+        relist(commodity -> commodity.setId(id));
+    }
+
+    @Override
+    public void setName(String name) {
+        relist(commodity -> commodity.setName(name));
+    }
+
+    @Override
+    public void setProviderId(String providerId) {
+        relist(commodity -> commodity.setProviderId(providerId));
+    }
+
+    @Override
+    public void setCategories(ArrayList<String> categories) {
+        relist(commodity -> commodity.setCategories(categories));
+    }
+
+    @Override
+    public void setImage(String image) {
+        relist(commodity -> commodity.setImage(image));
+    }
+
+    @Override
+    public void setInitRate(float initRate) {
+        relist(commodity -> commodity.setInitRate(initRate));
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        return o instanceof MappedCommodity other && other.catalog == catalog && other.index == index;
+    }
+
+    @Override
+    public int hashCode() {
+        return System.identityHashCode(catalog) * 31 + index;
+    }
+}
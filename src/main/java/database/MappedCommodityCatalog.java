@@ -0,0 +1,974 @@
+package database;
+
+import model.Commodity;
+import model.Versions;
+import utils.CompactByteMap;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.AbstractList;
+import java.util.AbstractSet;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Objects;
+import java.util.PrimitiveIterator;
+import java.util.RandomAccess;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.BiPredicate;
+import java.util.function.IntPredicate;
+import java.util.function.Predicate;
+import java.util.stream.IntStream;
+
+/**
+ * Catalog kept in two memory-mapped files instead of on the heap. {@value #RECORDS_FILE} holds a
+ * fixed-size record per commodity with its price, rating, stock, version, provider and references to
+ * its strings, followed by an open-addressing id table, the category, provider and name trigram
+ * postings and the commodities sorted by name. {@value #STRINGS_FILE} holds ids, names, images and
+ * category id lists. Only the category, provider and trigram dictionaries and the individual user rates
+ * stay on the heap.
+ * <p>
+ * Commodities are handed out as {@link MappedCommodity} views created on access. Price, rating, stock
+ * and version are written through to the records, and stock is updated with a compare-and-set on the
+ * record, so all views of a commodity agree. Commodities added after the catalog was built are kept in a
+ * {@link HeapCommodityCatalog} and merged into every query.
+ * <p>
+ * A change a record has no room for retires the record in favour of a heap commodity kept in an
+ * overlay by record index, which queries merge in the record's place. Once the overlay holds as many
+ * records as {@value #OVERLAY_PROPERTY} allows, {@value #DEFAULT_OVERLAY_RECORDS} by default, further
+ * such changes are refused, and the owner compacts the overlay into the files with one rebuild.
+ */
+final class MappedCommodityCatalog implements CommodityCatalog {
+    static final String RECORDS_FILE = "catalog.bin";
+    static final String STRINGS_FILE = "catalog.strings";
+    static final String OVERLAY_PROPERTY = "baloot.catalog.overlay.records";
+    static final int DEFAULT_OVERLAY_RECORDS = 4096;
+
+    private static final int MAGIC = 0x42434154;
+    private static final int FORMAT_VERSION = 2;
+    private static final int HEADER_SIZE = 64;
+    private static final int RECORD_SIZE = 64;
+    private static final long NULL_REF = -1;
+    private static final int RETIRED = Integer.MIN_VALUE;
+    private static final int GRAM_LENGTH = 3;
+
+    private static final int ID = 0;
+    private static final int NAME = 8;
+    private static final int IMAGE = 16;
+    private static final int CATEGORIES = 24;
+    private static final int PROVIDER = 32;
+    private static final int PRICE = 36;
+    private static final int RATING = 40;
+    private static final int INIT_RATE = 44;
+    private static final int IN_STOCK = 48;
+    private static final int VERSION = 56;
+
+    private final MappedRegion records;
+    private final MappedRegion strings;
+    private final int count;
+    private final int idTableMask;
+    private final long idTableOffset;
+    private final int nameOrderCount;
+    private final long nameOrderOffset;
+    private final String[] categoryNames;
+    private final String[] providerIds;
+    private final Map<String, Posting> categoryPostings;
+    private final Map<String, Posting> providerPostings;
+    private final Map<String, Posting> gramPostings;
+    private final int maxOverlay;
+    private final NavigableMap<Integer, Commodity> overlay = new ConcurrentSkipListMap<>();
+    private final Map<Commodity, Integer> overlayIndexes = new IdentityHashMap<>();
+    private Map<Integer, Commodity> overlaySnapshot = Map.of();
+    private boolean overlayChanged;
+    private final Map<Integer, RatingState> ratings = new ConcurrentHashMap<>();
+    private final HeapCommodityCatalog added = new HeapCommodityCatalog(List.of());
+    private final List<Commodity> commodities = new CommodityList(added.getCommodities(), null);
+    private final BiPredicate<Commodity, Commodity> replacer;
+    private volatile AtomicReferenceArray<Commodity> successors;
+
+    private record Posting(long offset, int count) {
+    }
+
+    /**
+     * Individual user rates of one commodity. The rating itself lives in the record. Once the record is
+     * retired, {@code successor} holds the commodity its rates moved to.
+     */
+    static final class RatingState {
+        CompactByteMap<String> userRate = new CompactByteMap<>();
+        long userRateSum;
+        Commodity successor;
+    }
+
+    private MappedCommodityCatalog(MappedRegion records, MappedRegion strings, String[] categoryNames,
+                                   String[] providerIds, Map<String, Posting> categoryPostings,
+                                   Map<String, Posting> providerPostings, Map<String, Posting> gramPostings,
+                                   int maxOverlay, BiPredicate<Commodity, Commodity> replacer) throws IOException {
+        if (records.getInt(0) != MAGIC || records.getInt(4) != FORMAT_VERSION)
+            throw new IOException("Not a commodity catalog");
+
+        this.records = records;
+        this.strings = strings;
+        this.count = records.getInt(8);
+        this.idTableMask = records.getInt(12) - 1;
+        this.nameOrderCount = records.getInt(16);
+        this.idTableOffset = records.getLong(24);
+        this.nameOrderOffset = records.getLong(32);
+        this.categoryNames = categoryNames;
+        this.providerIds = providerIds;
+        this.categoryPostings = categoryPostings;
+        this.providerPostings = providerPostings;
+        this.gramPostings = gramPostings;
+        this.maxOverlay = maxOverlay;
+        this.replacer = replacer;
+    }
+
+    /**
+     * Writes {@code commodities} to the catalog files in {@code directory}, replacing any previous
+     * catalog there, and maps them. The files are written aside and moved into place, so a catalog
+     * that is still mapped keeps its own files. {@code replacer} puts a commodity with a changed record in
+     * the place of a mapped one, see {@link #replace}.
+     */
+    static MappedCommodityCatalog build(Path directory, List<? extends Commodity> commodities,
+                                        BiPredicate<Commodity, Commodity> replacer) throws IOException {
+        Files.createDirectories(directory);
+        Path recordsPath = directory.resolve(RECORDS_FILE);
+        Path stringsPath = directory.resolve(STRINGS_FILE);
+        Path recordsTemp = directory.resolve(RECORDS_FILE + ".tmp");
+        Path stringsTemp = directory.resolve(STRINGS_FILE + ".tmp");
+
+        int count = commodities.size();
+        int idTableCapacity = 2;
+        while (idTableCapacity < 2L * count)
+            idTableCapacity <<= 1;
+        int[] idTable = new int[idTableCapacity];
+        Dictionary categories = new Dictionary();
+        Dictionary providers = new Dictionary();
+        Dictionary trigrams = new Dictionary();
+        String[] lowerNames = new String[count];
+        int nameOrderCount = 0;
+
+        try (DataOutputStream recordsOut = open(recordsTemp); StringsWriter stringsOut = new StringsWriter(stringsTemp)) {
+            recordsOut.write(new byte[HEADER_SIZE]);
+            for (int index = 0; index < count; index++) {
+                Commodity commodity = commodities.get(index);
+                int[] categoryIds = new int[commodity.getCategories().size()];
+                for (int i = 0; i < categoryIds.length; i++) {
+                    String category = commodity.getCategories().get(i);
+                    categoryIds[i] = category == null ? -1 : categories.add(category, index);
+                }
+
+                recordsOut.writeLong(stringsOut.putString(commodity.getId()));
+                recordsOut.writeLong(stringsOut.putString(commodity.getName()));
+                recordsOut.writeLong(stringsOut.putString(commodity.getImage()));
+                recordsOut.writeLong(stringsOut.putInts(categoryIds));
+                recordsOut.writeInt(commodity.getProviderId() == null ? -1 : providers.add(commodity.getProviderId(), index));
+                recordsOut.writeInt(commodity.getPrice());
+                recordsOut.writeFloat(commodity.getRating());
+                recordsOut.writeFloat(commodity.getInitRate());
+                recordsOut.writeInt(commodity.getInStock());
+                recordsOut.write(new byte[VERSION - IN_STOCK - Integer.BYTES]);
+                recordsOut.writeLong(Versions.initial());
+
+                if (commodity.getId() != null)
+                    insertId(idTable, commodities, commodity.getId(), index);
+                if (commodity.getName() != null) {
+                    lowerNames[index] = commodity.getName().toLowerCase(Locale.ROOT);
+                    nameOrderCount++;
+                    for (String gram : grams(commodity.getName()))
+                        trigrams.add(gram, index);
+                }
+            }
+
+            long idTableOffset = HEADER_SIZE + (long) count * RECORD_SIZE;
+            for (int slot : idTable)
+                recordsOut.writeInt(slot);
+
+            long position = idTableOffset + (long) idTableCapacity * Integer.BYTES;
+            position = categories.writePostings(recordsOut, position);
+            position = providers.writePostings(recordsOut, position);
+            position = trigrams.writePostings(recordsOut, position);
+
+            long nameOrderOffset = position;
+            Integer[] nameOrder = new Integer[nameOrderCount];
+            for (int index = 0, next = 0; index < count; index++)
+                if (lowerNames[index] != null)
+                    nameOrder[next++] = index;
+            Arrays.sort(nameOrder, (a, b) -> lowerNames[a].compareTo(lowerNames[b]));
+            for (int index : nameOrder)
+                recordsOut.writeInt(index);
+
+            recordsOut.close();
+            writeHeader(recordsTemp, count, idTableCapacity, nameOrderCount, idTableOffset, nameOrderOffset);
+        }
+
+        Files.move(stringsTemp, stringsPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        Files.move(recordsTemp, recordsPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+        MappedCommodityCatalog catalog = new MappedCommodityCatalog(MappedRegion.map(recordsPath),
+                MappedRegion.map(stringsPath), categories.names(), providers.names(), categories.postings,
+                providers.postings, trigrams.postings, Integer.getInteger(OVERLAY_PROPERTY, DEFAULT_OVERLAY_RECORDS),
+                replacer);
+        for (int index = 0; index < count; index++) {
+            Map<String, Integer> userRate = commodities.get(index).getUserRate();
+            if (!userRate.isEmpty())
+                catalog.setUserRate(index, userRate);
+        }
+        return catalog;
+    }
+
+    private static DataOutputStream open(Path path) throws IOException {
+        return new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(path)));
+    }
+
+    private static void insertId(int[] idTable, List<? extends Commodity> commodities, String id, int index) {
+        int mask = idTable.length - 1;
+        int slot = mix(id.hashCode()) & mask;
+        for (; idTable[slot] != 0; slot = (slot + 1) & mask)
+            if (commodities.get(idTable[slot] - 1).getId().equals(id))
+                return;
+
+        idTable[slot] = index + 1;
+    }
+
+    private static void writeHeader(Path path, int count, int idTableCapacity, int nameOrderCount, long idTableOffset,
+                                    long nameOrderOffset) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        header.putInt(MAGIC).putInt(FORMAT_VERSION).putInt(count).putInt(idTableCapacity).putInt(nameOrderCount)
+                .putInt(0).putLong(idTableOffset).putLong(nameOrderOffset).rewind();
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.WRITE)) {
+            while (header.hasRemaining())
+                channel.write(header, header.position());
+        }
+    }
+
+    private static int mix(int hash) {
+        return hash ^ (hash >>> 16);
+    }
+
+    /**
+     * Returns the trigrams of {@code name}, or {@code name} itself if it is shorter than a trigram.
+     */
+    private static Set<String> grams(String name) {
+        if (name.length() < GRAM_LENGTH)
+            return name.isEmpty() ? Set.of() : Set.of(name);
+
+        Set<String> grams = new HashSet<>();
+        for (int i = 0; i + GRAM_LENGTH <= name.length(); i++)
+            grams.add(name.substring(i, i + GRAM_LENGTH));
+        return grams;
+    }
+
+    @Override
+    public List<Commodity> getCommodities() {
+        return commodities;
+    }
+
+    @Override
+    public List<Commodity> snapshot() {
+        if (overlayChanged) {
+            overlaySnapshot = Map.copyOf(overlay);
+            overlayChanged = false;
+        }
+        return new CommodityList(added.snapshot(), overlaySnapshot);
+    }
+
+    @Override
+    public void add(Commodity commodity) {
+        added.add(commodity);
+    }
+
+    /**
+     * Writes a change of price and stock alone through to the record of a mapped commodity. Any other
+     * change, and every change of a commodity already in the overlay, puts {@code updated} in the
+     * overlay.
+     */
+    @Override
+    public boolean update(Commodity commodity, Commodity updated) {
+        if (commodity instanceof MappedCommodity mapped && mapped.getCatalog() == this) {
+            Commodity successor = successor(mapped.getIndex());
+            if (successor != null)
+                return update(successor, updated);
+            if (!CommodityCatalog.movesIndexEntries(commodity, updated)
+                    && Objects.equals(commodity.getImage(), updated.getImage())) {
+                commodity.setPrice(updated.getPrice());
+                commodity.setInStock(updated.getInStock());
+                return true;
+            }
+
+            updated.setInitRate(commodity.getInitRate());
+            return overlay(mapped.getIndex(), commodity, updated, false);
+        }
+
+        Integer index = overlayIndexes.get(commodity);
+        return index == null ? added.update(commodity, updated) : overlay(index, commodity, updated, false);
+    }
+
+    /**
+     * Puts {@code updated}, a changed copy of {@code commodity}, in its place in the overlay; stock
+     * written to {@code commodity} meanwhile moves over.
+     *
+     * @return {@code false}, without changing anything, if {@code commodity} is not a current mapped
+     * commodity of this catalog or the overlay has no room for it
+     */
+    boolean overlay(Commodity commodity, Commodity updated) {
+        if (!(commodity instanceof MappedCommodity mapped) || mapped.getCatalog() != this
+                || successor(mapped.getIndex()) != null)
+            return false;
+        return overlay(mapped.getIndex(), commodity, updated, true);
+    }
+
+    /**
+     * Retires {@code commodity}, the current commodity of record {@code index}, in favour of
+     * {@code updated}. A changed id stays out of the overlay, as the id table cannot find it.
+     */
+    private boolean overlay(int index, Commodity commodity, Commodity updated, boolean moveStock) {
+        boolean fresh = commodity instanceof MappedCommodity;
+        if (!Objects.equals(id(index), updated.getId()) || fresh && overlay.size() >= maxOverlay)
+            return false;
+
+        commodity.retire(updated, moveStock);
+        successors.set(index, updated);
+        if (!fresh)
+            overlayIndexes.remove(commodity);
+        overlayIndexes.put(updated, index);
+        overlay.put(index, updated);
+        overlayChanged = true;
+        return true;
+    }
+
+    /**
+     * Returns the current commodity of record {@code index}: its view, or the commodity that took its
+     * place in the overlay.
+     */
+    private Commodity current(int index) {
+        Commodity successor = successor(index);
+        return successor == null ? view(index) : successor;
+    }
+
+    @Override
+    public Commodity find(String commodityId) {
+        if (commodityId == null)
+            return null;
+
+        for (int slot = mix(commodityId.hashCode()) & idTableMask; ; slot = (slot + 1) & idTableMask) {
+            int entry = records.getInt(idTableOffset + (long) slot * Integer.BYTES);
+            if (entry == 0)
+                return added.find(commodityId);
+            if (commodityId.equals(id(entry - 1)))
+                return current(entry - 1);
+        }
+    }
+
+    @Override
+    public List<Commodity> findByProvider(String providerId) {
+        Posting posting = providerId == null ? null : providerPostings.get(providerId);
+        List<Commodity> tail = added.findByProvider(providerId);
+        if (overlay.isEmpty())
+            return new PostingList(posting, tail);
+
+        List<Commodity> result = withOverlay(postingIndexes(posting), index -> true,
+                commodity -> Objects.equals(providerId, commodity.getProviderId()));
+        result.addAll(tail);
+        return result;
+    }
+
+    @Override
+    public Set<Commodity> findByCategory(String category) {
+        Posting posting = category == null ? null : categoryPostings.get(category);
+        Set<Commodity> tail = added.findByCategory(category);
+        if (!overlay.isEmpty()) {
+            List<Commodity> result = withOverlay(postingIndexes(posting), index -> true,
+                    commodity -> commodity.getCategories().contains(category));
+            result.addAll(tail);
+            return Collections.unmodifiableSet(new LinkedHashSet<>(result));
+        }
+        if (posting == null)
+            return tail;
+
+        return new AbstractSet<>() {
+            @Override
+            public Iterator<Commodity> iterator() {
+                return new PostingList(posting, new ArrayList<>(tail)).iterator();
+            }
+
+            @Override
+            public int size() {
+                return posting.count() + tail.size();
+            }
+
+            @Override
+            public boolean contains(Object o) {
+                if (o instanceof MappedCommodity commodity && commodity.getCatalog() == MappedCommodityCatalog.this)
+                    return categories(commodity.getIndex()).contains(category);
+                return tail.contains(o);
+            }
+        };
+    }
+
+    /**
+     * Verifies the records of the rarest trigram of {@code query}, or, for a query shorter than a
+     * trigram, of every trigram that contains it.
+     */
+    @Override
+    public List<Commodity> findByName(String query) {
+        if (query.isEmpty())
+            return new ArrayList<>(commodities);
+
+        List<Commodity> result = withOverlay(nameCandidates(query), index -> {
+            String name = name(index);
+            return name != null && name.contains(query);
+        }, commodity -> commodity.getName() != null && commodity.getName().contains(query));
+        result.addAll(added.findByName(query));
+        return result;
+    }
+
+    private PrimitiveIterator.OfInt nameCandidates(String query) {
+        if (query.length() < GRAM_LENGTH) {
+            BitSet candidates = new BitSet();
+            gramPostings.forEach((gram, posting) -> {
+                if (gram.contains(query))
+                    postingIndexes(posting).forEachRemaining((int index) -> candidates.set(index));
+            });
+            return candidates.stream().iterator();
+        }
+
+        Posting rarest = null;
+        for (String gram : grams(query)) {
+            Posting posting = gramPostings.get(gram);
+            if (posting == null)
+                return IntStream.empty().iterator();
+            if (rarest == null || posting.count() < rarest.count())
+                rarest = posting;
+        }
+        return postingIndexes(rarest);
+    }
+
+    private PrimitiveIterator.OfInt postingIndexes(Posting posting) {
+        if (posting == null)
+            return IntStream.empty().iterator();
+        return IntStream.range(0, posting.count())
+                .map(i -> records.getInt(posting.offset() + (long) i * Integer.BYTES)).iterator();
+    }
+
+    /**
+     * Merges the records of {@code indexes}, in ascending order, that pass {@code recordMatches} with
+     * the overlay commodities that pass {@code overlayMatches}, in record order. Overlaid records are
+     * left out.
+     */
+    private List<Commodity> withOverlay(PrimitiveIterator.OfInt indexes, IntPredicate recordMatches,
+                                        Predicate<Commodity> overlayMatches) {
+        List<Commodity> result = new ArrayList<>();
+        Iterator<Map.Entry<Integer, Commodity>> overlaid = overlay.entrySet().iterator();
+        Map.Entry<Integer, Commodity> next = overlaid.hasNext() ? overlaid.next() : null;
+        while (indexes.hasNext()) {
+            int index = indexes.nextInt();
+            for (; next != null && next.getKey() < index; next = overlaid.hasNext() ? overlaid.next() : null)
+                if (overlayMatches.test(next.getValue()))
+                    result.add(next.getValue());
+            if ((next == null || next.getKey() != index) && recordMatches.test(index))
+                result.add(view(index));
+        }
+        for (; next != null; next = overlaid.hasNext() ? overlaid.next() : null)
+            if (overlayMatches.test(next.getValue()))
+                result.add(next.getValue());
+        return result;
+    }
+
+    @Override
+    public List<Commodity> findByNamePrefix(String prefix, int limit) {
+        String from = prefix.toLowerCase(Locale.ROOT);
+        return findByName(from, 0, limit, from, withRenamed(from, from, added.findByNamePrefix(prefix, limit)));
+    }
+
+    @Override
+    public List<Commodity> findByNameFrom(String from, int skip, int limit) {
+        return findByName(from, skip, limit, null, withRenamed(from, null,
+                added.findByNameFrom(from, 0, skip + limit)));
+    }
+
+    /**
+     * Merges {@code tail}, added commodities in name order, with the overlay commodities whose name is no
+     * longer that of their record, from {@code from} and with {@code prefix} if it is not null. Overlay
+     * commodities come before added ones of equal name.
+     */
+    private List<Commodity> withRenamed(String from, String prefix, List<Commodity> tail) {
+        if (overlay.isEmpty())
+            return tail;
+
+        List<Commodity> renamed = new ArrayList<>();
+        for (Map.Entry<Integer, Commodity> entry : overlay.entrySet()) {
+            String name = lower(entry.getValue().getName());
+            if (name != null && !name.equals(lower(name(entry.getKey()))) && name.compareTo(from) >= 0
+                    && (prefix == null || name.startsWith(prefix)))
+                renamed.add(entry.getValue());
+        }
+        if (renamed.isEmpty())
+            return tail;
+
+        renamed.addAll(tail);
+        renamed.sort(Comparator.comparing(commodity -> lower(commodity.getName())));
+        return renamed;
+    }
+
+    private static String lower(String name) {
+        return name == null ? null : name.toLowerCase(Locale.ROOT);
+    }
+
+    /**
+     * Merges the name order of the mapped commodities from {@code from} with {@code tail}, the other
+     * commodities from {@code from} in name order. Mapped commodities come before the others of equal
+     * name; an overlay commodity that kept the name of its record takes the record's place.
+     */
+    private List<Commodity> findByName(String from, int skip, int limit, String prefix, List<Commodity> tail) {
+        int low = 0;
+        int high = nameOrderCount;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (lowerName(middle).compareTo(from) < 0)
+                low = middle + 1;
+            else
+                high = middle;
+        }
+
+        List<Commodity> result = new ArrayList<>();
+        int next = 0;
+        int skipped = 0;
+        while (result.size() < limit) {
+            String mapped = low < nameOrderCount ? lowerName(low) : null;
+            if (mapped != null && prefix != null && !mapped.startsWith(prefix))
+                mapped = null;
+
+            Commodity commodity;
+            String name;
+            if (next < tail.size() && (mapped == null
+                    || tail.get(next).getName().toLowerCase(Locale.ROOT).compareTo(mapped) < 0)) {
+                commodity = tail.get(next++);
+                name = commodity.getName().toLowerCase(Locale.ROOT);
+            } else if (mapped != null) {
+                commodity = current(nameOrder(low++));
+                name = mapped;
+                if (!(commodity instanceof MappedCommodity) && !name.equals(lower(commodity.getName())))
+                    continue;
+            } else {
+                break;
+            }
+
+            if (skipped < skip && name.equals(from)) {
+                skipped++;
+                continue;
+            }
+            result.add(commodity);
+        }
+
+        return result;
+    }
+
+    private Commodity view(int index) {
+        return new MappedCommodity(this, index);
+    }
+
+    private int nameOrder(int position) {
+        return records.getInt(nameOrderOffset + (long) position * Integer.BYTES);
+    }
+
+    private String lowerName(int position) {
+        return name(nameOrder(position)).toLowerCase(Locale.ROOT);
+    }
+
+    private static long record(int index) {
+        return HEADER_SIZE + (long) index * RECORD_SIZE;
+    }
+
+    private String string(long ref) {
+        if (ref == NULL_REF)
+            return null;
+
+        byte[] bytes = new byte[strings.getInt(ref)];
+        strings.getBytes(ref + Integer.BYTES, bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    String id(int index) {
+        return string(records.getLong(record(index) + ID));
+    }
+
+    String name(int index) {
+        return string(records.getLong(record(index) + NAME));
+    }
+
+    String image(int index) {
+        return string(records.getLong(record(index) + IMAGE));
+    }
+
+    String providerId(int index) {
+        int provider = records.getInt(record(index) + PROVIDER);
+        return provider < 0 ? null : providerIds[provider];
+    }
+
+    ArrayList<String> categories(int index) {
+        long ref = records.getLong(record(index) + CATEGORIES);
+        int size = strings.getInt(ref);
+        ArrayList<String> categories = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            int category = strings.getInt(ref + (long) (i + 1) * Integer.BYTES);
+            categories.add(category < 0 ? null : categoryNames[category]);
+        }
+        return categories;
+    }
+
+    int price(int index) {
+        return records.getIntVolatile(record(index) + PRICE);
+    }
+
+    void setPrice(int index, int price) {
+        records.setIntVolatile(record(index) + PRICE, price);
+    }
+
+    float rating(int index) {
+        return Float.intBitsToFloat(records.getIntVolatile(record(index) + RATING));
+    }
+
+    void setRating(int index, float rating) {
+        records.setIntVolatile(record(index) + RATING, Float.floatToRawIntBits(rating));
+    }
+
+    float initRate(int index) {
+        return Float.intBitsToFloat(records.getInt(record(index) + INIT_RATE));
+    }
+
+    int inStock(int index) {
+        int current = records.getIntVolatile(record(index) + IN_STOCK);
+        return current == RETIRED ? successors.get(index).getInStock() : current;
+    }
+
+    void setInStock(int index, int inStock) {
+        long position = record(index) + IN_STOCK;
+        int current;
+        do {
+            current = records.getIntVolatile(position);
+            if (current == RETIRED) {
+                successors.get(index).setInStock(inStock);
+                return;
+            }
+        } while (!records.compareAndSetInt(position, current, inStock));
+    }
+
+    boolean tryUpdateInStock(int index, int amount) {
+        long position = record(index) + IN_STOCK;
+        int current;
+        do {
+            current = records.getIntVolatile(position);
+            if (current == RETIRED)
+                return successors.get(index).tryUpdateInStock(amount);
+            if (current + amount < 0)
+                return false;
+        } while (!records.compareAndSetInt(position, current, current + amount));
+
+        return true;
+    }
+
+    /**
+     * Hands record {@code index} over to {@code successor}, see {@link Commodity#retire}. Its rates move
+     * now, or under their lock by the first writer that finds the record retired, and its stock moves
+     * in the compare-and-set that retires it.
+     */
+    void retire(int index, Commodity successor, boolean moveStock) {
+        AtomicReferenceArray<Commodity> array = successors;
+        if (array == null)
+            successors = array = new AtomicReferenceArray<>(count);
+        array.set(index, successor);
+
+        RatingState state = ratings.get(index);
+        if (state == null) {
+            successor.setRating(rating(index));
+        } else {
+            synchronized (state) {
+                movedRates(index, state);
+            }
+        }
+
+        long position = record(index) + IN_STOCK;
+        int current;
+        do {
+            current = records.getIntVolatile(position);
+            if (moveStock)
+                successor.setInStock(current);
+        } while (!records.compareAndSetInt(position, current, RETIRED));
+    }
+
+    /**
+     * Returns the commodity record {@code index} was handed over to, or {@code null} if it is not retired.
+     */
+    Commodity successor(int index) {
+        AtomicReferenceArray<Commodity> array = successors;
+        return array == null ? null : array.get(index);
+    }
+
+    /**
+     * Asks the owner of the catalog to put {@code updated} in the place of {@code commodity}, a view of
+     * this catalog, in the overlay or by rebuilding it: a record has no room for a changed id, name,
+     * provider, category list, image or initial rate.
+     *
+     * @return {@code false} if {@code commodity} is no longer in the owner's catalog
+     */
+    boolean replace(MappedCommodity commodity, Commodity updated) {
+        return replacer.test(commodity, updated);
+    }
+
+    /**
+     * Returns the commodity the rates of record {@code index} moved to, moving them first if the record
+     * is retired and nobody has yet, or {@code null} if it is not retired. Called under the lock of
+     * {@code state}.
+     */
+    Commodity movedRates(int index, RatingState state) {
+        if (state.successor == null) {
+            Commodity successor = successor(index);
+            if (successor == null)
+                return null;
+
+            successor.setUserRate(state.userRate.asMap(Integer::valueOf));
+            successor.setRating(rating(index));
+            state.successor = successor;
+        }
+        return state.successor;
+    }
+
+    long version(int index) {
+        return records.getLongVolatile(record(index) + VERSION);
+    }
+
+    void bumpVersion(int index) {
+        records.getAndAddLong(record(index) + VERSION, 1);
+    }
+
+    RatingState ratingState(int index) {
+        return ratings.computeIfAbsent(index, i -> new RatingState());
+    }
+
+    Map<String, Integer> userRate(int index) {
+        RatingState state = ratings.get(index);
+        if (state == null) {
+            Commodity successor = successor(index);
+            return successor == null ? Map.of() : successor.getUserRate();
+        }
+
+        Commodity successor;
+        synchronized (state) {
+            successor = movedRates(index, state);
+            if (successor == null)
+                return Map.copyOf(state.userRate.asMap(Integer::valueOf));
+        }
+        return successor.getUserRate();
+    }
+
+    void setUserRate(int index, Map<String, Integer> userRate) {
+        RatingState state = ratingState(index);
+        Commodity successor;
+        synchronized (state) {
+            successor = movedRates(index, state);
+            if (successor == null) {
+                state.userRate = new CompactByteMap<>();
+                state.userRateSum = 0;
+                for (Map.Entry<String, Integer> entry : userRate.entrySet()) {
+                    state.userRate.put(entry.getKey(), entry.getValue().byteValue());
+                    state.userRateSum += entry.getValue();
+                }
+                return;
+            }
+        }
+        successor.setUserRate(userRate);
+    }
+
+    /**
+     * The mapped commodities followed by {@code tail}, the ones added since the catalog was built. A
+     * snapshot holds the overlay as it was; the live list, with a null {@code overlay}, follows it.
+     */
+    private class CommodityList extends AbstractList<Commodity> implements RandomAccess {
+        private final List<Commodity> tail;
+        private final Map<Integer, Commodity> overlay;
+
+        CommodityList(List<Commodity> tail, Map<Integer, Commodity> overlay) {
+            this.tail = tail;
+            this.overlay = overlay;
+        }
+
+        @Override
+        public Commodity get(int index) {
+            Objects.checkIndex(index, size());
+            if (index >= count)
+                return tail.get(index - count);
+            if (overlay == null)
+                return current(index);
+            return overlay.isEmpty() ? view(index) : overlay.getOrDefault(index, view(index));
+        }
+
+        @Override
+        public int size() {
+            return count + tail.size();
+        }
+    }
+
+    /**
+     * The commodities of a mapped posting followed by the matching commodities added since.
+     */
+    private class PostingList extends AbstractList<Commodity> {
+        private final Posting posting;
+        private final List<Commodity> tail;
+
+        PostingList(Posting posting, List<Commodity> tail) {
+            this.posting = posting;
+            this.tail = tail;
+        }
+
+        @Override
+        public Commodity get(int index) {
+            Objects.checkIndex(index, size());
+            int mapped = posting == null ? 0 : posting.count();
+            if (index >= mapped)
+                return tail.get(index - mapped);
+
+            return view(records.getInt(posting.offset() + (long) index * Integer.BYTES));
+        }
+
+        @Override
+        public int size() {
+            return (posting == null ? 0 : posting.count()) + tail.size();
+        }
+
+        /**
+         * Walks the mapped posting by index and then the tail with its own iterator, as a heap posting
+         * can only be walked.
+         */
+        @Override
+        public Iterator<Commodity> iterator() {
+            int mapped = posting == null ? 0 : posting.count();
+            Iterator<Commodity> rest = tail.iterator();
+            return new Iterator<>() {
+                private int index;
+
+                @Override
+                public boolean hasNext() {
+                    return index < mapped || rest.hasNext();
+                }
+
+                @Override
+                public Commodity next() {
+                    if (index < mapped)
+                        return view(records.getInt(posting.offset() + (long) index++ * Integer.BYTES));
+                    return rest.next();
+                }
+            };
+        }
+    }
+
+    /**
+     * Assigns dense ids to category names or provider ids and collects their postings while building.
+     */
+    private static class Dictionary {
+        private final Map<String, Integer> ids = new HashMap<>();
+        private final List<String> names = new ArrayList<>();
+        private final List<int[]> postingValues = new ArrayList<>();
+        private final List<Integer> postingSizes = new ArrayList<>();
+        private final Map<String, Posting> postings = new HashMap<>();
+
+        int add(String name, int index) {
+            int id = ids.computeIfAbsent(name, n -> {
+                names.add(n);
+                postingValues.add(new int[4]);
+                postingSizes.add(0);
+                return names.size() - 1;
+            });
+
+            int size = postingSizes.get(id);
+            int[] values = postingValues.get(id);
+            if (size > 0 && values[size - 1] == index)
+                return id;
+            if (size == values.length)
+                postingValues.set(id, values = Arrays.copyOf(values, size * 2));
+            values[size] = index;
+            postingSizes.set(id, size + 1);
+            return id;
+        }
+
+        long writePostings(DataOutputStream out, long position) throws IOException {
+            for (int id = 0; id < names.size(); id++) {
+                int size = postingSizes.get(id);
+                postings.put(names.get(id), new Posting(position, size));
+                int[] values = postingValues.get(id);
+                for (int i = 0; i < size; i++)
+                    out.writeInt(values[i]);
+                position += (long) size * Integer.BYTES;
+            }
+            return position;
+        }
+
+        String[] names() {
+            return names.toArray(String[]::new);
+        }
+    }
+
+    /**
+     * Appends length-prefixed strings and int lists, each aligned to four bytes, and returns their offsets.
+     */
+    private static class StringsWriter implements Closeable {
+        private final DataOutputStream out;
+        private long position;
+
+        StringsWriter(Path path) throws IOException {
+            out = open(path);
+        }
+
+        long putString(String value) throws IOException {
+            if (value == null)
+                return NULL_REF;
+
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            long ref = position;
+            out.writeInt(bytes.length);
+            out.write(bytes);
+            position += Integer.BYTES + bytes.length;
+            while (position % Integer.BYTES != 0) {
+                out.write(0);
+                position++;
+            }
+            return ref;
+        }
+
+        long putInts(int[] values) throws IOException {
+            long ref = position;
+            out.writeInt(values.length);
+            for (int value : values)
+                out.writeInt(value);
+            position += (long) (values.length + 1) * Integer.BYTES;
+            return ref;
+        }
+
+        @Override
+        public void close() throws IOException {
+            out.close();
+        }
+    }
+}
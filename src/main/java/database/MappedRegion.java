@@ -0,0 +1,95 @@
+package database;
+
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * A file mapped read-write in {@link #CHUNK_SIZE} windows, so it may be larger than a single
+ * {@link MappedByteBuffer}. Values must be aligned to their own size, which keeps every value inside
+ * one window; byte ranges may cross windows.
+ */
+final class MappedRegion {
+    static final long CHUNK_SIZE = 1L << 30;
+
+    private static final VarHandle INTS = MethodHandles.byteBufferViewVarHandle(int[].class, ByteOrder.BIG_ENDIAN);
+    private static final VarHandle LONGS = MethodHandles.byteBufferViewVarHandle(long[].class, ByteOrder.BIG_ENDIAN);
+
+    private final MappedByteBuffer[] chunks;
+
+    private MappedRegion(MappedByteBuffer[] chunks) {
+        this.chunks = chunks;
+    }
+
+    static MappedRegion map(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            long size = channel.size();
+            MappedByteBuffer[] chunks = new MappedByteBuffer[(int) ((size + CHUNK_SIZE - 1) / CHUNK_SIZE)];
+            for (int i = 0; i < chunks.length; i++) {
+                long position = i * CHUNK_SIZE;
+                chunks[i] = channel.map(FileChannel.MapMode.READ_WRITE, position, Math.min(CHUNK_SIZE, size - position));
+            }
+            return new MappedRegion(chunks);
+        }
+    }
+
+    int getInt(long position) {
+        return chunk(position).getInt(offset(position));
+    }
+
+    void putInt(long position, int value) {
+        chunk(position).putInt(offset(position), value);
+    }
+
+    long getLong(long position) {
+        return chunk(position).getLong(offset(position));
+    }
+
+    int getIntVolatile(long position) {
+        return (int) INTS.getVolatile(chunk(position), offset(position));
+    }
+
+    void setIntVolatile(long position, int value) {
+        INTS.setVolatile(chunk(position), offset(position), value);
+    }
+
+    long getLongVolatile(long position) {
+        return (long) LONGS.getVolatile(chunk(position), offset(position));
+    }
+
+    void setLongVolatile(long position, long value) {
+        LONGS.setVolatile(chunk(position), offset(position), value);
+    }
+
+    long getAndAddLong(long position, long delta) {
+        return (long) LONGS.getAndAdd(chunk(position), offset(position), delta);
+    }
+
+    boolean compareAndSetInt(long position, int expected, int value) {
+        return INTS.compareAndSet(chunk(position), offset(position), expected, value);
+    }
+
+    void getBytes(long position, byte[] destination) {
+        int copied = 0;
+        while (copied < destination.length) {
+            MappedByteBuffer chunk = chunk(position + copied);
+            int offset = offset(position + copied);
+            int length = Math.min(destination.length - copied, chunk.capacity() - offset);
+            chunk.get(offset, destination, copied, length);
+            copied += length;
+        }
+    }
+
+    private MappedByteBuffer chunk(long position) {
+        return chunks[(int) (position / CHUNK_SIZE)];
+    }
+
+    private static int offset(long position) {
+        return (int) (position % CHUNK_SIZE);
+    }
+}
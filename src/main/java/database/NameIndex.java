@@ -0,0 +1,139 @@
+package database;
+
+import model.Commodity;
+import utils.Posting;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+/**
+ * Commodity name index. Every substring of up to {@link #MAX_GRAM_LENGTH} characters of a name is
+ * a key of an n-gram posting list, so short queries are a single lookup and longer ones only verify
+ * the candidates of their rarest n-gram. A sorted map of lower-cased names serves prefix queries and
+ * listings in name order.
+ * Writers are serialized by {@link Database}; queries do not lock.
+ */
+class NameIndex {
+    private static final int MAX_GRAM_LENGTH = 3;
+
+    private final Map<String, Posting<Commodity>> commoditiesByGram = new ConcurrentHashMap<>();
+    private final NavigableMap<String, Posting<Commodity>> commoditiesByName = new ConcurrentSkipListMap<>();
+
+    void add(Commodity commodity) {
+        String name = commodity.getName();
+        if (name == null)
+            return;
+
+        for (String gram : grams(name))
+            commoditiesByGram.computeIfAbsent(gram, g -> new Posting<>()).add(commodity);
+        commoditiesByName.computeIfAbsent(name.toLowerCase(Locale.ROOT), n -> new Posting<>()).add(commodity);
+    }
+
+    /**
+     * Removes {@code commodity}, indexed under {@code name}, by leaving a tombstone in each posting that
+     * holds it. Postings it leaves empty are dropped.
+     */
+    void remove(Commodity commodity, String name) {
+        if (name == null)
+            return;
+
+        for (String gram : grams(name))
+            commoditiesByGram.computeIfPresent(gram, (g, posting) -> without(posting, commodity));
+        commoditiesByName.computeIfPresent(name.toLowerCase(Locale.ROOT), (n, posting) -> without(posting, commodity));
+    }
+
+    /**
+     * Puts {@code updated} in the place of {@code commodity}, which is indexed under {@code name}.
+     */
+    void replace(Commodity commodity, String name, Commodity updated) {
+        if (!Objects.equals(name, updated.getName())) {
+            remove(commodity, name);
+            add(updated);
+            return;
+        }
+        if (name == null)
+            return;
+
+        for (String gram : grams(name))
+            commoditiesByGram.get(gram).replace(commodity, updated);
+        commoditiesByName.get(name.toLowerCase(Locale.ROOT)).replace(commodity, updated);
+    }
+
+    private static Posting<Commodity> without(Posting<Commodity> posting, Commodity commodity) {
+        posting.remove(commodity);
+        return posting.isEmpty() ? null : posting;
+    }
+
+    List<Commodity> findBySubstring(String query) {
+        if (query.length() <= MAX_GRAM_LENGTH)
+            return new ArrayList<>(commoditiesByGram.getOrDefault(query, new Posting<>()));
+
+        Posting<Commodity> candidates = null;
+        for (int i = 0; i + MAX_GRAM_LENGTH <= query.length(); i++) {
+            Posting<Commodity> posting = commoditiesByGram.get(query.substring(i, i + MAX_GRAM_LENGTH));
+            if (posting == null)
+                return new ArrayList<>();
+            if (candidates == null || posting.size() < candidates.size())
+                candidates = posting;
+        }
+
+        List<Commodity> result = new ArrayList<>();
+        for (Commodity commodity : candidates)
+            if (commodity.getName().contains(query))
+                result.add(commodity);
+
+        return result;
+    }
+
+    List<Commodity> findByPrefix(String prefix, int limit) {
+        String from = prefix.toLowerCase(Locale.ROOT);
+        return findByName(from, 0, limit, from);
+    }
+
+    /**
+     * Returns up to {@code limit} commodities in order of lower-cased name, and in the order they were
+     * indexed among equal names, from the first name not less than {@code from}. The first {@code skip}
+     * commodities named {@code from} are left out.
+     */
+    List<Commodity> findFrom(String from, int skip, int limit) {
+        return findByName(from, skip, limit, null);
+    }
+
+    private List<Commodity> findByName(String from, int skip, int limit, String prefix) {
+        List<Commodity> result = new ArrayList<>();
+        for (Map.Entry<String, Posting<Commodity>> entry : commoditiesByName.tailMap(from, true).entrySet()) {
+            if (prefix != null && !entry.getKey().startsWith(prefix))
+                break;
+
+            int skipped = entry.getKey().equals(from) ? skip : 0;
+            for (Commodity commodity : entry.getValue()) {
+                if (skipped > 0) {
+                    skipped--;
+                    continue;
+                }
+                if (result.size() >= limit)
+                    return result;
+                result.add(commodity);
+            }
+        }
+
+        return result;
+    }
+
+    private static Set<String> grams(String name) {
+        Set<String> grams = new HashSet<>();
+        for (int i = 0; i < name.length(); i++)
+            for (int length = 1; length <= MAX_GRAM_LENGTH && i + length <= name.length(); length++)
+                grams.add(name.substring(i, i + length));
+
+        return grams;
+    }
+}
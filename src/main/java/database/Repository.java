@@ -0,0 +1,227 @@
+package database;
+
+import model.Comment;
+import model.Commodity;
+import model.Mutation;
+import model.Provider;
+import model.User;
+import utils.CursorPage;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Stream;
+
+/**
+ * Storage of users, providers, commodities and comments. {@link Database} keeps everything on the heap;
+ * {@link JdbcRepository} keeps it in an embedded database and only caches what is in use.
+ * <p>
+ * Entities are mutable and changed in place by the model, so a repository must hand out the same object
+ * for an entity for as long as anyone holds it. Every change made through the model is reported to
+ * {@link #mutated} after it is applied.
+ */
+public interface Repository {
+    List<User> getUsers();
+
+    List<Provider> getProviders();
+
+    List<Commodity> getCommodities();
+
+    List<Comment> getComments();
+
+    /**
+     * Returns a number that changes whenever a commodity is added, removed or replaced by a new instance,
+     * so results derived from the stored commodities can be cached against it.
+     */
+    long getCommoditiesVersion();
+
+    /**
+     * Returns the commodity list as of the last catalog write, without locking or copying.
+     */
+    CatalogSnapshot getCatalogSnapshot();
+
+    /**
+     * Returns the users in the order they were added, read as the stream is consumed, for callers that
+     * visit every user once, such as exports and snapshots.
+     */
+    default Stream<User> streamUsers() {
+        return getUsers().stream();
+    }
+
+    /**
+     * Returns the providers in the order they were added, read as the stream is consumed.
+     */
+    default Stream<Provider> streamProviders() {
+        return getProviders().stream();
+    }
+
+    /**
+     * Returns the comments in order of id, read as the stream is consumed.
+     */
+    default Stream<Comment> streamComments() {
+        return getComments().stream();
+    }
+
+    /**
+     * Returns the commodities in the order they were added, read as the stream is consumed, for callers
+     * that visit every commodity once, such as listings, exports and snapshots.
+     */
+    default Stream<Commodity> streamCommodities() {
+        return getCatalogSnapshot().commodities().stream();
+    }
+
+    /**
+     * Returns up to {@code limit} commodities in the order they were added, following position
+     * {@code after} of that order, where position 0 comes before the first commodity. The next cursor of
+     * the page is the position to continue from, or {@code null} if no commodity follows. Positions grow
+     * along the order but need not be consecutive.
+     */
+    default CursorPage<Commodity> findCommoditiesAfter(long after, int limit) {
+        List<Commodity> commodities = getCatalogSnapshot().commodities();
+        int from = (int) Math.min(after, commodities.size());
+        int to = (int) Math.min((long) from + limit, commodities.size());
+        return new CursorPage<>(new ArrayList<>(commodities.subList(from, to)),
+                to < commodities.size() ? String.valueOf(to) : null);
+    }
+
+    void setUsers(List<User> users);
+
+    void setProviders(List<Provider> providers);
+
+    void setCommodities(List<Commodity> commodities);
+
+    void setComments(List<Comment> comments);
+
+    /**
+     * Adds {@code user} unless its username is already taken.
+     *
+     * @return whether the user was added
+     */
+    boolean addUser(User user);
+
+    /**
+     * Adds each of {@code users} whose username is not taken, as one write that waits for the write-ahead
+     * log once.
+     *
+     * @return the number of users added
+     */
+    default int addUsers(List<User> users) {
+        int added = 0;
+        for (User user : users)
+            if (addUser(user))
+                added++;
+        return added;
+    }
+
+    void addProvider(Provider provider);
+
+    /**
+     * Adds each of {@code providers} whose id is not stored yet, as one write that waits for the
+     * write-ahead log once.
+     *
+     * @return the number of providers added
+     */
+    default int addProviders(List<Provider> providers) {
+        int added = 0;
+        for (Provider provider : providers) {
+            if (findProvider(provider.getId()) == null) {
+                addProvider(provider);
+                added++;
+            }
+        }
+        return added;
+    }
+
+    void addCommodity(Commodity commodity);
+
+    /**
+     * Brings the stored commodity with {@code updated}'s id in line with {@code updated}, or adds
+     * {@code updated} if there is no such commodity.
+     *
+     * @return whether anything changed
+     */
+    boolean updateCommodity(Commodity updated);
+
+    /**
+     * Applies {@link #updateCommodity} to each of {@code updates} in order.
+     *
+     * @return the number of commodities added or changed
+     */
+    default int updateCommodities(List<Commodity> updates) {
+        int changed = 0;
+        for (Commodity updated : updates)
+            if (updateCommodity(updated))
+                changed++;
+        return changed;
+    }
+
+    /**
+     * Appends {@code comment} and assigns it the next comment id.
+     */
+    void addComment(Comment comment);
+
+    /**
+     * Appends each of {@code comments} in order and assigns them the next comment ids, as one write that
+     * waits for the write-ahead log once.
+     */
+    default void addComments(List<Comment> comments) {
+        for (Comment comment : comments)
+            addComment(comment);
+    }
+
+    User findUser(String username);
+
+    Provider findProvider(String providerId);
+
+    Commodity findCommodity(String commodityId);
+
+    Comment findComment(int commentId);
+
+    List<String> findProviderIdsByName(String name);
+
+    List<Commodity> findCommoditiesByProvider(String providerId);
+
+    Set<Commodity> findCommoditiesByCategory(String category);
+
+    List<Commodity> findCommoditiesByName(String query);
+
+    List<Commodity> findCommoditiesByNamePrefix(String prefix, int limit);
+
+    /**
+     * Returns up to {@code limit} named commodities in order of lower-cased name, from the first name not
+     * less than {@code from}, leaving out the first {@code skip} of those named {@code from}.
+     */
+    List<Commodity> findCommoditiesByNameFrom(String from, int skip, int limit);
+
+    List<Comment> findCommentsByCommodity(int commodityId);
+
+    /**
+     * Returns whether a lookup may wait on I/O, such as a round trip to a database, so that independent
+     * lookups are worth running concurrently.
+     */
+    default boolean isBlocking() {
+        return false;
+    }
+
+    /**
+     * Returns the mark left by {@link #markDurable} if nothing was written since, so the data set can be
+     * taken from the repository's own storage instead of being loaded into it, or null. Repositories
+     * that keep nothing across restarts always return null.
+     */
+    default DurableMark getDurableMark() {
+        return null;
+    }
+
+    /**
+     * Makes everything stored so far durable and marks it as the data set after log record
+     * {@code sequence}. Called once no more mutations are logged, as the mark is dropped by the next write.
+     */
+    default void markDurable(long sequence) {
+    }
+
+    /**
+     * Called after {@code mutation} was applied to the entities it names, while they are still locked.
+     */
+    default void mutated(Mutation mutation) {
+    }
+}
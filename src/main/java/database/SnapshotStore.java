@@ -0,0 +1,447 @@
+package database;
+
+import model.Comment;
+import model.Commodity;
+import model.Provider;
+import model.User;
+
+import java.io.IOException;
+import java.nio.BufferOverflowException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Function;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+/**
+ * Binary snapshot of a whole {@link Repository}, used to restart without re-parsing the JSON data files.
+ * <p>
+ * The file starts with a magic number, a format version and the sequence number of the last
+ * {@link WriteAheadLog} record the snapshot includes, followed by the users, providers,
+ * commodities and comments sections. Each record is its payload length followed by the payload, so a
+ * reader can always tell where the next record starts, and a section ends with a length of -1, so a
+ * section can be written from a stream without counting it first. A CRC32 of everything before it
+ * closes the file. Snapshots are written to a temporary file and moved into place, and read through
+ * memory-mapped windows.
+ * <p>
+ * Only the entities are stored. Loading decodes them faster than Jackson parses the JSON files and
+ * stores them in parallel per entity type; the commodity catalog builds its provider, category and name
+ * indexes on the first lookup that needs them rather than while the snapshot is loaded.
+ */
+public class SnapshotStore {
+    public static final String PATH_PROPERTY = "baloot.snapshot.path";
+
+    private static final int MAGIC = 0x42414C54;
+    private static final int FORMAT_VERSION = 1;
+    private static final int END_OF_SECTION = -1;
+    private static final int WRITE_BUFFER_SIZE = 1 << 20;
+    private static final int MAP_WINDOW_SIZE = 64 << 20;
+
+    private final Repository database;
+    private final Path path;
+
+    public SnapshotStore(Repository database, Path path) {
+        this.database = database;
+        this.path = path;
+    }
+
+    /**
+     * Returns the path set with {@value #PATH_PROPERTY}, or {@code baloot.snapshot} in the
+     * {@link DataDirectory}.
+     */
+    public static Path defaultPath() {
+        String path = System.getProperty(PATH_PROPERTY);
+        return path == null ? DataDirectory.resolve("baloot.snapshot") : Paths.get(path);
+    }
+
+    public boolean exists() {
+        return Files.isRegularFile(path);
+    }
+
+    public long lastModified() throws IOException {
+        return Files.getLastModifiedTime(path).toMillis();
+    }
+
+    /**
+     * Writes the current content of the database, recording that it includes every log record up to
+     * {@code sequence}. Every section is streamed from the database, so a database kept off the heap is
+     * never held in memory at once.
+     */
+    public void save(long sequence) throws IOException {
+        if (path.getParent() != null)
+            Files.createDirectories(path.getParent());
+        Path temporary = path.resolveSibling(path.getFileName() + ".tmp");
+        try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            RecordWriter writer = new RecordWriter(channel);
+            writer.buffer.putInt(MAGIC).putInt(FORMAT_VERSION).putLong(sequence);
+            try (Stream<User> users = database.streamUsers()) {
+                writeSection(writer, users::iterator, SnapshotStore::writeUser);
+            }
+            try (Stream<Provider> providers = database.streamProviders()) {
+                writeSection(writer, providers::iterator, SnapshotStore::writeProvider);
+            }
+            try (Stream<Commodity> commodities = database.streamCommodities()) {
+                writeSection(writer, commodities::iterator, SnapshotStore::writeCommodity);
+            }
+            try (Stream<Comment> comments = database.streamComments()) {
+                writeSection(writer, comments::iterator, SnapshotStore::writeComment);
+            }
+            writer.finish();
+            channel.force(true);
+        }
+        Files.move(temporary, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Replaces the content of the database with the snapshot. Nothing is replaced if the snapshot is
+     * unreadable, has another format version or fails its checksum.
+     *
+     * @return the sequence number of the last log record included in the snapshot
+     */
+    public long load() throws IOException {
+        return load(new LoadTimings());
+    }
+
+    /**
+     * Like {@link #load()}, adding the time spent decoding the snapshot and storing it in the database to
+     * {@code timings}.
+     */
+    public long load(LoadTimings timings) throws IOException {
+        long start = System.nanoTime();
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            RecordReader reader = new RecordReader(channel);
+            if (reader.readInt() != MAGIC)
+                throw new IOException(path + " is not a snapshot");
+            int version = reader.readInt();
+            if (version != FORMAT_VERSION)
+                throw new IOException("Unsupported snapshot version " + version);
+            long sequence = reader.readLong();
+
+            List<User> users = readSection(reader, SnapshotStore::readUser);
+            List<Provider> providers = readSection(reader, SnapshotStore::readProvider);
+            List<Commodity> commodities = readSection(reader, SnapshotStore::readCommodity);
+            List<Comment> comments = readSection(reader, SnapshotStore::readComment);
+            reader.verifyChecksum();
+
+            timings.add(LoadTimings.Phase.PARSE, System.nanoTime() - start);
+            timings.time(LoadTimings.Phase.INDEX, () -> {
+                CompletableFuture.allOf(
+                        CompletableFuture.runAsync(() -> database.setUsers(users)),
+                        CompletableFuture.runAsync(() -> database.setProviders(providers)),
+                        CompletableFuture.runAsync(() -> database.setCommodities(commodities)),
+                        CompletableFuture.runAsync(() -> database.setComments(comments))).join();
+                return null;
+            });
+            return sequence;
+        } catch (BufferUnderflowException | IndexOutOfBoundsException | IllegalArgumentException e) {
+            throw new IOException(path + " is corrupted", e);
+        }
+    }
+
+    private interface RecordEncoder<T> {
+        void write(ByteBuffer buffer, T entity);
+    }
+
+    private static <T> void writeSection(RecordWriter writer, Iterable<T> entities, RecordEncoder<T> encoder)
+            throws IOException {
+        for (T entity : entities)
+            writer.writeRecord(entity, encoder);
+        writer.ensure(4);
+        writer.buffer.putInt(END_OF_SECTION);
+    }
+
+    private static <T> List<T> readSection(RecordReader reader, Function<ByteBuffer, T> decoder)
+            throws IOException {
+        List<T> entities = new ArrayList<>();
+        for (int i = 0; ; i++) {
+            int length = reader.readInt();
+            if (length == END_OF_SECTION)
+                break;
+            ByteBuffer record = reader.read(length);
+            entities.add(decoder.apply(record));
+            if (record.hasRemaining())
+                throw new IOException("Record " + i + " has " + record.remaining() + " unread bytes");
+        }
+
+        return entities;
+    }
+
+    static void writeUser(ByteBuffer buffer, User user) {
+        putString(buffer, user.getUsername());
+        putString(buffer, user.getPassword());
+        putString(buffer, user.getEmail());
+        putString(buffer, user.getBirthDate());
+        putString(buffer, user.getAddress());
+        buffer.putFloat(user.getCredit());
+        Map<Integer, Integer> commoditiesRates = user.getCommoditiesRates();
+        buffer.putInt(commoditiesRates.size());
+        commoditiesRates.forEach((commodityId, rate) -> buffer.putInt(commodityId).putInt(rate));
+        putQuantities(buffer, user.getBuyList());
+        putQuantities(buffer, user.getPurchasedList());
+    }
+
+    static User readUser(ByteBuffer buffer) {
+        User user = new User(getString(buffer), getString(buffer), getString(buffer), getString(buffer),
+                getString(buffer));
+        user.setCredit(buffer.getFloat());
+        int rates = buffer.getInt();
+        Map<Integer, Integer> commoditiesRates = new HashMap<>();
+        for (int i = 0; i < rates; i++)
+            commoditiesRates.put(buffer.getInt(), buffer.getInt());
+        user.setCommoditiesRates(commoditiesRates);
+        user.setBuyList(getQuantities(buffer));
+        user.setPurchasedList(getQuantities(buffer));
+        return user;
+    }
+
+    static void writeProvider(ByteBuffer buffer, Provider provider) {
+        putString(buffer, provider.getId());
+        putString(buffer, provider.getName());
+        putString(buffer, provider.getRegistryDate());
+        putString(buffer, provider.getImage());
+    }
+
+    static Provider readProvider(ByteBuffer buffer) {
+        Provider provider = new Provider();
+        provider.setId(getString(buffer));
+        provider.setName(getString(buffer));
+        provider.setRegistryDate(getString(buffer));
+        provider.setImage(getString(buffer));
+        return provider;
+    }
+
+    static void writeCommodity(ByteBuffer buffer, Commodity commodity) {
+        putString(buffer, commodity.getId());
+        putString(buffer, commodity.getName());
+        putString(buffer, commodity.getProviderId());
+        buffer.putInt(commodity.getPrice());
+        buffer.putInt(commodity.getCategories().size());
+        for (String category : commodity.getCategories())
+            putString(buffer, category);
+        buffer.putFloat(commodity.getRating());
+        buffer.putFloat(commodity.getInitRate());
+        buffer.putInt(commodity.getInStock());
+        putString(buffer, commodity.getImage());
+        Map<String, Integer> userRate = commodity.getUserRate();
+        buffer.putInt(userRate.size());
+        userRate.forEach((username, rate) -> {
+            putString(buffer, username);
+            buffer.put(rate.byteValue());
+        });
+    }
+
+    static Commodity readCommodity(ByteBuffer buffer) {
+        Commodity commodity = new Commodity();
+        commodity.setId(getString(buffer));
+        commodity.setName(getString(buffer));
+        commodity.setProviderId(getString(buffer));
+        commodity.setPrice(buffer.getInt());
+        int categories = buffer.getInt();
+        for (int i = 0; i < categories; i++)
+            commodity.getCategories().add(getString(buffer));
+        commodity.setRating(buffer.getFloat());
+        commodity.setInitRate(buffer.getFloat());
+        commodity.setInStock(buffer.getInt());
+        commodity.setImage(getString(buffer));
+        int rates = buffer.getInt();
+        Map<String, Integer> userRate = new HashMap<>();
+        for (int i = 0; i < rates; i++)
+            userRate.put(getString(buffer), (int) buffer.get());
+        commodity.setUserRate(userRate);
+        return commodity;
+    }
+
+    static void writeComment(ByteBuffer buffer, Comment comment) {
+        buffer.putInt(comment.getId());
+        putString(buffer, comment.getUserEmail());
+        putString(buffer, comment.getUsername());
+        buffer.putInt(comment.getCommodityId());
+        putString(buffer, comment.getText());
+        putString(buffer, comment.getDate());
+        buffer.putInt(comment.getLike());
+        buffer.putInt(comment.getDislike());
+        Map<String, String> userVote = comment.getUserVote();
+        buffer.putInt(userVote.size());
+        userVote.forEach((username, vote) -> {
+            putString(buffer, username);
+            buffer.put((byte) (vote.equals("like") ? 1 : 0));
+        });
+    }
+
+    static Comment readComment(ByteBuffer buffer) {
+        Comment comment = new Comment();
+        comment.setId(buffer.getInt());
+        comment.setUserEmail(getString(buffer));
+        comment.setUsername(getString(buffer));
+        comment.setCommodityId(buffer.getInt());
+        comment.setText(getString(buffer));
+        comment.setDate(getString(buffer));
+        comment.setLike(buffer.getInt());
+        comment.setDislike(buffer.getInt());
+        int votes = buffer.getInt();
+        Map<String, String> userVote = new HashMap<>();
+        for (int i = 0; i < votes; i++)
+            userVote.put(getString(buffer), buffer.get() == 1 ? "like" : "dislike");
+        comment.setUserVote(userVote);
+        return comment;
+    }
+
+    private static void putQuantities(ByteBuffer buffer, Map<String, Integer> quantities) {
+        buffer.putInt(quantities.size());
+        quantities.forEach((commodityId, quantity) -> {
+            putString(buffer, commodityId);
+            buffer.putInt(quantity);
+        });
+    }
+
+    private static Map<String, Integer> getQuantities(ByteBuffer buffer) {
+        int size = buffer.getInt();
+        Map<String, Integer> quantities = new HashMap<>();
+        for (int i = 0; i < size; i++)
+            quantities.put(getString(buffer), buffer.getInt());
+        return quantities;
+    }
+
+    static void putString(ByteBuffer buffer, String value) {
+        if (value == null) {
+            buffer.putInt(-1);
+            return;
+        }
+
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        buffer.putInt(bytes.length).put(bytes);
+    }
+
+    static String getString(ByteBuffer buffer) {
+        int length = buffer.getInt();
+        if (length < 0)
+            return null;
+
+        String value = new String(buffer.array(), buffer.arrayOffset() + buffer.position(), length,
+                StandardCharsets.UTF_8);
+        buffer.position(buffer.position() + length);
+        return value;
+    }
+
+    /**
+     * Buffers records in a direct buffer and encodes each one in a growable scratch buffer, so its
+     * length is known before the record is copied out.
+     */
+    private static class RecordWriter {
+        private final FileChannel channel;
+        private final CRC32 checksum = new CRC32();
+        private ByteBuffer buffer = ByteBuffer.allocateDirect(WRITE_BUFFER_SIZE);
+        private ByteBuffer scratch = ByteBuffer.allocate(1024);
+
+        RecordWriter(FileChannel channel) {
+            this.channel = channel;
+        }
+
+        <T> void writeRecord(T entity, RecordEncoder<T> encoder) throws IOException {
+            while (true) {
+                try {
+                    scratch.clear();
+                    encoder.write(scratch, entity);
+                    break;
+                } catch (BufferOverflowException e) {
+                    scratch = ByteBuffer.allocate(scratch.capacity() * 2);
+                }
+            }
+            scratch.flip();
+            ensure(4 + scratch.remaining());
+            buffer.putInt(scratch.remaining()).put(scratch);
+        }
+
+        void ensure(int bytes) throws IOException {
+            if (buffer.remaining() >= bytes)
+                return;
+
+            flush();
+            if (buffer.capacity() < bytes)
+                buffer = ByteBuffer.allocateDirect(bytes);
+        }
+
+        void finish() throws IOException {
+            flush();
+            ByteBuffer trailer = ByteBuffer.allocate(8).putLong(checksum.getValue()).flip();
+            while (trailer.hasRemaining())
+                channel.write(trailer);
+        }
+
+        private void flush() throws IOException {
+            buffer.flip();
+            checksum.update(buffer.duplicate());
+            while (buffer.hasRemaining())
+                channel.write(buffer);
+            buffer.clear();
+        }
+    }
+
+    /**
+     * Reads the snapshot through read-only memory-mapped windows that are remapped as reading moves on,
+     * so snapshots larger than a single mapping can still be read. Records are copied into heap
+     * buffers before decoding.
+     */
+    private static class RecordReader {
+        private final FileChannel channel;
+        private final long dataSize;
+        private final CRC32 checksum = new CRC32();
+        private MappedByteBuffer window;
+        private long windowStart;
+        private long position;
+
+        RecordReader(FileChannel channel) throws IOException {
+            this.channel = channel;
+            this.dataSize = channel.size() - 8;
+            if (dataSize < 8)
+                throw new IOException("Snapshot is too short");
+        }
+
+        int readInt() throws IOException {
+            return read(4).getInt();
+        }
+
+        long readLong() throws IOException {
+            return read(8).getLong();
+        }
+
+        ByteBuffer read(int length) throws IOException {
+            if (length < 0 || position + length > dataSize)
+                throw new IOException("Snapshot is truncated");
+            if (window == null || position + length > windowStart + window.capacity()) {
+                windowStart = position;
+                window = channel.map(FileChannel.MapMode.READ_ONLY, windowStart,
+                        Math.min(dataSize - windowStart, Math.max(MAP_WINDOW_SIZE, length)));
+            }
+
+            byte[] bytes = new byte[length];
+            window.get((int) (position - windowStart), bytes);
+            checksum.update(bytes);
+            position += length;
+            return ByteBuffer.wrap(bytes);
+        }
+
+        void verifyChecksum() throws IOException {
+            if (position != dataSize)
+                throw new IOException("Snapshot has trailing data");
+            ByteBuffer trailer = ByteBuffer.allocate(8);
+            channel.read(trailer, dataSize);
+            if (trailer.flip().getLong() != checksum.getValue())
+                throw new IOException("Snapshot checksum does not match");
+        }
+    }
+}
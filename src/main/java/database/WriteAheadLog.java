@@ -0,0 +1,545 @@
+package database;
+
+import model.Mutation;
+import model.MutationLog;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.UncheckedIOException;
+import java.nio.BufferOverflowException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.Consumer;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only log of every {@link Mutation}, replayed on top of the {@link SnapshotStore snapshot} it
+ * continues when the service restarts.
+ * <p>
+ * The file starts with a magic number, a format version and the sequence number of the snapshot it
+ * continues. Each record is its payload length, its sequence number, the payload and a checksum: the
+ * CRC32 of the payload mixed with the sequence number, so a record torn by a crash is detected and
+ * ignored on replay.
+ * <p>
+ * Appending encodes and checksums the record before taking the lock, and under it only numbers the
+ * record and copies it into a buffer; a single flusher thread writes whatever has piled up since its
+ * last write in one go. Under {@link FsyncPolicy#ALWAYS} it forces the batch to disk and writers wait
+ * for that on a monitor of their own, so concurrent writers share one fsync instead of paying for one
+ * each, and waking them does not hold up appends.
+ */
+public class WriteAheadLog implements MutationLog, Closeable {
+    public static final String PATH_PROPERTY = "baloot.wal.path";
+    public static final String FSYNC_PROPERTY = "baloot.wal.fsync";
+    public static final String CHECKPOINT_PROPERTY = "baloot.wal.checkpoint.records";
+
+    public enum FsyncPolicy {
+        /** Every mutation waits until the batch holding it has been forced to disk. */
+        ALWAYS,
+        /** Mutations do not wait; written batches are forced to disk at most every {@link #FSYNC_INTERVAL_MILLIS}. */
+        INTERVAL,
+        /** Mutations do not wait and batches are left to the operating system until the log is closed. */
+        NEVER
+    }
+
+    public static final long FSYNC_INTERVAL_MILLIS = 100;
+    public static final long DEFAULT_CHECKPOINT_RECORDS = 100_000;
+
+    private static final int MAGIC = 0x4257414C;
+    private static final int FORMAT_VERSION = 1;
+    private static final int HEADER_SIZE = 16;
+    private static final int RECORD_OVERHEAD = 16;
+    private static final int INITIAL_BUFFER_SIZE = 64 << 10;
+    private static final int MAX_PENDING_BYTES = 16 << 20;
+
+    private static final byte USER_ADDED = 1;
+    private static final byte PROVIDER_ADDED = 2;
+    private static final byte COMMODITY_ADDED = 3;
+    private static final byte COMMENT_ADDED = 4;
+    private static final byte CREDIT_ADDED = 5;
+    private static final byte BUY_ITEM_ADDED = 6;
+    private static final byte BUY_ITEM_REMOVED = 7;
+    private static final byte CHECKED_OUT = 8;
+    private static final byte COMMODITY_RATED = 9;
+    private static final byte COMMENT_VOTED = 10;
+    private static final byte COMMODITY_UPDATED = 11;
+    private static final byte BUY_LIST_CHANGED = 12;
+
+    private final FileChannel channel;
+    private final FsyncPolicy policy;
+    private final Thread flusher;
+    private final Object lock = new Object();
+    private final Object durable = new Object();
+
+    private ByteBuffer pending = ByteBuffer.allocate(INITIAL_BUFFER_SIZE);
+    private long appended;
+    private long written;
+    private volatile long synced;
+    private boolean closed;
+    private volatile IOException failure;
+
+    private WriteAheadLog(FileChannel channel, long baseSequence, FsyncPolicy policy) {
+        this.channel = channel;
+        this.policy = policy;
+        this.appended = baseSequence;
+        this.written = baseSequence;
+        this.synced = baseSequence;
+        this.flusher = new Thread(this::flushLoop, "write-ahead-log-flusher");
+        this.flusher.setDaemon(true);
+        this.flusher.start();
+    }
+
+    /**
+     * Returns the path set with {@value #PATH_PROPERTY}, or {@code baloot.wal} in the {@link DataDirectory}.
+     */
+    public static Path defaultPath() {
+        String path = System.getProperty(PATH_PROPERTY);
+        return path == null ? DataDirectory.resolve("baloot.wal") : Paths.get(path);
+    }
+
+    public static FsyncPolicy defaultFsyncPolicy() {
+        return FsyncPolicy.valueOf(System.getProperty(FSYNC_PROPERTY, FsyncPolicy.ALWAYS.name()));
+    }
+
+    /**
+     * Returns the number of records set with {@value #CHECKPOINT_PROPERTY}, or
+     * {@value #DEFAULT_CHECKPOINT_RECORDS}, past which a recovered log is folded into a new snapshot
+     * instead of being continued.
+     */
+    public static long checkpointRecords() {
+        return Long.getLong(CHECKPOINT_PROPERTY, DEFAULT_CHECKPOINT_RECORDS);
+    }
+
+    /**
+     * Starts an empty log at {@code path} that continues the snapshot including every record up to
+     * {@code baseSequence}, replacing whatever the file held.
+     */
+    public static WriteAheadLog create(Path path, long baseSequence, FsyncPolicy policy) throws IOException {
+        if (path.getParent() != null)
+            Files.createDirectories(path.getParent());
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING);
+        try {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).putInt(MAGIC).putInt(FORMAT_VERSION)
+                    .putLong(baseSequence).flip();
+            while (header.hasRemaining())
+                channel.write(header);
+            channel.force(true);
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+
+        return new WriteAheadLog(channel, baseSequence, policy);
+    }
+
+    /**
+     * Continues the log at {@code path}, whose last intact record is {@code sequence}, after dropping
+     * whatever a crash left torn behind that record. Only logs of the current format can be continued.
+     */
+    public static WriteAheadLog open(Path path, long sequence, FsyncPolicy policy) throws IOException {
+        if (!isAppendable(path))
+            throw new IOException(path + " is not a write-ahead log of version " + FORMAT_VERSION);
+        Scan scan = scan(path, sequence, null);
+        if (scan.last() != sequence)
+            throw new IOException("Write-ahead log ends at record " + scan.last() + ", not " + sequence);
+
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.WRITE);
+        try {
+            channel.truncate(scan.end());
+            channel.position(scan.end());
+            channel.force(true);
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+
+        return new WriteAheadLog(channel, sequence, policy);
+    }
+
+    public static boolean hasRecords(Path path) throws IOException {
+        return Files.isRegularFile(path) && Files.size(path) > HEADER_SIZE;
+    }
+
+    /**
+     * Returns whether {@code path} holds a log that {@link #open} can continue.
+     */
+    public static boolean isAppendable(Path path) throws IOException {
+        if (!Files.isRegularFile(path) || Files.size(path) < HEADER_SIZE)
+            return false;
+
+        try (DataInputStream input = new DataInputStream(Files.newInputStream(path))) {
+            return input.readInt() == MAGIC && input.readInt() == FORMAT_VERSION;
+        }
+    }
+
+    /**
+     * Returns the sequence number of the last record included in the snapshot the log at {@code path}
+     * continues, so its records can be replayed on any base that includes at least that record.
+     */
+    public static long baseSequence(Path path) throws IOException {
+        if (!isAppendable(path))
+            throw new IOException(path + " is not a write-ahead log of version " + FORMAT_VERSION);
+
+        try (DataInputStream input = new DataInputStream(Files.newInputStream(path))) {
+            input.readInt();
+            input.readInt();
+            return input.readLong();
+        }
+    }
+
+    /**
+     * Passes every intact record after {@code snapshotSequence} to {@code consumer}, in log order, and
+     * stops at the first torn or corrupted record.
+     *
+     * @return the sequence number of the last record replayed, or {@code snapshotSequence} if none was
+     */
+    public static long replay(Path path, long snapshotSequence, Consumer<Mutation> consumer) throws IOException {
+        return scan(path, snapshotSequence, consumer).last();
+    }
+
+    /**
+     * The last record a scan accepted and the file offset its intact records end at.
+     */
+    private record Scan(long last, long end) {
+    }
+
+    /**
+     * Reads the log as {@link #replay} does; records are only decoded if {@code consumer} is not null.
+     */
+    private static Scan scan(Path path, long snapshotSequence, Consumer<Mutation> consumer) throws IOException {
+        if (!Files.isRegularFile(path))
+            return new Scan(snapshotSequence, 0);
+
+        try (DataInputStream input = new DataInputStream(new BufferedInputStream(Files.newInputStream(path)))) {
+            if (input.readInt() != MAGIC)
+                throw new IOException(path + " is not a write-ahead log");
+            int version = input.readInt();
+            if (version != FORMAT_VERSION)
+                throw new IOException("Unsupported write-ahead log version " + version);
+            long baseSequence = input.readLong();
+            if (baseSequence > snapshotSequence)
+                throw new IOException("Write-ahead log starts after record " + baseSequence
+                        + " but the snapshot only includes records up to " + snapshotSequence);
+
+            long last = snapshotSequence;
+            long size = Files.size(path);
+            long remaining = size - HEADER_SIZE;
+            long end = HEADER_SIZE;
+            CRC32 crc = new CRC32();
+            while (true) {
+                byte[] payload;
+                long sequence;
+                try {
+                    int length = input.readInt();
+                    if (length < 0 || length > remaining - RECORD_OVERHEAD)
+                        break;
+                    remaining -= RECORD_OVERHEAD + length;
+                    sequence = input.readLong();
+                    payload = new byte[length];
+                    input.readFully(payload);
+                    crc.reset();
+                    crc.update(payload);
+                    if (input.readInt() != checksum(sequence, (int) crc.getValue()))
+                        break;
+                } catch (EOFException e) {
+                    break;
+                }
+
+                end = size - remaining;
+                if (sequence <= last)
+                    continue;
+                if (sequence != last + 1)
+                    throw new IOException("Write-ahead log skips from record " + last + " to " + sequence);
+                if (consumer != null)
+                    consumer.accept(decode(ByteBuffer.wrap(payload)));
+                last = sequence;
+            }
+
+            return new Scan(last, end);
+        } catch (BufferUnderflowException | IndexOutOfBoundsException | IllegalArgumentException e) {
+            throw new IOException(path + " holds a record that cannot be decoded", e);
+        }
+    }
+
+    @Override
+    public long append(Mutation mutation) {
+        byte[] payload = encode(mutation);
+        CRC32 crc = new CRC32();
+        crc.update(payload);
+        int payloadChecksum = (int) crc.getValue();
+        synchronized (lock) {
+            try {
+                while (pending.position() > MAX_PENDING_BYTES && failure == null && !closed)
+                    lock.wait();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            if (closed)
+                throw new IllegalStateException("Write-ahead log is closed");
+            if (failure != null)
+                throw new UncheckedIOException(failure);
+
+            long sequence = ++appended;
+            boolean idle = pending.position() == 0;
+            ensurePending(RECORD_OVERHEAD + payload.length);
+            pending.putInt(payload.length).putLong(sequence).put(payload).putInt(checksum(sequence, payloadChecksum));
+            // The flusher only sleeps on an empty buffer, and appenders only wait on a full one.
+            if (idle)
+                lock.notifyAll();
+            return sequence;
+        }
+    }
+
+    /**
+     * Mixes the sequence number into the CRC32 of a payload, so a record whose sequence number changed
+     * fails its check too.
+     */
+    private static int checksum(long sequence, int payloadChecksum) {
+        return payloadChecksum ^ Long.hashCode(sequence * 0x9E3779B97F4A7C15L);
+    }
+
+    /**
+     * Returns the sequence number of the last record appended, or of the base if none was.
+     */
+    public long getLastSequence() {
+        synchronized (lock) {
+            return appended;
+        }
+    }
+
+    @Override
+    public void awaitDurable(long sequence) {
+        if (policy != FsyncPolicy.ALWAYS || synced >= sequence) {
+            if (failure != null)
+                throw new UncheckedIOException(failure);
+            return;
+        }
+
+        synchronized (durable) {
+            try {
+                while (synced < sequence && failure == null)
+                    durable.wait();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new UncheckedIOException(new InterruptedIOException("Interrupted while waiting for the log"));
+            }
+            if (synced < sequence)
+                throw new UncheckedIOException(failure);
+        }
+    }
+
+    /**
+     * Writes and forces every appended record, then closes the file. Later appends fail.
+     */
+    @Override
+    public void close() throws IOException {
+        synchronized (lock) {
+            if (closed)
+                return;
+            closed = true;
+            lock.notifyAll();
+        }
+
+        try {
+            flusher.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        channel.close();
+        if (failure != null)
+            throw failure;
+    }
+
+    private void ensurePending(int bytes) {
+        if (pending.remaining() >= bytes)
+            return;
+
+        ByteBuffer grown = ByteBuffer.allocate(Math.max(pending.capacity() * 2, pending.position() + bytes));
+        pending.flip();
+        grown.put(pending);
+        pending = grown;
+    }
+
+    private void flushLoop() {
+        ByteBuffer spare = ByteBuffer.allocate(INITIAL_BUFFER_SIZE);
+        long lastSync = System.currentTimeMillis();
+        try {
+            while (true) {
+                ByteBuffer batch;
+                long batchEnd;
+                boolean closing;
+                synchronized (lock) {
+                    while (pending.position() == 0 && !closed && !syncDue(lastSync))
+                        lock.wait(waitMillis(lastSync));
+                    batch = pending;
+                    pending = spare;
+                    batchEnd = appended;
+                    closing = closed;
+                    lock.notifyAll();
+                }
+
+                batch.flip();
+                while (batch.hasRemaining())
+                    channel.write(batch);
+                boolean sync = closing || policy == FsyncPolicy.ALWAYS
+                        || (policy == FsyncPolicy.INTERVAL && System.currentTimeMillis() - lastSync >= FSYNC_INTERVAL_MILLIS);
+                if (sync) {
+                    channel.force(false);
+                    lastSync = System.currentTimeMillis();
+                }
+
+                synchronized (lock) {
+                    written = batchEnd;
+                }
+                if (sync) {
+                    synchronized (durable) {
+                        synced = batchEnd;
+                        durable.notifyAll();
+                    }
+                }
+                batch.clear();
+                spare = batch;
+                if (closing)
+                    return;
+            }
+        } catch (IOException e) {
+            fail(e);
+        } catch (InterruptedException e) {
+            fail(new InterruptedIOException("Write-ahead log flusher was interrupted"));
+        }
+    }
+
+    private boolean syncDue(long lastSync) {
+        return policy == FsyncPolicy.INTERVAL && synced < written
+                && System.currentTimeMillis() - lastSync >= FSYNC_INTERVAL_MILLIS;
+    }
+
+    private long waitMillis(long lastSync) {
+        if (policy != FsyncPolicy.INTERVAL || synced == written)
+            return 0;
+        return Math.max(1, FSYNC_INTERVAL_MILLIS - (System.currentTimeMillis() - lastSync));
+    }
+
+    private void fail(IOException e) {
+        synchronized (lock) {
+            failure = e;
+            lock.notifyAll();
+        }
+        synchronized (durable) {
+            durable.notifyAll();
+        }
+    }
+
+    private static byte[] encode(Mutation mutation) {
+        ByteBuffer buffer = ByteBuffer.allocate(256);
+        while (true) {
+            try {
+                encode(buffer, mutation);
+                break;
+            } catch (BufferOverflowException e) {
+                buffer = ByteBuffer.allocate(buffer.capacity() * 2);
+            }
+        }
+
+        byte[] payload = new byte[buffer.position()];
+        buffer.flip().get(payload);
+        return payload;
+    }
+
+    private static void encode(ByteBuffer buffer, Mutation mutation) {
+        if (mutation instanceof Mutation.UserAdded m) {
+            SnapshotStore.writeUser(buffer.put(USER_ADDED), m.user());
+        } else if (mutation instanceof Mutation.ProviderAdded m) {
+            SnapshotStore.writeProvider(buffer.put(PROVIDER_ADDED), m.provider());
+        } else if (mutation instanceof Mutation.CommodityAdded m) {
+            SnapshotStore.writeCommodity(buffer.put(COMMODITY_ADDED), m.commodity());
+        } else if (mutation instanceof Mutation.CommentAdded m) {
+            SnapshotStore.writeComment(buffer.put(COMMENT_ADDED), m.comment());
+        } else if (mutation instanceof Mutation.CommodityUpdated m) {
+            SnapshotStore.writeCommodity(buffer.put(COMMODITY_UPDATED), m.commodity());
+        } else if (mutation instanceof Mutation.CreditAdded m) {
+            SnapshotStore.putString(buffer.put(CREDIT_ADDED), m.username());
+            buffer.putFloat(m.amount());
+        } else if (mutation instanceof Mutation.BuyItemAdded m) {
+            SnapshotStore.putString(buffer.put(BUY_ITEM_ADDED), m.username());
+            SnapshotStore.putString(buffer, m.commodityId());
+        } else if (mutation instanceof Mutation.BuyItemRemoved m) {
+            SnapshotStore.putString(buffer.put(BUY_ITEM_REMOVED), m.username());
+            SnapshotStore.putString(buffer, m.commodityId());
+        } else if (mutation instanceof Mutation.BuyListChanged m) {
+            SnapshotStore.putString(buffer.put(BUY_LIST_CHANGED), m.username());
+            buffer.putInt(m.changes().size());
+            m.changes().forEach((commodityId, quantity) -> {
+                SnapshotStore.putString(buffer, commodityId);
+                buffer.putInt(quantity);
+            });
+        } else if (mutation instanceof Mutation.CheckedOut m) {
+            SnapshotStore.putString(buffer.put(CHECKED_OUT), m.username());
+            buffer.putFloat(m.amount());
+            buffer.putInt(m.items().size());
+            m.items().forEach((commodityId, quantity) -> {
+                SnapshotStore.putString(buffer, commodityId);
+                buffer.putInt(quantity);
+            });
+        } else if (mutation instanceof Mutation.CommodityRated m) {
+            SnapshotStore.putString(buffer.put(COMMODITY_RATED), m.commodityId());
+            SnapshotStore.putString(buffer, m.username());
+            buffer.put((byte) m.score());
+        } else if (mutation instanceof Mutation.CommentVoted m) {
+            buffer.put(COMMENT_VOTED).putInt(m.commentId());
+            SnapshotStore.putString(buffer, m.username());
+            SnapshotStore.putString(buffer, m.vote());
+        } else {
+            throw new IllegalArgumentException("Unknown mutation " + mutation);
+        }
+    }
+
+    private static Mutation decode(ByteBuffer buffer) {
+        byte type = buffer.get();
+        return switch (type) {
+            case USER_ADDED -> new Mutation.UserAdded(SnapshotStore.readUser(buffer));
+            case PROVIDER_ADDED -> new Mutation.ProviderAdded(SnapshotStore.readProvider(buffer));
+            case COMMODITY_ADDED -> new Mutation.CommodityAdded(SnapshotStore.readCommodity(buffer));
+            case COMMENT_ADDED -> new Mutation.CommentAdded(SnapshotStore.readComment(buffer));
+            case COMMODITY_UPDATED -> new Mutation.CommodityUpdated(SnapshotStore.readCommodity(buffer));
+            case CREDIT_ADDED -> new Mutation.CreditAdded(SnapshotStore.getString(buffer), buffer.getFloat());
+            case BUY_ITEM_ADDED -> new Mutation.BuyItemAdded(SnapshotStore.getString(buffer),
+                    SnapshotStore.getString(buffer));
+            case BUY_ITEM_REMOVED -> new Mutation.BuyItemRemoved(SnapshotStore.getString(buffer),
+                    SnapshotStore.getString(buffer));
+            case BUY_LIST_CHANGED -> {
+                String username = SnapshotStore.getString(buffer);
+                int size = buffer.getInt();
+                Map<String, Integer> changes = new HashMap<>();
+                for (int i = 0; i < size; i++)
+                    changes.put(SnapshotStore.getString(buffer), buffer.getInt());
+                yield new Mutation.BuyListChanged(username, changes);
+            }
+            case CHECKED_OUT -> {
+                String username = SnapshotStore.getString(buffer);
+                float amount = buffer.getFloat();
+                int size = buffer.getInt();
+                Map<String, Integer> items = new HashMap<>();
+                for (int i = 0; i < size; i++)
+                    items.put(SnapshotStore.getString(buffer), buffer.getInt());
+                yield new Mutation.CheckedOut(username, amount, items);
+            }
+            case COMMODITY_RATED -> new Mutation.CommodityRated(SnapshotStore.getString(buffer),
+                    SnapshotStore.getString(buffer), buffer.get());
+            case COMMENT_VOTED -> new Mutation.CommentVoted(buffer.getInt(), SnapshotStore.getString(buffer),
+                    SnapshotStore.getString(buffer));
+            default -> throw new IllegalArgumentException("Unknown mutation type " + type);
+        };
+    }
+}
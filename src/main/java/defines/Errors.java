@@ -6,9 +6,12 @@ public class Errors {
     public static final String COMMODITY_IS_NOT_IN_STOCK = "Commodity is not in stock.";
     public static final String MISSING_USER_ID = "User ID cannot be null.";
     public static final String MISSING_COMMODITY_ID = "Commodity ID cannot be null.";
+    public static final String MISSING_PROVIDER_ID = "Provider ID cannot be null.";
+    public static final String MISSING_COMMENT_TEXT = "Comment text cannot be null.";
     public static final String MISSING_CREDIT_VALUE = "Credit value cannot be null.";
     public static final String MISSING_COMMENT_ID = "Comment ID cannot be null.";
     public static final String MISSING_VOTE_VALUE = "Vote value cannot be null.";
+    public static final String MISSING_BUY_LIST_CHANGES = "Buy list changes cannot be null.";
     public static final String MISSING_START_OR_END_PRICE = "Start or end price values cannot be null.";
     public static final String MISSING_CATEGORY = "Category cannot be null.";
     public static final String INVALID_RATE_FORMAT = "Rate should be an integer.";
@@ -18,6 +21,7 @@ public class Errors {
     public static final String INVALID_CREDIT_RANGE = "Credit value must be a positive float";
     public static final String INVALID_QUANTITY_RANGE = "Quantity value must be a positive float";
     public static final String INVALID_PRICE_RANGE = "Invalid Price Range.";
+    public static final String INVALID_PAGE_REQUEST = "Invalid sort order or cursor.";
     public static final String INSUFFICIENT_CREDIT = "Credit is insufficient.";
     public static final String NOT_EXISTENT_COMMODITY = "Commodity does not exist.";
     public static final String NOT_EXISTENT_COMMENT = "Comment does not exist.";
@@ -25,4 +29,5 @@ public class Errors {
     public static final String NOT_EXISTENT_USER = "User does not exist.";
     public static final String INCORRECT_PASSWORD = "Incorrect password.";
     public static final String USERNAME_ALREADY_TAKEN = "The username is already taken.";
+    public static final String DATA_SET_LOADING = "The data set is still loading, try again shortly.";
 }
@@ -0,0 +1,9 @@
+package exceptions;
+
+import static defines.Errors.INVALID_PAGE_REQUEST;
+
+public class InvalidPageRequest extends Exception {
+    public InvalidPageRequest() {
+        super(INVALID_PAGE_REQUEST);
+    }
+}
@@ -1,21 +1,27 @@
 package model;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import lombok.AccessLevel;
 import lombok.Getter;
 import lombok.NoArgsConstructor;
-import lombok.Setter;
 
 import exceptions.InvalidVote;
+import utils.CompactByteMap;
 
 import java.text.SimpleDateFormat;
 import java.util.Date;
-import java.util.HashMap;
 import java.util.Map;
 import java.util.Objects;
+import java.util.concurrent.atomic.AtomicLongFieldUpdater;
 
 @Getter
-@Setter
 @NoArgsConstructor
 public class Comment {
+    private static final AtomicLongFieldUpdater<Comment> VERSION = AtomicLongFieldUpdater.newUpdater(Comment.class, "version");
+
+    private static final byte LIKE = 1;
+    private static final byte DISLIKE = 2;
+    private static final byte UNKNOWN = 0;
 
     int id;
     private String userEmail;
@@ -24,9 +30,12 @@ public class Comment {
     private String text;
     private String date;
 
-    private int like;
-    private int dislike;
-    private Map<String, String> userVote = new HashMap<>();
+    private volatile int like;
+    private volatile int dislike;
+    @Getter(AccessLevel.NONE)
+    private CompactByteMap<String> userVote = new CompactByteMap<>();
+    @JsonIgnore
+    private volatile long version = Versions.initial();
 
     public Comment(int id, String userEmail, String username, int commodityId, String text) {
         this.id = id;
@@ -37,28 +46,126 @@ public class Comment {
         this.date = getCurrentDate();
     }
 
+    public void setId(int id) {
+        this.id = id;
+        bumpVersion();
+    }
+
+    public void setUserEmail(String userEmail) {
+        this.userEmail = userEmail;
+        bumpVersion();
+    }
+
+    public void setUsername(String username) {
+        this.username = username;
+        bumpVersion();
+    }
+
+    public void setCommodityId(int commodityId) {
+        this.commodityId = commodityId;
+        bumpVersion();
+    }
+
+    public void setText(String text) {
+        this.text = text;
+        bumpVersion();
+    }
+
+    public void setDate(String date) {
+        this.date = date;
+        bumpVersion();
+    }
+
+    public void setLike(int like) {
+        this.like = like;
+        bumpVersion();
+    }
+
+    public void setDislike(int dislike) {
+        this.dislike = dislike;
+        bumpVersion();
+    }
+
+    private void bumpVersion() {
+        VERSION.incrementAndGet(this);
+    }
+
     public String getCurrentDate() {
         Date currentDate = new Date();
         SimpleDateFormat dateFormat = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss");
         return dateFormat.format(currentDate);
     }
 
+    public synchronized Map<String, String> getUserVote() {
+        return Map.copyOf(userVote.asMap(Comment::voteName));
+    }
+
+    /**
+     * Replaces the votes and recounts likes and dislikes from them. Entries without a username or with a
+     * vote other than "like" or "dislike" are skipped.
+     */
+    public synchronized void setUserVote(Map<String, String> userVote) {
+        CompactByteMap<String> votes = new CompactByteMap<>();
+        int likes = 0;
+        int dislikes = 0;
+        for (Map.Entry<String, String> entry : userVote.entrySet()) {
+            byte code = voteCode(entry.getValue());
+            if (entry.getKey() == null || code == UNKNOWN)
+                continue;
+
+            votes.put(entry.getKey(), code);
+            if (code == LIKE)
+                likes++;
+            else
+                dislikes++;
+        }
+        this.userVote = votes;
+        this.like = likes;
+        this.dislike = dislikes;
+        bumpVersion();
+    }
+
     public void addUserVote(String userName, String vote) throws InvalidVote {
         if ((!Objects.equals(vote, "like")) && (!Objects.equals(vote, "dislike"))){
             throw new InvalidVote();
         }
-        userVote.put(userName, vote);
+        if (userName == null)
+            throw new InvalidVote();
+        byte code = voteCode(vote);
+        long sequence;
+        synchronized (this) {
+            int previous = userVote.get(userName);
+            if (previous == code)
+                return;
 
-        this.like = 0;
-        this.dislike = 0;
+            Mutation mutation = new Mutation.CommentVoted(id, userName, vote);
+            sequence = Mutations.append(mutation);
+            userVote.put(userName, code);
+            if (previous == LIKE)
+                this.like -= 1;
+            else if (previous == DISLIKE)
+                this.dislike -= 1;
 
-        for (String key : userVote.keySet()) {
-            if (userVote.get(key).equals("like"))
+            if (code == LIKE)
                 this.like += 1;
-            else if (userVote.get(key).equals("dislike"))
+            else
                 this.dislike += 1;
+            bumpVersion();
+            Mutations.applied(mutation);
         }
+        Mutations.awaitDurable(sequence);
     }
 
-}
+    private static byte voteCode(String vote) {
+        if (Objects.equals(vote, "like"))
+            return LIKE;
+        if (Objects.equals(vote, "dislike"))
+            return DISLIKE;
+        return UNKNOWN;
+    }
+
+    private static String voteName(int code) {
+        return code == LIKE ? "like" : "dislike";
+    }
 
+}
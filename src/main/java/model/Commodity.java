@@ -1,48 +1,223 @@
 package model;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import exceptions.InvalidRateRange;
 import exceptions.NotInStock;
+import lombok.AccessLevel;
 import lombok.Getter;
-import lombok.Setter;
+import utils.CompactByteMap;
 
 import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongFieldUpdater;
 
 @Getter
-@Setter
 public class Commodity {
+    private static final AtomicLongFieldUpdater<Commodity> VERSION = AtomicLongFieldUpdater.newUpdater(Commodity.class, "version");
+    private static final int RETIRED = Integer.MIN_VALUE;
+
     private String id;
     private String name;
     private String providerId;
     private int price;
-    private ArrayList<String> categories = new ArrayList<>();
-    private float rating;
-    private int inStock;
+    private ArrayList<String> categories;
+    private volatile float rating;
+    @Getter(AccessLevel.NONE)
+    private final AtomicInteger inStock;
     private String image;
 
-    private Map<String, Integer> userRate = new HashMap<>();
+    @Getter(AccessLevel.NONE)
+    private CompactByteMap<String> userRate;
+    @Getter(AccessLevel.NONE)
+    private long userRateSum;
     private float initRate;
+    @JsonIgnore
+    private volatile long version;
+    @JsonIgnore
+    @Getter(AccessLevel.NONE)
+    private volatile Commodity successor;
+
+    public Commodity() {
+        this.version = Versions.initial();
+        this.categories = new ArrayList<>();
+        this.inStock = new AtomicInteger();
+        this.userRate = new CompactByteMap<>();
+    }
+
+    /**
+     * Creates a commodity whose state is kept elsewhere, without the containers a plain commodity
+     * allocates for its categories, stock and user rates. Such a subclass overrides every method that
+     * would use them, along with {@link #getVersion} and {@link #bumpVersion}.
+     */
+    protected Commodity(long version) {
+        this.version = version;
+        this.inStock = null;
+    }
+
+    public void setId(String id) {
+        this.id = id;
+        bumpVersion();
+    }
+
+    public void setName(String name) {
+        this.name = name;
+        bumpVersion();
+    }
+
+    public void setProviderId(String providerId) {
+        this.providerId = providerId;
+        bumpVersion();
+    }
+
+    public void setPrice(int price) {
+        this.price = price;
+        bumpVersion();
+    }
+
+    public void setCategories(ArrayList<String> categories) {
+        this.categories = categories;
+        bumpVersion();
+    }
+
+    public void setRating(float rating) {
+        this.rating = rating;
+        bumpVersion();
+    }
+
+    public void setImage(String image) {
+        this.image = image;
+        bumpVersion();
+    }
+
+    public void setInitRate(float initRate) {
+        this.initRate = initRate;
+        bumpVersion();
+    }
+
+    /**
+     * Gives this commodity a new version. Every change calls it, so a client holding the current version
+     * holds the current state.
+     */
+    protected void bumpVersion() {
+        VERSION.incrementAndGet(this);
+    }
+
+    public int getInStock() {
+        int current = inStock.get();
+        return current == RETIRED ? successor.getInStock() : current;
+    }
+
+    public void setInStock(int inStock) {
+        int current;
+        do {
+            current = this.inStock.get();
+            if (current == RETIRED) {
+                successor.setInStock(inStock);
+                return;
+            }
+        } while (!this.inStock.compareAndSet(current, inStock));
+        bumpVersion();
+    }
 
     public void updateInStock(int amount) throws NotInStock {
-        if ((this.inStock + amount) < 0)
+        if (!tryUpdateInStock(amount))
             throw new NotInStock();
-        this.inStock += amount;
+    }
+
+    /**
+     * Atomically adds {@code amount} to the stock unless that would make it negative. Checkouts reserve
+     * stock with a negative amount and release it again with a positive one.
+     *
+     * @return whether the stock was updated
+     */
+    public boolean tryUpdateInStock(int amount) {
+        int current;
+        do {
+            current = inStock.get();
+            if (current == RETIRED)
+                return successor.tryUpdateInStock(amount);
+            if (current + amount < 0)
+                return false;
+        } while (!inStock.compareAndSet(current, current + amount));
+
+        bumpVersion();
+        return true;
+    }
+
+    public Map<String, Integer> getUserRate() {
+        synchronized (this) {
+            if (successor == null)
+                return Map.copyOf(userRate.asMap(Integer::valueOf));
+        }
+        return successor.getUserRate();
+    }
+
+    public void setUserRate(Map<String, Integer> userRate) {
+        synchronized (this) {
+            if (successor == null) {
+                this.userRate = new CompactByteMap<>();
+                this.userRateSum = 0;
+                for (Map.Entry<String, Integer> entry : userRate.entrySet()) {
+                    this.userRate.put(entry.getKey(), entry.getValue().byteValue());
+                    this.userRateSum += entry.getValue();
+                }
+                bumpVersion();
+                return;
+            }
+        }
+        successor.setUserRate(userRate);
     }
 
     public void addRate(String username, int score) throws InvalidRateRange {
         if (score < 0 || score > 10)
             throw new InvalidRateRange();
-        userRate.put(username, score);
-        this.calcRating();
+        Commodity forward;
+        long sequence = 0;
+        synchronized (this) {
+            forward = successor;
+            if (forward == null) {
+                Mutation mutation = new Mutation.CommodityRated(id, username, score);
+                sequence = Mutations.append(mutation);
+                int previous = userRate.put(username, (byte) score);
+                userRateSum += score - (previous == CompactByteMap.ABSENT ? 0 : previous);
+                this.calcRating();
+                bumpVersion();
+                Mutations.applied(mutation);
+            }
+        }
+        if (forward != null)
+            forward.addRate(username, score);
+        else
+            Mutations.awaitDurable(sequence);
     }
 
-    private void calcRating() {
-        float sum = 0;
-        for (Map.Entry<String, Integer> entry : this.userRate.entrySet()) {
-            sum += entry.getValue();
+    /**
+     * Hands this commodity over to {@code successor}, the instance that takes its place in the catalog:
+     * after a listing update, or when the catalog is rebuilt. The user rates, initial rate and rating move
+     * over, and so does the stock if {@code moveStock} is set; an update brings its own. Stock changes
+     * and rates that still reach this instance are forwarded, so nothing written through a stale
+     * reference is lost, while its listing stays as it was for the snapshots that hold it.
+     * {@code successor} must not be published yet.
+     */
+    public void retire(Commodity successor, boolean moveStock) {
+        synchronized (this) {
+            if (successor.getInitRate() != initRate)
+                successor.setInitRate(initRate);
+            successor.setUserRate(userRate.asMap(Integer::valueOf));
+            successor.setRating(rating);
+            this.successor = successor;
         }
+        int current;
+        do {
+            current = inStock.get();
+            if (moveStock)
+                successor.setInStock(current);
+        } while (!inStock.compareAndSet(current, RETIRED));
+        bumpVersion();
+    }
 
-        this.rating = ((this.initRate + sum) / (this.userRate.size() + 1));
+    private void calcRating() {
+        this.rating = ((this.initRate + userRateSum) / (this.userRate.size() + 1));
     }
 }
@@ -0,0 +1,48 @@
+package model;
+
+import java.util.Map;
+
+/**
+ * A single externally visible state change, as recorded in the {@link MutationLog}. Each operation is
+ * exactly one mutation, so replaying a log never applies part of an operation.
+ */
+public sealed interface Mutation {
+    record UserAdded(User user) implements Mutation {
+    }
+
+    record ProviderAdded(Provider provider) implements Mutation {
+    }
+
+    record CommodityAdded(Commodity commodity) implements Mutation {
+    }
+
+    record CommentAdded(Comment comment) implements Mutation {
+    }
+
+    record CommodityUpdated(Commodity commodity) implements Mutation {
+    }
+
+    record CreditAdded(String username, float amount) implements Mutation {
+    }
+
+    record BuyItemAdded(String username, String commodityId) implements Mutation {
+    }
+
+    record BuyItemRemoved(String username, String commodityId) implements Mutation {
+    }
+
+    /**
+     * Quantities added to (positive) or removed from (negative) a buy list, by commodity id.
+     */
+    record BuyListChanged(String username, Map<String, Integer> changes) implements Mutation {
+    }
+
+    record CheckedOut(String username, float amount, Map<String, Integer> items) implements Mutation {
+    }
+
+    record CommodityRated(String commodityId, String username, int score) implements Mutation {
+    }
+
+    record CommentVoted(int commentId, String username, String vote) implements Mutation {
+    }
+}
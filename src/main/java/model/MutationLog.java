@@ -0,0 +1,30 @@
+package model;
+
+/**
+ * Destination of every {@link Mutation}. {@link #append} is called while the mutated entity is still
+ * locked, so the mutations of one entity are logged in the order they were applied; it must not lock
+ * any model object other than the ones it is given. {@link #awaitDurable} is called after the lock is
+ * released.
+ */
+public interface MutationLog {
+    MutationLog NONE = new MutationLog() {
+        @Override
+        public long append(Mutation mutation) {
+            return 0;
+        }
+
+        @Override
+        public void awaitDurable(long sequence) {
+        }
+    };
+
+    /**
+     * Records {@code mutation} and returns its sequence number.
+     */
+    long append(Mutation mutation);
+
+    /**
+     * Blocks until the mutation with {@code sequence} is as durable as the log promises.
+     */
+    void awaitDurable(long sequence);
+}
@@ -0,0 +1,43 @@
+package model;
+
+import java.util.function.Consumer;
+
+/**
+ * Holds the {@link MutationLog} that model mutators report to. No mutation is recorded until a log is
+ * installed. A mutator logs its mutation with {@link #append} before applying it, under the lock of the
+ * mutated entity, so a mutation the log refuses, because it is closed or has failed, leaves the entity
+ * as it was. A listener, such as a store that writes changed entities back to disk, is told about every
+ * mutation by {@link #applied} once it is applied, still under that lock.
+ */
+public class Mutations {
+    private static volatile MutationLog log = MutationLog.NONE;
+    private static volatile Consumer<Mutation> listener = mutation -> {
+    };
+
+    private Mutations() {
+    }
+
+    public static MutationLog getLog() {
+        return log;
+    }
+
+    public static void setLog(MutationLog log) {
+        Mutations.log = log;
+    }
+
+    public static void setListener(Consumer<Mutation> listener) {
+        Mutations.listener = listener;
+    }
+
+    public static long append(Mutation mutation) {
+        return log.append(mutation);
+    }
+
+    public static void applied(Mutation mutation) {
+        listener.accept(mutation);
+    }
+
+    public static void awaitDurable(long sequence) {
+        log.awaitDurable(sequence);
+    }
+}
@@ -1,13 +1,42 @@
 package model;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import lombok.Getter;
-import lombok.Setter;
+
+import java.util.concurrent.atomic.AtomicLongFieldUpdater;
 
 @Getter
-@Setter
 public class Provider {
+    private static final AtomicLongFieldUpdater<Provider> VERSION = AtomicLongFieldUpdater.newUpdater(Provider.class, "version");
+
     private String id;
     private String name;
     private String registryDate;
     private String image;
+    @JsonIgnore
+    private volatile long version = Versions.initial();
+
+    public void setId(String id) {
+        this.id = id;
+        bumpVersion();
+    }
+
+    public void setName(String name) {
+        this.name = name;
+        bumpVersion();
+    }
+
+    public void setRegistryDate(String registryDate) {
+        this.registryDate = registryDate;
+        bumpVersion();
+    }
+
+    public void setImage(String image) {
+        this.image = image;
+        bumpVersion();
+    }
+
+    private void bumpVersion() {
+        VERSION.incrementAndGet(this);
+    }
 }
@@ -4,27 +4,31 @@ import exceptions.CommodityIsNotInBuyList;
 import exceptions.InvalidQuantityRange;
 import exceptions.InsufficientCredit;
 import exceptions.InvalidCreditRange;
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import lombok.Getter;
 import lombok.NoArgsConstructor;
-import lombok.Setter;
 
-import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLongFieldUpdater;
 
 @Getter
-@Setter
 @NoArgsConstructor
 public class User {
+    private static final AtomicLongFieldUpdater<User> VERSION = AtomicLongFieldUpdater.newUpdater(User.class, "version");
+
     private String username;
     private String password;
     private String email;
     private String birthDate;
     private String address;
-    private float credit;
+    private volatile float credit;
 
-    private Map<Integer, Integer> commoditiesRates = new HashMap<>();
-    private Map<String, Integer> buyList = new HashMap<>();
-    private Map<String, Integer> purchasedList = new HashMap<>();
+    private volatile Map<Integer, Integer> commoditiesRates = new ConcurrentHashMap<>();
+    private volatile Map<String, Integer> buyList = new ConcurrentHashMap<>();
+    private volatile Map<String, Integer> purchasedList = new ConcurrentHashMap<>();
+    @JsonIgnore
+    private volatile long version = Versions.initial();
 
     public User(String username, String password, String email, String birthDate, String address) {
         this.username = username;
@@ -34,32 +38,124 @@ public class User {
         this.address = address;
     }
 
+    public void setUsername(String username) {
+        this.username = username;
+        bumpVersion();
+    }
+
+    public void setPassword(String password) {
+        this.password = password;
+        bumpVersion();
+    }
+
+    public void setEmail(String email) {
+        this.email = email;
+        bumpVersion();
+    }
+
+    public void setBirthDate(String birthDate) {
+        this.birthDate = birthDate;
+        bumpVersion();
+    }
+
+    public void setAddress(String address) {
+        this.address = address;
+        bumpVersion();
+    }
+
+    public void setCredit(float credit) {
+        this.credit = credit;
+        bumpVersion();
+    }
+
+    public void setCommoditiesRates(Map<Integer, Integer> commoditiesRates) {
+        this.commoditiesRates = new ConcurrentHashMap<>(commoditiesRates);
+        bumpVersion();
+    }
+
+    public synchronized void setBuyList(Map<String, Integer> buyList) {
+        this.buyList = new ConcurrentHashMap<>(buyList);
+        bumpVersion();
+    }
+
+    public synchronized void setPurchasedList(Map<String, Integer> purchasedList) {
+        this.purchasedList = new ConcurrentHashMap<>(purchasedList);
+        bumpVersion();
+    }
+
+    private void bumpVersion() {
+        VERSION.incrementAndGet(this);
+    }
+
     public void addCredit(float amount) throws InvalidCreditRange {
         if (amount < 0)
             throw new InvalidCreditRange();
 
-        this.credit += amount;
+        long sequence;
+        synchronized (this) {
+            Mutation mutation = new Mutation.CreditAdded(username, amount);
+            sequence = Mutations.append(mutation);
+            this.credit += amount;
+            bumpVersion();
+            Mutations.applied(mutation);
+        }
+        Mutations.awaitDurable(sequence);
     }
 
-    public void withdrawCredit(float amount) throws InsufficientCredit, InvalidCreditRange {
+    public synchronized void withdrawCredit(float amount) throws InsufficientCredit, InvalidCreditRange {
         if (amount > this.credit)
             throw new InsufficientCredit();
         if (amount < 0)
             throw new InvalidCreditRange();
 
         this.credit -= amount;
+        bumpVersion();
     }
 
     public void addBuyItem(Commodity commodity) {
         String id = commodity.getId();
-        if (this.buyList.containsKey(id)) {
-            int existingQuantity = this.buyList.get(id);
-            this.buyList.put(id, existingQuantity + 1);
-        } else
-            this.buyList.put(id, 1);
+        long sequence;
+        synchronized (this) {
+            Mutation mutation = new Mutation.BuyItemAdded(username, id);
+            sequence = Mutations.append(mutation);
+            if (this.buyList.containsKey(id)) {
+                int existingQuantity = this.buyList.get(id);
+                this.buyList.put(id, existingQuantity + 1);
+            } else
+                this.buyList.put(id, 1);
+            bumpVersion();
+            Mutations.applied(mutation);
+        }
+        Mutations.awaitDurable(sequence);
     }
 
-    public void addPurchasedItem(String id, int quantity) throws InvalidQuantityRange {
+    /**
+     * Adds each positive quantity in {@code changes} to the buy list and removes each negative one, as a
+     * single change: if any removal takes more than the buy list holds, nothing changes.
+     */
+    public void changeBuyList(Map<String, Integer> changes) throws CommodityIsNotInBuyList, InvalidQuantityRange {
+        long sequence;
+        synchronized (this) {
+            for (Map.Entry<String, Integer> change : changes.entrySet()) {
+                long quantity = (long) this.buyList.getOrDefault(change.getKey(), 0) + change.getValue();
+                if (quantity < 0)
+                    throw new CommodityIsNotInBuyList();
+                if (quantity > Integer.MAX_VALUE)
+                    throw new InvalidQuantityRange();
+            }
+
+            Mutation mutation = new Mutation.BuyListChanged(username, Map.copyOf(changes));
+            sequence = Mutations.append(mutation);
+            for (Map.Entry<String, Integer> change : changes.entrySet())
+                this.buyList.merge(change.getKey(), change.getValue(),
+                        (existingQuantity, quantity) -> existingQuantity + quantity == 0 ? null : existingQuantity + quantity);
+            bumpVersion();
+            Mutations.applied(mutation);
+        }
+        Mutations.awaitDurable(sequence);
+    }
+
+    public synchronized void addPurchasedItem(String id, int quantity) throws InvalidQuantityRange {
         if (quantity < 0){
             throw new InvalidQuantityRange();
         }
@@ -68,17 +164,26 @@ public class User {
             this.purchasedList.put(id, existingQuantity + quantity);
         } else
             this.purchasedList.put(id, quantity);
+        bumpVersion();
     }
 
     public void removeItemFromBuyList(Commodity commodity) throws CommodityIsNotInBuyList {
         String id = commodity.getId();
-        if (this.buyList.containsKey(id)) {
+        long sequence;
+        synchronized (this) {
+            if (!this.buyList.containsKey(id))
+                throw new CommodityIsNotInBuyList();
+
+            Mutation mutation = new Mutation.BuyItemRemoved(username, id);
+            sequence = Mutations.append(mutation);
             int existingQuantity = this.buyList.get(id);
             if (existingQuantity == 1)
                 this.buyList.remove(commodity.getId());
             else
                 this.buyList.put(id, existingQuantity - 1);
-        } else
-            throw new CommodityIsNotInBuyList();
+            bumpVersion();
+            Mutations.applied(mutation);
+        }
+        Mutations.awaitDurable(sequence);
     }
 }
\ No newline at end of file
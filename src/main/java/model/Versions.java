@@ -0,0 +1,24 @@
+package model;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Hands out the versions entities take. Each entity counts its own changes up from the base it is given
+ * when it is created, so writes to different entities never touch a shared counter; only creation does.
+ * Bases are {@code 2^32} apart, so no two entities, and in particular an entity and the one replacing it,
+ * share a version. Versions restart on every boot, so tags built from them carry the boot {@link #EPOCH}.
+ */
+public final class Versions {
+    public static final long EPOCH = System.currentTimeMillis();
+    private static final AtomicLong CREATED = new AtomicLong();
+
+    private Versions() {
+    }
+
+    /**
+     * Returns the first version of a new entity.
+     */
+    public static long initial() {
+        return CREATED.incrementAndGet() << 32;
+    }
+}
@@ -0,0 +1,55 @@
+package reactive;
+
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+import service.FanOut;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executors;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+
+/**
+ * Runs calls into {@code Baloot} off the event loop. Those calls may block: a write waits for the
+ * write-ahead log and a read from the JDBC repository waits for the database. A handful of event-loop
+ * threads must never wait, so each call is subscribed on a scheduler that may: the bounded elastic
+ * scheduler, or a thread per call when virtual threads are enabled, see {@link FanOut#isVirtualThreads}.
+ */
+final class Blocking {
+    private Blocking() {
+    }
+
+    private static class VirtualScheduler {
+        private static final Scheduler INSTANCE =
+                Schedulers.fromExecutorService(Executors.newVirtualThreadPerTaskExecutor(), "baloot-virtual");
+    }
+
+    static Scheduler scheduler() {
+        return FanOut.isVirtualThreads() ? VirtualScheduler.INSTANCE : Schedulers.boundedElastic();
+    }
+
+    /**
+     * Returns a publisher of the result of {@code call}, which runs once per subscription.
+     */
+    static <T> Mono<T> call(Callable<T> call) {
+        return Mono.fromCallable(call).subscribeOn(scheduler());
+    }
+
+    /**
+     * Returns a publisher of the elements of the list returned by {@code call}, emitted as the subscriber
+     * requests them.
+     */
+    static <T> Flux<T> list(Callable<? extends Iterable<? extends T>> call) {
+        return call(call).flatMapIterable(list -> list);
+    }
+
+    /**
+     * Returns a publisher that pulls the elements of the stream returned by {@code stream} one request at
+     * a time, so nothing is read ahead of the subscriber; the stream is closed when the publisher ends.
+     */
+    static <T> Flux<T> stream(Supplier<Stream<? extends T>> stream) {
+        return Flux.<T>fromStream(stream).subscribeOn(scheduler());
+    }
+}
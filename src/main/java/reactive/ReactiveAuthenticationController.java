@@ -0,0 +1,30 @@
+package reactive;
+
+import controllers.AuthenticationController;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RestController;
+import reactor.core.publisher.Mono;
+import service.Baloot;
+
+import java.util.Map;
+
+@RestController
+public class ReactiveAuthenticationController {
+    private final AuthenticationController controller = new AuthenticationController();
+
+    public void setBaloot(Baloot baloot) {
+        controller.setBaloot(baloot);
+    }
+
+    @PostMapping(value = "/login")
+    public Mono<ResponseEntity<String>> login(@RequestBody Map<String, String> input) {
+        return Blocking.call(() -> controller.login(input));
+    }
+
+    @PostMapping(value = "/signup")
+    public Mono<ResponseEntity<String>> signup(@RequestBody Map<String, String> input) {
+        return Blocking.call(() -> controller.signup(input));
+    }
+}
@@ -0,0 +1,57 @@
+package reactive;
+
+import database.BulkTransfer;
+import org.springframework.core.ResolvableType;
+import org.springframework.core.codec.StringDecoder;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferLimitException;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RestController;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import service.Baloot;
+
+/**
+ * Bulk import and export, see {@link BulkTransfer}. An import decodes the body into lines as it arrives
+ * and hands them to the importer off the event loop, which stores a batch whenever one fills up; an
+ * export emits entities as the client reads them.
+ */
+@RestController
+public class ReactiveBulkController {
+    private static final StringDecoder LINES = StringDecoder.allMimeTypes();
+
+    private Baloot baloot = Baloot.getInstance();
+
+    public void setBaloot(Baloot baloot) {
+        this.baloot = baloot;
+    }
+
+    @PostMapping(value = "/bulk/{entity}")
+    public Mono<ResponseEntity<BulkTransfer.Result>> importEntities(@PathVariable String entity, @RequestBody Flux<DataBuffer> body) {
+        BulkTransfer.Entity type = BulkTransfer.Entity.fromName(entity);
+        if (type == null)
+            return Mono.just(new ResponseEntity<>(null, HttpStatus.NOT_FOUND));
+
+        return LINES.decode(body, ResolvableType.forClass(String.class), null, null)
+                .publishOn(Blocking.scheduler())
+                .collect(() -> baloot.importEntities(type), BulkTransfer.Importer::add)
+                .map(importer -> new ResponseEntity<>(importer.finish(), HttpStatus.OK))
+                .onErrorReturn(DataBufferLimitException.class, new ResponseEntity<>(null, HttpStatus.BAD_REQUEST));
+    }
+
+    @GetMapping(value = "/bulk/{entity}")
+    public ResponseEntity<Flux<Object>> exportEntities(@PathVariable String entity) {
+        BulkTransfer.Entity type = BulkTransfer.Entity.fromName(entity);
+        if (type == null)
+            return new ResponseEntity<>(null, HttpStatus.NOT_FOUND);
+
+        return ResponseEntity.ok().contentType(MediaType.APPLICATION_NDJSON)
+                .body(Blocking.stream(() -> baloot.getEntities(type)));
+    }
+}
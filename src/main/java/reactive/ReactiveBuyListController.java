@@ -0,0 +1,53 @@
+package reactive;
+
+import controllers.BuyListController;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RestController;
+import reactor.core.publisher.Mono;
+import service.Baloot;
+import utils.BuyListChanges;
+import utils.BuyListItem;
+
+import java.util.ArrayList;
+import java.util.Map;
+
+@RestController
+public class ReactiveBuyListController {
+    private final BuyListController controller = new BuyListController();
+
+    public void setBaloot(Baloot baloot) {
+        controller.setBaloot(baloot);
+    }
+
+    @PostMapping(value = "/buy-list")
+    public Mono<ResponseEntity<ArrayList<BuyListItem>>> getBuyList(@RequestBody Map<String, String> input) {
+        return Blocking.call(() -> controller.getBuyList(input));
+    }
+
+    @PostMapping(value = "/purchased-list")
+    public Mono<ResponseEntity<ArrayList<BuyListItem>>> getPurchasedList(@RequestBody Map<String, String> input) {
+        return Blocking.call(() -> controller.getPurchasedList(input));
+    }
+
+    @PostMapping(value = "/buy-list/add")
+    public Mono<ResponseEntity<String>> addToBuyList(@RequestBody Map<String, String> input) {
+        return Blocking.call(() -> controller.addToBuyList(input));
+    }
+
+    @PostMapping(value = "/buy-list/remove")
+    public Mono<ResponseEntity<String>> removeFromBuyList(@RequestBody Map<String, String> input) {
+        return Blocking.call(() -> controller.removeFromBuyList(input));
+    }
+
+    @PostMapping(value = "/buy-list/batch")
+    public Mono<ResponseEntity<String>> changeBuyList(@RequestBody BuyListChanges input) {
+        return Blocking.call(() -> controller.changeBuyList(input));
+    }
+
+    @PostMapping(value = "/buy-list/purchase")
+    public Mono<ResponseEntity<String>> purchaseBuyList(@RequestBody Map<String, String> input) {
+        return Blocking.call(() -> controller.purchaseBuyList(input));
+    }
+}
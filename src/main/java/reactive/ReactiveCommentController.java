@@ -0,0 +1,31 @@
+package reactive;
+
+import controllers.CommentController;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RestController;
+import reactor.core.publisher.Mono;
+import service.Baloot;
+
+import java.util.Map;
+
+@RestController
+public class ReactiveCommentController {
+    private final CommentController controller = new CommentController();
+
+    public void setBaloot(Baloot baloot) {
+        controller.setBaloot(baloot);
+    }
+
+    @PostMapping(value = "/comment/{id}/like")
+    public Mono<ResponseEntity<String>> likeComment(@PathVariable String id, @RequestBody Map<String, String> input) {
+        return Blocking.call(() -> controller.likeComment(id, input));
+    }
+
+    @PostMapping(value = "/comment/{id}/dislike")
+    public Mono<ResponseEntity<String>> dislikeComment(@PathVariable String id, @RequestBody Map<String, String> input) {
+        return Blocking.call(() -> controller.dislikeComment(id, input));
+    }
+}
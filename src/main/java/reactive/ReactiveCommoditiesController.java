@@ -0,0 +1,128 @@
+package reactive;
+
+import controllers.CommoditiesController;
+import model.Comment;
+import model.Commodity;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import service.Baloot;
+import utils.Page;
+import utils.ProductPage;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+@RestController
+public class ReactiveCommoditiesController {
+    static final int COMMENTS_BATCH_SIZE = 100;
+
+    private Baloot baloot = Baloot.getInstance();
+    private final CommoditiesController controller = new CommoditiesController();
+
+    public void setBaloot(Baloot baloot) {
+        this.baloot = baloot;
+        controller.setBaloot(baloot);
+    }
+
+    @GetMapping(value = "/commodities", produces = {MediaType.APPLICATION_JSON_VALUE, MediaType.APPLICATION_NDJSON_VALUE})
+    public Flux<Commodity> getCommodities() {
+        return Blocking.stream(() -> baloot.streamCommodities());
+    }
+
+    @GetMapping(value = "/commodities", params = "limit")
+    public Mono<ResponseEntity<List<Map<String, Object>>>> getCommoditiesPage(@RequestParam int limit,
+                                                                           @RequestParam(required = false) String cursor,
+                                                                           @RequestParam(defaultValue = Baloot.SORT_BY_ADDED) String sort,
+                                                                           @RequestParam(defaultValue = CommoditiesController.DEFAULT_COMMODITY_FIELDS) String fields) {
+        return Blocking.call(() -> controller.getCommoditiesPage(limit, cursor, sort, fields));
+    }
+
+    @GetMapping(value = "/commodities", params = {"ids", "!limit"})
+    public Mono<ResponseEntity<ArrayList<Commodity>>> getCommoditiesByIds(@RequestParam List<String> ids) {
+        return Blocking.call(() -> controller.getCommoditiesByIds(ids));
+    }
+
+    @GetMapping(value = "/commodities/autocomplete")
+    public Mono<ResponseEntity<ArrayList<Commodity>>> autocompleteCommodities(@RequestParam String prefix,
+                                                                              @RequestParam(defaultValue = "10") int limit) {
+        return Blocking.call(() -> controller.autocompleteCommodities(prefix, limit));
+    }
+
+    @GetMapping(value = "/commodities/{id}")
+    public Mono<ResponseEntity<Commodity>> getCommodity(@PathVariable String id,
+                                                        @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch) {
+        return Blocking.call(() -> controller.getCommodity(id, ifNoneMatch));
+    }
+
+    @GetMapping(value = "/commodities/{id}/page")
+    public Mono<ResponseEntity<ProductPage>> getProductPage(@PathVariable String id,
+                                                            @RequestParam(defaultValue = "20") int commentLimit) {
+        return Blocking.call(() -> controller.getProductPage(id, commentLimit));
+    }
+
+    @PostMapping(value = "/commodities/{id}/rate")
+    public Mono<ResponseEntity<String>> rateCommodity(@PathVariable String id, @RequestBody Map<String, String> input) {
+        return Blocking.call(() -> controller.rateCommodity(id, input));
+    }
+
+    @PostMapping(value = "/commodities/{id}/comment")
+    public Mono<ResponseEntity<String>> addCommodityComment(@PathVariable String id, @RequestBody Map<String, String> input) {
+        return Blocking.call(() -> controller.addCommodityComment(id, input));
+    }
+
+    @GetMapping(value = "/commodities/{id}/comment")
+    public Mono<ResponseEntity<ArrayList<Comment>>> getCommodityComment(@PathVariable String id,
+                                                                        @RequestParam(defaultValue = "0") int cursor,
+                                                                        @RequestParam(defaultValue = "20") int limit,
+                                                                        @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch) {
+        return Blocking.call(() -> controller.getCommodityComment(id, cursor, limit, ifNoneMatch));
+    }
+
+    /**
+     * Streams every comment on the commodity from {@code cursor} on, one per line. Comments are fetched
+     * {@link #COMMENTS_BATCH_SIZE} at a time as the client reads them, so a slow client holds one batch.
+     */
+    @GetMapping(value = "/commodities/{id}/comment", produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public ResponseEntity<Flux<Comment>> streamCommodityComments(@PathVariable String id,
+                                                                 @RequestParam(defaultValue = "0") int cursor) {
+        int commodityId;
+        try {
+            commodityId = Integer.parseInt(id);
+        } catch (NumberFormatException e) {
+            return new ResponseEntity<>(null, HttpStatus.BAD_REQUEST);
+        }
+        if (cursor < 0)
+            return new ResponseEntity<>(null, HttpStatus.BAD_REQUEST);
+
+        Flux<Comment> comments = commentPage(commodityId, cursor)
+                .expand(page -> page.getNextCursor() == null ? Mono.empty() : commentPage(commodityId, page.getNextCursor()))
+                .concatMapIterable(Page::getItems, 1);
+        return new ResponseEntity<>(comments, HttpStatus.OK);
+    }
+
+    private Mono<Page<Comment>> commentPage(int commodityId, int cursor) {
+        return Blocking.call(() -> baloot.getCommentsForCommodity(commodityId, cursor, COMMENTS_BATCH_SIZE));
+    }
+
+    /**
+     * Streams the commodities matching the search as the client reads them, see {@link Baloot#searchCommodities}.
+     */
+    @PostMapping(value = "/commodities/search", produces = {MediaType.APPLICATION_JSON_VALUE, MediaType.APPLICATION_NDJSON_VALUE})
+    public Flux<Commodity> searchCommodities(@RequestBody Map<String, String> input) {
+        String searchOption = input.get("searchOption");
+        String searchValue = input.get("searchValue");
+
+        return Blocking.stream(() -> baloot.searchCommodities(searchOption, searchValue, input.get("operator")));
+    }
+
+    @GetMapping(value = "/commodities/{id}/suggested")
+    public Mono<ResponseEntity<ArrayList<Commodity>>> getSuggestedCommodities(@PathVariable String id) {
+        return Blocking.call(() -> controller.getSuggestedCommodities(id));
+    }
+}
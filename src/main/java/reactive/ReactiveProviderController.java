@@ -0,0 +1,37 @@
+package reactive;
+
+import controllers.ProviderController;
+import model.Commodity;
+import model.Provider;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestHeader;
+import org.springframework.web.bind.annotation.RestController;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import service.Baloot;
+
+@RestController
+public class ReactiveProviderController {
+    private Baloot baloot = Baloot.getInstance();
+    private final ProviderController controller = new ProviderController();
+
+    public void setBaloot(Baloot baloot) {
+        this.baloot = baloot;
+        controller.setBaloot(baloot);
+    }
+
+    @GetMapping(value = "/providers/{id}")
+    public Mono<ResponseEntity<Provider>> getProvider(@PathVariable String id,
+                                                      @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch) {
+        return Blocking.call(() -> controller.getProvider(id, ifNoneMatch));
+    }
+
+    @GetMapping(value = "/providers/{id}/commodities", produces = {MediaType.APPLICATION_JSON_VALUE, MediaType.APPLICATION_NDJSON_VALUE})
+    public Flux<Commodity> getProvidedCommodities(@PathVariable String id) {
+        return Blocking.list(() -> baloot.getCommoditiesProvidedByProvider(id));
+    }
+}
@@ -0,0 +1,31 @@
+package reactive;
+
+import controllers.UserController;
+import model.User;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+import reactor.core.publisher.Mono;
+import service.Baloot;
+
+import java.util.Map;
+
+@RestController
+public class ReactiveUserController {
+    private final UserController controller = new UserController();
+
+    public void setBaloot(Baloot baloot) {
+        controller.setBaloot(baloot);
+    }
+
+    @GetMapping(value = "/users/{id}")
+    public Mono<ResponseEntity<User>> getUser(@PathVariable String id,
+                                              @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch) {
+        return Blocking.call(() -> controller.getUser(id, ifNoneMatch));
+    }
+
+    @PostMapping(value = "/users/{id}/credit")
+    public Mono<ResponseEntity<String>> addCredit(@PathVariable String id, @RequestBody Map<String, String> input) {
+        return Blocking.call(() -> controller.addCredit(id, input));
+    }
+}
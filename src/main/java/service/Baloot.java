@@ -1,44 +1,274 @@
 package service;
 
+import database.BulkTransfer;
 import database.DataParser;
 import database.Database;
+import database.DurableMark;
+import database.LoadTimings;
+import database.Repository;
+import database.SnapshotStore;
+import database.WriteAheadLog;
 import model.Comment;
 import model.Commodity;
+import model.Mutation;
+import model.MutationLog;
+import model.Mutations;
 import model.Provider;
 import model.User;
 import exceptions.*;
+import utils.BuyListItem;
+import utils.CursorPage;
+import utils.Page;
+import utils.ProductPage;
 
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
 import java.util.*;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 
 public class Baloot {
-    private static Baloot instance;
+    private static final int MAX_NUMBER_OF_AUTOCOMPLETE_RESULTS = 50;
+    private static final int MAX_COMMENTS_PAGE_SIZE = 100;
+    private static final int MAX_COMMODITIES_PAGE_SIZE = 100;
+    public static final String SORT_BY_ADDED = "added";
+    public static final String SORT_BY_NAME = "name";
+    private static final int MAX_NUMBER_OF_COMMODITY_SUGGESTIONS = 4;
+
+    private volatile Repository repository = Database.getInstance();
+    private volatile SuggestionEngine suggestionEngine = new SuggestionEngine(repository);
+    private volatile LoadTimings loadTimings = new LoadTimings();
+    private WriteAheadLog writeAheadLog;
 
     private Baloot() {
-        fetchAndStoreData();
+    }
+
+    private static class InstanceHolder {
+        private static final Baloot INSTANCE = new Baloot();
     }
 
     public static Baloot getInstance() {
-        if (instance == null) {
-            instance = new Baloot();
-        }
-        return instance;
+        return InstanceHolder.INSTANCE;
     }
 
-    public void fetchAndStoreData() {
-        DataParser dataParser = new DataParser(Database.getInstance());
+    public Repository getRepository() {
+        return repository;
+    }
+
+    /**
+     * Makes {@code repository} the storage of every later operation and reports every later mutation to
+     * it. Nothing is copied over; call {@link #fetchAndStoreData} to load the data set into it.
+     */
+    public void setRepository(Repository repository) {
+        this.repository = repository;
+        this.suggestionEngine = new SuggestionEngine(repository);
+        Mutations.setListener(repository::mutated);
+    }
 
+    /**
+     * Returns the phase timings of the last {@link #fetchAndStoreData}.
+     */
+    public LoadTimings getLoadTimings() {
+        return loadTimings;
+    }
+
+    /**
+     * Loads the data set from the snapshot at its default path, or from the JSON data files, as
+     * {@link #fetchAndStoreData(SnapshotStore, Path, WriteAheadLog.FsyncPolicy)} does, without a
+     * write-ahead log.
+     */
+    public void fetchAndStoreData() {
         try {
-            dataParser.getUsersList();
-            dataParser.getProvidersList();
-            dataParser.getCommoditiesList();
-            dataParser.getCommentsList();
+            fetchAndStoreData(new SnapshotStore(repository, SnapshotStore.defaultPath()), null, null);
         } catch (IOException e) {
             throw new RuntimeException(e);
         }
     }
 
+    /**
+     * Loads the data set and, unless {@code logPath} is null, makes every later mutation durable in the
+     * write-ahead log there. Where the data set comes from is decided once: the repository itself if it
+     * kept the data set durably, see {@link Repository#getDurableMark}, and the log can be replayed on
+     * it; otherwise the snapshot if there is one, and the JSON data files if there is none or it cannot
+     * be read. The records of the log after that base are replayed on top of it, so a snapshot they
+     * continue has to load, and data files changed since the base was written are then merged in as
+     * {@link DataParser#reload} merges them. The catalog is warmed up last, so the first requests do not
+     * pay for paging in or caching commodities.
+     * <p>
+     * A boot only writes a new snapshot, a checkpoint, when the log cannot continue the one it loaded:
+     * when the data set came from the data files, data files were merged in, or the log holds more than
+     * {@link WriteAheadLog#checkpointRecords()} records. Otherwise the log is continued where it ends.
+     */
+    public synchronized void fetchAndStoreData(SnapshotStore snapshotStore, Path logPath, WriteAheadLog.FsyncPolicy policy)
+            throws IOException {
+        closeWriteAheadLog();
+        DataParser dataParser = new DataParser(repository);
+        LoadTimings timings = new LoadTimings();
+        boolean hasRecords = logPath != null && WriteAheadLog.hasRecords(logPath);
+
+        long sequence = -1;
+        long baseModified = 0;
+        DurableMark mark = repository.getDurableMark();
+        if (mark != null && (!hasRecords || (WriteAheadLog.isAppendable(logPath)
+                && WriteAheadLog.baseSequence(logPath) <= mark.sequence()))) {
+            sequence = mark.sequence();
+            baseModified = mark.markedAt();
+        } else if (snapshotStore.exists()) {
+            baseModified = snapshotStore.lastModified();
+            try {
+                sequence = snapshotStore.load(timings);
+            } catch (IOException e) {
+                if (hasRecords)
+                    throw e;
+            }
+        }
+
+        boolean checkpoint = false;
+        long logged = 0;
+        if (sequence < 0) {
+            if (hasRecords)
+                throw new IOException("Write-ahead log " + logPath + " holds records but there is no snapshot to replay them on");
+            dataParser.loadAll(timings);
+            sequence = 0;
+            checkpoint = true;
+        } else {
+            if (hasRecords) {
+                sequence = WriteAheadLog.replay(logPath, sequence, this::apply);
+                logged = sequence - WriteAheadLog.baseSequence(logPath);
+            }
+            for (String fileName : DataParser.DATA_FILES) {
+                if (dataParser.lastModified(fileName) > baseModified) {
+                    dataParser.reload(fileName);
+                    checkpoint = true;
+                }
+            }
+        }
+
+        if (logPath != null)
+            startWriteAheadLog(snapshotStore, logPath, policy, sequence,
+                    checkpoint || logged >= WriteAheadLog.checkpointRecords());
+
+        timings.time(LoadTimings.Phase.WARMUP, () -> {
+            warmUp();
+            return null;
+        });
+        loadTimings = timings;
+    }
+
+    private void warmUp() {
+        Set<String> categories = new HashSet<>();
+        repository.streamCommodities().forEach(commodity -> {
+            repository.findCommodity(commodity.getId());
+            categories.addAll(commodity.getCategories());
+        });
+        categories.remove(null);
+        for (String category : categories)
+            repository.findCommoditiesByCategory(category);
+    }
+
+    /**
+     * Makes every later mutation durable in the write-ahead log at {@code logPath}. If the log already
+     * holds records, the snapshot they continue is loaded and they are replayed on top of it, replacing
+     * the content of the repository; otherwise the current content is written as a new snapshot for the
+     * log to continue. Booting goes through {@link #fetchAndStoreData(SnapshotStore, Path, WriteAheadLog.FsyncPolicy)}
+     * instead, which loads the data set only once.
+     */
+    public synchronized void openWriteAheadLog(SnapshotStore snapshotStore, Path logPath, WriteAheadLog.FsyncPolicy policy)
+            throws IOException {
+        closeWriteAheadLog();
+
+        if (!WriteAheadLog.hasRecords(logPath)) {
+            startWriteAheadLog(snapshotStore, logPath, policy, 0, true);
+            return;
+        }
+
+        long snapshotSequence = snapshotStore.load();
+        long sequence = WriteAheadLog.replay(logPath, snapshotSequence, this::apply);
+        startWriteAheadLog(snapshotStore, logPath, policy, sequence,
+                sequence - snapshotSequence >= WriteAheadLog.checkpointRecords());
+    }
+
+    /**
+     * Installs the log at {@code logPath}, whose records up to {@code sequence} are in the repository. With
+     * {@code checkpoint}, or if the log cannot be continued, the repository is written as a new snapshot
+     * and the log is started afresh; otherwise the log is continued, or created empty if it holds no records.
+     */
+    private void startWriteAheadLog(SnapshotStore snapshotStore, Path logPath, WriteAheadLog.FsyncPolicy policy,
+                                    long sequence, boolean checkpoint) throws IOException {
+        boolean hasRecords = WriteAheadLog.hasRecords(logPath);
+        if (checkpoint || (hasRecords && !WriteAheadLog.isAppendable(logPath))) {
+            snapshotStore.save(sequence);
+            writeAheadLog = WriteAheadLog.create(logPath, sequence, policy);
+        } else if (hasRecords) {
+            writeAheadLog = WriteAheadLog.open(logPath, sequence, policy);
+        } else {
+            writeAheadLog = WriteAheadLog.create(logPath, sequence, policy);
+        }
+        Mutations.setLog(writeAheadLog);
+    }
+
+    /**
+     * Stops logging mutations, after every logged one has been forced to disk, and
+     * {@link Repository#markDurable marks} the repository as holding the data set the log ends with.
+     */
+    public synchronized void closeWriteAheadLog() throws IOException {
+        if (writeAheadLog == null)
+            return;
+
+        Mutations.setLog(MutationLog.NONE);
+        writeAheadLog.close();
+        long sequence = writeAheadLog.getLastSequence();
+        writeAheadLog = null;
+        repository.markDurable(sequence);
+    }
+
+    private void apply(Mutation mutation) {
+        Repository database = repository;
+        try {
+            if (mutation instanceof Mutation.UserAdded m) {
+                database.addUser(m.user());
+            } else if (mutation instanceof Mutation.ProviderAdded m) {
+                database.addProvider(m.provider());
+            } else if (mutation instanceof Mutation.CommodityAdded m) {
+                database.addCommodity(m.commodity());
+            } else if (mutation instanceof Mutation.CommentAdded m) {
+                database.addComment(m.comment());
+            } else if (mutation instanceof Mutation.CommodityUpdated m) {
+                database.updateCommodity(m.commodity());
+            } else if (mutation instanceof Mutation.CreditAdded m) {
+                getUserById(m.username()).addCredit(m.amount());
+            } else if (mutation instanceof Mutation.BuyItemAdded m) {
+                getUserById(m.username()).addBuyItem(getCommodityById(m.commodityId()));
+            } else if (mutation instanceof Mutation.BuyItemRemoved m) {
+                getUserById(m.username()).removeItemFromBuyList(getCommodityById(m.commodityId()));
+            } else if (mutation instanceof Mutation.BuyListChanged m) {
+                getUserById(m.username()).changeBuyList(m.changes());
+            } else if (mutation instanceof Mutation.CheckedOut m) {
+                User user = getUserById(m.username());
+                user.withdrawCredit(m.amount());
+                for (var item : m.items().entrySet()) {
+                    Commodity commodity = database.findCommodity(item.getKey());
+                    if (commodity != null)
+                        commodity.updateInStock(-item.getValue());
+                }
+                completeCheckout(user, m.items());
+            } else if (mutation instanceof Mutation.CommodityRated m) {
+                Commodity commodity = getCommodityById(m.commodityId());
+                commodity.addRate(m.username(), m.score());
+                commodityRated(commodity);
+            } else if (mutation instanceof Mutation.CommentVoted m) {
+                getCommentById(m.commentId()).addUserVote(m.username(), m.vote());
+            }
+        } catch (Exception e) {
+            throw new IllegalStateException("Write-ahead log does not match its snapshot at " + mutation, e);
+        }
+    }
+
     public void login(String userId, String password) throws NotExistentUser, IncorrectPassword {
         User user = this.getUserById(userId);
         if (!user.getPassword().equals(password))
@@ -66,129 +296,352 @@ public class Baloot {
         user.removeItemFromBuyList(commodity);
     }
 
+    /**
+     * Applies a whole batch of buy list changes, quantities to add or, if negative, to remove by commodity
+     * id, with one user lookup and one lock on the user. Either every change is applied or none is.
+     */
+    public void changeUserBuyList(String userId, Map<String, Integer> changes)
+            throws MissingUserId, MissingCommodityId, NotExistentUser, NotExistentCommodity, CommodityIsNotInBuyList,
+            InvalidQuantityRange {
+        if (userId == null)
+            throw new MissingUserId();
+        User user = getUserById(userId);
+
+        Map<String, Integer> nonZeroChanges = new HashMap<>();
+        for (Map.Entry<String, Integer> change : changes.entrySet()) {
+            if (change.getKey() == null)
+                throw new MissingCommodityId();
+            getCommodityById(change.getKey());
+            if (change.getValue() != 0)
+                nonZeroChanges.put(change.getKey(), change.getValue());
+        }
+
+        if (!nonZeroChanges.isEmpty())
+            user.changeBuyList(nonZeroChanges);
+    }
+
+    /**
+     * Returns the commodities with the given ids that exist, in the order of {@code commodityIds}.
+     */
+    public ArrayList<Commodity> getCommoditiesByIds(List<String> commodityIds) {
+        ArrayList<Commodity> commodities = new ArrayList<>(commodityIds.size());
+        for (String commodityId : commodityIds) {
+            Commodity commodity = repository.findCommodity(commodityId);
+            if (commodity != null)
+                commodities.add(commodity);
+        }
+        return commodities;
+    }
+
+    /**
+     * Sums the buy list without copying or locking it; the buy list is a concurrent map, so a change
+     * made meanwhile is either counted or not.
+     */
     public float getCurrentBuyListPrice(User user) {
         float total = 0;
-        for (var entry : new ArrayList<>(user.getBuyList().entrySet())) {
-            try {
-                Commodity commodity = getCommodityById(entry.getKey());
+        for (var entry : user.getBuyList().entrySet()) {
+            Commodity commodity = repository.findCommodity(entry.getKey());
+            if (commodity != null)
                 total += commodity.getPrice() * entry.getValue();
-            } catch (NotExistentCommodity ignored) {
-            }
         }
 
         return total;
     }
 
+    /**
+     * Checks out the user's buy list as a single all-or-nothing operation. Stock of every item is reserved
+     * first, and released again if any item is short, the credit does not cover the total or the log
+     * refuses the checkout; only then are credit, purchased list and buy list updated. The user's monitor keeps concurrent checkouts and
+     * changes of the same user out, so the buy list is read in place, and on success it is replaced by an
+     * empty one rather than copied and cleared. Reservations on a commodity are lock-free, so many users
+     * can check out the same item at once without overselling it.
+     */
     public void withdrawPayableAmount(User user) throws InsufficientCredit, NotInStock, InvalidCreditRange, InvalidQuantityRange {
-        float amount = getCurrentBuyListPrice(user);
-        user.withdrawCredit(amount);
+        long sequence;
+        synchronized (user) {
+            Map<String, Integer> items = user.getBuyList();
+            Map<Commodity, Integer> reservations = new LinkedHashMap<>();
+            float amount = 0;
+            for (var item : items.entrySet()) {
+                if (item.getValue() < 0)
+                    throw new InvalidQuantityRange();
+
+                Commodity commodity = repository.findCommodity(item.getKey());
+                if (commodity == null)
+                    continue;
+
+                reservations.put(commodity, item.getValue());
+                amount += commodity.getPrice() * item.getValue();
+            }
+
+            if (amount > user.getCredit())
+                throw new InsufficientCredit();
+
+            Map<Commodity, Integer> reserved = new LinkedHashMap<>();
+            for (var reservation : reservations.entrySet()) {
+                if (!reservation.getKey().tryUpdateInStock(-reservation.getValue())) {
+                    releaseReservations(reserved);
+                    throw new NotInStock();
+                }
+                reserved.put(reservation.getKey(), reservation.getValue());
+            }
+
+            float credit = user.getCredit();
+            try {
+                user.withdrawCredit(amount);
+            } catch (InsufficientCredit | InvalidCreditRange e) {
+                releaseReservations(reserved);
+                throw e;
+            }
 
-        for (var entry : new ArrayList<>(user.getBuyList().entrySet())) {
+            Mutation mutation = new Mutation.CheckedOut(user.getUsername(), amount, items);
             try {
-                user.addPurchasedItem(entry.getKey(), entry.getValue());
-                Commodity commodity = getCommodityById(entry.getKey());
-                commodity.updateInStock(-entry.getValue());
-            } catch (NotExistentCommodity ignored) {
-            } catch (NotInStock e) {
-                throw new NotInStock();
+                sequence = Mutations.append(mutation);
+            } catch (RuntimeException e) {
+                user.setCredit(credit);
+                releaseReservations(reserved);
+                throw e;
             }
+            completeCheckout(user, items);
+            Mutations.applied(mutation);
         }
+        Mutations.awaitDurable(sequence);
+    }
+
+    private static void completeCheckout(User user, Map<String, Integer> items) throws InvalidQuantityRange {
+        for (var item : items.entrySet())
+            user.addPurchasedItem(item.getKey(), item.getValue());
+        user.setBuyList(Map.of());
+    }
 
-        user.setBuyList(new HashMap<>());
+    private static void releaseReservations(Map<Commodity, Integer> reservations) {
+        for (var reservation : reservations.entrySet())
+            reservation.getKey().tryUpdateInStock(reservation.getValue());
     }
 
     public User getUserById(String userId) throws NotExistentUser {
-        for (User user : Database.getInstance().getUsers())
-            if (user.getUsername().equals(userId))
-                return user;
+        User user = repository.findUser(userId);
+        if (user == null)
+            throw new NotExistentUser();
 
-        throw new NotExistentUser();
+        return user;
     }
 
     public Provider getProviderById(String providerId) throws NotExistentProvider {
-        for (Provider provider : Database.getInstance().getProviders())
-            if (Objects.equals(provider.getId(), providerId))
-                return provider;
+        Provider provider = repository.findProvider(providerId);
+        if (provider == null)
+            throw new NotExistentProvider();
 
-        throw new NotExistentProvider();
+        return provider;
     }
 
     public Commodity getCommodityById(String commodityId) throws NotExistentCommodity {
-        for (Commodity commodity : Database.getInstance().getCommodities())
-            if (Objects.equals(commodity.getId(), commodityId))
-                return commodity;
+        Commodity commodity = repository.findCommodity(commodityId);
+        if (commodity == null)
+            throw new NotExistentCommodity();
 
-        throw new NotExistentCommodity();
+        return commodity;
     }
 
-    public ArrayList<Commodity> getCommodities() {
-        return Database.getInstance().getCommodities();
+    /**
+     * Returns the latest published catalog snapshot, which is immutable and shared by all callers.
+     */
+    public List<Commodity> getCommodities() {
+        return repository.getCatalogSnapshot().commodities();
+    }
+
+    /**
+     * Returns every commodity in the order they were added, read as the stream is consumed, so a listing
+     * of a catalog kept off the heap is never held in memory at once.
+     */
+    public Stream<Commodity> streamCommodities() {
+        return repository.streamCommodities();
     }
 
     public ArrayList<Commodity> getCommoditiesProvidedByProvider(String providerId) {
-        ArrayList<Commodity> commodities = new ArrayList<>();
-        for (Commodity commodity : Database.getInstance().getCommodities())
-            if (Objects.equals(commodity.getProviderId(), providerId))
-                commodities.add(commodity);
+        return new ArrayList<>(repository.findCommoditiesByProvider(providerId));
+    }
 
-        return commodities;
+    /**
+     * Returns a page of the commodity listing in a stable order: {@link #SORT_BY_ADDED}, the order in which
+     * commodities were added to the catalog, or {@link #SORT_BY_NAME}, by lower-cased name, which leaves
+     * out commodities without a name. {@code cursor} is {@code null} for the first page and the next
+     * cursor of the previous page after that. A page costs time in proportion to its size, wherever it is
+     * in the listing.
+     */
+    public CursorPage<Commodity> getCommoditiesPage(String sort, String cursor, int limit) throws InvalidPageRequest {
+        int boundedLimit = Math.max(0, Math.min(limit, MAX_COMMODITIES_PAGE_SIZE));
+        String position = cursor == null ? null : decodeCursor(cursor, sort);
+        return switch (sort) {
+            case SORT_BY_ADDED -> getCommoditiesPageByAdded(position, boundedLimit);
+            case SORT_BY_NAME -> getCommoditiesPageByName(position, boundedLimit);
+            default -> throw new InvalidPageRequest();
+        };
+    }
+
+    /**
+     * An added cursor is the {@link Repository#findCommoditiesAfter position} the previous page ended at.
+     */
+    private CursorPage<Commodity> getCommoditiesPageByAdded(String position, int limit) throws InvalidPageRequest {
+        long after;
+        try {
+            after = position == null ? 0 : Long.parseLong(position);
+        } catch (NumberFormatException e) {
+            throw new InvalidPageRequest();
+        }
+        if (after < 0)
+            throw new InvalidPageRequest();
+
+        CursorPage<Commodity> page = repository.findCommoditiesAfter(after, limit);
+        String nextCursor = page.getNextCursor() == null ? null : encodeCursor(SORT_BY_ADDED, page.getNextCursor());
+        return new CursorPage<>(page.getItems(), nextCursor);
+    }
+
+    /**
+     * A name cursor is the lower-cased name of the last commodity of the previous page and how many
+     * commodities of that name the listing has returned so far.
+     */
+    private CursorPage<Commodity> getCommoditiesPageByName(String position, int limit) throws InvalidPageRequest {
+        String from = "";
+        int skip = 0;
+        if (position != null) {
+            int separator = position.indexOf(':');
+            try {
+                skip = Integer.parseInt(position.substring(0, Math.max(separator, 0)));
+            } catch (NumberFormatException e) {
+                throw new InvalidPageRequest();
+            }
+            if (skip < 0)
+                throw new InvalidPageRequest();
+            from = position.substring(separator + 1);
+        }
+
+        List<Commodity> commodities = repository.findCommoditiesByNameFrom(from, skip, limit + 1);
+        if (commodities.size() <= limit)
+            return new CursorPage<>(new ArrayList<>(commodities), null);
+
+        ArrayList<Commodity> items = new ArrayList<>(commodities.subList(0, limit));
+        if (items.isEmpty())
+            return new CursorPage<>(items, encodeCursor(SORT_BY_NAME, skip + ":" + from));
+
+        String last = items.get(limit - 1).getName().toLowerCase(Locale.ROOT);
+        int seen = 0;
+        for (int i = limit - 1; i >= 0 && items.get(i).getName().toLowerCase(Locale.ROOT).equals(last); i--)
+            seen++;
+        if (seen == limit && last.equals(from))
+            seen += skip;
+
+        return new CursorPage<>(items, encodeCursor(SORT_BY_NAME, seen + ":" + last));
+    }
+
+    private static String encodeCursor(String sort, String position) {
+        byte[] bytes = (sort + ":" + position).getBytes(StandardCharsets.UTF_8);
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(bytes);
+    }
+
+    private static String decodeCursor(String cursor, String sort) throws InvalidPageRequest {
+        String decoded;
+        try {
+            decoded = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+        } catch (IllegalArgumentException e) {
+            throw new InvalidPageRequest();
+        }
+        if (!decoded.startsWith(sort + ":"))
+            throw new InvalidPageRequest();
+
+        return decoded.substring(sort.length() + 1);
     }
 
     public ArrayList<Comment> getCommentsForCommodity(int commodityId) {
-        ArrayList<Comment> comments = new ArrayList<>();
-        for (Comment comment : Database.getInstance().getComments())
-            if (comment.getCommodityId() == commodityId)
-                comments.add(comment);
+        return new ArrayList<>(repository.findCommentsByCommodity(commodityId));
+    }
 
-        return comments;
+    public Page<Comment> getCommentsForCommodity(int commodityId, int cursor, int limit) {
+        List<Comment> comments = repository.findCommentsByCommodity(commodityId);
+        int from = Math.min(Math.max(cursor, 0), comments.size());
+        int to = Math.min(from + Math.max(0, Math.min(limit, MAX_COMMENTS_PAGE_SIZE)), comments.size());
+        Integer nextCursor = to < comments.size() ? to : null;
+
+        return new Page<>(new ArrayList<>(comments.subList(from, to)), nextCursor);
     }
 
     public Comment getCommentById(int commentId) throws NotExistentComment {
-        for (Comment comment : Database.getInstance().getComments())
-            if (comment.getId() == commentId)
-                return comment;
+        Comment comment = repository.findComment(commentId);
+        if (comment == null)
+            throw new NotExistentComment();
 
-        throw new NotExistentComment();
+        return comment;
     }
 
 
     public ArrayList<Commodity> filterCommoditiesByCategory(String category) {
-        ArrayList<Commodity> result = new ArrayList<>();
-        for (Commodity commodity : Database.getInstance().getCommodities())
-            if (commodity.getCategories().contains(category))
-                result.add(commodity);
-
-        return result;
+        return new ArrayList<>(repository.findCommoditiesByCategory(category));
     }
 
-    public ArrayList<Commodity> filterCommoditiesByName(String name) {
-        ArrayList<Commodity> result = new ArrayList<>();
-        for (Commodity commodity : Database.getInstance().getCommodities())
-            if (commodity.getName().contains(name))
-                result.add(commodity);
+    public ArrayList<Commodity> filterCommoditiesByCategories(List<String> categories, boolean matchAll) {
+        return streamCommoditiesByCategories(categories, matchAll).collect(Collectors.toCollection(ArrayList::new));
+    }
 
-        return result;
+    private Stream<Commodity> streamCommoditiesByCategories(List<String> categories, boolean matchAll) {
+        List<Set<Commodity>> postings = new ArrayList<>();
+        for (String category : categories)
+            postings.add(repository.findCommoditiesByCategory(category));
+
+        if (postings.isEmpty())
+            return Stream.empty();
+
+        if (!matchAll)
+            return postings.stream().flatMap(Set::stream).distinct();
+
+        postings.sort(Comparator.comparingInt(Set::size));
+        List<Set<Commodity>> others = postings.subList(1, postings.size());
+        return postings.get(0).stream().filter(commodity -> {
+            for (Set<Commodity> posting : others)
+                if (!posting.contains(commodity))
+                    return false;
+            return true;
+        });
     }
 
-    public ArrayList<Commodity> filterCommoditiesByProviderName(String name) {
-        String providerId = "";
-        for (Provider provider : Database.getInstance().getProviders()) {
-            if (provider.getName().equals(name)) {
-                providerId = provider.getId();
-                break;
-            }
-        }
+    /**
+     * Returns the commodities matching a search, read from the indexes as the stream is consumed, so a
+     * caller that writes each one out as it comes never holds all of them. {@code option} is
+     * {@code "name"} to match a substring of the name, {@code "category"}, {@code "provider"} to match
+     * the provider's name, or {@code "categories"} to match a comma-separated list of categories, all of
+     * them or, if {@code operator} is {@code "or"}, any. An unknown option or a missing value matches
+     * nothing.
+     */
+    public Stream<Commodity> searchCommodities(String option, String value, String operator) {
+        if (option == null || value == null)
+            return Stream.empty();
+
+        return switch (option) {
+            case "name" -> repository.findCommoditiesByName(value).stream();
+            case "category" -> repository.findCommoditiesByCategory(value).stream();
+            case "provider" -> streamCommoditiesByProviderName(value);
+            case "categories" -> streamCommoditiesByCategories(
+                    Arrays.stream(value.split(",")).map(String::trim).toList(), !"or".equalsIgnoreCase(operator));
+            default -> Stream.empty();
+        };
+    }
 
-        ArrayList<Commodity> result = new ArrayList<>();
+    public ArrayList<Commodity> filterCommoditiesByName(String name) {
+        return new ArrayList<>(repository.findCommoditiesByName(name));
+    }
 
-        if (Objects.equals(providerId, ""))
-            return result;
+    public ArrayList<Commodity> autocompleteCommodityName(String prefix, int limit) {
+        int boundedLimit = Math.max(0, Math.min(limit, MAX_NUMBER_OF_AUTOCOMPLETE_RESULTS));
+        return new ArrayList<>(repository.findCommoditiesByNamePrefix(prefix, boundedLimit));
+    }
 
-        for (Commodity commodity : Database.getInstance().getCommodities())
-            if (Objects.equals(commodity.getProviderId(), providerId))
-                result.add(commodity);
+    public ArrayList<Commodity> filterCommoditiesByProviderName(String name) {
+        return streamCommoditiesByProviderName(name).collect(Collectors.toCollection(ArrayList::new));
+    }
 
-        return result;
+    private Stream<Commodity> streamCommoditiesByProviderName(String name) {
+        Repository database = repository;
+        return database.findProviderIdsByName(name).stream()
+                .flatMap(providerId -> database.findCommoditiesByProvider(providerId).stream());
     }
 
 
@@ -202,20 +655,39 @@ public class Baloot {
         return user.getPurchasedList();
     }
 
-    public void addUser(User user) throws UsernameAlreadyTaken {
-        for (User user1 : Database.getInstance().getUsers())
-            if (user1.getUsername().equals(user.getUsername()))
-                throw new UsernameAlreadyTaken();
+    /**
+     * Imports newline-delimited JSON entities from {@code input}, see {@link BulkTransfer}.
+     */
+    public BulkTransfer.Result importEntities(BulkTransfer.Entity entity, InputStream input) throws IOException {
+        return new BulkTransfer(repository).importLines(entity, input);
+    }
+
+    /**
+     * Returns an importer fed one newline-delimited JSON line at a time, see {@link BulkTransfer#importer}.
+     */
+    public BulkTransfer.Importer importEntities(BulkTransfer.Entity entity) {
+        return new BulkTransfer(repository).importer(entity);
+    }
+
+    public long exportEntities(BulkTransfer.Entity entity, OutputStream output) throws IOException {
+        return new BulkTransfer(repository).export(entity, output);
+    }
+
+    public Stream<?> getEntities(BulkTransfer.Entity entity) {
+        return new BulkTransfer(repository).entities(entity);
+    }
 
-        Database.getInstance().addUser(user);
+    public void addUser(User user) throws UsernameAlreadyTaken {
+        if (!repository.addUser(user))
+            throw new UsernameAlreadyTaken();
     }
 
     public void addComment(Comment comment) {
-        Database.getInstance().addComment(comment);
+        repository.addComment(comment);
     }
 
     public int generateCommentId() {
-        return Database.getInstance().getComments().size();
+        return repository.getComments().size();
     }
 
     public int isInSimilarCategoryWithFirstCommodity(Commodity c1, Commodity c2) {
@@ -227,31 +699,57 @@ public class Baloot {
     }
 
     public ArrayList<Commodity> suggestSimilarCommodities(Commodity commodity) {
-        int MAX_NUMBER_OF_COMMODITY_SUGGESTIONS = 4;
-        ArrayList<Commodity> results = new ArrayList<>();
-        Hashtable<Commodity, Float> commodityScore = new Hashtable<>();
+        return suggestionEngine.suggest(commodity, MAX_NUMBER_OF_COMMODITY_SUGGESTIONS);
+    }
 
-        for (Commodity commodity1 : Database.getInstance().getCommodities()) {
-            if (commodity == commodity1)
-                continue;
+    /**
+     * Pairs each commodity id in {@code quantities}, such as a buy list, with its commodity. When the
+     * repository {@link Repository#isBlocking blocks} and virtual threads are enabled, the lookups are
+     * forked into a {@link FanOut} so their round trips overlap; in memory a lookup is cheaper than the
+     * thread that would run it, so they run in one pass on the calling thread.
+     */
+    public ArrayList<BuyListItem> getBuyListItems(Map<String, Integer> quantities)
+            throws NotExistentCommodity, InterruptedException {
+        Repository database = repository;
+        ArrayList<BuyListItem> items = new ArrayList<>(quantities.size());
+        if (!FanOut.isVirtualThreads() || !database.isBlocking()) {
+            for (Map.Entry<String, Integer> entry : quantities.entrySet())
+                items.add(new BuyListItem(getCommodityById(entry.getKey()), entry.getValue()));
+            return items;
+        }
 
-            float score = 11 * isInSimilarCategoryWithFirstCommodity(commodity, commodity1) + commodity1.getRating();
-            commodityScore.put(commodity1, score);
+        List<Map.Entry<String, Integer>> entries = new ArrayList<>(quantities.entrySet());
+        List<Supplier<Commodity>> commodities = new ArrayList<>(entries.size());
+        try (FanOut scope = new FanOut()) {
+            for (Map.Entry<String, Integer> entry : entries)
+                commodities.add(scope.fork(() -> getCommodityById(entry.getKey())));
+            scope.join(NotExistentCommodity.class);
         }
 
-        List<Map.Entry<Commodity, Float>> list = new ArrayList<>(commodityScore.entrySet());
-        list.sort(Collections.reverseOrder(Map.Entry.comparingByValue()));
+        for (int i = 0; i < entries.size(); i++)
+            items.add(new BuyListItem(commodities.get(i).get(), entries.get(i).getValue()));
+        return items;
+    }
 
-        int count = 0;
-        for (Map.Entry<Commodity, Float> entry : list) {
-            results.add(entry.getKey());
+    /**
+     * Returns a commodity with the first page of its comments and its suggestions, read in a
+     * {@link FanOut}.
+     */
+    public ProductPage getProductPage(String commodityId, int commentLimit)
+            throws NotExistentCommodity, InterruptedException {
+        Commodity commodity = getCommodityById(commodityId);
+        int id = Integer.parseInt(commodityId);
 
-            count += 1;
-            if (count >= MAX_NUMBER_OF_COMMODITY_SUGGESTIONS)
-                break;
+        try (FanOut scope = new FanOut()) {
+            Supplier<Page<Comment>> comments = scope.fork(() -> getCommentsForCommodity(id, 0, commentLimit));
+            Supplier<ArrayList<Commodity>> suggestions = scope.fork(() -> suggestSimilarCommodities(commodity));
+            scope.join(NotExistentCommodity.class);
+            return new ProductPage(commodity, comments.get(), suggestions.get());
         }
+    }
 
-        return results;
+    public void commodityRated(Commodity commodity) {
+        suggestionEngine.ratingChanged(commodity);
     }
 
 }
@@ -0,0 +1,107 @@
+package service;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Supplier;
+
+/**
+ * A scope for the independent parts of a composite read. With virtual threads enabled each part forked
+ * into the scope runs on its own virtual thread; otherwise parts run one after the other on the calling
+ * thread, as before. Either way the scope does not outlive its parts: {@link #join} waits for all of them
+ * or, as soon as one fails, cancels the rest and rethrows the failure, and {@link #close} cancels any part
+ * still running and waits for it.
+ * <pre>{@code
+ * try (FanOut scope = new FanOut()) {
+ *     Supplier<Commodity> commodity = scope.fork(() -> getCommodityById(id));
+ *     Supplier<List<Comment>> comments = scope.fork(() -> getCommentsForCommodity(id));
+ *     scope.join(NotExistentCommodity.class);
+ *     ...
+ * }
+ * }</pre>
+ */
+public final class FanOut implements AutoCloseable {
+    private static volatile boolean virtualThreads;
+
+    private final ExecutorService executor;
+    private final ExecutorCompletionService<Object> completion;
+    private final List<Future<Object>> futures = new ArrayList<>();
+    private Exception failure;
+
+    public FanOut() {
+        executor = virtualThreads ? Executors.newVirtualThreadPerTaskExecutor() : null;
+        completion = executor == null ? null : new ExecutorCompletionService<>(executor);
+    }
+
+    public static boolean isVirtualThreads() {
+        return virtualThreads;
+    }
+
+    public static void setVirtualThreads(boolean virtualThreads) {
+        FanOut.virtualThreads = virtualThreads;
+    }
+
+    /**
+     * Starts {@code task}. The returned supplier gives its result once {@link #join} has returned.
+     */
+    @SuppressWarnings("unchecked")
+    public <T> Supplier<T> fork(Callable<T> task) {
+        if (executor != null) {
+            Future<Object> future = completion.submit((Callable<Object>) task);
+            futures.add(future);
+            return () -> (T) future.resultNow();
+        }
+
+        if (failure != null)
+            return () -> {
+                throw new IllegalStateException("Fan-out failed");
+            };
+        try {
+            T result = task.call();
+            return () -> result;
+        } catch (Exception e) {
+            failure = e;
+            return () -> {
+                throw new IllegalStateException("Fan-out failed", e);
+            };
+        }
+    }
+
+    /**
+     * Waits for every forked task. If one fails, the others are cancelled and its exception is rethrown:
+     * as is if it is unchecked or a {@code type}, and wrapped in an {@link IllegalStateException} otherwise.
+     */
+    public <X extends Exception> void join(Class<X> type) throws X, InterruptedException {
+        if (executor != null) {
+            for (int i = 0; i < futures.size() && failure == null; i++) {
+                try {
+                    completion.take().get();
+                } catch (ExecutionException e) {
+                    failure = e.getCause() instanceof Exception cause ? cause : new IllegalStateException(e.getCause());
+                    executor.shutdownNow();
+                }
+            }
+        }
+
+        if (failure == null)
+            return;
+        if (type.isInstance(failure))
+            throw type.cast(failure);
+        if (failure instanceof RuntimeException e)
+            throw e;
+        throw new IllegalStateException(failure);
+    }
+
+    @Override
+    public void close() {
+        if (executor != null) {
+            executor.shutdownNow();
+            executor.close();
+        }
+    }
+}
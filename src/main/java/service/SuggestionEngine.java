@@ -0,0 +1,122 @@
+package service;
+
+import database.Repository;
+import model.Commodity;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Picks the highest scoring commodities for {@link Baloot#suggestSimilarCommodities}. Sharing a category
+ * is worth {@link #SIMILAR_CATEGORY_SCORE}, which is more than any rating, so the commodities sharing a
+ * category are ranked first and the rest of the catalog is only scanned when they are too few.
+ * <p>
+ * Results are cached per commodity. A cached result stays valid until the catalog changes, the
+ * commodity's own categories change, or a commodity in one of those categories is rated. Results that
+ * had to fall back to the rest of the catalog are also dropped on any rating. Versions are read before a
+ * result is computed, so a rating that races with the computation only causes one extra recomputation.
+ */
+class SuggestionEngine {
+    private static final int SIMILAR_CATEGORY_SCORE = 11;
+    private static final int MAX_CACHED_COMMODITIES = 10_000;
+
+    private final Map<String, Long> categoryRatingVersions = new ConcurrentHashMap<>();
+    private final AtomicLong ratingVersion = new AtomicLong();
+    private final Map<String, Suggestions> cache = new ConcurrentHashMap<>();
+    private final Repository repository;
+
+    private record Suggestions(ArrayList<Commodity> commodities, List<String> categories, long[] categoryVersions,
+                               long catalogVersion, Long ratingVersion) {
+    }
+
+    private record ScoredCommodity(Commodity commodity, float score) {
+    }
+
+    SuggestionEngine(Repository repository) {
+        this.repository = repository;
+    }
+
+    ArrayList<Commodity> suggest(Commodity commodity, int count) {
+        Suggestions suggestions = cache.get(commodity.getId());
+        if (suggestions == null || !isValid(suggestions, commodity)) {
+            suggestions = compute(commodity, count);
+            if (cache.size() >= MAX_CACHED_COMMODITIES)
+                cache.clear();
+            cache.put(commodity.getId(), suggestions);
+        }
+
+        return new ArrayList<>(suggestions.commodities());
+    }
+
+    void ratingChanged(Commodity commodity) {
+        ratingVersion.incrementAndGet();
+        for (String category : commodity.getCategories())
+            categoryRatingVersions.merge(category, 1L, Long::sum);
+    }
+
+    private boolean isValid(Suggestions suggestions, Commodity commodity) {
+        if (suggestions.catalogVersion() != repository.getCommoditiesVersion())
+            return false;
+        if (suggestions.ratingVersion() != null && suggestions.ratingVersion() != ratingVersion.get())
+            return false;
+        if (!suggestions.categories().equals(commodity.getCategories()))
+            return false;
+
+        for (int i = 0; i < suggestions.categories().size(); i++)
+            if (suggestions.categoryVersions()[i] != categoryRatingVersions.getOrDefault(suggestions.categories().get(i), 0L))
+                return false;
+
+        return true;
+    }
+
+    private Suggestions compute(Commodity commodity, int count) {
+        List<String> categories = List.copyOf(commodity.getCategories());
+        long[] categoryVersions = new long[categories.size()];
+        for (int i = 0; i < categories.size(); i++)
+            categoryVersions[i] = categoryRatingVersions.getOrDefault(categories.get(i), 0L);
+        long catalogVersion = repository.getCommoditiesVersion();
+        long currentRatingVersion = ratingVersion.get();
+
+        PriorityQueue<ScoredCommodity> heap = new PriorityQueue<>(Comparator.comparingDouble(ScoredCommodity::score));
+        Set<Commodity> similar = new HashSet<>();
+        similar.add(commodity);
+        for (String category : categories)
+            for (Commodity candidate : repository.findCommoditiesByCategory(category))
+                if (similar.add(candidate))
+                    offer(heap, new ScoredCommodity(candidate, SIMILAR_CATEGORY_SCORE + candidate.getRating()), count);
+
+        Long usedRatingVersion = null;
+        if (heap.size() < count) {
+            usedRatingVersion = currentRatingVersion;
+            repository.streamCommodities()
+                    .filter(candidate -> !similar.contains(candidate))
+                    .forEach(candidate -> offer(heap, new ScoredCommodity(candidate, candidate.getRating()), count));
+        }
+
+        ArrayList<Commodity> result = new ArrayList<>(heap.size());
+        while (!heap.isEmpty())
+            result.add(heap.poll().commodity());
+        Collections.reverse(result);
+
+        return new Suggestions(result, categories, categoryVersions, catalogVersion, usedRatingVersion);
+    }
+
+    private static void offer(PriorityQueue<ScoredCommodity> heap, ScoredCommodity candidate, int count) {
+        if (count <= 0)
+            return;
+        if (heap.size() < count) {
+            heap.add(candidate);
+        } else if (heap.peek().score() < candidate.score()) {
+            heap.poll();
+            heap.add(candidate);
+        }
+    }
+}
@@ -0,0 +1,109 @@
+package utils;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Objects;
+import java.util.RandomAccess;
+import java.util.function.UnaryOperator;
+
+/**
+ * List that only grows at its end, or has all its elements replaced at once. Writes are serialized on
+ * the list itself, while {@link #get} and iteration never lock: the backing array and the size are
+ * volatile, and an element is written before the size that makes it visible. Iterators never throw
+ * {@code ConcurrentModificationException}; they see every element appended before they reach the end.
+ */
+public class AppendOnlyList<E> extends AbstractList<E> implements RandomAccess {
+    private static final int INITIAL_CAPACITY = 10;
+
+    private volatile Object[] elements;
+    private volatile int size;
+
+    public AppendOnlyList() {
+        elements = new Object[INITIAL_CAPACITY];
+    }
+
+    public AppendOnlyList(Collection<? extends E> collection) {
+        Object[] initial = collection.toArray();
+        elements = Arrays.copyOf(initial, Math.max(initial.length, INITIAL_CAPACITY), Object[].class);
+        size = initial.length;
+    }
+
+    @Override
+    public synchronized boolean add(E element) {
+        int index = size;
+        Object[] array = elements;
+        if (index == array.length) {
+            array = Arrays.copyOf(array, array.length * 2);
+            elements = array;
+        }
+        array[index] = element;
+        size = index + 1;
+        return true;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public E get(int index) {
+        int currentSize = size;
+        if (index < 0 || index >= currentSize)
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + currentSize);
+
+        return (E) elements[index];
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Replaces every element with the result of {@code operator} by copying the backing array once and
+     * publishing the copy, so {@link #snapshot snapshots} taken before keep the old elements.
+     */
+    @Override
+    public synchronized void replaceAll(UnaryOperator<E> operator) {
+        Object[] array = elements;
+        int currentSize = size;
+        Object[] copy = Arrays.copyOf(array, array.length);
+        for (int i = 0; i < currentSize; i++) {
+            @SuppressWarnings("unchecked")
+            E element = (E) array[i];
+            copy[i] = operator.apply(element);
+        }
+        elements = copy;
+    }
+
+    /**
+     * Returns an unmodifiable view of the elements appended so far. It costs no copy: appends only write
+     * past the current size, and a grown backing array starts as a copy of the old one, so the prefix
+     * the view covers never changes.
+     */
+    public List<E> snapshot() {
+        int currentSize = size;
+        return new Snapshot<>(elements, currentSize);
+    }
+
+    private static class Snapshot<E> extends AbstractList<E> implements RandomAccess {
+        private final Object[] elements;
+        private final int size;
+
+        Snapshot(Object[] elements, int size) {
+            this.elements = elements;
+            this.size = size;
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public E get(int index) {
+            Objects.checkIndex(index, size);
+            return (E) elements[index];
+        }
+
+        @Override
+        public int size() {
+            return size;
+        }
+    }
+}
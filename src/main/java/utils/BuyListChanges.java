@@ -0,0 +1,29 @@
+package utils;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+import java.util.ArrayList;
+import java.util.List;
+
+@Getter
+@Setter
+@NoArgsConstructor
+public class BuyListChanges {
+    private String username;
+    private List<Item> items = new ArrayList<>();
+
+    /**
+     * A quantity of a commodity to add to the buy list, or to remove from it if negative.
+     */
+    @Getter
+    @Setter
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class Item {
+        private String id;
+        private int quantity;
+    }
+}
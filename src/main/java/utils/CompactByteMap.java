@@ -0,0 +1,163 @@
+package utils;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.Set;
+import java.util.function.IntFunction;
+
+/**
+ * Open-addressing hash map from object keys to {@code byte} values. Keys and values live in two
+ * parallel arrays, so an entry costs one reference and one byte instead of a boxed value and a
+ * {@code HashMap.Node}. Entries can be added and overwritten but not removed.
+ */
+public class CompactByteMap<K> {
+    public static final int ABSENT = -1;
+
+    private static final int INITIAL_CAPACITY = 8;
+
+    private Object[] keys = new Object[INITIAL_CAPACITY];
+    private byte[] values = new byte[INITIAL_CAPACITY];
+    private int size;
+
+    public int size() {
+        return size;
+    }
+
+    public boolean containsKey(Object key) {
+        return keys[indexOf(key)] != null;
+    }
+
+    /**
+     * Returns the value of {@code key}, or {@link #ABSENT} if the key is not in the map.
+     */
+    public int get(Object key) {
+        int index = indexOf(key);
+        return keys[index] == null ? ABSENT : values[index];
+    }
+
+    /**
+     * Associates {@code value} with {@code key} and returns the previous value, or {@link #ABSENT}.
+     */
+    public int put(K key, byte value) {
+        Objects.requireNonNull(key);
+        int index = indexOf(key);
+        if (keys[index] != null) {
+            int previous = values[index];
+            values[index] = value;
+            return previous;
+        }
+
+        keys[index] = key;
+        values[index] = value;
+        if (++size * 2 > keys.length)
+            resize();
+        return ABSENT;
+    }
+
+    /**
+     * Returns a read-only {@link Map} view whose values are decoded from the stored bytes.
+     */
+    public <V> Map<K, V> asMap(IntFunction<V> decoder) {
+        return new AbstractMap<>() {
+            @Override
+            public int size() {
+                return size;
+            }
+
+            @Override
+            public boolean containsKey(Object key) {
+                return key != null && CompactByteMap.this.containsKey(key);
+            }
+
+            @Override
+            public V get(Object key) {
+                int value = key == null ? ABSENT : CompactByteMap.this.get(key);
+                return value == ABSENT ? null : decoder.apply(value);
+            }
+
+            @Override
+            public Set<Entry<K, V>> entrySet() {
+                return new AbstractSet<>() {
+                    @Override
+                    public int size() {
+                        return size;
+                    }
+
+                    @Override
+                    public Iterator<Entry<K, V>> iterator() {
+                        return new EntryIterator<>(keys, values, decoder);
+                    }
+                };
+            }
+        };
+    }
+
+    private int indexOf(Object key) {
+        int mask = keys.length - 1;
+        int index = mix(key.hashCode()) & mask;
+        while (keys[index] != null && !keys[index].equals(key))
+            index = (index + 1) & mask;
+
+        return index;
+    }
+
+    private void resize() {
+        Object[] oldKeys = keys;
+        byte[] oldValues = values;
+        keys = new Object[oldKeys.length * 2];
+        values = new byte[oldValues.length * 2];
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] != null) {
+                int index = indexOf(oldKeys[i]);
+                keys[index] = oldKeys[i];
+                values[index] = oldValues[i];
+            }
+        }
+    }
+
+    private static int mix(int hash) {
+        int h = hash * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+
+    private static class EntryIterator<K, V> implements Iterator<Map.Entry<K, V>> {
+        private final Object[] keys;
+        private final byte[] values;
+        private final IntFunction<V> decoder;
+        private int next;
+
+        EntryIterator(Object[] keys, byte[] values, IntFunction<V> decoder) {
+            this.keys = Arrays.copyOf(keys, keys.length);
+            this.values = Arrays.copyOf(values, values.length);
+            this.decoder = decoder;
+            advance();
+        }
+
+        private void advance() {
+            while (next < keys.length && keys[next] == null)
+                next++;
+        }
+
+        @Override
+        public boolean hasNext() {
+            return next < keys.length;
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public Map.Entry<K, V> next() {
+            if (!hasNext())
+                throw new NoSuchElementException();
+
+            Map.Entry<K, V> entry = new AbstractMap.SimpleImmutableEntry<>((K) keys[next], decoder.apply(values[next]));
+            next++;
+            advance();
+            return entry;
+        }
+    }
+}
@@ -0,0 +1,19 @@
+package utils;
+
+import lombok.Getter;
+
+import java.util.ArrayList;
+
+/**
+ * A page of a listing whose position is an opaque cursor rather than an offset.
+ */
+@Getter
+public class CursorPage<T> {
+    private final ArrayList<T> items;
+    private final String nextCursor;
+
+    public CursorPage(ArrayList<T> items, String nextCursor) {
+        this.items = items;
+        this.nextCursor = nextCursor;
+    }
+}
@@ -0,0 +1,16 @@
+package utils;
+
+import lombok.Getter;
+
+import java.util.ArrayList;
+
+@Getter
+public class Page<T> {
+    private final ArrayList<T> items;
+    private final Integer nextCursor;
+
+    public Page(ArrayList<T> items, Integer nextCursor) {
+        this.items = items;
+        this.nextCursor = nextCursor;
+    }
+}
@@ -0,0 +1,181 @@
+package utils;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.AbstractList;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Insertion-ordered set for index postings that grows at its end and removes by tombstone: a removed
+ * element's slot is cleared in place and reads skip cleared slots. Once more than half of the slots are
+ * cleared, the live elements are compacted into a fresh array, so a removal costs amortized O(1) instead
+ * of a copy of the posting. Writers are serialized on the posting itself; reads never lock, and an
+ * iterator sees the elements that were live when it started, unless they are removed before it gets there.
+ */
+public class Posting<E> extends AbstractSet<E> {
+    private static final int INITIAL_CAPACITY = 4;
+    private static final VarHandle SLOTS = MethodHandles.arrayElementVarHandle(Object[].class);
+
+    private volatile Object[] slots = new Object[INITIAL_CAPACITY];
+    private volatile int end;
+    private volatile int size;
+    private final Map<E, Integer> positions = new ConcurrentHashMap<>();
+
+    @Override
+    public synchronized boolean add(E element) {
+        if (positions.containsKey(element))
+            return false;
+
+        Object[] array = slots;
+        int index = end;
+        if (index == array.length) {
+            if (size * 2 <= index) {
+                array = compact(array, index);
+                index = end;
+            } else {
+                array = Arrays.copyOf(array, array.length * 2);
+                slots = array;
+            }
+        }
+        SLOTS.setRelease(array, index, element);
+        positions.put(element, index);
+        end = index + 1;
+        size++;
+        return true;
+    }
+
+    @Override
+    public synchronized boolean remove(Object element) {
+        Integer position = positions.remove(element);
+        if (position == null)
+            return false;
+
+        Object[] array = slots;
+        SLOTS.setRelease(array, position, null);
+        size--;
+        if (size * 2 < end)
+            compact(array, end);
+        return true;
+    }
+
+    /**
+     * Puts {@code replacement} in the slot of {@code element}, keeping its place in the order.
+     *
+     * @return {@code false}, without changing anything, if {@code element} is not in the posting or
+     * {@code replacement} already is
+     */
+    public synchronized boolean replace(E element, E replacement) {
+        if (positions.containsKey(replacement))
+            return false;
+        Integer position = positions.remove(element);
+        if (position == null)
+            return false;
+
+        SLOTS.setRelease(slots, position, replacement);
+        positions.put(replacement, position);
+        return true;
+    }
+
+    /**
+     * Moves the live elements to the front of a fresh array, leaving the old one to the readers that
+     * still hold it. The array is published before the end, which readers read first, so a reader never
+     * pairs an end with an array it does not cover.
+     */
+    private Object[] compact(Object[] array, int currentEnd) {
+        Object[] compacted = new Object[Math.max(INITIAL_CAPACITY, size * 2)];
+        int live = 0;
+        for (int i = 0; i < currentEnd; i++) {
+            @SuppressWarnings("unchecked")
+            E element = (E) array[i];
+            if (element == null)
+                continue;
+            compacted[live] = element;
+            positions.put(element, live++);
+        }
+        slots = compacted;
+        end = live;
+        return compacted;
+    }
+
+    @Override
+    public boolean contains(Object element) {
+        return element != null && positions.containsKey(element);
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public Iterator<E> iterator() {
+        int currentEnd = end;
+        Object[] array = slots;
+        int limit = Math.min(currentEnd, array.length);
+        return new Iterator<>() {
+            private Object next;
+            private int index = advance(0);
+
+            private int advance(int from) {
+                for (int i = from; i < limit; i++) {
+                    Object element = SLOTS.getAcquire(array, i);
+                    if (element != null) {
+                        next = element;
+                        return i;
+                    }
+                }
+                return limit;
+            }
+
+            @Override
+            public boolean hasNext() {
+                return index < limit;
+            }
+
+            @Override
+            @SuppressWarnings("unchecked")
+            public E next() {
+                if (!hasNext())
+                    throw new NoSuchElementException();
+                E element = (E) next;
+                index = advance(index + 1);
+                return element;
+            }
+        };
+    }
+
+    /**
+     * Returns a read-only list view of the posting, for indexes whose contract is a list. Iterate it:
+     * {@code get} walks the slots from the start.
+     */
+    public List<E> asList() {
+        return new AbstractList<>() {
+            @Override
+            public E get(int index) {
+                Iterator<E> iterator = Posting.this.iterator();
+                for (int i = 0; iterator.hasNext(); i++) {
+                    E element = iterator.next();
+                    if (i == index)
+                        return element;
+                }
+                throw new IndexOutOfBoundsException("Index: " + index);
+            }
+
+            @Override
+            public Iterator<E> iterator() {
+                return Posting.this.iterator();
+            }
+
+            @Override
+            public int size() {
+                return Posting.this.size();
+            }
+        };
+    }
+}
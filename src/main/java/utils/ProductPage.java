@@ -0,0 +1,22 @@
+package utils;
+
+import model.Comment;
+import model.Commodity;
+import lombok.Getter;
+
+import java.util.ArrayList;
+
+@Getter
+public class ProductPage {
+    private final Commodity commodity;
+    private final ArrayList<Comment> comments;
+    private final Integer nextCommentCursor;
+    private final ArrayList<Commodity> suggestions;
+
+    public ProductPage(Commodity commodity, Page<Comment> comments, ArrayList<Commodity> suggestions) {
+        this.commodity = commodity;
+        this.comments = comments.getItems();
+        this.nextCommentCursor = comments.getNextCursor();
+        this.suggestions = suggestions;
+    }
+}
@@ -0,0 +1,70 @@
+package application;
+
+import defines.Errors;
+import service.Baloot;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.mock.http.server.reactive.MockServerHttpRequest;
+import org.springframework.mock.web.MockFilterChain;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.mock.web.server.MockServerWebExchange;
+import reactor.core.publisher.Mono;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class StartupGateTest {
+    @Test
+    public void testServletRequestsShouldWaitForTheLoad() throws Exception {
+        StartupLoader startupLoader = new StartupLoader(Baloot.getInstance());
+        StartupGate gate = new StartupGate(startupLoader);
+        CountDownLatch release = new CountDownLatch(1);
+
+        assertEquals(HttpStatus.OK.value(), serve(gate, "/commodities").getStatus());
+
+        var loaded = startupLoader.start(release::await);
+        MockHttpServletResponse rejected = serve(gate, "/buy-list/add");
+        assertEquals(HttpStatus.SERVICE_UNAVAILABLE.value(), rejected.getStatus());
+        assertEquals(StartupGate.RETRY_AFTER_SECONDS, rejected.getHeader(HttpHeaders.RETRY_AFTER));
+        assertEquals(Errors.DATA_SET_LOADING, rejected.getContentAsString());
+        assertEquals(HttpStatus.OK.value(), serve(gate, "/actuator/health/readiness").getStatus());
+
+        release.countDown();
+        loaded.get(10, TimeUnit.SECONDS);
+        assertEquals(HttpStatus.OK.value(), serve(gate, "/buy-list/add").getStatus());
+    }
+
+    @Test
+    public void testReactiveRequestsShouldWaitForTheLoad() throws Exception {
+        StartupLoader startupLoader = new StartupLoader(Baloot.getInstance());
+        StartupGate gate = new StartupGate(startupLoader);
+        CountDownLatch release = new CountDownLatch(1);
+
+        var loaded = startupLoader.start(release::await);
+        MockServerWebExchange rejected = MockServerWebExchange.from(MockServerHttpRequest.post("/buy-list/add"));
+        AtomicBoolean passed = new AtomicBoolean();
+        gate.filter(rejected, exchange -> Mono.fromRunnable(() -> passed.set(true))).block();
+        assertFalse(passed.get());
+        assertEquals(HttpStatus.SERVICE_UNAVAILABLE, rejected.getResponse().getStatusCode());
+        assertEquals(Errors.DATA_SET_LOADING, rejected.getResponse().getBodyAsString().block());
+
+        release.countDown();
+        loaded.get(10, TimeUnit.SECONDS);
+        MockServerWebExchange accepted = MockServerWebExchange.from(MockServerHttpRequest.post("/buy-list/add"));
+        gate.filter(accepted, exchange -> Mono.fromRunnable(() -> passed.set(true))).block();
+        assertTrue(passed.get());
+    }
+
+    private static MockHttpServletResponse serve(StartupGate gate, String path) throws Exception {
+        MockHttpServletRequest request = new MockHttpServletRequest("POST", path);
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        gate.doFilter(request, response, new MockFilterChain());
+        return response;
+    }
+}
@@ -0,0 +1,58 @@
+package application;
+
+import service.Baloot;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.actuate.health.Status;
+
+import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class StartupLoaderTest {
+    @Test
+    public void testReadinessShouldWaitForTheLoad() throws Exception {
+        StartupLoader startupLoader = new StartupLoader(Baloot.getInstance());
+        CountDownLatch release = new CountDownLatch(1);
+
+        CompletableFuture<Void> loaded = startupLoader.start(release::await);
+        assertEquals(Status.OUT_OF_SERVICE, startupLoader.health().getStatus());
+        assertFalse(startupLoader.isLoaded());
+
+        release.countDown();
+        loaded.get(10, TimeUnit.SECONDS);
+        assertEquals(Status.UP, startupLoader.health().getStatus());
+        assertTrue(startupLoader.isLoaded());
+    }
+
+    @Test
+    public void testFailedLoadShouldReportDown() {
+        StartupLoader startupLoader = new StartupLoader(Baloot.getInstance());
+
+        CompletableFuture<Void> loaded = startupLoader.start(() -> {
+            throw new IOException("unreadable");
+        });
+        assertThrows(CompletionException.class, loaded::join);
+        assertEquals(Status.DOWN, startupLoader.health().getStatus());
+    }
+
+    @Test
+    public void testLoadPhasesShouldBePublishedAsMetrics() throws Exception {
+        Baloot baloot = Baloot.getInstance();
+        StartupLoader startupLoader = new StartupLoader(baloot);
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        startupLoader.bindTo(registry);
+
+        startupLoader.start(baloot::fetchAndStoreData).get(10, TimeUnit.SECONDS);
+
+        for (String phase : new String[]{"parse", "index", "warmup"})
+            assertTrue(registry.get("baloot.startup.phase").tag("phase", phase).timeGauge().value() > 0);
+        assertTrue(registry.get("baloot.startup.load").timeGauge().value() > 0);
+        assertFalse(baloot.getCommodities().isEmpty());
+    }
+}
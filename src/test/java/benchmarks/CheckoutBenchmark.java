@@ -0,0 +1,103 @@
+package benchmarks;
+
+import database.Database;
+import database.WriteAheadLog;
+import model.Commodity;
+import model.MutationLog;
+import model.Mutations;
+import model.User;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import service.Baloot;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Cart and checkout throughput: each thread is its own user, who tops up their credit, puts a commodity
+ * in the buy list and checks out, logging three mutations. Users never share a lock, so whatever does
+ * not scale with threads is contention on shared state: the write-ahead log, entity versions and, with
+ * one commodity, the stock of the hot item. Scaling only shows on a machine with at least as many cores
+ * as benchmark threads.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 3, time = 2)
+@Threads(8)
+@Fork(1)
+public class CheckoutBenchmark {
+    private static final int PRICE = 10;
+
+    @Param({"1", "64"})
+    private int commodities;
+
+    @Param({"ALWAYS", "NEVER"})
+    private WriteAheadLog.FsyncPolicy policy;
+
+    private final AtomicInteger nextBuyer = new AtomicInteger();
+    private Baloot baloot;
+    private Path path;
+    private WriteAheadLog log;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        baloot = Baloot.getInstance();
+        baloot.setRepository(Database.getInstance());
+        ArrayList<Commodity> catalog = new ArrayList<>(commodities);
+        for (int i = 0; i < commodities; i++) {
+            Commodity commodity = new Commodity();
+            commodity.setId(String.valueOf(i));
+            commodity.setName("commodity-" + i);
+            commodity.setPrice(PRICE);
+            commodity.setInStock(Integer.MAX_VALUE);
+            catalog.add(commodity);
+        }
+        Database.getInstance().setCommodities(catalog);
+        Database.getInstance().setUsers(new ArrayList<>());
+
+        path = Files.createTempFile("baloot", ".wal");
+        log = WriteAheadLog.create(path, 0, policy);
+        Mutations.setLog(log);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        Mutations.setLog(MutationLog.NONE);
+        log.close();
+        Files.delete(path);
+    }
+
+    @State(Scope.Thread)
+    public static class Buyer {
+        private User user;
+        private String commodityId;
+
+        @Setup(Level.Trial)
+        public void setUp(CheckoutBenchmark benchmark) {
+            int buyer = benchmark.nextBuyer.getAndIncrement();
+            String username = "buyer" + buyer;
+            user = new User(username, "password", username + "@ut.ac.ir", "2000-01-01", "Tehran");
+            Database.getInstance().addUser(user);
+            commodityId = String.valueOf(buyer % benchmark.commodities);
+        }
+    }
+
+    @Benchmark
+    public float checkout(Buyer buyer) throws Exception {
+        buyer.user.addCredit(PRICE);
+        baloot.addCommodityToUserBuyList(buyer.user.getUsername(), buyer.commodityId);
+        baloot.withdrawPayableAmount(buyer.user);
+        return buyer.user.getCredit();
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(CheckoutBenchmark.class.getSimpleName()).build()).run();
+    }
+}
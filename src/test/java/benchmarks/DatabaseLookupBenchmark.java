@@ -0,0 +1,65 @@
+package benchmarks;
+
+import database.Database;
+import model.Commodity;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.ArrayList;
+import java.util.Objects;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DatabaseLookupBenchmark {
+
+    @Param({"1000", "100000"})
+    private int catalogSize;
+
+    private Database database;
+
+    @Setup
+    public void setUp() {
+        database = Database.getInstance();
+        ArrayList<Commodity> commodities = new ArrayList<>(catalogSize);
+        for (int i = 0; i < catalogSize; i++) {
+            Commodity commodity = new Commodity();
+            commodity.setId(String.valueOf(i));
+            commodity.setName("commodity-" + i);
+            commodities.add(commodity);
+        }
+        database.setCommodities(commodities);
+    }
+
+    private String randomId() {
+        return String.valueOf(ThreadLocalRandom.current().nextInt(catalogSize));
+    }
+
+    @Benchmark
+    public Commodity linearScan() {
+        String id = randomId();
+        for (Commodity commodity : database.getCommodities())
+            if (Objects.equals(commodity.getId(), id))
+                return commodity;
+
+        return null;
+    }
+
+    @Benchmark
+    public Commodity indexedLookup() {
+        return database.findCommodity(randomId());
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(DatabaseLookupBenchmark.class.getSimpleName())
+                .build()).run();
+    }
+}
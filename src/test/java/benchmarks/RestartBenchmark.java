@@ -0,0 +1,106 @@
+package benchmarks;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import database.DataParser;
+import database.Database;
+import database.SnapshotStore;
+import model.Commodity;
+import model.Provider;
+import model.User;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares loading the data set from the JSON files with loading it from a binary snapshot.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgs = "-Xmx4g")
+public class RestartBenchmark {
+
+    @Param({"100000"})
+    private int entitiesPerFile;
+
+    private Path directory;
+    private DataParser dataParser;
+    private SnapshotStore snapshotStore;
+
+    @Setup
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("baloot-restart");
+        List<User> users = new ArrayList<>(entitiesPerFile);
+        List<Provider> providers = new ArrayList<>(entitiesPerFile);
+        List<Commodity> commodities = new ArrayList<>(entitiesPerFile);
+        List<Map<String, Object>> comments = new ArrayList<>(entitiesPerFile);
+        for (int i = 0; i < entitiesPerFile; i++) {
+            users.add(new User("user" + i, "password" + i, "user" + i + "@ut.ac.ir", "2000-01-01", "Tehran, Iran"));
+            Provider provider = new Provider();
+            provider.setId(String.valueOf(i));
+            provider.setName("provider" + i);
+            provider.setRegistryDate("2023-01-01");
+            providers.add(provider);
+            Commodity commodity = new Commodity();
+            commodity.setId(String.valueOf(i));
+            commodity.setName("commodity" + i);
+            commodity.setProviderId(String.valueOf(i));
+            commodity.setPrice(i);
+            commodity.getCategories().addAll(List.of("category" + i % 100, "category" + i % 7));
+            commodity.setInStock(100);
+            commodities.add(commodity);
+            comments.add(Map.of("userEmail", "user" + i + "@ut.ac.ir", "username", "user" + i, "commodityId", i,
+                    "text", "comment number " + i, "date", "2023-01-01"));
+        }
+
+        ObjectMapper objectMapper = new ObjectMapper();
+        objectMapper.writeValue(directory.resolve("users.json").toFile(), users);
+        objectMapper.writeValue(directory.resolve("providers.json").toFile(), providers);
+        objectMapper.writeValue(directory.resolve("commodities.json").toFile(), commodities);
+        objectMapper.writeValue(directory.resolve("comments.json").toFile(), comments);
+
+        Database database = Database.getInstance();
+        dataParser = new DataParser(database, directory.toString());
+        snapshotStore = new SnapshotStore(database, directory.resolve("baloot.snapshot"));
+        dataParser.loadAll();
+        snapshotStore.save(0);
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        try (var files = Files.list(directory)) {
+            for (Path file : files.toList())
+                Files.delete(file);
+        }
+        Files.delete(directory);
+    }
+
+    @Benchmark
+    public Database loadJson() throws IOException {
+        dataParser.loadAll();
+        return Database.getInstance();
+    }
+
+    @Benchmark
+    public Database loadSnapshot() throws IOException {
+        snapshotStore.load();
+        return Database.getInstance();
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(RestartBenchmark.class.getSimpleName())
+                .build()).run();
+    }
+}
@@ -0,0 +1,49 @@
+package benchmarks;
+
+import database.Database;
+import model.User;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.ArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Measures user registrations from several threads with one user shard and with several. Scaling only
+ * shows on a machine with at least as many cores as benchmark threads.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Threads(8)
+@Fork(1)
+public class UserShardBenchmark {
+
+    @Param({"1", "8"})
+    private int shards;
+
+    private final AtomicLong nextUser = new AtomicLong();
+    private Database database;
+
+    @Setup(Level.Iteration)
+    public void setUp() {
+        database = Database.getInstance();
+        database.setUserShardCount(shards);
+        database.setUsers(new ArrayList<>());
+    }
+
+    @Benchmark
+    public boolean addUser() {
+        String username = "user" + nextUser.getAndIncrement();
+        return database.addUser(new User(username, "password", username + "@ut.ac.ir", "2000-01-01", "Tehran"));
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(UserShardBenchmark.class.getSimpleName()).build()).run();
+    }
+}
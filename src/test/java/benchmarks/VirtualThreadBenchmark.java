@@ -0,0 +1,121 @@
+package benchmarks;
+
+import application.BalootApplication;
+import database.Repository;
+import model.Commodity;
+import model.User;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.springframework.boot.SpringApplication;
+import org.springframework.boot.web.context.WebServerApplicationContext;
+import org.springframework.context.ConfigurableApplicationContext;
+import service.Baloot;
+import service.FanOut;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Serves {@code POST /buy-list} for a buy list of {@link #BUY_LIST_SIZE} commodities while every
+ * commodity lookup blocks for {@code lookupMillis}, standing in for a storage round trip of a
+ * {@link Repository#isBlocking blocking} repository, and compares Tomcat's platform thread pool with
+ * sequential lookups against virtual threads with fanned-out lookups.
+ * Sample mode reports the p99 latency next to the throughput implied by the mean. The clients share the
+ * machine with the server, so run it on several cores; on one core client threads dominate the numbers.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 3, time = 5)
+@Threads(64)
+@Fork(1)
+public class VirtualThreadBenchmark {
+    private static final int BUY_LIST_SIZE = 8;
+    private static final int TOMCAT_THREADS = 32;
+
+    @Param({"false", "true"})
+    private boolean virtualThreads;
+
+    @Param({"2"})
+    private int lookupMillis;
+
+    private ConfigurableApplicationContext context;
+    private HttpClient client;
+    private HttpRequest request;
+    private Repository repository;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        Baloot baloot = Baloot.getInstance();
+        repository = baloot.getRepository();
+        ArrayList<Commodity> commodities = new ArrayList<>(BUY_LIST_SIZE);
+        User user = new User("buyer", "password", "buyer@ut.ac.ir", "2000-01-01", "Tehran");
+        for (int i = 0; i < BUY_LIST_SIZE; i++) {
+            Commodity commodity = new Commodity();
+            commodity.setId(String.valueOf(i));
+            commodity.setName("commodity-" + i);
+            commodities.add(commodity);
+            user.addBuyItem(commodity);
+        }
+        repository.setCommodities(commodities);
+        repository.setUsers(new ArrayList<>(List.of(user)));
+        baloot.setRepository(slowLookups(repository, lookupMillis));
+        FanOut.setVirtualThreads(virtualThreads);
+
+        SpringApplication application = new SpringApplication(BalootApplication.class);
+        application.setDefaultProperties(Map.of(
+                "server.port", "0",
+                "server.tomcat.threads.max", String.valueOf(TOMCAT_THREADS),
+                BalootApplication.VIRTUAL_THREADS_PROPERTY, String.valueOf(virtualThreads)));
+        context = application.run();
+        int port = ((WebServerApplicationContext) context).getWebServer().getPort();
+
+        client = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1).build();
+        request = HttpRequest.newBuilder(URI.create("http://localhost:" + port + "/buy-list"))
+                .header("Content-Type", "application/json")
+                .POST(HttpRequest.BodyPublishers.ofString("{\"username\": \"" + user.getUsername() + "\"}"))
+                .build();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        context.close();
+        FanOut.setVirtualThreads(false);
+        Baloot.getInstance().setRepository(repository);
+    }
+
+    private static Repository slowLookups(Repository repository, int lookupMillis) {
+        return (Repository) Proxy.newProxyInstance(Repository.class.getClassLoader(), new Class<?>[]{Repository.class},
+                (proxy, method, args) -> {
+                    if (method.getName().equals("isBlocking"))
+                        return true;
+                    if (method.getName().equals("findCommodity"))
+                        Thread.sleep(lookupMillis);
+                    try {
+                        return method.invoke(repository, args);
+                    } catch (InvocationTargetException e) {
+                        throw e.getCause();
+                    }
+                });
+    }
+
+    @Benchmark
+    public int getBuyList() throws Exception {
+        return client.send(request, HttpResponse.BodyHandlers.discarding()).statusCode();
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(VirtualThreadBenchmark.class.getSimpleName()).build()).run();
+    }
+}
@@ -0,0 +1,57 @@
+package benchmarks;
+
+import database.WriteAheadLog;
+import model.Mutation;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Durable writes per second for each fsync policy, with concurrent writers sharing the log.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 3, time = 2)
+@Threads(16)
+@Fork(1)
+public class WriteAheadLogBenchmark {
+
+    @Param({"ALWAYS", "INTERVAL", "NEVER"})
+    private WriteAheadLog.FsyncPolicy policy;
+
+    private Path path;
+    private WriteAheadLog log;
+
+    @Setup
+    public void setUp() throws IOException {
+        path = Files.createTempFile("baloot", ".wal");
+        log = WriteAheadLog.create(path, 0, policy);
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        log.close();
+        Files.delete(path);
+    }
+
+    @Benchmark
+    public long addCredit() {
+        long sequence = log.append(new Mutation.CreditAdded("user", 1));
+        log.awaitDurable(sequence);
+        return sequence;
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(WriteAheadLogBenchmark.class.getSimpleName())
+                .build()).run();
+    }
+}
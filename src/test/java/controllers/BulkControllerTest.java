@@ -0,0 +1,81 @@
+package controllers;
+
+import database.BulkTransfer;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+import service.Baloot;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+public class BulkControllerTest {
+    private BulkController bulkController;
+
+    @Mock
+    Baloot baloot;
+
+    @BeforeEach
+    public void setup() {
+        MockitoAnnotations.openMocks(this);
+        bulkController = new BulkController();
+        bulkController.setBaloot(baloot);
+    }
+
+    @Test
+    public void testImportShouldReturnResult() throws IOException {
+        InputStream body = new ByteArrayInputStream(new byte[0]);
+        BulkTransfer.Result result = new BulkTransfer.Result(2, 0, 1, List.of("line 3: bad"));
+        when(baloot.importEntities(BulkTransfer.Entity.COMMODITIES, body)).thenReturn(result);
+
+        ResponseEntity<BulkTransfer.Result> response = bulkController.importEntities("commodities", body);
+
+        assertEquals(HttpStatus.OK, response.getStatusCode());
+        assertEquals(result, response.getBody());
+    }
+
+    @Test
+    public void testImportOfBrokenStreamShouldReturnBadRequest() throws IOException {
+        when(baloot.importEntities(eq(BulkTransfer.Entity.USERS), any())).thenThrow(new IOException());
+
+        ResponseEntity<BulkTransfer.Result> response = bulkController.importEntities("users", InputStream.nullInputStream());
+
+        assertEquals(HttpStatus.BAD_REQUEST, response.getStatusCode());
+    }
+
+    @Test
+    public void testUnknownEntityShouldReturnNotFound() {
+        assertEquals(HttpStatus.NOT_FOUND, bulkController.importEntities("orders", InputStream.nullInputStream()).getStatusCode());
+        assertEquals(HttpStatus.NOT_FOUND, bulkController.exportEntities("Users").getStatusCode());
+    }
+
+    @Test
+    public void testExportShouldStreamNdjson() throws IOException {
+        when(baloot.exportEntities(eq(BulkTransfer.Entity.PROVIDERS), any())).thenAnswer(invocation -> {
+            invocation.getArgument(1, OutputStream.class).write("{\"id\":\"1\"}\n".getBytes(StandardCharsets.UTF_8));
+            return 1L;
+        });
+
+        ResponseEntity<StreamingResponseBody> response = bulkController.exportEntities("providers");
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        response.getBody().writeTo(output);
+
+        assertEquals(HttpStatus.OK, response.getStatusCode());
+        assertEquals(BulkController.NDJSON, response.getHeaders().getContentType());
+        assertEquals("{\"id\":\"1\"}\n", output.toString(StandardCharsets.UTF_8));
+    }
+}
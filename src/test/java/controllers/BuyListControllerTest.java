@@ -0,0 +1,80 @@
+package controllers;
+import application.BalootApplication;
+import static defines.Errors.*;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.test.context.junit.jupiter.SpringExtension;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.request.MockMvcRequestBuilders;
+import org.springframework.test.web.servlet.result.MockMvcResultMatchers;
+import service.Baloot;
+
+import java.util.Map;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyMap;
+import static org.mockito.Mockito.*;
+
+@AutoConfigureMockMvc
+@ExtendWith({SpringExtension.class})
+@SpringBootTest(classes={BalootApplication.class})
+public class BuyListControllerTest {
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @MockBean
+    private Baloot baloot;
+
+    @Autowired
+    private BuyListController buyListController;
+
+    @BeforeEach
+    public void setUp() {
+        buyListController.setBaloot(baloot);
+    }
+
+    @Test
+    public void testChangeBuyListMergesDuplicateItems() throws Exception {
+        mockMvc.perform(MockMvcRequestBuilders.post("/buy-list/batch")
+                        .contentType("application/json")
+                        .content("{\"username\":\"sara\",\"items\":[{\"id\":\"1\",\"quantity\":2},{\"id\":\"1\",\"quantity\":-1}]}"))
+                .andExpect(MockMvcResultMatchers.status().isOk());
+
+        verify(baloot).changeUserBuyList("sara", Map.of("1", 1));
+    }
+
+    @Test
+    public void testChangeBuyListWithNullItems() throws Exception {
+        mockMvc.perform(MockMvcRequestBuilders.post("/buy-list/batch")
+                        .contentType("application/json")
+                        .content("{\"username\":\"sara\",\"items\":null}"))
+                .andExpect(MockMvcResultMatchers.status().isBadRequest())
+                .andExpect(MockMvcResultMatchers.content().string(MISSING_BUY_LIST_CHANGES));
+
+        mockMvc.perform(MockMvcRequestBuilders.post("/buy-list/batch")
+                        .contentType("application/json")
+                        .content("{\"username\":\"sara\",\"items\":[null]}"))
+                .andExpect(MockMvcResultMatchers.status().isBadRequest())
+                .andExpect(MockMvcResultMatchers.content().string(MISSING_BUY_LIST_CHANGES));
+
+        verify(baloot, never()).changeUserBuyList(any(), anyMap());
+    }
+
+    @Test
+    public void testChangeBuyListWithOverflowingQuantities() throws Exception {
+        mockMvc.perform(MockMvcRequestBuilders.post("/buy-list/batch")
+                        .contentType("application/json")
+                        .content("{\"username\":\"sara\",\"items\":[{\"id\":\"1\",\"quantity\":2147483647},{\"id\":\"1\",\"quantity\":1}]}"))
+                .andExpect(MockMvcResultMatchers.status().isBadRequest())
+                .andExpect(MockMvcResultMatchers.content().string(INVALID_QUANTITY_RANGE));
+
+        verify(baloot, never()).changeUserBuyList(any(), anyMap());
+    }
+}
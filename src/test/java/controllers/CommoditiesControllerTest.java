@@ -1,6 +1,7 @@
 package controllers;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import defines.Errors;
+import exceptions.InvalidPageRequest;
 import exceptions.InvalidRateRange;
 import exceptions.NotExistentCommodity;
 import exceptions.NotExistentUser;
@@ -19,11 +20,15 @@ import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import service.Baloot;
+import utils.CursorPage;
+import utils.Page;
 
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Objects;
+import java.util.stream.Stream;
 
 import application.BalootApplication;
 import exceptions.InvalidCreditRange;
@@ -111,20 +116,33 @@ public class CommoditiesControllerTest {
         ArrayList<Commodity> expectedCommodities = new ArrayList<>();
         expectedCommodities.add(commodity1);
         expectedCommodities.add(commodity2);
-        when(baloot.getCommodities()).thenReturn(expectedCommodities);
+        when(baloot.streamCommodities()).thenAnswer(invocation -> expectedCommodities.stream());
 
-        ResponseEntity<ArrayList<Commodity>> response = commoditiesController.getCommodities();
+        ResponseEntity<Stream<Commodity>> response = commoditiesController.getCommodities();
 
         assertEquals(HttpStatus.OK, response.getStatusCode());
-        assertEquals(expectedCommodities, response.getBody());
+        assertEquals(expectedCommodities, response.getBody().toList());
     }
 
     @Test
     public void testGetCommoditiesWithNoCommodities() {
         ArrayList<Commodity> expectedCommodities = new ArrayList<>();
-        when(baloot.getCommodities()).thenReturn(expectedCommodities);
+        when(baloot.streamCommodities()).thenAnswer(invocation -> expectedCommodities.stream());
+
+        ResponseEntity<Stream<Commodity>> response = commoditiesController.getCommodities();
+
+        assertEquals(HttpStatus.OK, response.getStatusCode());
+        assertEquals(expectedCommodities, response.getBody().toList());
+    }
+
+    @Test
+    public void testAutocompleteCommodities() {
+        ArrayList<Commodity> expectedCommodities = new ArrayList<>();
+        expectedCommodities.add(commodity1);
+        expectedCommodities.add(commodity2);
+        when(baloot.autocompleteCommodityName("test", 5)).thenReturn(expectedCommodities);
 
-        ResponseEntity<ArrayList<Commodity>> response = commoditiesController.getCommodities();
+        ResponseEntity<ArrayList<Commodity>> response = commoditiesController.autocompleteCommodities("test", 5);
 
         assertEquals(HttpStatus.OK, response.getStatusCode());
         assertEquals(expectedCommodities, response.getBody());
@@ -134,17 +152,32 @@ public class CommoditiesControllerTest {
     public void testGetCommodity() throws NotExistentCommodity {
         when(baloot.getCommodityById(anyString())).thenReturn(commodity1);
 
-        ResponseEntity<Commodity> response = commoditiesController.getCommodity(commodity1.getId());
+        ResponseEntity<Commodity> response = commoditiesController.getCommodity(commodity1.getId(), null);
 
         assertEquals(HttpStatus.OK, response.getStatusCode());
         assertEquals(commodity1, response.getBody());
     }
 
+    @Test
+    public void testGetCommodityShouldAnswerUnchangedPollsWithNotModified() throws NotExistentCommodity {
+        when(baloot.getCommodityById(anyString())).thenReturn(commodity1);
+
+        String etag = commoditiesController.getCommodity(commodity1.getId(), null).getHeaders().getETag();
+        ResponseEntity<Commodity> unchanged = commoditiesController.getCommodity(commodity1.getId(), etag);
+        assertEquals(HttpStatus.NOT_MODIFIED, unchanged.getStatusCode());
+        assertNull(unchanged.getBody());
+
+        commodity1.setInStock(3);
+        ResponseEntity<Commodity> changed = commoditiesController.getCommodity(commodity1.getId(), etag);
+        assertEquals(HttpStatus.OK, changed.getStatusCode());
+        assertNotEquals(etag, changed.getHeaders().getETag());
+    }
+
     @Test
     public void testGetCommodityNotExistentCommodity() throws NotExistentCommodity {
         when(baloot.getCommodityById(anyString())).thenThrow(new NotExistentCommodity());
 
-        ResponseEntity<Commodity> response = commoditiesController.getCommodity(commodity1.getId());
+        ResponseEntity<Commodity> response = commoditiesController.getCommodity(commodity1.getId(), null);
 
         assertEquals(HttpStatus.NOT_FOUND, response.getStatusCode());
         assertNull(response.getBody());
@@ -281,9 +314,9 @@ public class CommoditiesControllerTest {
         expectedComments.add(comment1);
         expectedComments.add(comment2);
 
-        when(baloot.getCommentsForCommodity(anyInt())).thenReturn(expectedComments);
+        when(baloot.getCommentsForCommodity(anyInt(), anyInt(), anyInt())).thenReturn(new Page<>(expectedComments, null));
 
-        ResponseEntity<ArrayList<Comment>> response = commoditiesController.getCommodityComment(commodity1.getId());
+        ResponseEntity<ArrayList<Comment>> response = commoditiesController.getCommodityComment(commodity1.getId(), 0, 20, null);
 
         assertEquals(HttpStatus.OK, response.getStatusCode());
         assertEquals(expectedComments, response.getBody());
@@ -291,9 +324,9 @@ public class CommoditiesControllerTest {
 
     @Test
     public void testGetCommodityCommentWithNoComments() {
-        when(baloot.getCommentsForCommodity(anyInt())).thenReturn(new ArrayList<>());
+        when(baloot.getCommentsForCommodity(anyInt(), anyInt(), anyInt())).thenReturn(new Page<>(new ArrayList<>(), null));
 
-        ResponseEntity<ArrayList<Comment>> response = commoditiesController.getCommodityComment(commodity1.getId());
+        ResponseEntity<ArrayList<Comment>> response = commoditiesController.getCommodityComment(commodity1.getId(), 0, 20, null);
 
         assertEquals(HttpStatus.OK, response.getStatusCode());
         assertTrue(Objects.requireNonNull(response.getBody()).isEmpty());
@@ -301,12 +334,45 @@ public class CommoditiesControllerTest {
 
     @Test
     public void testGetCommodityCommentWithInvalidCommodityId() {
-        ResponseEntity<ArrayList<Comment>> response = commoditiesController.getCommodityComment("invalidId");
+        ResponseEntity<ArrayList<Comment>> response = commoditiesController.getCommodityComment("invalidId", 0, 20, null);
 
         assertEquals(HttpStatus.BAD_REQUEST, response.getStatusCode());
         assertNull(response.getBody());
     }
 
+    @Test
+    public void testGetCommodityCommentPageWithNextCursor() {
+        ArrayList<Comment> expectedComments = new ArrayList<>();
+        expectedComments.add(comment1);
+
+        when(baloot.getCommentsForCommodity(1, 0, 1)).thenReturn(new Page<>(expectedComments, 1));
+
+        ResponseEntity<ArrayList<Comment>> response = commoditiesController.getCommodityComment(commodity1.getId(), 0, 1, null);
+
+        assertEquals(HttpStatus.OK, response.getStatusCode());
+        assertEquals(expectedComments, response.getBody());
+        assertEquals("1", response.getHeaders().getFirst(CommoditiesController.NEXT_CURSOR_HEADER));
+    }
+
+    @Test
+    public void testGetCommodityCommentShouldAnswerUnchangedPollsWithNotModified() throws Exception {
+        ArrayList<Comment> expectedComments = new ArrayList<>();
+        expectedComments.add(comment1);
+        when(baloot.getCommentsForCommodity(1, 0, 20)).thenReturn(new Page<>(expectedComments, null));
+
+        String etag = commoditiesController.getCommodityComment(commodity1.getId(), 0, 20, null).getHeaders().getETag();
+        assertEquals(HttpStatus.NOT_MODIFIED, commoditiesController.getCommodityComment(commodity1.getId(), 0, 20, etag).getStatusCode());
+
+        comment1.addUserVote("testUser2", "like");
+        assertEquals(HttpStatus.OK, commoditiesController.getCommodityComment(commodity1.getId(), 0, 20, etag).getStatusCode());
+    }
+
+    @Test
+    public void testGetCommodityCommentWithInvalidPage() {
+        assertEquals(HttpStatus.BAD_REQUEST, commoditiesController.getCommodityComment(commodity1.getId(), -1, 20, null).getStatusCode());
+        assertEquals(HttpStatus.BAD_REQUEST, commoditiesController.getCommodityComment(commodity1.getId(), 0, 0, null).getStatusCode());
+    }
+
     @Test
     public void testSearchCommoditiesByName() {
         Map<String, String> input = new HashMap<>();
@@ -317,7 +383,7 @@ public class CommoditiesControllerTest {
         expectedCommodities.add(commodity1);
         expectedCommodities.add(commodity2);
 
-        when(baloot.filterCommoditiesByName("SampleName")).thenReturn(expectedCommodities);
+        when(baloot.searchCommodities("name", "SampleName", null)).thenReturn(expectedCommodities.stream());
 
         ResponseEntity<ArrayList<Commodity>> response = commoditiesController.searchCommodities(input);
 
@@ -332,7 +398,7 @@ public class CommoditiesControllerTest {
         input.put("searchValue", "SampleName");
 
         ArrayList<Commodity> expectedCommodities = new ArrayList<>();
-        when(baloot.filterCommoditiesByName("SampleName")).thenReturn(expectedCommodities);
+        when(baloot.searchCommodities("name", "SampleName", null)).thenReturn(expectedCommodities.stream());
 
         ResponseEntity<ArrayList<Commodity>> response = commoditiesController.searchCommodities(input);
 
@@ -350,7 +416,7 @@ public class CommoditiesControllerTest {
         expectedCommodities.add(commodity1);
         expectedCommodities.add(commodity2);
 
-        when(baloot.filterCommoditiesByCategory("SampleCategory")).thenReturn(expectedCommodities);
+        when(baloot.searchCommodities("category", "SampleCategory", null)).thenReturn(expectedCommodities.stream());
 
         ResponseEntity<ArrayList<Commodity>> response = commoditiesController.searchCommodities(input);
 
@@ -366,7 +432,7 @@ public class CommoditiesControllerTest {
 
         ArrayList<Commodity> expectedCommodities = new ArrayList<>();
 
-        when(baloot.filterCommoditiesByCategory("SampleCategory")).thenReturn(expectedCommodities);
+        when(baloot.searchCommodities("category", "SampleCategory", null)).thenReturn(expectedCommodities.stream());
 
         ResponseEntity<ArrayList<Commodity>> response = commoditiesController.searchCommodities(input);
 
@@ -384,7 +450,7 @@ public class CommoditiesControllerTest {
         expectedCommodities.add(commodity1);
         expectedCommodities.add(commodity2);
 
-        when(baloot.filterCommoditiesByProviderName("SampleProvider")).thenReturn(expectedCommodities);
+        when(baloot.searchCommodities("provider", "SampleProvider", null)).thenReturn(expectedCommodities.stream());
 
         ResponseEntity<ArrayList<Commodity>> response = commoditiesController.searchCommodities(input);
 
@@ -400,7 +466,43 @@ public class CommoditiesControllerTest {
 
         ArrayList<Commodity> expectedCommodities = new ArrayList<>();
 
-        when(baloot.filterCommoditiesByProviderName("SampleProvider")).thenReturn(expectedCommodities);
+        when(baloot.searchCommodities("provider", "SampleProvider", null)).thenReturn(expectedCommodities.stream());
+
+        ResponseEntity<ArrayList<Commodity>> response = commoditiesController.searchCommodities(input);
+
+        assertEquals(HttpStatus.OK, response.getStatusCode());
+        assertEquals(expectedCommodities, response.getBody());
+    }
+
+    @Test
+    public void testSearchCommoditiesByCategoriesWithAndOperator() {
+        Map<String, String> input = new HashMap<>();
+        input.put("searchOption", "categories");
+        input.put("searchValue", "phone, tech");
+
+        ArrayList<Commodity> expectedCommodities = new ArrayList<>();
+        expectedCommodities.add(commodity1);
+
+        when(baloot.searchCommodities("categories", "phone, tech", null)).thenReturn(expectedCommodities.stream());
+
+        ResponseEntity<ArrayList<Commodity>> response = commoditiesController.searchCommodities(input);
+
+        assertEquals(HttpStatus.OK, response.getStatusCode());
+        assertEquals(expectedCommodities, response.getBody());
+    }
+
+    @Test
+    public void testSearchCommoditiesByCategoriesWithOrOperator() {
+        Map<String, String> input = new HashMap<>();
+        input.put("searchOption", "categories");
+        input.put("searchValue", "phone,tech");
+        input.put("operator", "or");
+
+        ArrayList<Commodity> expectedCommodities = new ArrayList<>();
+        expectedCommodities.add(commodity1);
+        expectedCommodities.add(commodity2);
+
+        when(baloot.searchCommodities("categories", "phone,tech", "or")).thenReturn(expectedCommodities.stream());
 
         ResponseEntity<ArrayList<Commodity>> response = commoditiesController.searchCommodities(input);
 
@@ -465,7 +567,7 @@ public class CommoditiesControllerTest {
         ArrayList<Commodity> expectedCommodities = new ArrayList<>();
         expectedCommodities.add(commodity1);
         expectedCommodities.add(commodity2);
-        when(baloot.getCommodities()).thenReturn(expectedCommodities);
+        when(baloot.streamCommodities()).thenAnswer(invocation -> expectedCommodities.stream());
 
         mockMvc.perform(MockMvcRequestBuilders.get("/commodities"))
                 .andExpect(MockMvcResultMatchers.status().isOk())
@@ -480,15 +582,76 @@ public class CommoditiesControllerTest {
     @Test
     public void testGetCommoditiesWithNoCommoditiesAPI() throws Exception{
         ArrayList<Commodity> expectedCommodities = new ArrayList<>();
-        when(baloot.getCommodities()).thenReturn(expectedCommodities);
-
-        ResponseEntity<ArrayList<Commodity>> response = commoditiesController.getCommodities();
+        when(baloot.streamCommodities()).thenAnswer(invocation -> expectedCommodities.stream());
 
         mockMvc.perform(MockMvcRequestBuilders.get("/commodities"))
                 .andExpect(MockMvcResultMatchers.status().isOk())
                 .andExpect(MockMvcResultMatchers.content().json("[]"));
     }
 
+    @Test
+    public void testGetCommoditiesPage() throws Exception {
+        ArrayList<Commodity> expectedCommodities = new ArrayList<>();
+        expectedCommodities.add(commodity1);
+        when(baloot.getCommoditiesPage(Baloot.SORT_BY_NAME, null, 1)).thenReturn(new CursorPage<>(expectedCommodities, "next"));
+
+        ResponseEntity<List<Map<String, Object>>> response = commoditiesController.getCommoditiesPage(1, null, Baloot.SORT_BY_NAME, "id, price");
+
+        assertEquals(HttpStatus.OK, response.getStatusCode());
+        assertEquals(List.of(Map.of("id", "1", "price", 10000)), response.getBody());
+        assertEquals("next", response.getHeaders().getFirst(CommoditiesController.NEXT_CURSOR_HEADER));
+    }
+
+    @Test
+    public void testGetCommoditiesPageWithInvalidRequest() throws Exception {
+        when(baloot.getCommoditiesPage(anyString(), any(), anyInt())).thenThrow(new InvalidPageRequest());
+
+        assertEquals(HttpStatus.BAD_REQUEST, commoditiesController.getCommoditiesPage(0, null, Baloot.SORT_BY_ADDED, "id").getStatusCode());
+        assertEquals(HttpStatus.BAD_REQUEST, commoditiesController.getCommoditiesPage(1, null, Baloot.SORT_BY_ADDED, "password").getStatusCode());
+        assertEquals(HttpStatus.BAD_REQUEST, commoditiesController.getCommoditiesPage(1, "bad", Baloot.SORT_BY_ADDED, "id").getStatusCode());
+    }
+
+    @Test
+    public void testGetCommoditiesPageAPI() throws Exception {
+        ArrayList<Commodity> expectedCommodities = new ArrayList<>();
+        expectedCommodities.add(commodity1);
+        commodity1.addRate("testUser", 5);
+        when(baloot.getCommoditiesPage(Baloot.SORT_BY_ADDED, null, 1)).thenReturn(new CursorPage<>(expectedCommodities, null));
+
+        mockMvc.perform(MockMvcRequestBuilders.get("/commodities").param("limit", "1"))
+                .andExpect(MockMvcResultMatchers.status().isOk())
+                .andExpect(MockMvcResultMatchers.header().doesNotExist(CommoditiesController.NEXT_CURSOR_HEADER))
+                .andExpect(MockMvcResultMatchers.jsonPath("$[0].id").value(commodity1.getId()))
+                .andExpect(MockMvcResultMatchers.jsonPath("$[0].price").value(commodity1.getPrice()))
+                .andExpect(MockMvcResultMatchers.jsonPath("$[0].userRate").doesNotExist());
+    }
+
+    @Test
+    public void testGetCommoditiesByIdsAPI() throws Exception {
+        ArrayList<Commodity> expectedCommodities = new ArrayList<>();
+        expectedCommodities.add(commodity2);
+        expectedCommodities.add(commodity1);
+        when(baloot.getCommoditiesByIds(List.of("2", "1", "3"))).thenReturn(expectedCommodities);
+
+        mockMvc.perform(MockMvcRequestBuilders.get("/commodities").param("ids", "2,1,3"))
+                .andExpect(MockMvcResultMatchers.status().isOk())
+                .andExpect(MockMvcResultMatchers.jsonPath("$.length()").value(2))
+                .andExpect(MockMvcResultMatchers.jsonPath("$[0].id").value(commodity2.getId()))
+                .andExpect(MockMvcResultMatchers.jsonPath("$[1].id").value(commodity1.getId()));
+    }
+
+    @Test
+    public void testAutocompleteCommoditiesAPI() throws Exception {
+        ArrayList<Commodity> expectedCommodities = new ArrayList<>();
+        expectedCommodities.add(commodity1);
+        when(baloot.autocompleteCommodityName("test", 10)).thenReturn(expectedCommodities);
+
+        mockMvc.perform(MockMvcRequestBuilders.get("/commodities/autocomplete").param("prefix", "test"))
+                .andExpect(MockMvcResultMatchers.status().isOk())
+                .andExpect(MockMvcResultMatchers.jsonPath("$[0].id").value(commodity1.getId()))
+                .andExpect(MockMvcResultMatchers.jsonPath("$[0].name").value(commodity1.getName()));
+    }
+
     @Test
     public void testGetCommodityAPI() throws Exception {
         when(baloot.getCommodityById(anyString())).thenReturn(commodity1);
@@ -628,7 +791,7 @@ public class CommoditiesControllerTest {
         expectedComments.add(comment1);
         expectedComments.add(comment2);
 
-        when(baloot.getCommentsForCommodity(anyInt())).thenReturn(expectedComments);
+        when(baloot.getCommentsForCommodity(anyInt(), anyInt(), anyInt())).thenReturn(new Page<>(expectedComments, null));
 
         mockMvc.perform(MockMvcRequestBuilders.get("/commodities/{id}/comment", commodity1.getId()))
                 .andExpect(MockMvcResultMatchers.status().isOk())
@@ -644,9 +807,25 @@ public class CommoditiesControllerTest {
                 .andExpect(MockMvcResultMatchers.jsonPath("$[1].text").value(comment2.getText()));
     }
 
+    @Test
+    public void testGetCommodityCommentPageAPI() throws Exception {
+        ArrayList<Comment> expectedComments = new ArrayList<>();
+        expectedComments.add(comment2);
+
+        when(baloot.getCommentsForCommodity(1, 1, 1)).thenReturn(new Page<>(expectedComments, 2));
+
+        mockMvc.perform(MockMvcRequestBuilders.get("/commodities/{id}/comment", commodity1.getId())
+                        .param("cursor", "1")
+                        .param("limit", "1"))
+                .andExpect(MockMvcResultMatchers.status().isOk())
+                .andExpect(MockMvcResultMatchers.header().string(CommoditiesController.NEXT_CURSOR_HEADER, "2"))
+                .andExpect(MockMvcResultMatchers.jsonPath("$[0].id").value(comment2.getId()))
+                .andExpect(MockMvcResultMatchers.jsonPath("$.length()").value(1));
+    }
+
     @Test
     public void testGetCommodityCommentWithNoCommentsAPI() throws Exception {
-        when(baloot.getCommentsForCommodity(anyInt())).thenReturn(new ArrayList<>());
+        when(baloot.getCommentsForCommodity(anyInt(), anyInt(), anyInt())).thenReturn(new Page<>(new ArrayList<>(), null));
 
         mockMvc.perform(MockMvcRequestBuilders.get("/commodities/{id}/comment", commodity1.getId()))
                 .andExpect(MockMvcResultMatchers.status().isOk())
@@ -669,7 +848,7 @@ public class CommoditiesControllerTest {
         expectedCommodities.add(commodity1);
         expectedCommodities.add(commodity2);
 
-        when(baloot.filterCommoditiesByName("SampleName")).thenReturn(expectedCommodities);
+        when(baloot.searchCommodities("name", "SampleName", null)).thenReturn(expectedCommodities.stream());
 
         mockMvc.perform(MockMvcRequestBuilders.post("/commodities/search")
                         .contentType(MediaType.APPLICATION_JSON)
@@ -706,7 +885,7 @@ public class CommoditiesControllerTest {
         expectedCommodities.add(commodity1);
         expectedCommodities.add(commodity2);
 
-        when(baloot.filterCommoditiesByCategory("SampleCategory")).thenReturn(expectedCommodities);
+        when(baloot.searchCommodities("category", "SampleCategory", null)).thenReturn(expectedCommodities.stream());
 
         mockMvc.perform(MockMvcRequestBuilders.post("/commodities/search")
                         .contentType(MediaType.APPLICATION_JSON)
@@ -728,7 +907,7 @@ public class CommoditiesControllerTest {
 
         ArrayList<Commodity> expectedCommodities = new ArrayList<>();
 
-        when(baloot.filterCommoditiesByCategory("SampleCategory")).thenReturn(expectedCommodities);
+        when(baloot.searchCommodities("category", "SampleCategory", null)).thenReturn(expectedCommodities.stream());
 
         mockMvc.perform(MockMvcRequestBuilders.post("/commodities/search")
                         .contentType(MediaType.APPLICATION_JSON)
@@ -747,7 +926,7 @@ public class CommoditiesControllerTest {
         expectedCommodities.add(commodity1);
         expectedCommodities.add(commodity2);
 
-        when(baloot.filterCommoditiesByProviderName("SampleProvider")).thenReturn(expectedCommodities);
+        when(baloot.searchCommodities("provider", "SampleProvider", null)).thenReturn(expectedCommodities.stream());
 
         mockMvc.perform(MockMvcRequestBuilders.post("/commodities/search")
                         .contentType(MediaType.APPLICATION_JSON)
@@ -769,7 +948,7 @@ public class CommoditiesControllerTest {
 
         ArrayList<Commodity> expectedCommodities = new ArrayList<>();
 
-        when(baloot.filterCommoditiesByProviderName("SampleProvider")).thenReturn(expectedCommodities);
+        when(baloot.searchCommodities("provider", "SampleProvider", null)).thenReturn(expectedCommodities.stream());
 
         mockMvc.perform(MockMvcRequestBuilders.post("/commodities/search")
                         .contentType(MediaType.APPLICATION_JSON)
@@ -3,6 +3,7 @@ import application.BalootApplication;
 import exceptions.InvalidCreditRange;
 import exceptions.NotExistentUser;
 import model.User;
+import model.Versions;
 import static defines.Errors.*;
 
 
@@ -62,6 +63,19 @@ public class UserControllerTest {
                 .andExpect(MockMvcResultMatchers.jsonPath("$.birthDate").value(user.getBirthDate()));
     }
 
+    @Test
+    public void testGetUserByIdNotModified() throws Exception {
+        when(baloot.getUserById(anyString())).thenReturn(user);
+        String etag = "\"" + Versions.EPOCH + "-" + user.getVersion() + "\"";
+
+        mockMvc.perform(MockMvcRequestBuilders.get("/users/{id}", user.getUsername()))
+                .andExpect(MockMvcResultMatchers.status().isOk())
+                .andExpect(MockMvcResultMatchers.header().string("ETag", etag));
+        mockMvc.perform(MockMvcRequestBuilders.get("/users/{id}", user.getUsername()).header("If-None-Match", etag))
+                .andExpect(MockMvcResultMatchers.status().isNotModified())
+                .andExpect(MockMvcResultMatchers.content().string(""));
+    }
+
     @Test
     public void testGetUserByIdNotFound() throws Exception {
         String nonExistentUserId = "nonExistentUser";
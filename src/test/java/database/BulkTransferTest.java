@@ -0,0 +1,166 @@
+package database;
+
+import model.Comment;
+import model.Commodity;
+import model.Mutation;
+import model.MutationLog;
+import model.Mutations;
+import model.User;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import static defines.Errors.*;
+import static org.junit.jupiter.api.Assertions.*;
+
+public class BulkTransferTest {
+    private Database database;
+    private BulkTransfer bulkTransfer;
+
+    @BeforeEach
+    public void setUp() {
+        database = Database.getInstance();
+        Commodity iPhone = new Commodity();
+        iPhone.setId("1");
+        iPhone.setName("iPhone");
+        iPhone.setPrice(1000);
+        database.setCommodities(new ArrayList<>(List.of(iPhone)));
+        database.setUsers(new ArrayList<>(List.of(new User("ali", "pass", "ali@ut.ac.ir", "1990-01-01", "Tehran"))));
+        database.setComments(new ArrayList<>());
+        bulkTransfer = new BulkTransfer(database);
+    }
+
+    @AfterEach
+    public void tearDown() throws IOException {
+        new DataParser(database).loadAll();
+    }
+
+    private static InputStream lines(String... lines) {
+        return new ByteArrayInputStream(String.join("\n", lines).getBytes(StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void testImportShouldValidateEveryLineAndStoreTheValidOnes() throws IOException {
+        Commodity iPhone = database.findCommodity("1");
+
+        BulkTransfer.Result result = bulkTransfer.importLines(BulkTransfer.Entity.COMMODITIES, lines(
+                "{\"id\": \"1\", \"name\": \"iPhone\", \"price\": 900}",
+                "",
+                "{\"id\": \"2\", \"name\": \"iPad\", \"price\": 500, \"categories\": [\"tech\"]}",
+                "{\"name\": \"nameless\"}",
+                "{\"id\": \"3\", \"price\": -1}",
+                "not json",
+                "{\"id\": \"2\", \"name\": \"iPad\", \"price\": 500, \"categories\": [\"tech\"]}"));
+
+        assertEquals(2, result.imported());
+        assertEquals(1, result.unchanged());
+        assertEquals(3, result.rejected());
+        assertEquals("line 4: " + MISSING_COMMODITY_ID, result.errors().get(0));
+        assertEquals("line 5: " + INVALID_PRICE_RANGE, result.errors().get(1));
+        assertTrue(result.errors().get(2).startsWith("line 6: "));
+        assertNotSame(iPhone, database.findCommodity("1"));
+        assertEquals(900, database.findCommodity("1").getPrice());
+        assertEquals(List.of("2"), database.findCommoditiesByCategory("tech").stream().map(Commodity::getId).toList());
+    }
+
+    @Test
+    public void testImportShouldSpanSeveralBatches() throws IOException {
+        StringBuilder body = new StringBuilder();
+        int count = BulkTransfer.BATCH_SIZE * 2 + 1;
+        for (int i = 0; i < count; i++)
+            body.append("{\"username\": \"user").append(i).append("\", \"password\": \"pass\"}\n");
+        body.append("{\"username\": \"ali\", \"password\": \"other\"}\n");
+
+        BulkTransfer.Result result = bulkTransfer.importLines(BulkTransfer.Entity.USERS,
+                new ByteArrayInputStream(body.toString().getBytes(StandardCharsets.UTF_8)));
+
+        assertEquals(count, result.imported());
+        assertEquals(1, result.unchanged());
+        assertEquals(count + 1, database.getUsers().size());
+        assertEquals("pass", database.findUser("ali").getPassword());
+    }
+
+    @Test
+    public void testCommentsOfUnknownCommoditiesShouldBeRejected() throws IOException {
+        BulkTransfer.Result result = bulkTransfer.importLines(BulkTransfer.Entity.COMMENTS, lines(
+                "{\"username\": \"ali\", \"commodityId\": 1, \"text\": \"Nice\"}",
+                "{\"username\": \"ali\", \"commodityId\": 1, \"text\": \"Nice\"}",
+                "{\"username\": \"ali\", \"commodityId\": 7, \"text\": \"Lost\"}"));
+
+        assertEquals(1, result.imported());
+        assertEquals(1, result.unchanged());
+        assertEquals(List.of("line 3: " + NOT_EXISTENT_COMMODITY), result.errors());
+        assertEquals(1, database.findCommentsByCommodity(1).size());
+    }
+
+    @Test
+    public void testEachBatchShouldWaitForDurabilityOnce() throws IOException {
+        List<Long> waits = new ArrayList<>();
+        Mutations.setLog(new MutationLog() {
+            private long sequence;
+
+            @Override
+            public synchronized long append(Mutation mutation) {
+                return ++sequence;
+            }
+
+            @Override
+            public synchronized void awaitDurable(long sequence) {
+                waits.add(sequence);
+            }
+        });
+        try {
+            StringBuilder users = new StringBuilder();
+            StringBuilder providers = new StringBuilder();
+            for (int i = 0; i <= BulkTransfer.BATCH_SIZE; i++) {
+                users.append("{\"username\": \"user").append(i).append("\", \"password\": \"pass\"}\n");
+                providers.append("{\"id\": \"p").append(i).append("\", \"name\": \"provider\"}\n");
+            }
+
+            assertEquals(BulkTransfer.BATCH_SIZE + 1, bulkTransfer.importLines(BulkTransfer.Entity.USERS,
+                    lines(users.toString())).imported());
+            assertEquals(2, waits.size());
+
+            waits.clear();
+            assertEquals(BulkTransfer.BATCH_SIZE + 1, bulkTransfer.importLines(BulkTransfer.Entity.PROVIDERS,
+                    lines(providers.toString())).imported());
+            assertEquals(2, waits.size());
+
+            waits.clear();
+            assertEquals(2, bulkTransfer.importLines(BulkTransfer.Entity.COMMENTS, lines(
+                    "{\"username\": \"ali\", \"commodityId\": 1, \"text\": \"Nice\"}",
+                    "{\"username\": \"ali\", \"commodityId\": 1, \"text\": \"Cheap\"}")).imported());
+            assertEquals(1, waits.size());
+            assertEquals(List.of(0, 1), database.findCommentsByCommodity(1).stream().map(Comment::getId).toList());
+        } finally {
+            Mutations.setLog(MutationLog.NONE);
+        }
+    }
+
+    @Test
+    public void testExportShouldRoundTrip() throws IOException {
+        bulkTransfer.importLines(BulkTransfer.Entity.COMMODITIES, lines(
+                "{\"id\": \"2\", \"name\": \"iPad\", \"price\": 500}"));
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+
+        assertEquals(2, bulkTransfer.export(BulkTransfer.Entity.COMMODITIES, output));
+        String[] exported = output.toString(StandardCharsets.UTF_8).split("\n");
+        assertEquals(2, exported.length);
+        assertTrue(exported[1].contains("\"name\":\"iPad\""));
+
+        database.setCommodities(new ArrayList<>());
+        BulkTransfer.Result result = bulkTransfer.importLines(BulkTransfer.Entity.COMMODITIES,
+                new ByteArrayInputStream(output.toByteArray()));
+        assertEquals(2, result.imported());
+        assertEquals(500, database.findCommodity("2").getPrice());
+    }
+}
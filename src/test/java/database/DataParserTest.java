@@ -0,0 +1,135 @@
+package database;
+
+import model.Comment;
+import model.Commodity;
+import model.User;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class DataParserTest {
+    private Database database;
+    private DataParser dataParser;
+
+    @BeforeEach
+    public void setUp() {
+        database = Database.getInstance();
+        dataParser = new DataParser(database);
+        database.setUsers(new ArrayList<>());
+        database.setProviders(new ArrayList<>());
+        database.setCommodities(new ArrayList<>());
+        database.setComments(new ArrayList<>());
+    }
+
+    @AfterEach
+    public void tearDown() throws IOException {
+        dataParser.loadAll();
+    }
+
+    private DataParser copyDataFiles(Path directory) throws IOException {
+        for (String fileName : DataParser.DATA_FILES)
+            Files.copy(Paths.get(DataParser.defaultPath(), fileName), directory.resolve(fileName));
+        return new DataParser(database, directory.toString());
+    }
+
+    @Test
+    public void testLoadAllShouldFillEveryListAndIndex() throws IOException {
+        dataParser.loadAll();
+
+        assertFalse(database.getUsers().isEmpty());
+        assertFalse(database.getProviders().isEmpty());
+        assertFalse(database.getCommodities().isEmpty());
+        assertFalse(database.getComments().isEmpty());
+
+        for (User user : database.getUsers())
+            assertSame(user, database.findUser(user.getUsername()));
+        for (Commodity commodity : database.getCommodities())
+            assertSame(commodity, database.findCommodity(commodity.getId()));
+    }
+
+    @Test
+    public void testGetCommentsListShouldAssignSequentialIds() throws IOException {
+        dataParser.getCommentsList();
+
+        List<Comment> comments = database.getComments();
+        for (int i = 0; i < comments.size(); i++) {
+            assertEquals(i, comments.get(i).getId());
+            assertSame(comments.get(i), database.findComment(i));
+        }
+    }
+
+    @Test
+    public void testReloadCommoditiesShouldApplyOnlyChangedCommodities(@TempDir Path directory) throws IOException {
+        DataParser parser = copyDataFiles(directory);
+        parser.loadAll();
+        Commodity iPhone = database.findCommodity("1");
+        Commodity other = database.findCommodity("2");
+        int otherStock = other.getInStock();
+
+        Files.writeString(directory.resolve("commodities.json"), """
+                [{"id": "1", "name": "iPhone", "providerId": "1", "price": 80, "categories": ["phone", "tech"],
+                  "rating": 9.8, "inStock": 3, "image": ""},
+                 {"id": "9", "name": "Pixel", "providerId": "1", "price": 50, "categories": ["phone"],
+                  "rating": 8, "inStock": 4, "image": ""}]""");
+
+        assertEquals(2, parser.reload("commodities.json"));
+        Commodity updated = database.findCommodity("1");
+        assertEquals(80, updated.getPrice());
+        assertEquals(3, updated.getInStock());
+        assertEquals(iPhone.getUserRate(), updated.getUserRate());
+        assertSame(other, database.findCommodity("2"));
+        assertEquals(otherStock, other.getInStock());
+        assertEquals("Pixel", database.findCommodity("9").getName());
+        assertTrue(database.findCommoditiesByCategory("phone").contains(database.findCommodity("9")));
+        assertEquals(0, parser.reload("commodities.json"));
+    }
+
+    @Test
+    public void testReloadShouldOnlyAddNewUsersAndComments(@TempDir Path directory) throws IOException {
+        DataParser parser = copyDataFiles(directory);
+        parser.loadAll();
+        int users = database.getUsers().size();
+        int comments = database.getComments().size();
+
+        assertEquals(0, parser.reload("users.json"));
+        assertEquals(0, parser.reload("providers.json"));
+        assertEquals(0, parser.reload("comments.json"));
+        assertEquals(users, database.getUsers().size());
+        assertEquals(comments, database.getComments().size());
+
+        Files.writeString(directory.resolve("users.json"), """
+                [{"username": "newcomer", "password": "1234", "email": "new@ut.ac.ir", "credit": 10}]""");
+        assertEquals(1, parser.reload("users.json"));
+        assertEquals(10, database.findUser("newcomer").getCredit());
+        assertThrows(IllegalArgumentException.class, () -> parser.reload("orders.json"));
+    }
+
+    @Test
+    public void testReloadOfAFileThatFailsMidParseShouldApplyNothing(@TempDir Path directory) throws IOException {
+        DataParser parser = copyDataFiles(directory);
+        parser.loadAll();
+        int price = database.findCommodity("1").getPrice();
+
+        StringBuilder pushed = new StringBuilder("[");
+        for (int i = 0; i < BulkTransfer.BATCH_SIZE + 1; i++)
+            pushed.append("""
+                    {"id": "1", "name": "iPhone", "providerId": "1", "price": 80, "categories": ["phone"],
+                     "rating": 9.8, "inStock": 3, "image": ""},""");
+        pushed.append("{\"id\": ");
+        Files.writeString(directory.resolve("commodities.json"), pushed);
+
+        assertThrows(IOException.class, () -> parser.reload("commodities.json"));
+        assertEquals(price, database.findCommodity("1").getPrice());
+    }
+}
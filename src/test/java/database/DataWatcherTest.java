@@ -0,0 +1,103 @@
+package database;
+
+import model.Commodity;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class DataWatcherTest {
+    @TempDir
+    Path directory;
+
+    @AfterEach
+    public void tearDown() throws IOException {
+        new DataParser(Database.getInstance()).loadAll();
+    }
+
+    @Test
+    public void testPushedCommoditiesFileShouldBeAppliedWithoutRestart() throws Exception {
+        for (String fileName : DataParser.DATA_FILES)
+            Files.copy(Paths.get(DataParser.defaultPath(), fileName), directory.resolve(fileName));
+        DataParser dataParser = new DataParser(Database.getInstance(), directory.toString());
+        dataParser.loadAll();
+        Commodity iPhone = Database.getInstance().findCommodity("1");
+
+        try (DataWatcher ignored = new DataWatcher(dataParser).start()) {
+            Path pushed = directory.resolve("commodities.json.tmp");
+            Files.writeString(pushed, """
+                    [{"id": "1", "name": "iPhone", "providerId": "1", "price": 75, "categories": ["phone", "tech"],
+                      "rating": 9.8, "inStock": 42, "image": ""}]""");
+            Files.move(pushed, directory.resolve("commodities.json"), StandardCopyOption.ATOMIC_MOVE);
+
+            long deadline = System.currentTimeMillis() + 10_000;
+            while (Database.getInstance().findCommodity("1").getPrice() != 75
+                    && System.currentTimeMillis() < deadline)
+                Thread.sleep(DataWatcher.SETTLE_MILLIS);
+        }
+
+        Commodity updated = Database.getInstance().findCommodity("1");
+        assertEquals(75, updated.getPrice());
+        assertEquals(42, updated.getInStock());
+        assertEquals(42, iPhone.getInStock());
+    }
+
+    @Test
+    public void testUnparsableFileShouldBeCountedAndSkipped() throws Exception {
+        for (String fileName : DataParser.DATA_FILES)
+            Files.copy(Paths.get(DataParser.defaultPath(), fileName), directory.resolve(fileName));
+        DataParser dataParser = new DataParser(Database.getInstance(), directory.toString());
+        dataParser.loadAll();
+        Commodity iPhone = Database.getInstance().findCommodity("1");
+        int price = iPhone.getPrice();
+
+        try (DataWatcher dataWatcher = new DataWatcher(dataParser).start()) {
+            Files.writeString(directory.resolve("commodities.json"), "[{\"id\": ");
+
+            long deadline = System.currentTimeMillis() + 10_000;
+            while (dataWatcher.getFailedReloads() == 0 && System.currentTimeMillis() < deadline)
+                Thread.sleep(DataWatcher.SETTLE_MILLIS);
+
+            assertTrue(dataWatcher.getFailedReloads() > 0);
+            assertTrue(dataWatcher.getLastFailure().startsWith("commodities.json"));
+        }
+        assertEquals(price, iPhone.getPrice());
+    }
+
+    @Test
+    public void testFailureWhileApplyingShouldBeReportedAsPartialAndKeepWatching() throws Exception {
+        for (String fileName : DataParser.DATA_FILES)
+            Files.copy(Paths.get(DataParser.defaultPath(), fileName), directory.resolve(fileName));
+        Repository repository = mock(Repository.class);
+        when(repository.addUsers(any())).thenThrow(new IllegalStateException("refused"));
+        DataParser dataParser = new DataParser(repository, directory.toString());
+
+        try (DataWatcher dataWatcher = new DataWatcher(dataParser).start()) {
+            Files.writeString(directory.resolve("users.json"), """
+                    [{"username": "newcomer", "password": "1234", "email": "new@ut.ac.ir", "credit": 10}]""");
+            awaitFailure(dataWatcher, "users.json (partially applied)");
+
+            Files.writeString(directory.resolve("commodities.json"), "[{\"id\": ");
+            awaitFailure(dataWatcher, "commodities.json: ");
+        }
+    }
+
+    private static void awaitFailure(DataWatcher dataWatcher, String prefix) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 10_000;
+        while ((dataWatcher.getLastFailure() == null || !dataWatcher.getLastFailure().startsWith(prefix))
+                && System.currentTimeMillis() < deadline)
+            Thread.sleep(DataWatcher.SETTLE_MILLIS);
+        assertTrue(dataWatcher.getLastFailure().startsWith(prefix), dataWatcher.getLastFailure());
+    }
+}
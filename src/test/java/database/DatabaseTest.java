@@ -0,0 +1,354 @@
+package database;
+
+import model.Comment;
+import model.Commodity;
+import model.Mutation;
+import model.MutationLog;
+import model.Mutations;
+import model.Provider;
+import model.User;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class DatabaseTest {
+    private Database database;
+
+    @BeforeEach
+    public void setUp() {
+        database = Database.getInstance();
+        database.setUsers(new ArrayList<>());
+        database.setProviders(new ArrayList<>());
+        database.setCommodities(new ArrayList<>());
+        database.setComments(new ArrayList<>());
+    }
+
+    @AfterEach
+    public void tearDown() {
+        database = null;
+    }
+
+    private static Commodity createCommodity(String id, String name) {
+        Commodity commodity = new Commodity();
+        commodity.setId(id);
+        commodity.setName(name);
+        return commodity;
+    }
+
+    private static Commodity createCommodity(String id, String name, String providerId) {
+        Commodity commodity = createCommodity(id, name);
+        commodity.setProviderId(providerId);
+        return commodity;
+    }
+
+    private static Provider createProvider(String id, String name) {
+        Provider provider = new Provider();
+        provider.setId(id);
+        provider.setName(name);
+        return provider;
+    }
+
+    @Test
+    public void testDefaultCatalogPathShouldPointIntoTheDataDirectory() {
+        assertEquals(DataDirectory.resolve("catalog"), Database.defaultCatalogPath());
+    }
+
+    @Test
+    public void testFindAddedEntitiesSuccessfully() {
+        User user = new User("testUser", "testPass", "test@ut.ac.ir", "10/12/2023", "sample");
+        Provider provider = new Provider();
+        provider.setId("1");
+        Commodity commodity = createCommodity("1", "testName");
+        Comment comment = new Comment(0, "test@ut.ac.ir", "testUser", 1, "Sample comment");
+
+        database.addUser(user);
+        database.addProvider(provider);
+        database.addCommodity(commodity);
+        database.addComment(comment);
+
+        assertSame(user, database.findUser("testUser"));
+        assertSame(provider, database.findProvider("1"));
+        assertSame(commodity, database.findCommodity("1"));
+        assertSame(comment, database.findComment(0));
+    }
+
+    @Test
+    public void testWritesRefusedByTheLogShouldLeaveNothingBehind() {
+        Commodity commodity = createCommodity("1", "testName");
+        long version = database.getCommoditiesVersion();
+        Mutations.setLog(new MutationLog() {
+            @Override
+            public long append(Mutation mutation) {
+                throw new IllegalStateException("Write-ahead log is closed");
+            }
+
+            @Override
+            public void awaitDurable(long sequence) {
+            }
+        });
+        try {
+            assertThrows(IllegalStateException.class, () -> database.addUser(new User("testUser", "testPass", null, null, null)));
+            assertThrows(IllegalStateException.class, () -> database.addCommodity(commodity));
+            assertThrows(IllegalStateException.class, () -> database.addComment(new Comment(0, null, "testUser", 1, "text")));
+        } finally {
+            Mutations.setLog(MutationLog.NONE);
+        }
+
+        assertNull(database.findUser("testUser"));
+        assertTrue(database.getUsers().isEmpty());
+        assertNull(database.findCommodity("1"));
+        assertEquals(version, database.getCommoditiesVersion());
+        assertTrue(database.getComments().isEmpty());
+        assertTrue(database.addUser(new User("testUser", "testPass", null, null, null)));
+    }
+
+    @Test
+    public void testFindNotExistentEntitiesShouldReturnNull() {
+        assertNull(database.findUser("unknown"));
+        assertNull(database.findProvider("unknown"));
+        assertNull(database.findCommodity("unknown"));
+        assertNull(database.findComment(42));
+    }
+
+    @Test
+    public void testSetCommoditiesShouldRebuildIndex() {
+        database.addCommodity(createCommodity("1", "old"));
+        database.setCommodities(new ArrayList<>(List.of(createCommodity("2", "new"))));
+
+        assertNull(database.findCommodity("1"));
+        assertEquals("new", database.findCommodity("2").getName());
+    }
+
+    @Test
+    public void testIndexesBuiltOnFirstLookupShouldSeeEarlierWrites() {
+        database.setCommodities(new ArrayList<>(List.of(createCommodity("1", "phone", "1"))));
+        Commodity renamed = createCommodity("1", "tablet", "2");
+        assertTrue(database.updateCommodity(renamed));
+        Commodity added = createCommodity("2", "tablet stand", "2");
+        database.addCommodity(added);
+
+        assertTrue(database.findCommoditiesByName("phone").isEmpty());
+        assertEquals(List.of(renamed, added), database.findCommoditiesByName("tablet"));
+        assertEquals(List.of(renamed, added), database.findCommoditiesByProvider("2"));
+        assertTrue(database.findCommoditiesByProvider("1").isEmpty());
+
+        Commodity later = createCommodity("3", "tablet case", "2");
+        database.addCommodity(later);
+        assertEquals(List.of(renamed, added, later), database.findCommoditiesByProvider("2"));
+    }
+
+    @Test
+    public void testDuplicateIdShouldKeepFirstEntity() {
+        Commodity first = createCommodity("1", "first");
+        database.setCommodities(new ArrayList<>(List.of(first, createCommodity("1", "second"))));
+
+        assertSame(first, database.findCommodity("1"));
+    }
+
+    @Test
+    public void testFindCommoditiesByProviderSuccessfully() {
+        Commodity commodity1 = createCommodity("1", "iPhone", "1");
+        Commodity commodity2 = createCommodity("2", "Galaxy", "2");
+        Commodity commodity3 = createCommodity("3", "iPad", "1");
+        database.setCommodities(new ArrayList<>(List.of(commodity1, commodity2)));
+        database.addCommodity(commodity3);
+
+        assertEquals(List.of(commodity1, commodity3), database.findCommoditiesByProvider("1"));
+        assertEquals(List.of(commodity2), database.findCommoditiesByProvider("2"));
+        assertTrue(database.findCommoditiesByProvider("3").isEmpty());
+    }
+
+    @Test
+    public void testFindProviderIdsByNameShouldReturnAllDuplicates() {
+        database.setProviders(new ArrayList<>(List.of(createProvider("1", "apple"), createProvider("2", "samsung"))));
+        database.addProvider(createProvider("3", "apple"));
+
+        assertEquals(List.of("1", "3"), database.findProviderIdsByName("apple"));
+        assertEquals(List.of("2"), database.findProviderIdsByName("samsung"));
+        assertTrue(database.findProviderIdsByName("nokia").isEmpty());
+    }
+
+    @Test
+    public void testFindCommoditiesByCategorySuccessfully() {
+        Commodity phone = createCommodity("1", "iPhone");
+        phone.getCategories().addAll(List.of("phone", "tech"));
+        Commodity laptop = createCommodity("2", "MacBook");
+        laptop.getCategories().add("tech");
+        database.setCommodities(new ArrayList<>(List.of(phone)));
+        database.addCommodity(laptop);
+
+        assertEquals(List.of(phone), List.copyOf(database.findCommoditiesByCategory("phone")));
+        assertEquals(List.of(phone, laptop), List.copyOf(database.findCommoditiesByCategory("tech")));
+        assertTrue(database.findCommoditiesByCategory("food").isEmpty());
+    }
+
+    @Test
+    public void testFindCommoditiesByNameSuccessfully() {
+        Commodity iPhone = createCommodity("1", "iPhone");
+        Commodity iPad = createCommodity("2", "iPad");
+        Commodity galaxy = createCommodity("3", "Galaxy Phone");
+        database.setCommodities(new ArrayList<>(List.of(iPhone, iPad)));
+        database.addCommodity(galaxy);
+
+        assertEquals(List.of(iPhone, iPad), database.findCommoditiesByName("iP"));
+        assertEquals(List.of(iPhone, galaxy), database.findCommoditiesByName("hone"));
+        assertEquals(List.of(galaxy), database.findCommoditiesByName("Galaxy Phone"));
+        assertEquals(List.of(iPhone, iPad, galaxy), database.findCommoditiesByName(""));
+        assertTrue(database.findCommoditiesByName("phone").isEmpty());
+        assertTrue(database.findCommoditiesByName("Nokia").isEmpty());
+    }
+
+    @Test
+    public void testFindCommoditiesByNamePrefixShouldIgnoreCaseAndRespectLimit() {
+        Commodity iPhone = createCommodity("1", "iPhone");
+        Commodity iPad = createCommodity("2", "iPad");
+        Commodity imac = createCommodity("3", "IMac");
+        database.setCommodities(new ArrayList<>(List.of(iPhone, iPad, imac, createCommodity("4", "Galaxy"))));
+
+        assertEquals(List.of(imac, iPad, iPhone), database.findCommoditiesByNamePrefix("i", 10));
+        assertEquals(List.of(iPad, iPhone), database.findCommoditiesByNamePrefix("IP", 10));
+        assertEquals(List.of(imac), database.findCommoditiesByNamePrefix("i", 1));
+        assertTrue(database.findCommoditiesByNamePrefix("x", 10).isEmpty());
+    }
+
+    @Test
+    public void testReplacedCommodityShouldForwardStockAndRates() throws Exception {
+        Commodity iPhone = createCommodity("1", "iPhone", "1");
+        iPhone.setInStock(5);
+        iPhone.addRate("ali", 8);
+        database.setCommodities(new ArrayList<>(List.of(iPhone)));
+
+        Commodity pushed = createCommodity("1", "iPhone", "1");
+        pushed.setPrice(90);
+        pushed.setInStock(7);
+        assertTrue(database.updateCommodity(pushed));
+
+        assertTrue(iPhone.tryUpdateInStock(-2));
+        iPhone.addRate("reza", 4);
+        assertEquals(5, pushed.getInStock());
+        assertEquals(5, iPhone.getInStock());
+        assertEquals(Map.of("ali", 8, "reza", 4), pushed.getUserRate());
+        assertEquals(0, iPhone.getPrice());
+    }
+
+    @Test
+    public void testUpdateCommodityShouldReplaceStoredCommodityAndItsIndexEntries() {
+        Commodity iPhone = createCommodity("1", "iPhone", "1");
+        iPhone.getCategories().addAll(List.of("phone", "tech"));
+        iPhone.setPrice(100);
+        database.setCommodities(new ArrayList<>(List.of(iPhone, createCommodity("2", "iPad", "1"))));
+        long version = database.getCommoditiesVersion();
+        CatalogSnapshot before = database.getCatalogSnapshot();
+
+        Commodity pushed = createCommodity("1", "iPhone", "1");
+        pushed.getCategories().addAll(List.of("phone", "tech"));
+        pushed.setPrice(90);
+        pushed.setInStock(7);
+        assertTrue(database.updateCommodity(pushed));
+        assertSame(pushed, database.findCommodity("1"));
+        assertSame(pushed, database.getCatalogSnapshot().commodities().get(0));
+        assertSame(iPhone, before.commodities().get(0));
+        assertEquals(100, iPhone.getPrice());
+        assertEquals(List.of(pushed), database.findCommoditiesByProvider("1").subList(0, 1));
+        assertEquals(List.of(pushed), List.copyOf(database.findCommoditiesByCategory("phone")));
+        assertTrue(database.getCommoditiesVersion() > version);
+        assertFalse(database.updateCommodity(pushed));
+
+        Commodity renamed = createCommodity("1", "Galaxy", "2");
+        renamed.getCategories().addAll(List.of("tech", "android"));
+        assertTrue(database.updateCommodity(renamed));
+        assertSame(renamed, database.findCommodity("1"));
+        assertEquals(List.of(renamed), database.findCommoditiesByNamePrefix("gal", 10));
+        assertTrue(database.findCommoditiesByName("Phone").isEmpty());
+        assertEquals(List.of(renamed), database.findCommoditiesByProvider("2"));
+        assertEquals(List.of("2"), database.findCommoditiesByProvider("1").stream().map(Commodity::getId).toList());
+        assertTrue(database.findCommoditiesByCategory("phone").isEmpty());
+        assertEquals(List.of(renamed), List.copyOf(database.findCommoditiesByCategory("android")));
+        assertTrue(database.getCommoditiesVersion() > version);
+
+        Commodity added = createCommodity("3", "MacBook");
+        assertTrue(database.updateCommodity(added));
+        assertSame(added, database.findCommodity("3"));
+    }
+
+    @Test
+    public void testFindCommentsByCommodityShouldKeepInsertionOrder() {
+        Comment comment1 = new Comment(0, "a@ut.ac.ir", "a", 1, "first");
+        Comment comment2 = new Comment(1, "b@ut.ac.ir", "b", 2, "second");
+        Comment comment3 = new Comment(2, "c@ut.ac.ir", "c", 1, "third");
+        database.setComments(new ArrayList<>(List.of(comment1, comment2)));
+        database.addComment(comment3);
+
+        assertEquals(List.of(comment1, comment3), database.findCommentsByCommodity(1));
+        assertEquals(List.of(comment2), database.findCommentsByCommodity(2));
+        assertTrue(database.findCommentsByCommodity(3).isEmpty());
+    }
+
+    @Test
+    public void testUsersShouldBeSplitIntoShards() {
+        int shardCount = database.getUserShardCount();
+        try {
+            database.setUserShardCount(4);
+            for (int i = 0; i < 100; i++)
+                assertTrue(database.addUser(new User("user" + i, "pass", i + "@ut.ac.ir", "10/12/2023", "sample")));
+            assertFalse(database.addUser(new User("user7", "other", "other@ut.ac.ir", "10/12/2023", "sample")));
+            User user7 = database.findUser("user7");
+
+            database.setUserShardCount(3);
+            assertEquals(3, database.getUserShardCount());
+            assertEquals(100, database.getUsers().size());
+            assertSame(user7, database.findUser("user7"));
+            for (int i = 0; i < 100; i++)
+                assertEquals("user" + i, database.findUser("user" + i).getUsername());
+            assertNull(database.findUser("user100"));
+        } finally {
+            database.setUserShardCount(shardCount);
+        }
+    }
+
+    @Test
+    public void testReplacingUsersShouldNotRaceWithResharding() throws Exception {
+        int shardCount = database.getUserShardCount();
+        ArrayList<User> users = new ArrayList<>();
+        for (int i = 0; i < 200; i++)
+            users.add(new User("user" + i, "pass", i + "@ut.ac.ir", "10/12/2023", "sample"));
+        try {
+            Thread resharding = new Thread(() -> {
+                for (int i = 0; i < 50; i++)
+                    database.setUserShardCount(2 + i % 5);
+            });
+            resharding.start();
+            for (int i = 0; i < 50; i++)
+                database.setUsers(users);
+            resharding.join();
+
+            assertEquals(users.size(), database.getUsers().size());
+            for (User user : users)
+                assertSame(user, database.findUser(user.getUsername()));
+        } finally {
+            database.setUserShardCount(shardCount);
+        }
+    }
+
+    @Test
+    public void testCatalogSnapshotShouldNotChangeAfterPublishing() {
+        database.setCommodities(new ArrayList<>(List.of(createCommodity("1", "iPhone"))));
+        CatalogSnapshot snapshot = database.getCatalogSnapshot();
+
+        database.addCommodity(createCommodity("2", "iPad"));
+        CatalogSnapshot next = database.getCatalogSnapshot();
+
+        assertEquals(List.of("1"), snapshot.commodities().stream().map(Commodity::getId).toList());
+        assertEquals(List.of("1", "2"), next.commodities().stream().map(Commodity::getId).toList());
+        assertTrue(next.version() > snapshot.version());
+        assertSame(database.findCommodity("1"), next.commodities().get(0));
+        assertThrows(UnsupportedOperationException.class, () -> next.commodities().add(createCommodity("3", "iMac")));
+    }
+}
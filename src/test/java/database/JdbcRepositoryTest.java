@@ -0,0 +1,336 @@
+package database;
+
+import model.Comment;
+import model.Commodity;
+import model.Mutation;
+import model.MutationLog;
+import model.Mutations;
+import model.Provider;
+import model.User;
+import service.Baloot;
+import utils.CursorPage;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class JdbcRepositoryTest {
+    @TempDir
+    Path directory;
+
+    private JdbcRepository repository;
+
+    @BeforeEach
+    public void setUp() throws Exception {
+        repository = open();
+        Mutations.setListener(repository::mutated);
+
+        Provider apple = createProvider("1", "Apple");
+        Provider samsung = createProvider("2", "Samsung");
+        repository.setProviders(new ArrayList<>(List.of(apple, samsung, createProvider("3", "Apple"))));
+        Commodity iPhone = createCommodity("1", "iPhone", "1", "phone", "tech");
+        iPhone.setPrice(1000);
+        iPhone.setInStock(5);
+        repository.setCommodities(new ArrayList<>(List.of(iPhone, createCommodity("2", "iPad", "1", "tech"),
+                createCommodity("3", "Galaxy Phone", "2", "phone"), createCommodity("1", "duplicate", "3"))));
+        repository.setUsers(new ArrayList<>(List.of(new User("ali", "pass", "ali@ut.ac.ir", "1990-01-01", "Tehran"))));
+        repository.setComments(new ArrayList<>(List.of(new Comment(0, "ali@ut.ac.ir", "ali", 1, "Nice"),
+                new Comment(1, "ali@ut.ac.ir", "ali", 3, "Bad"))));
+    }
+
+    @AfterEach
+    public void tearDown() {
+        Mutations.setListener(mutation -> {
+        });
+        repository.close();
+    }
+
+    private JdbcRepository open() throws Exception {
+        return new JdbcRepository("jdbc:h2:file:" + directory.resolve("baloot").toAbsolutePath());
+    }
+
+    private static Provider createProvider(String id, String name) {
+        Provider provider = new Provider();
+        provider.setId(id);
+        provider.setName(name);
+        return provider;
+    }
+
+    private static Commodity createCommodity(String id, String name, String providerId, String... categories) {
+        Commodity commodity = new Commodity();
+        commodity.setId(id);
+        commodity.setName(name);
+        commodity.setProviderId(providerId);
+        commodity.getCategories().addAll(Arrays.asList(categories));
+        return commodity;
+    }
+
+    private static List<String> ids(Collection<Commodity> commodities) {
+        return commodities.stream().map(Commodity::getId).toList();
+    }
+
+    @Test
+    public void testInsertsRefusedByTheLogShouldBeRolledBack() throws Exception {
+        Mutations.setLog(new MutationLog() {
+            @Override
+            public long append(Mutation mutation) {
+                throw new IllegalStateException("Write-ahead log is closed");
+            }
+
+            @Override
+            public void awaitDurable(long sequence) {
+            }
+        });
+        try {
+            assertThrows(IllegalStateException.class, () -> repository.addUsers(List.of(
+                    new User("reza", "pass", null, null, null), new User("sara", "pass", null, null, null))));
+            assertThrows(IllegalStateException.class, () -> repository.addComment(new Comment(0, null, "ali", 2, "Ok")));
+            assertThrows(IllegalStateException.class, () -> repository.addCommodity(createCommodity("4", "iMac", "1")));
+        } finally {
+            Mutations.setLog(MutationLog.NONE);
+        }
+
+        repository.close();
+        repository = open();
+        assertNull(repository.findUser("reza"));
+        assertNull(repository.findUser("sara"));
+        assertEquals(2, repository.getComments().size());
+        assertNull(repository.findCommodity("4"));
+    }
+
+    @Test
+    public void testQueriesShouldMatchInMemoryDatabase() {
+        repository.addCommodity(createCommodity("5", "iMac", "1", "tech"));
+
+        assertEquals(List.of("1", "2", "3", "5"), ids(repository.getCommodities()));
+        assertEquals(List.of("1", "2", "5"), ids(repository.findCommoditiesByProvider("1")));
+        assertEquals(List.of("1", "3"), ids(repository.findCommoditiesByCategory("phone")));
+        assertEquals(List.of("1", "3"), ids(repository.findCommoditiesByName("hone")));
+        assertEquals(List.of("5", "2", "1"), ids(repository.findCommoditiesByNamePrefix("I", 10)));
+        assertEquals(List.of("5", "2"), ids(repository.findCommoditiesByNamePrefix("i", 2)));
+        assertEquals(List.of("2", "1"), ids(repository.findCommoditiesByNameFrom("ipad", 0, 10)));
+        assertEquals(List.of("1"), ids(repository.findCommoditiesByNameFrom("ipad", 1, 10)));
+        assertTrue(repository.findCommoditiesByName("%").isEmpty());
+        assertEquals(List.of("1", "3"), repository.findProviderIdsByName("Apple"));
+        assertEquals(List.of("Bad"), repository.findCommentsByCommodity(3).stream().map(Comment::getText).toList());
+        assertEquals(2, repository.getComments().size());
+        assertNull(repository.findCommodity("4"));
+        assertFalse(repository.addUser(new User("ali", "other", "other@ut.ac.ir", "1990-01-01", "Tehran")));
+    }
+
+    @Test
+    public void testEntitiesShouldKeepTheirIdentity() {
+        Commodity iPhone = repository.findCommodity("1");
+
+        assertSame(iPhone, repository.findCommodity("1"));
+        assertSame(iPhone, repository.findCommoditiesByProvider("1").get(0));
+        assertSame(iPhone, repository.findCommoditiesByCategory("phone").iterator().next());
+        assertSame(repository.findUser("ali"), repository.getUsers().get(0));
+        assertSame(repository.findComment(1), repository.getComments().get(1));
+    }
+
+    @Test
+    public void testChangesShouldBeWrittenBehindAndSurviveReopen() throws Exception {
+        repository.findUser("ali").addCredit(500);
+        repository.findCommodity("3").addRate("ali", 7);
+        repository.addComment(new Comment(-1, "ali@ut.ac.ir", "ali", 2, "Great"));
+        Commodity renamed = createCommodity("2", "iPad Pro", "2", "tablet");
+        renamed.setPrice(1500);
+        assertTrue(repository.updateCommodity(renamed));
+        assertFalse(repository.updateCommodity(renamed));
+        repository.close();
+
+        repository = open();
+        assertEquals(500, repository.findUser("ali").getCredit());
+        assertEquals(Map.of("ali", 7), repository.findCommodity("3").getUserRate());
+        assertEquals(List.of("Great"), repository.findCommentsByCommodity(2).stream().map(Comment::getText).toList());
+        assertEquals(2, repository.findComment(2).getId());
+        assertEquals(1500, repository.findCommodity("2").getPrice());
+        assertEquals(List.of("2", "3"), ids(repository.findCommoditiesByProvider("2")));
+        assertEquals(List.of("2"), ids(repository.findCommoditiesByCategory("tablet")));
+        assertEquals(List.of("1"), ids(repository.findCommoditiesByCategory("tech")));
+    }
+
+    @Test
+    public void testBulkLoadShouldSpanSeveralBatches() {
+        List<User> users = IntStream.range(0, JdbcRepository.BATCH_SIZE * 2 + 1)
+                .mapToObj(i -> new User("user" + i, "pass", i + "@ut.ac.ir", "1990-01-01", "Tehran"))
+                .collect(ArrayList::new, ArrayList::add, ArrayList::addAll);
+        repository.setUsers(users);
+
+        assertEquals(users.size(), repository.getUsers().size());
+        assertSame(users.get(users.size() - 1), repository.findUser("user" + (users.size() - 1)));
+    }
+
+    @Test
+    public void testCommoditiesAfterShouldPageByKeyset() {
+        CursorPage<Commodity> first = repository.findCommoditiesAfter(0, 2);
+        assertEquals(List.of("1", "2"), ids(first.getItems()));
+        assertNotNull(first.getNextCursor());
+
+        CursorPage<Commodity> second = repository.findCommoditiesAfter(Long.parseLong(first.getNextCursor()), 2);
+        assertEquals(List.of("3"), ids(second.getItems()));
+        assertNull(second.getNextCursor());
+    }
+
+    @Test
+    public void testStreamShouldReadEveryBatchInOrder() {
+        ArrayList<Commodity> catalog = IntStream.range(0, JdbcRepository.BATCH_SIZE * 2 + 1)
+                .mapToObj(i -> createCommodity(String.valueOf(i), "commodity" + i, "1"))
+                .collect(ArrayList::new, ArrayList::add, ArrayList::addAll);
+        repository.setCommodities(catalog);
+
+        try (Stream<Commodity> streamed = repository.streamCommodities()) {
+            assertEquals(ids(catalog), streamed.map(Commodity::getId).toList());
+        }
+        try (Stream<Commodity> streamed = repository.streamCommodities()) {
+            assertSame(catalog.get(0), streamed.findFirst().orElseThrow());
+        }
+    }
+
+    @Test
+    public void testFailedReplacementShouldKeepTheOldRows() {
+        Commodity broken = new Commodity() {
+            @Override
+            public String getName() {
+                throw new IllegalStateException("unencodable");
+            }
+        };
+        broken.setId("9");
+
+        assertThrows(IllegalStateException.class, () -> repository.setCommodities(
+                new ArrayList<>(List.of(createCommodity("8", "Pixel", "2", "phone"), broken))));
+        assertEquals(List.of("1", "2", "3"), ids(repository.getCommodities()));
+        assertEquals(List.of("1", "3"), ids(repository.findCommoditiesByCategory("phone")));
+    }
+
+    @Test
+    public void testDefaultUrlShouldPointIntoTheDataDirectory() {
+        assertTrue(JdbcRepository.defaultUrl().endsWith(DataDirectory.resolve("baloot-h2").toAbsolutePath().toString()));
+    }
+
+    @Test
+    public void testBatchAddsShouldSkipStoredKeys() {
+        User sara = new User("sara", "pass", "sara@ut.ac.ir", "1990-01-01", "Tehran");
+        assertEquals(1, repository.addUsers(List.of(new User("ali", "other", "ali@ut.ac.ir", "1990-01-01", "Tehran"), sara)));
+        assertEquals("pass", repository.findUser("ali").getPassword());
+        assertSame(sara, repository.findUser("sara"));
+
+        assertEquals(1, repository.addProviders(List.of(createProvider("1", "Other"), createProvider("4", "Nokia"))));
+        assertEquals("Apple", repository.findProvider("1").getName());
+        assertEquals(List.of("4"), repository.findProviderIdsByName("Nokia"));
+
+        repository.addComments(List.of(new Comment(0, "sara@ut.ac.ir", "sara", 1, "Cheap"),
+                new Comment(0, "sara@ut.ac.ir", "sara", 1, "Fast")));
+        assertEquals(List.of("Nice", "Cheap", "Fast"),
+                repository.findCommentsByCommodity(1).stream().map(Comment::getText).toList());
+        assertEquals(4, repository.getComments().size());
+    }
+
+    @Test
+    public void testBalootShouldRunAgainstRepository() throws Exception {
+        Baloot baloot = Baloot.getInstance();
+        try {
+            baloot.setRepository(repository);
+            baloot.getUserById("ali").addCredit(2000);
+            baloot.addCommodityToUserBuyList("ali", "1");
+            baloot.withdrawPayableAmount(baloot.getUserById("ali"));
+
+            assertEquals(4, baloot.getCommodityById("1").getInStock());
+            assertEquals(List.of("1", "3"), ids(baloot.filterCommoditiesByCategory("phone")));
+        } finally {
+            baloot.setRepository(Database.getInstance());
+        }
+
+        repository.close();
+        repository = open();
+        assertEquals(1000, repository.findUser("ali").getCredit());
+        assertEquals(Map.of("1", 1), repository.findUser("ali").getPurchasedList());
+        assertEquals(4, repository.findCommodity("1").getInStock());
+    }
+
+    @Test
+    public void testDurableMarkShouldSurviveReopenUntilTheNextWrite() throws Exception {
+        assertNull(repository.getDurableMark());
+        repository.findUser("ali").addCredit(10);
+        repository.markDurable(7);
+        repository.close();
+
+        repository = open();
+        Mutations.setListener(repository::mutated);
+        assertEquals(7, repository.getDurableMark().sequence());
+        assertEquals(10, repository.findUser("ali").getCredit());
+
+        repository.findUser("ali").addCredit(5);
+        repository.flush();
+        assertNull(repository.getDurableMark());
+        repository.close();
+
+        repository = open();
+        assertNull(repository.getDurableMark());
+    }
+
+    @Test
+    public void testEntityStreamsShouldReadEveryRowInOrder() {
+        List<User> users = IntStream.range(0, JdbcRepository.BATCH_SIZE + 1)
+                .mapToObj(i -> new User("user" + i, "pass", i + "@ut.ac.ir", "1990-01-01", "Tehran"))
+                .collect(ArrayList::new, ArrayList::add, ArrayList::addAll);
+        repository.setUsers(users);
+
+        try (Stream<User> streamed = repository.streamUsers()) {
+            assertEquals(users.stream().map(User::getUsername).toList(), streamed.map(User::getUsername).toList());
+        }
+        try (Stream<Provider> streamed = repository.streamProviders()) {
+            assertEquals(List.of("1", "2", "3"), streamed.map(Provider::getId).toList());
+        }
+        try (Stream<Comment> streamed = repository.streamComments()) {
+            assertEquals(List.of(repository.findComment(0), repository.findComment(1)), streamed.toList());
+        }
+        assertEquals(List.of("1", "2", "3"), ids(repository.getCatalogSnapshot().commodities()));
+        assertEquals("3", repository.getCatalogSnapshot().commodities().get(2).getId());
+    }
+
+    @Test
+    public void testBootShouldTakeTheMarkedFileAsItsBaseAndReplayOnlyTheLogTail() throws Exception {
+        Baloot baloot = Baloot.getInstance();
+        Path snapshotPath = directory.resolve("baloot.snapshot");
+        Path logPath = directory.resolve("baloot.wal");
+        try {
+            baloot.setRepository(repository);
+            baloot.openWriteAheadLog(new SnapshotStore(repository, snapshotPath), logPath, WriteAheadLog.FsyncPolicy.ALWAYS);
+            baloot.getUserById("ali").addCredit(100);
+            baloot.closeWriteAheadLog();
+            assertEquals(1, repository.getDurableMark().sequence());
+
+            try (WriteAheadLog log = WriteAheadLog.open(logPath, 1, WriteAheadLog.FsyncPolicy.ALWAYS)) {
+                log.append(new Mutation.CreditAdded("ali", 5));
+            }
+            Files.delete(snapshotPath);
+            repository.close();
+
+            repository = open();
+            baloot.setRepository(repository);
+            baloot.fetchAndStoreData(new SnapshotStore(repository, snapshotPath), logPath, WriteAheadLog.FsyncPolicy.ALWAYS);
+            assertEquals(105, baloot.getUserById("ali").getCredit());
+            assertEquals(List.of("1", "2", "3"), ids(baloot.getCommodities()));
+            assertFalse(Files.exists(snapshotPath));
+        } finally {
+            baloot.closeWriteAheadLog();
+            baloot.setRepository(Database.getInstance());
+        }
+        assertEquals(2, repository.getDurableMark().sequence());
+    }
+}
@@ -0,0 +1,265 @@
+package database;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import model.Commodity;
+import service.Baloot;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class MappedCommodityCatalogTest {
+    @TempDir
+    Path directory;
+
+    private Baloot baloot;
+    private Database database;
+
+    @BeforeEach
+    public void setUp() {
+        baloot = Baloot.getInstance();
+        database = Database.getInstance();
+        database.setCatalogMode(Database.CatalogMode.MAPPED, directory);
+
+        Commodity iPhone = createCommodity("1", "iPhone", "1", "phone", "tech");
+        iPhone.setPrice(1000);
+        iPhone.setInStock(5);
+        iPhone.setInitRate(8);
+        iPhone.setRating(8);
+        iPhone.setImage("iphone.png");
+        Commodity iPad = createCommodity("2", "iPad", "1", "tech");
+        Commodity galaxy = createCommodity("3", "Galaxy Phone", "2", "phone", null, "phone");
+        database.setCommodities(new ArrayList<>(List.of(iPhone, iPad, galaxy, createCommodity("1", "duplicate", "3"))));
+    }
+
+    @AfterEach
+    public void tearDown() {
+        database.setCatalogMode(Database.CatalogMode.HEAP, directory);
+        baloot.fetchAndStoreData();
+    }
+
+    private static Commodity createCommodity(String id, String name, String providerId, String... categories) {
+        Commodity commodity = new Commodity();
+        commodity.setId(id);
+        commodity.setName(name);
+        commodity.setProviderId(providerId);
+        commodity.getCategories().addAll(Arrays.asList(categories));
+        return commodity;
+    }
+
+    private static List<String> ids(Collection<Commodity> commodities) {
+        return commodities.stream().map(Commodity::getId).toList();
+    }
+
+    @Test
+    public void testCommoditiesShouldBeReadFromMappedFiles() {
+        Commodity iPhone = database.findCommodity("1");
+
+        assertInstanceOf(MappedCommodity.class, iPhone);
+        assertTrue(Files.exists(directory.resolve(MappedCommodityCatalog.RECORDS_FILE)));
+        assertEquals("iPhone", iPhone.getName());
+        assertEquals("1", iPhone.getProviderId());
+        assertEquals(List.of("phone", "tech"), iPhone.getCategories());
+        assertEquals(1000, iPhone.getPrice());
+        assertEquals(5, iPhone.getInStock());
+        assertEquals(8, iPhone.getRating());
+        assertEquals("iphone.png", iPhone.getImage());
+        assertEquals(iPhone, database.findCommodity("1"));
+        assertNull(database.findCommodity("4"));
+        assertEquals(List.of("1", "2", "3", "1"), ids(database.getCommodities()));
+        assertEquals(Arrays.asList("phone", null, "phone"), database.findCommodity("3").getCategories());
+    }
+
+    @Test
+    public void testQueriesShouldMatchHeapCatalog() {
+        List<Commodity> snapshot = database.getCatalogSnapshot().commodities();
+        database.addCommodity(createCommodity("5", "iMac", "1", "tech"));
+
+        assertEquals(List.of("1", "2", "3", "1"), ids(snapshot));
+        assertEquals(List.of("1", "2", "3", "1", "5"), ids(database.getCatalogSnapshot().commodities()));
+
+        assertEquals(List.of("1", "2", "5"), ids(database.findCommoditiesByProvider("1")));
+        assertTrue(database.findCommoditiesByProvider("4").isEmpty());
+        assertEquals(List.of("1", "3"), ids(database.findCommoditiesByCategory("phone")));
+        assertEquals(List.of("1", "2", "5"), ids(database.findCommoditiesByCategory("tech")));
+        assertTrue(database.findCommoditiesByCategory("tech").contains(database.findCommodity("2")));
+        assertFalse(database.findCommoditiesByCategory("phone").contains(database.findCommodity("2")));
+        assertEquals(List.of("1", "3"), ids(database.findCommoditiesByName("hone")));
+        assertEquals(List.of("1", "2", "1", "5"), ids(database.findCommoditiesByName("i")));
+        assertEquals(List.of("5", "2", "1"), ids(database.findCommoditiesByNamePrefix("I", 10)));
+        assertEquals(List.of("5", "2"), ids(database.findCommoditiesByNamePrefix("i", 2)));
+        assertEquals(List.of("1", "3", "5", "2", "1"), ids(database.findCommoditiesByNameFrom("", 0, 10)));
+        assertEquals(List.of("5", "2"), ids(database.findCommoditiesByNameFrom("galaxy phone", 1, 2)));
+        assertEquals(List.of("1", "2", "3", "1", "5"), ids(database.findCommoditiesByName("")));
+        assertEquals("5", database.findCommodity("5").getId());
+    }
+
+    @Test
+    public void testStockAndRatingShouldBeSharedByAllViews() throws Exception {
+        Commodity first = database.findCommodity("1");
+        Commodity second = database.findCommodity("1");
+
+        assertTrue(first.tryUpdateInStock(-5));
+        assertFalse(second.tryUpdateInStock(-1));
+        assertEquals(0, second.getInStock());
+
+        first.addRate("ali", 4);
+        assertEquals(6, second.getRating());
+        assertEquals(Map.of("ali", 4), second.getUserRate());
+
+        second.setPrice(900);
+        assertEquals(900, first.getPrice());
+
+        long version = first.getVersion();
+        second.setInStock(2);
+        assertTrue(first.getVersion() > version);
+        assertEquals(second.getVersion(), database.findCommodity("1").getVersion());
+    }
+
+    @Test
+    public void testUpdateCommodityShouldWriteThroughOrOverlay() throws Exception {
+        Commodity iPhone = database.findCommodity("1");
+        iPhone.addRate("ali", 4);
+        Commodity pushed = createCommodity("1", "iPhone", "1", "phone", "tech");
+        pushed.setPrice(900);
+        pushed.setImage("iphone.png");
+        assertTrue(database.updateCommodity(pushed));
+        assertEquals(900, iPhone.getPrice());
+
+        Commodity iPad = database.findCommodity("2");
+        Commodity renamed = createCommodity("1", "iPhone 15", "1", "phone");
+        assertTrue(database.updateCommodity(renamed));
+        assertSame(renamed, database.findCommodity("1"));
+        assertEquals(iPad, database.findCommodity("2"));
+        assertEquals(Map.of("ali", 4), renamed.getUserRate());
+        assertEquals(8, renamed.getInitRate());
+        assertEquals(List.of("1", "2"), ids(database.findCommoditiesByProvider("1")));
+        assertEquals(List.of("2"), ids(database.findCommoditiesByCategory("tech")));
+        assertEquals(List.of("1"), ids(database.findCommoditiesByName("15")));
+        assertTrue(database.findCommoditiesByName("Phone").stream().noneMatch(c -> c.getName().equals("iPhone")));
+        assertEquals(List.of("3", "2", "1"), ids(database.findCommoditiesByNameFrom("galaxy", 0, 3)));
+
+        Commodity moved = createCommodity("1", "iPhone 15", "2", "phone");
+        assertTrue(database.updateCommodity(moved));
+        assertSame(moved, database.getCatalogSnapshot().commodities().get(0));
+        assertEquals(List.of("2"), ids(database.findCommoditiesByProvider("1")));
+        assertEquals(List.of("1", "3"), ids(database.findCommoditiesByProvider("2")));
+        assertEquals(Map.of("ali", 4), moved.getUserRate());
+    }
+
+    @Test
+    public void testFullOverlayShouldBeCompactedIntoTheFiles() throws Exception {
+        System.setProperty(MappedCommodityCatalog.OVERLAY_PROPERTY, "1");
+        try {
+            database.setCatalogMode(Database.CatalogMode.MAPPED, directory);
+            database.findCommodity("1").setImage("new.png");
+            Commodity overlaid = database.findCommodity("1");
+            assertFalse(overlaid instanceof MappedCommodity);
+            assertEquals("new.png", overlaid.getImage());
+
+            assertTrue(overlaid.tryUpdateInStock(-1));
+            database.findCommodity("2").setImage("ipad.png");
+            Commodity iPhone = database.findCommodity("1");
+            Commodity iPad = database.findCommodity("2");
+            assertInstanceOf(MappedCommodity.class, iPhone);
+            assertInstanceOf(MappedCommodity.class, iPad);
+            assertEquals("new.png", iPhone.getImage());
+            assertEquals("ipad.png", iPad.getImage());
+            assertEquals(4, iPhone.getInStock());
+            assertTrue(overlaid.tryUpdateInStock(-1));
+            assertEquals(3, iPhone.getInStock());
+        } finally {
+            System.clearProperty(MappedCommodityCatalog.OVERLAY_PROPERTY);
+        }
+    }
+
+    @Test
+    public void testBalootReadsShouldWorkAgainstMappedCatalog() throws Exception {
+        assertEquals("iPhone", baloot.getCommodityById("1").getName());
+        assertEquals(List.of("1", "3"), ids(baloot.filterCommoditiesByCategory("phone")));
+        assertEquals(List.of("1", "2"), ids(baloot.getCommoditiesProvidedByProvider("1")));
+        List<String> suggestions = ids(baloot.suggestSimilarCommodities(baloot.getCommodityById("1")));
+        assertEquals(Set.of("2", "3"), Set.copyOf(suggestions.subList(0, 2)));
+        assertTrue(new ObjectMapper().writeValueAsString(baloot.getCommodityById("1")).contains("\"name\":\"iPhone\""));
+    }
+
+    @Test
+    public void testSwitchingBackToHeapShouldKeepCommodities() {
+        database.findCommodity("1").setInStock(3);
+        database.setCatalogMode(Database.CatalogMode.HEAP, directory);
+
+        Commodity iPhone = database.findCommodity("1");
+        assertFalse(iPhone instanceof MappedCommodity);
+        assertEquals(3, iPhone.getInStock());
+        assertEquals(List.of("phone", "tech"), iPhone.getCategories());
+    }
+
+    @Test
+    public void testWritesThroughStaleViewsShouldReachTheRebuiltCatalog() throws Exception {
+        Commodity iPhone = database.findCommodity("1");
+        Commodity iPad = database.findCommodity("2");
+        iPad.setInStock(4);
+        assertTrue(database.updateCommodity(createCommodity("1", "iPhone 15", "1", "phone")));
+
+        assertTrue(iPad.tryUpdateInStock(-1));
+        iPad.addRate("ali", 6);
+        iPhone.addRate("reza", 2);
+        Commodity rebuiltIPad = database.findCommodity("2");
+        assertEquals(3, rebuiltIPad.getInStock());
+        assertEquals(3, iPad.getInStock());
+        assertEquals(Map.of("ali", 6), rebuiltIPad.getUserRate());
+        assertEquals(Map.of("reza", 2), database.findCommodity("1").getUserRate());
+        assertEquals("iPhone", iPhone.getName());
+    }
+
+    @Test
+    public void testWritesThroughStaleCommoditiesShouldSurviveCatalogSwitches() throws Exception {
+        Commodity view = database.findCommodity("1");
+        database.setCatalogMode(Database.CatalogMode.HEAP, directory);
+        Commodity heap = database.findCommodity("1");
+        assertTrue(view.tryUpdateInStock(-1));
+        assertEquals(4, heap.getInStock());
+
+        database.setCatalogMode(Database.CatalogMode.MAPPED, directory);
+        assertTrue(heap.tryUpdateInStock(-1));
+        view.addRate("ali", 9);
+        Commodity mapped = database.findCommodity("1");
+        assertInstanceOf(MappedCommodity.class, mapped);
+        assertEquals(3, mapped.getInStock());
+        assertEquals(Map.of("ali", 9), mapped.getUserRate());
+    }
+
+    @Test
+    public void testSettingTheFixedPartOfARecordShouldOverlayTheRecord() throws Exception {
+        Commodity iPhone = database.findCommodity("1");
+        Commodity iPad = database.findCommodity("2");
+        iPhone.addRate("ali", 4);
+        iPhone.setName("iPhone 15");
+
+        Commodity renamed = database.findCommodity("1");
+        assertFalse(renamed instanceof MappedCommodity);
+        assertEquals(iPad, database.findCommodity("2"));
+        assertEquals("iPhone 15", renamed.getName());
+        assertEquals(5, renamed.getInStock());
+        assertEquals(Map.of("ali", 4), renamed.getUserRate());
+        assertEquals(List.of("1"), ids(database.findCommoditiesByNamePrefix("iphone 1", 10)));
+        assertEquals("iPhone", iPhone.getName());
+
+        iPhone.setCategories(new ArrayList<>(List.of("tablet")));
+        assertEquals(List.of("tablet"), database.findCommodity("1").getCategories());
+        assertEquals("iPhone 15", database.findCommodity("1").getName());
+        assertEquals(List.of("1"), ids(database.findCommoditiesByCategory("tablet")));
+    }
+}
@@ -0,0 +1,129 @@
+package database;
+
+import model.Comment;
+import model.Commodity;
+import model.Provider;
+import model.User;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class SnapshotStoreTest {
+    @TempDir
+    Path directory;
+
+    private Database database;
+    private SnapshotStore snapshotStore;
+
+    @BeforeEach
+    public void setUp() throws Exception {
+        database = Database.getInstance();
+        snapshotStore = new SnapshotStore(database, directory.resolve("baloot.snapshot"));
+
+        User user = new User("ali", "1234", "ali@ut.ac.ir", "2000-01-01", null);
+        user.addCredit(250.5f);
+        user.setBuyList(Map.of("1", 2));
+        user.setPurchasedList(Map.of("2", 3));
+        user.setCommoditiesRates(Map.of(1, 7));
+
+        Provider provider = new Provider();
+        provider.setId("1");
+        provider.setName("Apple");
+
+        Commodity commodity = new Commodity();
+        commodity.setId("1");
+        commodity.setName("iPhone");
+        commodity.setProviderId("1");
+        commodity.setPrice(100);
+        commodity.getCategories().addAll(List.of("phone", "tech"));
+        commodity.setInStock(5);
+        commodity.addRate("ali", 7);
+
+        Comment comment = new Comment(0, "ali@ut.ac.ir", "ali", 1, "نظر خوب");
+        comment.addUserVote("ali", "like");
+        comment.addUserVote("amin", "dislike");
+
+        database.setUsers(new ArrayList<>(List.of(user)));
+        database.setProviders(new ArrayList<>(List.of(provider)));
+        database.setCommodities(new ArrayList<>(List.of(commodity)));
+        database.setComments(new ArrayList<>(List.of(comment)));
+    }
+
+    @AfterEach
+    public void tearDown() throws IOException {
+        new DataParser(database).loadAll();
+    }
+
+    private void clearDatabase() {
+        database.setUsers(new ArrayList<>());
+        database.setProviders(new ArrayList<>());
+        database.setCommodities(new ArrayList<>());
+        database.setComments(new ArrayList<>());
+    }
+
+    @Test
+    public void testLoadShouldRestoreSavedState() throws IOException {
+        snapshotStore.save(42);
+        clearDatabase();
+        assertEquals(42, snapshotStore.load());
+
+        User user = database.findUser("ali");
+        assertEquals("ali@ut.ac.ir", user.getEmail());
+        assertNull(user.getAddress());
+        assertEquals(250.5f, user.getCredit());
+        assertEquals(Map.of("1", 2), user.getBuyList());
+        assertEquals(Map.of("2", 3), user.getPurchasedList());
+        assertEquals(Map.of(1, 7), user.getCommoditiesRates());
+
+        assertEquals("Apple", database.findProvider("1").getName());
+
+        Commodity commodity = database.findCommodity("1");
+        assertEquals(List.of("phone", "tech"), commodity.getCategories());
+        assertEquals(5, commodity.getInStock());
+        assertEquals(3.5f, commodity.getRating());
+        assertEquals(Map.of("ali", 7), commodity.getUserRate());
+        assertEquals(List.of(commodity), database.findCommoditiesByCategory("phone").stream().toList());
+
+        Comment comment = database.findComment(0);
+        assertEquals("نظر خوب", comment.getText());
+        assertEquals(1, comment.getLike());
+        assertEquals(1, comment.getDislike());
+        assertEquals(Map.of("ali", "like", "amin", "dislike"), comment.getUserVote());
+    }
+
+    @Test
+    public void testLoadShouldRejectCorruptedSnapshotWithoutTouchingDatabase() throws IOException {
+        snapshotStore.save(0);
+        Path path = directory.resolve("baloot.snapshot");
+        byte[] bytes = Files.readAllBytes(path);
+        bytes[bytes.length / 2] ^= 0x7F;
+        Files.write(path, bytes);
+        clearDatabase();
+
+        assertThrows(IOException.class, () -> snapshotStore.load());
+        assertTrue(database.getUsers().isEmpty());
+        assertTrue(database.getCommodities().isEmpty());
+    }
+
+    @Test
+    public void testLoadShouldRejectTruncatedSnapshot() throws IOException {
+        snapshotStore.save(0);
+        Path path = directory.resolve("baloot.snapshot");
+        byte[] bytes = Files.readAllBytes(path);
+        Files.write(path, Arrays.copyOf(bytes, bytes.length - 20));
+
+        assertThrows(IOException.class, () -> snapshotStore.load());
+    }
+}
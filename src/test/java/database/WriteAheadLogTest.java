@@ -0,0 +1,172 @@
+package database;
+
+import model.Comment;
+import model.Mutation;
+import model.User;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class WriteAheadLogTest {
+    @TempDir
+    Path directory;
+
+    private Path logPath() {
+        return directory.resolve("baloot.wal");
+    }
+
+    private List<Mutation> replayAll(long snapshotSequence) throws IOException {
+        List<Mutation> mutations = new ArrayList<>();
+        WriteAheadLog.replay(logPath(), snapshotSequence, mutations::add);
+        return mutations;
+    }
+
+    @Test
+    public void testReplayShouldReturnEveryMutationInOrder() throws IOException {
+        User user = new User("ali", "1234", "ali@ut.ac.ir", null, null);
+        Comment comment = new Comment(3, "ali@ut.ac.ir", "ali", 1, "good");
+        List<Mutation> mutations = List.of(
+                new Mutation.UserAdded(user),
+                new Mutation.CommentAdded(comment),
+                new Mutation.CreditAdded("ali", 12.5f),
+                new Mutation.BuyItemAdded("ali", "1"),
+                new Mutation.BuyItemRemoved("ali", "1"),
+                new Mutation.BuyListChanged("ali", Map.of("1", 3, "2", -1)),
+                new Mutation.CheckedOut("ali", 100, Map.of("1", 2)),
+                new Mutation.CommodityRated("1", "ali", 7),
+                new Mutation.CommentVoted(3, "ali", "dislike"));
+
+        try (WriteAheadLog log = WriteAheadLog.create(logPath(), 10, WriteAheadLog.FsyncPolicy.ALWAYS)) {
+            for (int i = 0; i < mutations.size(); i++)
+                assertEquals(11 + i, log.append(mutations.get(i)));
+        }
+
+        List<Mutation> replayed = new ArrayList<>();
+        assertEquals(19, WriteAheadLog.replay(logPath(), 10, replayed::add));
+        assertEquals(mutations.size(), replayed.size());
+        assertEquals("ali@ut.ac.ir", ((Mutation.UserAdded) replayed.get(0)).user().getEmail());
+        assertEquals("good", ((Mutation.CommentAdded) replayed.get(1)).comment().getText());
+        assertEquals(mutations.subList(2, mutations.size()), replayed.subList(2, replayed.size()));
+    }
+
+    @Test
+    public void testReplayShouldSkipRecordsIncludedInSnapshot() throws IOException {
+        try (WriteAheadLog log = WriteAheadLog.create(logPath(), 0, WriteAheadLog.FsyncPolicy.NEVER)) {
+            for (int i = 0; i < 3; i++)
+                log.append(new Mutation.CreditAdded("ali", i));
+        }
+
+        assertEquals(List.of(new Mutation.CreditAdded("ali", 2)), replayAll(2));
+    }
+
+    @Test
+    public void testReplayShouldRejectLogStartingAfterSnapshot() throws IOException {
+        WriteAheadLog.create(logPath(), 5, WriteAheadLog.FsyncPolicy.NEVER).close();
+
+        assertThrows(IOException.class, () -> replayAll(4));
+    }
+
+    @Test
+    public void testReplayShouldStopAtTornRecord() throws IOException {
+        try (WriteAheadLog log = WriteAheadLog.create(logPath(), 0, WriteAheadLog.FsyncPolicy.INTERVAL)) {
+            for (int i = 0; i < 3; i++)
+                log.append(new Mutation.BuyItemAdded("ali", String.valueOf(i)));
+        }
+        byte[] bytes = Files.readAllBytes(logPath());
+        Files.write(logPath(), Arrays.copyOf(bytes, bytes.length - 3));
+
+        assertEquals(2, replayAll(0).size());
+        assertTrue(WriteAheadLog.hasRecords(logPath()));
+    }
+
+    @Test
+    public void testReplayShouldStopAtRecordWithChangedSequence() throws IOException {
+        try (WriteAheadLog log = WriteAheadLog.create(logPath(), 0, WriteAheadLog.FsyncPolicy.NEVER)) {
+            for (int i = 0; i < 3; i++)
+                log.append(new Mutation.CreditAdded("ali", i));
+        }
+        ByteBuffer bytes = ByteBuffer.wrap(Files.readAllBytes(logPath()));
+        int second = 16 + 16 + bytes.getInt(16);
+        bytes.putLong(second + 4, bytes.getLong(second + 4) ^ 4);
+        Files.write(logPath(), bytes.array());
+
+        assertEquals(1, replayAll(0).size());
+    }
+
+    @Test
+    public void testOpenShouldContinueAfterTheLastIntactRecord() throws IOException {
+        try (WriteAheadLog log = WriteAheadLog.create(logPath(), 0, WriteAheadLog.FsyncPolicy.NEVER)) {
+            for (int i = 0; i < 3; i++)
+                log.append(new Mutation.CreditAdded("ali", i));
+        }
+        byte[] bytes = Files.readAllBytes(logPath());
+        Files.write(logPath(), Arrays.copyOf(bytes, bytes.length - 3));
+
+        assertEquals(2, WriteAheadLog.replay(logPath(), 0, mutation -> {
+        }));
+        try (WriteAheadLog log = WriteAheadLog.open(logPath(), 2, WriteAheadLog.FsyncPolicy.ALWAYS)) {
+            assertEquals(3, log.append(new Mutation.CreditAdded("ali", 7)));
+        }
+
+        assertEquals(List.of(new Mutation.CreditAdded("ali", 0), new Mutation.CreditAdded("ali", 1),
+                new Mutation.CreditAdded("ali", 7)), replayAll(0));
+        assertThrows(IOException.class, () -> WriteAheadLog.open(logPath(), 1, WriteAheadLog.FsyncPolicy.ALWAYS));
+    }
+
+    @Test
+    public void testAppendAfterCloseShouldFail() throws IOException {
+        WriteAheadLog log = WriteAheadLog.create(logPath(), 0, WriteAheadLog.FsyncPolicy.ALWAYS);
+        log.close();
+
+        assertThrows(IllegalStateException.class, () -> log.append(new Mutation.CreditAdded("ali", 1)));
+    }
+
+    @Test
+    public void testConcurrentWritersShouldAllBeDurable() throws Exception {
+        int threads = 8;
+        int recordsPerThread = 200;
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try (WriteAheadLog log = WriteAheadLog.create(logPath(), 0, WriteAheadLog.FsyncPolicy.ALWAYS)) {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int t = 0; t < threads; t++) {
+                String username = "user" + t;
+                futures.add(executor.submit(() -> {
+                    for (int i = 0; i < recordsPerThread; i++)
+                        log.awaitDurable(log.append(new Mutation.CreditAdded(username, i)));
+                }));
+            }
+            for (Future<?> future : futures)
+                future.get(60, TimeUnit.SECONDS);
+        } finally {
+            executor.shutdown();
+        }
+
+        List<Mutation> replayed = replayAll(0);
+        assertEquals(threads * recordsPerThread, replayed.size());
+        for (int t = 0; t < threads; t++) {
+            String username = "user" + t;
+            List<Float> amounts = replayed.stream()
+                    .map(Mutation.CreditAdded.class::cast)
+                    .filter(mutation -> mutation.username().equals(username))
+                    .map(Mutation.CreditAdded::amount)
+                    .toList();
+            for (int i = 0; i < recordsPerThread; i++)
+                assertEquals(i, amounts.get(i));
+        }
+    }
+}
@@ -13,6 +13,7 @@ import org.junit.jupiter.params.provider.ValueSource;
 
 import java.text.SimpleDateFormat;
 import java.util.Date;
+import java.util.Map;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -90,4 +91,43 @@ public class CommentTest {
     public void testAddUserVoteWithInvalidVoteShouldFail(String vote) {
         assertThrows(InvalidVote.class, () -> comment.addUserVote("User1", vote));
     }
+
+    @Test
+    public void testAddUserVoteWithoutUserShouldFail() {
+        assertThrows(InvalidVote.class, () -> comment.addUserVote(null, "like"));
+    }
+
+    @Test
+    public void testSwitchVotesAmongManyUsersSuccessfully() throws InvalidVote {
+        for (int i = 0; i < 1000; i++)
+            comment.addUserVote("User" + i, i % 2 == 0 ? "like" : "dislike");
+        for (int i = 0; i < 100; i++)
+            comment.addUserVote("User" + i, "dislike");
+
+        assertEquals(450, comment.getLike());
+        assertEquals(550, comment.getDislike());
+        assertEquals(1000, comment.getUserVote().size());
+        assertEquals("dislike", comment.getUserVote().get("User0"));
+    }
+
+    @Test
+    public void testSetUserVoteShouldBeUsedByLaterVotes() throws InvalidVote {
+        comment.setUserVote(Map.of("User1", "like"));
+        assertEquals(1, comment.getLike());
+        comment.addUserVote("User1", "dislike");
+
+        assertEquals(0, comment.getLike());
+        assertEquals(1, comment.getDislike());
+        assertEquals(Map.of("User1", "dislike"), comment.getUserVote());
+    }
+
+    @Test
+    public void testSetUserVoteShouldRecountVotesAndSkipUnknownOnes() {
+        comment.setLike(7);
+        comment.setUserVote(Map.of("User1", "like", "User2", "dislike", "User3", "dislike", "User4", "meh"));
+
+        assertEquals(1, comment.getLike());
+        assertEquals(2, comment.getDislike());
+        assertEquals(Map.of("User1", "like", "User2", "dislike", "User3", "dislike"), comment.getUserVote());
+    }
 }
@@ -9,6 +9,8 @@ import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.params.ParameterizedTest;
 import org.junit.jupiter.params.provider.ValueSource;
 
+import java.util.Map;
+
 import static org.junit.jupiter.api.Assertions.*;
 
 public class CommodityTest {
@@ -39,6 +41,31 @@ public class CommodityTest {
         assertThrows(NotInStock.class, () -> commodity.updateInStock(-11));
     }
 
+    @Test
+    public void testTryUpdateInStockShouldLeaveStockUntouchedOnFailure() {
+        commodity.setInStock(3);
+        assertTrue(commodity.tryUpdateInStock(-3));
+        assertFalse(commodity.tryUpdateInStock(-1));
+        assertEquals(0, commodity.getInStock());
+        assertTrue(commodity.tryUpdateInStock(2));
+        assertEquals(2, commodity.getInStock());
+    }
+
+    @Test
+    public void testEveryChangeShouldBumpVersion() throws InvalidRateRange {
+        commodity.setInStock(1);
+        long version = commodity.getVersion();
+
+        assertFalse(commodity.tryUpdateInStock(-2));
+        assertEquals(version, commodity.getVersion());
+        assertTrue(commodity.tryUpdateInStock(-1));
+        assertTrue(commodity.getVersion() > version);
+
+        version = commodity.getVersion();
+        commodity.addRate("testUser1", 5);
+        assertTrue(commodity.getVersion() > version);
+    }
+
     @ParameterizedTest
     @ValueSource(ints = { 0, 10, 4 })
     public void testAddRateForAnUserSuccessfully(int rating) throws InvalidRateRange{
@@ -67,4 +94,36 @@ public class CommodityTest {
         commodity.addRate("testUser3", 3);
         assertEquals(1.5, commodity.getRating());
     }
+
+    @Test
+    public void testOverwriteRateAmongMultipleUsersSuccessfully() throws InvalidRateRange {
+        commodity.setInitRate(4);
+        commodity.addRate("testUser1", 2);
+        commodity.addRate("testUser2", 8);
+        commodity.addRate("testUser1", 10);
+        assertEquals((4f + 10 + 8) / 3, commodity.getRating());
+        assertEquals(10, commodity.getUserRate().get("testUser1"));
+        assertEquals(8, commodity.getUserRate().get("testUser2"));
+        assertEquals(2, commodity.getUserRate().size());
+    }
+
+    @Test
+    public void testRatingWithManyUsersShouldMatchFullRecalculation() throws InvalidRateRange {
+        float sum = 0;
+        for (int i = 0; i < 1000; i++) {
+            commodity.addRate("user" + i, i % 11);
+            sum += i % 11;
+        }
+        commodity.addRate("user0", 7);
+        sum += 7;
+        assertEquals(sum / 1001, commodity.getRating());
+    }
+
+    @Test
+    public void testSetUserRateShouldBeUsedByLaterRatings() throws InvalidRateRange {
+        commodity.setUserRate(Map.of("testUser1", 4, "testUser2", 6));
+        commodity.addRate("testUser3", 8);
+        assertEquals(4.5, commodity.getRating());
+        assertEquals(Map.of("testUser1", 4, "testUser2", 6, "testUser3", 8), commodity.getUserRate());
+    }
 }
@@ -54,6 +54,25 @@ public class UserTest {
         assertEquals(120.0f, user.getCredit());
     }
 
+    @Test
+    public void testChangesShouldBumpVersion() throws InvalidCreditRange {
+        long version = user.getVersion();
+        user.addCredit(20);
+        assertTrue(user.getVersion() > version);
+
+        version = user.getVersion();
+        assertThrows(InvalidCreditRange.class, () -> user.addCredit(-1));
+        assertEquals(version, user.getVersion());
+    }
+
+    @Test
+    public void testReplacementShouldNotShareAVersion() throws InvalidCreditRange {
+        User replacement = new User(user.getUsername(), user.getPassword(), user.getEmail(), user.getBirthDate(), user.getAddress());
+        user.addCredit(20);
+        replacement.addCredit(20);
+        assertNotEquals(user.getVersion(), replacement.getVersion());
+    }
+
     @ParameterizedTest
     @ValueSource(floats = { 50.0f, 100.0f })
     public void testWithdrawCreditSuccessfully(float withdraw) throws InvalidCreditRange, InsufficientCredit {
@@ -0,0 +1,76 @@
+package reactive;
+
+import database.BulkTransfer;
+import database.Repository;
+import model.Provider;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.http.MediaType;
+import org.springframework.test.web.reactive.server.WebTestClient;
+import service.Baloot;
+
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.Mockito.*;
+
+public class ReactiveBulkControllerTest {
+    private WebTestClient client;
+
+    @Mock
+    Baloot baloot;
+
+    @Mock
+    Repository repository;
+
+    @BeforeEach
+    public void setup() {
+        MockitoAnnotations.openMocks(this);
+        ReactiveBulkController controller = new ReactiveBulkController();
+        controller.setBaloot(baloot);
+        client = WebTestClient.bindToController(controller).build();
+    }
+
+    @Test
+    public void testImportShouldNumberLinesAcrossChunks() {
+        when(baloot.importEntities(BulkTransfer.Entity.PROVIDERS))
+                .thenAnswer(invocation -> new BulkTransfer(repository).importer(BulkTransfer.Entity.PROVIDERS));
+        when(repository.addProviders(anyList())).thenAnswer(invocation -> invocation.<List<?>>getArgument(0).size());
+
+        BulkTransfer.Result result = client.post().uri("/bulk/providers")
+                .contentType(MediaType.APPLICATION_NDJSON)
+                .bodyValue("{\"id\": \"1\", \"name\": \"apple\"}\n\nnot json\n{\"id\": \"2\"}\n")
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody(BulkTransfer.Result.class).returnResult().getResponseBody();
+
+        assertNotNull(result);
+        assertEquals(2, result.imported());
+        assertEquals(1, result.rejected());
+        assertTrue(result.errors().get(0).startsWith("line 3: "));
+        verify(repository).addProviders(argThat(providers -> providers.size() == 2));
+    }
+
+    @Test
+    public void testExportShouldStreamNdjson() {
+        Provider provider = new Provider();
+        provider.setId("1");
+        doAnswer(invocation -> Stream.of(provider)).when(baloot).getEntities(BulkTransfer.Entity.PROVIDERS);
+
+        client.get().uri("/bulk/providers").exchange()
+                .expectStatus().isOk()
+                .expectHeader().contentTypeCompatibleWith(MediaType.APPLICATION_NDJSON)
+                .expectBodyList(Provider.class).hasSize(1);
+    }
+
+    @Test
+    public void testUnknownEntityShouldReturnNotFound() {
+        client.get().uri("/bulk/orders").exchange().expectStatus().isNotFound();
+        client.post().uri("/bulk/Users").bodyValue("").exchange().expectStatus().isNotFound();
+    }
+}
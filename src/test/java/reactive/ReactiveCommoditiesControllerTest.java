@@ -0,0 +1,121 @@
+package reactive;
+
+import exceptions.NotExistentCommodity;
+import model.Comment;
+import model.Commodity;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.test.web.reactive.server.WebTestClient;
+import service.Baloot;
+import utils.Page;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+public class ReactiveCommoditiesControllerTest {
+    private WebTestClient client;
+
+    @Mock
+    Baloot baloot;
+
+    @BeforeEach
+    public void setup() {
+        MockitoAnnotations.openMocks(this);
+        ReactiveCommoditiesController controller = new ReactiveCommoditiesController();
+        controller.setBaloot(baloot);
+        client = WebTestClient.bindToController(controller).build();
+    }
+
+    private static Commodity commodity(String id) {
+        Commodity commodity = new Commodity();
+        commodity.setId(id);
+        commodity.setName("commodity-" + id);
+        return commodity;
+    }
+
+    private static ArrayList<Comment> comments(int from, int to) {
+        ArrayList<Comment> comments = new ArrayList<>();
+        for (int id = from; id < to; id++)
+            comments.add(new Comment(id, "amin@gmail.com", "amin", 1, "comment " + id));
+        return comments;
+    }
+
+    @Test
+    public void testGetCommoditiesShouldStreamOnePerLine() {
+        when(baloot.streamCommodities()).thenAnswer(invocation -> Stream.of(commodity("1"), commodity("2")));
+
+        String body = client.get().uri("/commodities").accept(MediaType.APPLICATION_NDJSON).exchange()
+                .expectStatus().isOk()
+                .expectHeader().contentTypeCompatibleWith(MediaType.APPLICATION_NDJSON)
+                .expectBody(String.class).returnResult().getResponseBody();
+
+        assertNotNull(body);
+        String[] lines = body.split("\n");
+        assertEquals(2, lines.length);
+        assertTrue(lines[1].contains("\"id\":\"2\""));
+    }
+
+    @Test
+    public void testGetCommoditiesAsJsonShouldReturnArray() {
+        when(baloot.streamCommodities()).thenAnswer(invocation -> Stream.of(commodity("1"), commodity("2")));
+
+        client.get().uri("/commodities").exchange()
+                .expectStatus().isOk()
+                .expectHeader().contentTypeCompatibleWith(MediaType.APPLICATION_JSON)
+                .expectBodyList(Commodity.class).hasSize(2);
+    }
+
+    @Test
+    public void testStreamCommentsShouldFollowPagesToTheEnd() {
+        int batch = ReactiveCommoditiesController.COMMENTS_BATCH_SIZE;
+        when(baloot.getCommentsForCommodity(1, 0, batch)).thenReturn(new Page<>(comments(0, batch), batch));
+        when(baloot.getCommentsForCommodity(1, batch, batch)).thenReturn(new Page<>(comments(batch, batch + 3), null));
+
+        client.get().uri("/commodities/1/comment").accept(MediaType.APPLICATION_NDJSON).exchange()
+                .expectStatus().isOk()
+                .expectBodyList(Comment.class).hasSize(batch + 3);
+    }
+
+    @Test
+    public void testCommentPageShouldKeepEntityTagAndCursor() {
+        when(baloot.getCommentsForCommodity(1, 0, 2)).thenReturn(new Page<>(comments(0, 2), 2));
+
+        client.get().uri("/commodities/1/comment?limit=2").exchange()
+                .expectStatus().isOk()
+                .expectHeader().exists(HttpHeaders.ETAG)
+                .expectHeader().valueEquals(controllers.CommoditiesController.NEXT_CURSOR_HEADER, "2")
+                .expectBodyList(Comment.class).hasSize(2);
+    }
+
+    @Test
+    public void testStreamCommentsOfInvalidIdShouldReturnBadRequest() {
+        client.get().uri("/commodities/abc/comment").accept(MediaType.APPLICATION_NDJSON).exchange()
+                .expectStatus().isBadRequest();
+        verify(baloot, never()).getCommentsForCommodity(anyInt(), anyInt(), anyInt());
+    }
+
+    @Test
+    public void testGetNonExistentCommodityShouldReturnNotFound() throws NotExistentCommodity {
+        when(baloot.getCommodityById("9")).thenThrow(new NotExistentCommodity());
+
+        client.get().uri("/commodities/9").exchange().expectStatus().isNotFound();
+    }
+
+    @Test
+    public void testSearchShouldStreamMatches() {
+        when(baloot.searchCommodities("category", "phone", null)).thenReturn(Stream.of(commodity("1")));
+
+        client.post().uri("/commodities/search").contentType(MediaType.APPLICATION_JSON)
+                .bodyValue("{\"searchOption\": \"category\", \"searchValue\": \"phone\"}").exchange()
+                .expectStatus().isOk()
+                .expectBodyList(Commodity.class).hasSize(1);
+    }
+}
@@ -0,0 +1,231 @@
+package service;
+
+import database.Database;
+import exceptions.NotInStock;
+import exceptions.UsernameAlreadyTaken;
+import model.Comment;
+import model.Commodity;
+import model.User;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class BalootConcurrencyTest {
+    private static final int THREADS = 16;
+    private static final int OPERATIONS_PER_THREAD = 500;
+
+    private Baloot baloot;
+    private Database database;
+    private ExecutorService executor;
+    private Commodity commodity;
+
+    @BeforeEach
+    public void setUp() {
+        baloot = Baloot.getInstance();
+        database = Database.getInstance();
+        executor = Executors.newFixedThreadPool(THREADS);
+
+        commodity = new Commodity();
+        commodity.setId("1");
+        commodity.setName("iPhone");
+        commodity.setPrice(10);
+        commodity.setInStock(THREADS * OPERATIONS_PER_THREAD);
+        commodity.getCategories().add("phone");
+        database.setUsers(new ArrayList<>());
+        database.setCommodities(new ArrayList<>(List.of(commodity)));
+        database.setComments(new ArrayList<>());
+    }
+
+    @AfterEach
+    public void tearDown() throws InterruptedException {
+        executor.shutdownNow();
+        executor.awaitTermination(10, TimeUnit.SECONDS);
+        baloot.fetchAndStoreData();
+    }
+
+    private <T> List<T> runConcurrently(Callable<T> task) throws Exception {
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<T>> futures = new ArrayList<>();
+        for (int i = 0; i < THREADS; i++)
+            futures.add(executor.submit(() -> {
+                start.await();
+                return task.call();
+            }));
+        start.countDown();
+
+        List<T> results = new ArrayList<>();
+        for (Future<T> future : futures)
+            results.add(future.get(30, TimeUnit.SECONDS));
+        return results;
+    }
+
+    @Test
+    public void testConcurrentSignupsWithSameUsernameAcceptOnlyOne() throws Exception {
+        List<Boolean> results = runConcurrently(() -> {
+            try {
+                baloot.addUser(new User("ali", "1234", "ali@ut.ac.ir", "2000-01-01", "Tehran"));
+                return true;
+            } catch (UsernameAlreadyTaken e) {
+                return false;
+            }
+        });
+
+        assertEquals(1, results.stream().filter(added -> added).count());
+        assertEquals(1, database.getUsers().size());
+        assertNotNull(baloot.getUserById("ali"));
+    }
+
+    @Test
+    public void testConcurrentSignupsWithUniqueUsernamesAreAllVisible() throws Exception {
+        AtomicInteger nextId = new AtomicInteger();
+        runConcurrently(() -> {
+            for (int i = 0; i < OPERATIONS_PER_THREAD; i++)
+                baloot.addUser(new User("user" + nextId.getAndIncrement(), "1234", null, null, null));
+            return null;
+        });
+
+        assertEquals(THREADS * OPERATIONS_PER_THREAD, database.getUsers().size());
+        for (int i = 0; i < THREADS * OPERATIONS_PER_THREAD; i++)
+            assertEquals("user" + i, baloot.getUserById("user" + i).getUsername());
+    }
+
+    @Test
+    public void testConcurrentCommentsGetDistinctSequentialIds() throws Exception {
+        runConcurrently(() -> {
+            for (int i = 0; i < OPERATIONS_PER_THREAD; i++) {
+                Comment comment = new Comment();
+                comment.setCommodityId(1);
+                baloot.addComment(comment);
+            }
+            return null;
+        });
+
+        int total = THREADS * OPERATIONS_PER_THREAD;
+        Set<Integer> ids = new HashSet<>();
+        for (Comment comment : database.getComments())
+            ids.add(comment.getId());
+        assertEquals(total, ids.size());
+        assertTrue(ids.stream().allMatch(id -> id >= 0 && id < total));
+        assertEquals(total, baloot.getCommentsForCommodity(1).size());
+    }
+
+    @Test
+    public void testConcurrentRatingsKeepRatingConsistent() throws Exception {
+        AtomicInteger nextUser = new AtomicInteger();
+        runConcurrently(() -> {
+            String username = "user" + nextUser.getAndIncrement();
+            for (int i = 0; i < OPERATIONS_PER_THREAD; i++) {
+                commodity.addRate(username, i % 2 == 0 ? 4 : 8);
+                baloot.commodityRated(commodity);
+            }
+            return null;
+        });
+
+        assertEquals(THREADS, commodity.getUserRate().size());
+        assertEquals(8 * THREADS / (float) (THREADS + 1), commodity.getRating(), 0.0001);
+    }
+
+    @Test
+    public void testConcurrentBuyListAndCreditUpdatesAreNotLost() throws Exception {
+        User user = new User("ali", "1234", null, null, null);
+        baloot.addUser(user);
+
+        runConcurrently(() -> {
+            for (int i = 0; i < OPERATIONS_PER_THREAD; i++) {
+                baloot.addCommodityToUserBuyList("ali", "1");
+                user.addCredit(1);
+            }
+            return null;
+        });
+
+        assertEquals(THREADS * OPERATIONS_PER_THREAD, user.getBuyList().get("1"));
+        assertEquals(THREADS * OPERATIONS_PER_THREAD, user.getCredit(), 0.0001);
+    }
+
+    @Test
+    public void testReadersNeverFailWhileCatalogGrows() throws Exception {
+        AtomicBoolean writing = new AtomicBoolean(true);
+        AtomicInteger nextId = new AtomicInteger(2);
+        Future<?> writer = executor.submit(() -> {
+            for (int i = 0; i < THREADS * OPERATIONS_PER_THREAD; i++) {
+                Commodity added = new Commodity();
+                added.setId(String.valueOf(nextId.getAndIncrement()));
+                added.setName("iPhone " + i);
+                added.getCategories().add("phone");
+                database.addCommodity(added);
+            }
+            writing.set(false);
+            return null;
+        });
+
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<Integer>> readers = new ArrayList<>();
+        for (int i = 0; i < THREADS - 1; i++)
+            readers.add(executor.submit(() -> {
+                start.await();
+                int reads = 0;
+                while (writing.get()) {
+                    assertFalse(baloot.getCommodities().isEmpty());
+                    assertFalse(baloot.filterCommoditiesByCategory("phone").isEmpty());
+                    assertFalse(baloot.filterCommoditiesByName("Phone").isEmpty());
+                    assertFalse(baloot.suggestSimilarCommodities(commodity).isEmpty());
+                    for (Commodity read : database.getCommodities())
+                        assertNotNull(read);
+                    reads++;
+                }
+                return reads;
+            }));
+        start.countDown();
+
+        writer.get(60, TimeUnit.SECONDS);
+        for (Future<Integer> reader : readers)
+            reader.get(60, TimeUnit.SECONDS);
+
+        assertEquals(THREADS * OPERATIONS_PER_THREAD + 1, baloot.getCommodities().size());
+        assertEquals(THREADS * OPERATIONS_PER_THREAD + 1, baloot.filterCommoditiesByCategory("phone").size());
+    }
+
+    @Test
+    public void testConcurrentCheckoutsOfHotItemNeverOversell() throws Exception {
+        int stock = THREADS * OPERATIONS_PER_THREAD / 2;
+        commodity.setInStock(stock);
+        AtomicInteger nextUser = new AtomicInteger();
+        List<Integer> purchases = runConcurrently(() -> {
+            int purchased = 0;
+            for (int i = 0; i < OPERATIONS_PER_THREAD; i++) {
+                User user = new User("buyer" + nextUser.getAndIncrement(), "1234", null, null, null);
+                user.addCredit(commodity.getPrice());
+                baloot.addUser(user);
+                baloot.addCommodityToUserBuyList(user.getUsername(), "1");
+                try {
+                    baloot.withdrawPayableAmount(user);
+                    assertEquals(0, user.getCredit());
+                    purchased++;
+                } catch (NotInStock e) {
+                    assertEquals(commodity.getPrice(), user.getCredit());
+                    assertTrue(user.getPurchasedList().isEmpty());
+                }
+            }
+            return purchased;
+        });
+
+        assertEquals(stock, purchases.stream().mapToInt(Integer::intValue).sum());
+        assertEquals(0, commodity.getInStock());
+    }
+}
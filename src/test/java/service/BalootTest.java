@@ -0,0 +1,468 @@
+package service;
+
+import database.DataParser;
+import database.Database;
+import database.SnapshotStore;
+import database.WriteAheadLog;
+import model.Comment;
+import model.Commodity;
+import model.Mutation;
+import model.MutationLog;
+import model.Mutations;
+import model.User;
+import exceptions.CommodityIsNotInBuyList;
+import exceptions.InsufficientCredit;
+import exceptions.InvalidPageRequest;
+import exceptions.InvalidQuantityRange;
+import exceptions.NotExistentCommodity;
+import exceptions.NotExistentUser;
+import exceptions.NotInStock;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import utils.BuyListItem;
+import utils.CursorPage;
+import utils.Page;
+import utils.ProductPage;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class BalootTest {
+    private Baloot baloot;
+    private Commodity iPhone;
+    private Commodity galaxy;
+    private Commodity macBook;
+
+    @BeforeEach
+    public void setUp() {
+        baloot = Baloot.getInstance();
+        iPhone = createCommodity("1", "iPhone", "phone", "tech", "apple");
+        galaxy = createCommodity("2", "Galaxy", "phone", "tech");
+        macBook = createCommodity("3", "MacBook", "laptop", "tech", "apple");
+        Database.getInstance().setCommodities(new ArrayList<>(List.of(iPhone, galaxy, macBook)));
+    }
+
+    @AfterEach
+    public void tearDown() {
+        baloot.fetchAndStoreData();
+    }
+
+    private static Commodity createCommodity(String id, String name, String... categories) {
+        Commodity commodity = new Commodity();
+        commodity.setId(id);
+        commodity.setName(name);
+        commodity.getCategories().addAll(List.of(categories));
+        return commodity;
+    }
+
+    @Test
+    public void testFilterCommoditiesByCategory() {
+        assertEquals(List.of(iPhone, galaxy), baloot.filterCommoditiesByCategory("phone"));
+        assertTrue(baloot.filterCommoditiesByCategory("food").isEmpty());
+    }
+
+    @Test
+    public void testFilterCommoditiesByCategoriesMatchAll() {
+        assertEquals(List.of(iPhone), baloot.filterCommoditiesByCategories(List.of("tech", "phone", "apple"), true));
+        assertTrue(baloot.filterCommoditiesByCategories(List.of("phone", "laptop"), true).isEmpty());
+    }
+
+    @Test
+    public void testFilterCommoditiesByCategoriesMatchAny() {
+        assertEquals(List.of(iPhone, galaxy, macBook),
+                baloot.filterCommoditiesByCategories(List.of("phone", "laptop"), false));
+        assertEquals(List.of(macBook), baloot.filterCommoditiesByCategories(List.of("laptop", "food"), false));
+    }
+
+    @Test
+    public void testFilterCommoditiesByNoCategories() {
+        assertTrue(baloot.filterCommoditiesByCategories(List.of(), true).isEmpty());
+        assertTrue(baloot.filterCommoditiesByCategories(List.of(), false).isEmpty());
+    }
+
+    @Test
+    public void testSearchCommoditiesShouldDispatchOnTheSearchOption() {
+        assertEquals(List.of(iPhone), baloot.searchCommodities("categories", "phone, apple", null).toList());
+        assertEquals(List.of(iPhone, galaxy, macBook), baloot.searchCommodities("categories", "phone,laptop", "OR").toList());
+        assertEquals(List.of(iPhone, galaxy), baloot.searchCommodities("category", "phone", null).toList());
+        assertEquals(List.of(macBook), baloot.searchCommodities("name", "MacBook", null).toList());
+        assertTrue(baloot.searchCommodities("color", "red", null).toList().isEmpty());
+        assertTrue(baloot.searchCommodities(null, "phone", null).toList().isEmpty());
+        assertTrue(baloot.searchCommodities("name", null, null).toList().isEmpty());
+    }
+
+    @Test
+    public void testFilterCommoditiesByName() {
+        assertEquals(List.of(iPhone, macBook), baloot.filterCommoditiesByName("o"));
+        assertEquals(List.of(macBook), baloot.filterCommoditiesByName("MacBook"));
+        assertTrue(baloot.filterCommoditiesByName("Nokia").isEmpty());
+    }
+
+    @Test
+    public void testAutocompleteCommodityNameShouldBoundLimit() {
+        assertEquals(List.of(iPhone), baloot.autocompleteCommodityName("ip", 10));
+        assertEquals(List.of(galaxy), baloot.autocompleteCommodityName("G", 10));
+        assertTrue(baloot.autocompleteCommodityName("", -1).isEmpty());
+        assertEquals(3, baloot.autocompleteCommodityName("", Integer.MAX_VALUE).size());
+    }
+
+    private List<String> listCommodityIds(String sort, int limit) throws InvalidPageRequest {
+        List<String> ids = new ArrayList<>();
+        String cursor = null;
+        do {
+            CursorPage<Commodity> page = baloot.getCommoditiesPage(sort, cursor, limit);
+            assertTrue(page.getItems().size() <= limit);
+            page.getItems().forEach(commodity -> ids.add(commodity.getId()));
+            cursor = page.getNextCursor();
+        } while (cursor != null);
+        return ids;
+    }
+
+    @Test
+    public void testGetCommoditiesPageShouldListEveryCommodityOnce() throws Exception {
+        Database.getInstance().addCommodity(createCommodity("4", "GALAXY", "phone"));
+        Database.getInstance().addCommodity(createCommodity("5", "galaxy", "phone"));
+
+        assertEquals(List.of("1", "2", "3", "4", "5"), listCommodityIds(Baloot.SORT_BY_ADDED, 2));
+        assertEquals(List.of("2", "4", "5", "1", "3"), listCommodityIds(Baloot.SORT_BY_NAME, 1));
+        assertEquals(List.of("2", "4", "5", "1", "3"), listCommodityIds(Baloot.SORT_BY_NAME, 2));
+    }
+
+    @Test
+    public void testGetCommoditiesPageShouldResumeAfterConcurrentAdds() throws Exception {
+        CursorPage<Commodity> first = baloot.getCommoditiesPage(Baloot.SORT_BY_NAME, null, 1);
+        assertEquals(List.of(galaxy), first.getItems());
+
+        Database.getInstance().addCommodity(createCommodity("4", "AirPods", "tech"));
+        CursorPage<Commodity> second = baloot.getCommoditiesPage(Baloot.SORT_BY_NAME, first.getNextCursor(), 1);
+        assertEquals(List.of(iPhone), second.getItems());
+    }
+
+    @Test
+    public void testGetCommoditiesPageShouldRejectInvalidRequests() throws Exception {
+        String addedCursor = baloot.getCommoditiesPage(Baloot.SORT_BY_ADDED, null, 1).getNextCursor();
+
+        assertThrows(InvalidPageRequest.class, () -> baloot.getCommoditiesPage("price", null, 1));
+        assertThrows(InvalidPageRequest.class, () -> baloot.getCommoditiesPage(Baloot.SORT_BY_NAME, addedCursor, 1));
+        assertThrows(InvalidPageRequest.class, () -> baloot.getCommoditiesPage(Baloot.SORT_BY_ADDED, "not a cursor", 1));
+    }
+
+    @Test
+    public void testGetCommentsForCommodityPageByPage() {
+        ArrayList<Comment> comments = new ArrayList<>();
+        for (int i = 0; i < 5; i++)
+            comments.add(new Comment(i, "test@ut.ac.ir", "testUser", 1, "comment " + i));
+        Database.getInstance().setComments(comments);
+
+        Page<Comment> firstPage = baloot.getCommentsForCommodity(1, 0, 2);
+        assertEquals(comments.subList(0, 2), firstPage.getItems());
+        assertEquals(2, firstPage.getNextCursor());
+
+        Page<Comment> lastPage = baloot.getCommentsForCommodity(1, 4, 2);
+        assertEquals(comments.subList(4, 5), lastPage.getItems());
+        assertNull(lastPage.getNextCursor());
+
+        assertTrue(baloot.getCommentsForCommodity(1, 10, 2).getItems().isEmpty());
+        assertTrue(baloot.getCommentsForCommodity(2, 0, 2).getItems().isEmpty());
+    }
+
+    private static Commodity createRatedCommodity(String id, float rating, String... categories) {
+        Commodity commodity = createCommodity(id, "commodity" + id, categories);
+        commodity.setRating(rating);
+        return commodity;
+    }
+
+    @Test
+    public void testSuggestSimilarCommoditiesShouldRankSharedCategoriesFirst() {
+        Commodity target = createRatedCommodity("1", 5, "phone");
+        Commodity similarLow = createRatedCommodity("2", 1, "phone");
+        Commodity similarHigh = createRatedCommodity("3", 3, "phone", "tech");
+        Commodity otherHigh = createRatedCommodity("4", 10, "food");
+        Commodity otherMid = createRatedCommodity("5", 7, "food");
+        Commodity otherLow = createRatedCommodity("6", 2, "food");
+        Database.getInstance().setCommodities(new ArrayList<>(List.of(target, similarLow, similarHigh, otherHigh, otherMid, otherLow)));
+
+        assertEquals(List.of(similarHigh, similarLow, otherHigh, otherMid), baloot.suggestSimilarCommodities(target));
+    }
+
+    @Test
+    public void testSuggestSimilarCommoditiesShouldRefreshAfterRating() {
+        Commodity target = createRatedCommodity("1", 5, "phone");
+        ArrayList<Commodity> commodities = new ArrayList<>(List.of(target));
+        for (int i = 2; i <= 6; i++)
+            commodities.add(createRatedCommodity(String.valueOf(i), i, "phone"));
+        Database.getInstance().setCommodities(commodities);
+
+        assertEquals(List.of(commodities.get(5), commodities.get(4), commodities.get(3), commodities.get(2)),
+                baloot.suggestSimilarCommodities(target));
+
+        Commodity lowest = commodities.get(1);
+        lowest.setRating(10);
+        baloot.commodityRated(lowest);
+
+        assertEquals(lowest, baloot.suggestSimilarCommodities(target).get(0));
+    }
+
+    @Test
+    public void testSuggestSimilarCommoditiesShouldRefreshAfterCatalogChange() {
+        Commodity target = createRatedCommodity("1", 5, "phone");
+        Database.getInstance().setCommodities(new ArrayList<>(List.of(target)));
+        assertTrue(baloot.suggestSimilarCommodities(target).isEmpty());
+
+        Commodity added = createRatedCommodity("2", 1, "food");
+        Database.getInstance().addCommodity(added);
+
+        assertEquals(List.of(added), baloot.suggestSimilarCommodities(target));
+    }
+
+    @Test
+    public void testSuggestSimilarCommoditiesShouldServeThePublishedInstanceAfterPriceUpdate() {
+        Commodity target = createRatedCommodity("1", 5, "phone");
+        Commodity similar = createRatedCommodity("2", 1, "phone");
+        Database.getInstance().setCommodities(new ArrayList<>(List.of(target, similar)));
+        assertEquals(List.of(similar), baloot.suggestSimilarCommodities(target));
+
+        Commodity repriced = createRatedCommodity("2", 1, "phone");
+        repriced.setPrice(similar.getPrice() + 50);
+        assertTrue(Database.getInstance().updateCommodity(repriced));
+
+        List<Commodity> suggestions = baloot.suggestSimilarCommodities(target);
+        assertEquals(1, suggestions.size());
+        assertSame(Database.getInstance().findCommodity("2"), suggestions.get(0));
+        assertEquals(repriced.getPrice(), suggestions.get(0).getPrice());
+    }
+
+    private User createCheckoutUser(float credit) throws Exception {
+        User user = new User("checkoutUser", "1234", null, null, null);
+        user.addCredit(credit);
+        iPhone.setPrice(100);
+        iPhone.setInStock(5);
+        galaxy.setPrice(50);
+        galaxy.setInStock(1);
+        user.getBuyList().put("1", 2);
+        user.getBuyList().put("2", 2);
+        return user;
+    }
+
+    @Test
+    public void testWithdrawPayableAmountShouldRollBackWhenAnItemIsShort() throws Exception {
+        User user = createCheckoutUser(1000);
+
+        assertThrows(NotInStock.class, () -> baloot.withdrawPayableAmount(user));
+        assertEquals(1000, user.getCredit());
+        assertEquals(5, iPhone.getInStock());
+        assertEquals(1, galaxy.getInStock());
+        assertTrue(user.getPurchasedList().isEmpty());
+        assertEquals(2, user.getBuyList().size());
+    }
+
+    @Test
+    public void testWithdrawPayableAmountShouldRollBackWhenTheLogRefusesIt() throws Exception {
+        User user = createCheckoutUser(1000);
+        galaxy.setInStock(2);
+        Mutations.setLog(new MutationLog() {
+            @Override
+            public long append(Mutation mutation) {
+                throw new IllegalStateException("Write-ahead log is closed");
+            }
+
+            @Override
+            public void awaitDurable(long sequence) {
+            }
+        });
+        try {
+            assertThrows(IllegalStateException.class, () -> baloot.withdrawPayableAmount(user));
+            assertThrows(IllegalStateException.class, () -> user.addCredit(5));
+            assertThrows(IllegalStateException.class, () -> user.addBuyItem(iPhone));
+        } finally {
+            Mutations.setLog(MutationLog.NONE);
+        }
+
+        assertEquals(1000, user.getCredit());
+        assertEquals(5, iPhone.getInStock());
+        assertEquals(2, galaxy.getInStock());
+        assertTrue(user.getPurchasedList().isEmpty());
+        assertEquals(Map.of("1", 2, "2", 2), user.getBuyList());
+    }
+
+    @Test
+    public void testWithdrawPayableAmountShouldNotReserveStockWithoutCredit() throws Exception {
+        User user = createCheckoutUser(10);
+        galaxy.setInStock(2);
+
+        assertThrows(InsufficientCredit.class, () -> baloot.withdrawPayableAmount(user));
+        assertEquals(10, user.getCredit());
+        assertEquals(5, iPhone.getInStock());
+        assertEquals(2, galaxy.getInStock());
+        assertTrue(user.getPurchasedList().isEmpty());
+    }
+
+    @Test
+    public void testWithdrawPayableAmountShouldCommitWholeBuyList() throws Exception {
+        User user = createCheckoutUser(1000);
+        galaxy.setInStock(2);
+
+        baloot.withdrawPayableAmount(user);
+        assertEquals(700, user.getCredit());
+        assertEquals(3, iPhone.getInStock());
+        assertEquals(0, galaxy.getInStock());
+        assertEquals(Map.of("1", 2, "2", 2), user.getPurchasedList());
+        assertTrue(user.getBuyList().isEmpty());
+    }
+
+    @Test
+    public void testChangeUserBuyListShouldApplyAllChangesOrNone() throws Exception {
+        User user = new User("sara", "1234", "sara@ut.ac.ir", null, null);
+        Database.getInstance().setUsers(new ArrayList<>(List.of(user)));
+
+        baloot.changeUserBuyList("sara", Map.of("1", 3, "2", 1, "3", 0));
+        assertEquals(Map.of("1", 3, "2", 1), user.getBuyList());
+
+        baloot.changeUserBuyList("sara", Map.of("1", -1, "2", -1, "3", 2));
+        assertEquals(Map.of("1", 2, "3", 2), user.getBuyList());
+
+        assertThrows(CommodityIsNotInBuyList.class, () -> baloot.changeUserBuyList("sara", Map.of("1", 1, "2", -1)));
+        assertThrows(NotExistentCommodity.class, () -> baloot.changeUserBuyList("sara", Map.of("1", 1, "9", 1)));
+        assertThrows(NotExistentUser.class, () -> baloot.changeUserBuyList("ali", Map.of("1", 1)));
+        assertThrows(InvalidQuantityRange.class, () -> baloot.changeUserBuyList("sara", Map.of("1", Integer.MAX_VALUE)));
+        assertEquals(Map.of("1", 2, "3", 2), user.getBuyList());
+    }
+
+    @Test
+    public void testGetCommoditiesByIdsShouldKeepRequestedOrder() {
+        assertEquals(List.of(macBook, iPhone), baloot.getCommoditiesByIds(List.of("3", "9", "1")));
+        assertTrue(baloot.getCommoditiesByIds(List.of()).isEmpty());
+    }
+
+    @Test
+    public void testGetBuyListItemsShouldMatchSequentialAndVirtualThreadModes() throws Exception {
+        Map<String, Integer> quantities = new LinkedHashMap<>();
+        quantities.put("3", 1);
+        quantities.put("1", 2);
+
+        for (boolean virtualThreads : new boolean[]{false, true}) {
+            FanOut.setVirtualThreads(virtualThreads);
+            try {
+                List<BuyListItem> items = baloot.getBuyListItems(quantities);
+                assertEquals(List.of(macBook, iPhone), items.stream().map(BuyListItem::getCommodity).toList());
+                assertEquals(List.of(1, 2), items.stream().map(BuyListItem::getQuantity).toList());
+                assertThrows(NotExistentCommodity.class, () -> baloot.getBuyListItems(Map.of("9", 1)));
+            } finally {
+                FanOut.setVirtualThreads(false);
+            }
+        }
+    }
+
+    @Test
+    public void testGetProductPageShouldCombineCommentsAndSuggestions() throws Exception {
+        Database.getInstance().setComments(new ArrayList<>(List.of(
+                new Comment(0, "test@ut.ac.ir", "testUser", 1, "first"),
+                new Comment(1, "test@ut.ac.ir", "testUser", 1, "second"))));
+
+        ProductPage page = baloot.getProductPage("1", 1);
+        assertEquals(iPhone, page.getCommodity());
+        assertEquals(List.of("first"), page.getComments().stream().map(Comment::getText).toList());
+        assertEquals(1, page.getNextCommentCursor());
+        assertEquals(baloot.suggestSimilarCommodities(iPhone), page.getSuggestions());
+        assertThrows(NotExistentCommodity.class, () -> baloot.getProductPage("9", 1));
+    }
+
+    @Test
+    public void testOpenWriteAheadLogShouldRecoverLoggedMutations(@TempDir Path directory) throws Exception {
+        iPhone.setPrice(100);
+        iPhone.setInStock(3);
+        Database.getInstance().setUsers(new ArrayList<>());
+        Database.getInstance().setComments(new ArrayList<>());
+        SnapshotStore snapshotStore = new SnapshotStore(Database.getInstance(), directory.resolve("baloot.snapshot"));
+        Path logPath = directory.resolve("baloot.wal");
+
+        try {
+            baloot.openWriteAheadLog(snapshotStore, logPath, WriteAheadLog.FsyncPolicy.ALWAYS);
+            baloot.addUser(new User("sara", "1234", "sara@ut.ac.ir", null, null));
+            baloot.getUserById("sara").addCredit(500);
+            baloot.addCommodityToUserBuyList("sara", "1");
+            baloot.addCommodityToUserBuyList("sara", "1");
+            baloot.withdrawPayableAmount(baloot.getUserById("sara"));
+            baloot.addCommodityToUserBuyList("sara", "2");
+            baloot.changeUserBuyList("sara", Map.of("2", 2, "3", 1));
+            Commodity pushedMacBook = createCommodity("3", "MacBook Pro", "laptop");
+            pushedMacBook.setPrice(2000);
+            Database.getInstance().updateCommodity(pushedMacBook);
+            iPhone.addRate("sara", 8);
+            baloot.addComment(new Comment(0, "sara@ut.ac.ir", "sara", 1, "great"));
+            baloot.getCommentById(0).addUserVote("sara", "like");
+            baloot.closeWriteAheadLog();
+
+            Database.getInstance().setUsers(new ArrayList<>());
+            Database.getInstance().setCommodities(new ArrayList<>());
+            Database.getInstance().setComments(new ArrayList<>());
+            baloot.openWriteAheadLog(snapshotStore, logPath, WriteAheadLog.FsyncPolicy.ALWAYS);
+        } finally {
+            baloot.closeWriteAheadLog();
+        }
+
+        User sara = baloot.getUserById("sara");
+        assertEquals(300, sara.getCredit());
+        assertEquals(Map.of("1", 2), sara.getPurchasedList());
+        assertEquals(Map.of("2", 3, "3", 1), sara.getBuyList());
+        Commodity recoveredIPhone = baloot.getCommodityById("1");
+        assertEquals(1, recoveredIPhone.getInStock());
+        assertEquals(Map.of("sara", 8), recoveredIPhone.getUserRate());
+        assertEquals(Map.of("sara", "like"), baloot.getCommentById(0).getUserVote());
+        assertEquals(2000, baloot.getCommodityById("3").getPrice());
+        assertEquals(List.of("3"), baloot.filterCommoditiesByName("Pro").stream().map(Commodity::getId).toList());
+        assertTrue(WriteAheadLog.hasRecords(logPath));
+    }
+
+    @Test
+    public void testBootShouldLoadTheSnapshotOnceAndMergeNewerDataFiles(@TempDir Path directory) throws Exception {
+        Path dataPath = Files.createDirectories(directory.resolve("json"));
+        for (String fileName : DataParser.DATA_FILES)
+            Files.copy(Paths.get(DataParser.defaultPath(), fileName), dataPath.resolve(fileName));
+        Path snapshotPath = directory.resolve("baloot.snapshot");
+        SnapshotStore snapshotStore = new SnapshotStore(Database.getInstance(), snapshotPath);
+        Path logPath = directory.resolve("baloot.wal");
+
+        System.setProperty(DataParser.DATA_PATH_PROPERTY, dataPath + "/");
+        try {
+            baloot.fetchAndStoreData(snapshotStore, logPath, WriteAheadLog.FsyncPolicy.ALWAYS);
+            assertTrue(snapshotStore.exists());
+            baloot.getUserById("ali").addCredit(10);
+            baloot.closeWriteAheadLog();
+            byte[] snapshot = Files.readAllBytes(snapshotPath);
+
+            baloot.fetchAndStoreData(snapshotStore, logPath, WriteAheadLog.FsyncPolicy.ALWAYS);
+            assertEquals(1010, baloot.getUserById("ali").getCredit());
+            assertArrayEquals(snapshot, Files.readAllBytes(snapshotPath));
+            baloot.getUserById("ali").addCredit(5);
+            baloot.closeWriteAheadLog();
+
+            Path usersPath = dataPath.resolve("users.json");
+            Files.writeString(usersPath, "[{\"username\": \"sara\", \"password\": \"1234\", \"email\": \"sara@ut.ac.ir\"}]");
+            Files.setLastModifiedTime(usersPath, FileTime.fromMillis(snapshotStore.lastModified() + 1000));
+            baloot.fetchAndStoreData(snapshotStore, logPath, WriteAheadLog.FsyncPolicy.ALWAYS);
+            assertEquals(1015, baloot.getUserById("ali").getCredit());
+            assertEquals("sara@ut.ac.ir", baloot.getUserById("sara").getEmail());
+            assertFalse(WriteAheadLog.hasRecords(logPath));
+            baloot.closeWriteAheadLog();
+
+            baloot.fetchAndStoreData(snapshotStore, logPath, WriteAheadLog.FsyncPolicy.ALWAYS);
+            assertEquals(1015, baloot.getUserById("ali").getCredit());
+            assertEquals("sara@ut.ac.ir", baloot.getUserById("sara").getEmail());
+        } finally {
+            baloot.closeWriteAheadLog();
+            System.clearProperty(DataParser.DATA_PATH_PROPERTY);
+        }
+    }
+}
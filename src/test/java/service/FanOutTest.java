@@ -0,0 +1,75 @@
+package service;
+
+import exceptions.NotExistentCommodity;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class FanOutTest {
+    @AfterEach
+    public void tearDown() {
+        FanOut.setVirtualThreads(false);
+    }
+
+    @Test
+    public void testPartsShouldRunOnCallingThreadByDefault() throws Exception {
+        Thread caller = Thread.currentThread();
+        try (FanOut scope = new FanOut()) {
+            Supplier<Thread> first = scope.fork(Thread::currentThread);
+            Supplier<Integer> second = scope.fork(() -> 2);
+            scope.join(Exception.class);
+
+            assertSame(caller, first.get());
+            assertEquals(2, second.get());
+        }
+    }
+
+    @Test
+    public void testPartsShouldOverlapOnVirtualThreads() throws Exception {
+        FanOut.setVirtualThreads(true);
+        CountDownLatch started = new CountDownLatch(2);
+        try (FanOut scope = new FanOut()) {
+            Supplier<Boolean> first = scope.fork(() -> {
+                started.countDown();
+                return started.await(10, TimeUnit.SECONDS) && Thread.currentThread().isVirtual();
+            });
+            Supplier<Boolean> second = scope.fork(() -> {
+                started.countDown();
+                return started.await(10, TimeUnit.SECONDS) && Thread.currentThread().isVirtual();
+            });
+            scope.join(Exception.class);
+
+            assertTrue(first.get());
+            assertTrue(second.get());
+        }
+    }
+
+    @Test
+    public void testFailureShouldCancelOtherPartsAndBeRethrown() {
+        FanOut.setVirtualThreads(true);
+        CountDownLatch interrupted = new CountDownLatch(1);
+        try (FanOut scope = new FanOut()) {
+            scope.fork(() -> {
+                try {
+                    Thread.sleep(TimeUnit.MINUTES.toMillis(1));
+                } catch (InterruptedException e) {
+                    interrupted.countDown();
+                }
+                return null;
+            });
+            scope.fork(() -> {
+                throw new NotExistentCommodity();
+            });
+
+            assertThrows(NotExistentCommodity.class, () -> scope.join(NotExistentCommodity.class));
+            assertTrue(interrupted.await(10, TimeUnit.SECONDS));
+        } catch (InterruptedException e) {
+            fail(e);
+        }
+    }
+}
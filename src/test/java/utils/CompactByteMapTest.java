@@ -0,0 +1,53 @@
+package utils;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class CompactByteMapTest {
+    private CompactByteMap<String> map;
+
+    @BeforeEach
+    public void setUp() {
+        map = new CompactByteMap<>();
+    }
+
+    @Test
+    public void testPutAndGetSuccessfully() {
+        assertEquals(CompactByteMap.ABSENT, map.put("a", (byte) 1));
+        assertEquals(1, map.put("a", (byte) 2));
+        assertEquals(2, map.get("a"));
+        assertEquals(CompactByteMap.ABSENT, map.get("b"));
+        assertTrue(map.containsKey("a"));
+        assertFalse(map.containsKey("b"));
+        assertEquals(1, map.size());
+    }
+
+    @Test
+    public void testGrowBeyondInitialCapacitySuccessfully() {
+        Map<String, Integer> expected = new HashMap<>();
+        for (int i = 0; i < 10_000; i++) {
+            map.put("user" + i, (byte) (i % 11));
+            expected.put("user" + i, i % 11);
+        }
+
+        assertEquals(10_000, map.size());
+        assertEquals(expected, map.asMap(Integer::valueOf));
+    }
+
+    @Test
+    public void testAsMapShouldDecodeValues() {
+        map.put("a", (byte) 1);
+        map.put("b", (byte) 2);
+
+        Map<String, String> view = map.asMap(value -> value == 1 ? "one" : "two");
+
+        assertEquals(Map.of("a", "one", "b", "two"), view);
+        assertNull(view.get("c"));
+        assertThrows(UnsupportedOperationException.class, () -> view.put("c", "one"));
+    }
+}
@@ -0,0 +1,62 @@
+package utils;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class PostingTest {
+    private Posting<String> posting;
+
+    @BeforeEach
+    public void setUp() {
+        posting = new Posting<>();
+    }
+
+    @Test
+    public void testRemoveShouldKeepTheOrderOfTheRest() {
+        posting.addAll(List.of("a", "b", "c"));
+
+        assertTrue(posting.remove("b"));
+        assertFalse(posting.remove("b"));
+        assertEquals(List.of("a", "c"), new ArrayList<>(posting));
+        assertEquals(2, posting.size());
+        assertFalse(posting.contains("b"));
+        assertTrue(posting.contains("c"));
+    }
+
+    @Test
+    public void testReAddedElementShouldGoToTheEnd() {
+        posting.addAll(List.of("a", "b", "c"));
+        posting.remove("a");
+
+        assertTrue(posting.add("a"));
+        assertFalse(posting.add("a"));
+        assertEquals(List.of("b", "c", "a"), new ArrayList<>(posting));
+        assertEquals(List.of("b", "c", "a"), new ArrayList<>(posting.asList()));
+        assertEquals("a", posting.asList().get(2));
+    }
+
+    @Test
+    public void testCompactionShouldNotDisturbRunningIterators() {
+        List<String> elements = IntStream.range(0, 100).mapToObj(String::valueOf).toList();
+        posting.addAll(elements);
+        Iterator<String> iterator = posting.iterator();
+        assertEquals("0", iterator.next());
+
+        for (int i = 0; i < 90; i++)
+            posting.remove(String.valueOf(i));
+        posting.add("new");
+
+        assertEquals(elements.subList(90, 100), new ArrayList<>(posting).subList(0, 10));
+        assertEquals(11, posting.size());
+        List<String> rest = new ArrayList<>();
+        iterator.forEachRemaining(rest::add);
+        assertEquals(elements.subList(90, 100), rest.subList(rest.size() - 10, rest.size()));
+    }
+}